@@ -0,0 +1,119 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries an EventIndex of millions of events spread over three months from a dozen cameras, as GET /events would.
+ * Building the index (and reopening it, which rebuilds the in-memory index from the log) is done once per trial and
+ * the time taken printed.
+ *
+ *     gradle jmh -Pjmh.include=EventIndexBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class EventIndexBenchmark {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    @Param({"1000000"})
+    public int events;
+
+    @Param({"50"})
+    public int limit;
+
+    private File directory;
+    private EventIndex eventIndex;
+
+    private long lastNight;
+    private long thisMorning;
+
+    @Setup(Level.Trial)
+    public void buildIndex() throws IOException {
+        directory = Files.createTempDirectory("detectatron-event-index").toFile();
+
+        Random random = new Random(42);
+        long start = System.currentTimeMillis() - 90 * DAY_MILLIS;
+        long spacing = 90 * DAY_MILLIS / events;
+
+        long buildStart = System.nanoTime();
+
+        try (EventIndex building = new EventIndex(directory)) {
+            for (int i = 0; i < events; i++) {
+                List<Label> labels = new ArrayList<Label>();
+
+                // Most events are trees blowing in the wind, a few are people or cars (or both).
+                labels.add(new Label().withName("Outdoors").withConfidence(90f));
+                labels.add(new Label().withName("Label" + random.nextInt(200)).withConfidence(70f));
+
+                int subject = random.nextInt(100);
+
+                if (subject < 5) {
+                    labels.add(new Label().withName("Person").withConfidence(95f));
+                }
+
+                if (subject >= 3 && subject < 15) {
+                    labels.add(new Label().withName("Car").withConfidence(95f));
+                }
+
+                building.add("event-" + i + ".mp4", "camera" + random.nextInt(12), true, new TagModel(labels), start + i * spacing);
+            }
+        }
+
+        long openStart = System.nanoTime();
+        eventIndex = new EventIndex(directory);
+
+        System.out.println("\nBuilt index of " + events + " events in " + TimeUnit.NANOSECONDS.toMillis(openStart - buildStart)
+                + " ms, reopened in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openStart) + " ms ("
+                + new File(directory, "events.log").length() / (1024 * 1024) + " MB log)");
+
+        lastNight = System.currentTimeMillis() - 2 * DAY_MILLIS;
+        thisMorning = lastNight + DAY_MILLIS / 2;
+    }
+
+    @TearDown(Level.Trial)
+    public void removeIndex() throws IOException {
+        eventIndex.close();
+
+        for (File file : directory.listFiles()) {
+            Files.delete(file.toPath());
+        }
+
+        Files.delete(directory.toPath());
+    }
+
+    @Benchmark
+    public EventIndex.Page latest() throws IOException {
+        return eventIndex.query(Collections.<String>emptyList(), null, null, null, null, limit);
+    }
+
+    @Benchmark
+    public EventIndex.Page personLastNight() throws IOException {
+        return eventIndex.query(Collections.singletonList("Person"), null, lastNight, thisMorning, null, limit);
+    }
+
+    @Benchmark
+    public EventIndex.Page personAndCarOnCamera() throws IOException {
+        return eventIndex.query(Arrays.asList("Person", "Car"), "camera3", null, null, null, limit);
+    }
+
+    @Benchmark
+    public EventIndex.Page deepPage() throws IOException {
+        return eventIndex.query(Collections.singletonList("Car"), "camera7", null, null, events / 2, limit);
+    }
+
+}
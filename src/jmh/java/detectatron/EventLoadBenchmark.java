@@ -0,0 +1,128 @@
+package detectatron;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End to end load test of the /event endpoint: concurrent clients (one per JMH thread, change with -t) submitting
+ * clips from the replay corpus to the running application over HTTP, with Rekognition replaced by a local stand-in
+ * (see ReplayHarness).
+ *
+ * In sync mode each operation is a single request that tags and uploads the clip. In async mode the client polls
+ * GET /event/{id} until the event is finished, so both modes measure the time until the connector has its answer.
+ *
+ *     gradle jmh -Pjmh.include=EventLoadBenchmark
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class EventLoadBenchmark {
+
+    private static final long POLL_MILLIS = 50;
+
+    @Param({"sync", "async"})
+    public String mode;
+
+    @Param({"150"})
+    public long latencyMillis;
+
+    @Param({"50"})
+    public long jitterMillis;
+
+    @Param({"20"})
+    public int transactionsPerSecond;
+
+    // The application's own Rekognition rate limit, see AdaptiveRateLimiter
+    @Param({"18"})
+    public double rateLimit;
+
+    private ReplayHarness harness;
+    private String baseUrl;
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        harness = new ReplayHarness(
+                new StubRekognition(latencyMillis, jitterMillis, transactionsPerSecond, 0.1),
+                true,
+                "detectatron.event.mode=" + mode,
+                "detectatron.rekognition.rate-limit=" + rateLimit
+        );
+
+        baseUrl = "http://localhost:" + harness.getContext().getEnvironment().getProperty("local.server.port");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        System.out.println();
+        System.out.println("Rekognition calls: " + harness.getRekognition().getCalls() + ", throttled: " + harness.getRekognition().getThrottled());
+        System.out.println("Events failed: " + failed.get());
+
+        harness.close();
+    }
+
+    @Benchmark
+    public int submitEvent() throws Exception {
+        File clip = harness.nextClip();
+
+        // Unique filenames, otherwise async mode would return the existing job for a resubmitted clip.
+        MultiValueMap<String, Object> form = new LinkedMultiValueMap<String, Object>();
+        form.add("file", new FileSystemResource(clip) {
+            @Override
+            public String getFilename() {
+                return UUID.randomUUID() + "-" + clip.getName();
+            }
+        });
+
+        ResponseEntity<String> response;
+
+        try {
+            response = restTemplate.postForEntity(baseUrl + "/event", form, String.class);
+        } catch (RestClientException e) {
+            failed.incrementAndGet();
+            return 0;
+        }
+
+        if (response.getStatusCodeValue() != 202) {
+            return response.getStatusCodeValue();
+        }
+
+        String location = baseUrl + response.getHeaders().getLocation();
+
+        while (true) {
+            JsonNode job = objectMapper.readTree(restTemplate.getForObject(location, String.class));
+            String state = job.get("state").asText();
+
+            if (state.equals("FAILED")) {
+                failed.incrementAndGet();
+            }
+
+            if (state.equals("COMPLETED") || state.equals("FAILED")) {
+                return state.length();
+            }
+
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package detectatron;
+
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacpp.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of turning sampled video frames into JPEGs for categorisation at different max frame sizes,
+ * comparing the original approach (new converter and ImageIO.write per frame, with any scaling done in Java) with a
+ * reused FrameEncoder.
+ *
+ * Scores are in ms per frame (decoding included). The average JPEG size in bytes per frame is printed at the end of
+ * each trial.
+ *
+ *     gradle jmh -Pjmh.include=FrameEncodingBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FrameEncodingBenchmark {
+
+    // Max frame width, 0 for the video's full 1920x1080 resolution.
+    @Param({"0", "1280", "640"})
+    public int maxWidth;
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int FRAME_RATE = 25;
+    private static final int CLIP_SECONDS = 10;
+
+    // Frames sampled from a 10 second clip, see FixedRateFrameSampler
+    private static final int SAMPLED_FRAMES = 10;
+
+    private File clip;
+
+    private long encodedBytes;
+    private long encodedFrames;
+
+    @Setup(Level.Trial)
+    public void generateClip() throws Exception {
+        avutil.av_log_set_level(avutil.AV_LOG_QUIET);
+
+        clip = File.createTempFile("detectatron-bench-", ".mp4");
+        clip.deleteOnExit();
+
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(clip, WIDTH, HEIGHT);
+        recorder.setFormat("mp4");
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setFrameRate(FRAME_RATE);
+        recorder.setGopSize(FRAME_RATE * 2);
+        recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+        recorder.start();
+
+        Java2DFrameConverter converter = new Java2DFrameConverter();
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+
+        for (int i = 0; i < CLIP_SECONDS * FRAME_RATE; i++) {
+            // Gradient background rather than a flat colour, so the JPEGs are closer to the size of real footage.
+            Graphics2D graphics = image.createGraphics();
+            graphics.setPaint(new java.awt.GradientPaint(0, 0, Color.DARK_GRAY, WIDTH, HEIGHT, Color.LIGHT_GRAY));
+            graphics.fillRect(0, 0, WIDTH, HEIGHT);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect((i * 6) % (WIDTH - 120), 400, 120, 240);
+            graphics.drawString("Frame " + i, 40, 40);
+            graphics.dispose();
+
+            recorder.record(converter.convert(image));
+        }
+
+        recorder.stop();
+        recorder.release();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteClip() {
+        clip.delete();
+
+        System.out.println();
+        System.out.println("JPEG bytes/frame: " + (encodedFrames > 0 ? encodedBytes / encodedFrames : 0));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLED_FRAMES)
+    public void original() throws Exception {
+        FFmpegFrameGrabber frameGrabber = new FFmpegFrameGrabber(clip);
+        VideoFrameExtractor frameExtractor = new VideoFrameExtractor(frameGrabber, FrameExtractionMode.SEEK);
+        frameGrabber.start();
+        frameExtractor.setSampler(new FixedRateFrameSampler(frameGrabber.getLengthInFrames(), frameGrabber.getFrameRate(), 1.0, 10));
+
+        Frame frame;
+        while ((frame = frameExtractor.next()) != null) {
+            BufferedImage image = new Java2DFrameConverter().convert(frame);
+
+            // Scaling (if any) done in Java after decoding.
+            if (maxWidth > 0) {
+                int[] size = FrameEncoder.fitWithin(image.getWidth(), image.getHeight(), maxWidth, 0);
+                BufferedImage scaled = new BufferedImage(size[0], size[1], BufferedImage.TYPE_3BYTE_BGR);
+                Graphics2D graphics = scaled.createGraphics();
+                graphics.drawImage(image, 0, 0, size[0], size[1], null);
+                graphics.dispose();
+                image = scaled;
+            }
+
+            ByteArrayOutputStream jpg = new ByteArrayOutputStream();
+            ImageIO.write(image, "jpg", jpg);
+            encodedBytes += jpg.size();
+            encodedFrames++;
+        }
+
+        frameGrabber.stop();
+        frameGrabber.release();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLED_FRAMES)
+    public void reusedEncoder() throws Exception {
+        FFmpegFrameGrabber frameGrabber = new FFmpegFrameGrabber(clip);
+        VideoFrameExtractor frameExtractor = new VideoFrameExtractor(frameGrabber, FrameExtractionMode.SEEK);
+        frameGrabber.start();
+        frameExtractor.setSampler(new FixedRateFrameSampler(frameGrabber.getLengthInFrames(), frameGrabber.getFrameRate(), 1.0, 10));
+
+        try (FrameEncoder frameEncoder = new FrameEncoder(maxWidth, 0, 0.8f)) {
+            Frame frame;
+            while ((frame = frameExtractor.next()) != null) {
+                encodedBytes += frameEncoder.encode(frameEncoder.convert(frame)).length;
+                encodedFrames++;
+            }
+        }
+
+        frameGrabber.stop();
+        frameGrabber.release();
+    }
+
+}
@@ -0,0 +1,101 @@
+package detectatron;
+
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacpp.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of pulling the sampled frames out of a video with each FrameExtractionMode.
+ *
+ * A synthetic H.264 clip (moving box over a static background) is generated with FFmpegFrameRecorder at the start of
+ * the trial, using a keyframe interval similar to typical surveillance cameras.
+ *
+ *     gradle jmh -Pjmh.include=FrameExtractionBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FrameExtractionBenchmark {
+
+    @Param({"10", "60"})
+    public int clipSeconds;
+
+    @Param({"SEEK", "SEQUENTIAL", "KEYFRAME"})
+    public FrameExtractionMode mode;
+
+    private static final int FRAME_RATE = 25;
+    private static final int GOP_SIZE = 50;
+
+    private File clip;
+
+    @Setup(Level.Trial)
+    public void generateClip() throws Exception {
+        avutil.av_log_set_level(avutil.AV_LOG_QUIET);
+
+        clip = File.createTempFile("detectatron-bench-", ".mp4");
+        clip.deleteOnExit();
+
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(clip, 1280, 720);
+        recorder.setFormat("mp4");
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setFrameRate(FRAME_RATE);
+        recorder.setGopSize(GOP_SIZE);
+        recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+        recorder.start();
+
+        Java2DFrameConverter converter = new Java2DFrameConverter();
+        BufferedImage image = new BufferedImage(1280, 720, BufferedImage.TYPE_3BYTE_BGR);
+
+        for (int i = 0; i < clipSeconds * FRAME_RATE; i++) {
+            Graphics2D graphics = image.createGraphics();
+            graphics.setColor(Color.DARK_GRAY);
+            graphics.fillRect(0, 0, 1280, 720);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect((i * 4) % 1200, 300, 80, 160);
+            graphics.dispose();
+
+            recorder.record(converter.convert(image));
+        }
+
+        recorder.stop();
+        recorder.release();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteClip() {
+        clip.delete();
+    }
+
+    @Benchmark
+    public void extractSchedule(Blackhole blackhole) throws Exception {
+        FFmpegFrameGrabber frameGrabber = new FFmpegFrameGrabber(clip);
+        VideoFrameExtractor frameExtractor = new VideoFrameExtractor(frameGrabber, mode);
+        Java2DFrameConverter converter = new Java2DFrameConverter();
+
+        frameGrabber.start();
+        frameExtractor.setSampler(new FixedRateFrameSampler(frameGrabber.getLengthInFrames(), frameGrabber.getFrameRate(), 1.0, 10));
+
+        Frame frame;
+        while ((frame = frameExtractor.next()) != null) {
+            blackhole.consume(converter.convert(frame));
+        }
+
+        frameGrabber.stop();
+        frameGrabber.release();
+    }
+
+}
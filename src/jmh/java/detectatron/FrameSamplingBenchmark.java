@@ -0,0 +1,230 @@
+package detectatron;
+
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacpp.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a corpus of clips through each FrameSamplingStrategy, counting how many frames would be categorised before
+ * the subject of the clip is found. The "categorisation" is a stand-in that knows when the subject is on screen, so
+ * this measures the sampling alone - fewer frames categorised means fewer Rekognition calls.
+ *
+ * The corpus is generated at the start of the trial: clips of different lengths, each with a subject walking through
+ * the scene for a few seconds at a different point in the clip. Real footage can be used instead by pointing
+ * -Ddetectatron.bench.clips at a directory of clips, each with a "<clip>.subject" file giving the start and end
+ * (in seconds) of when the subject is on screen, eg "12.5 15".
+ *
+ * Scores are in ms to replay the whole corpus. Frames categorised per clip, and the proportion of clips where the
+ * subject was missed entirely, are printed at the end of each trial.
+ *
+ *     gradle jmh -Pjmh.include=FrameSamplingBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class FrameSamplingBenchmark {
+
+    @Param({"FIXED_RATE", "KEYFRAME", "MOTION", "COARSE_TO_FINE"})
+    public FrameSamplingStrategy strategy;
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+    private static final int FRAME_RATE = 25;
+
+    // Generated clips as {length, subject start, subject end} in seconds.
+    private static final double[][] GENERATED = {
+            {10, 1, 4},
+            {10, 6, 9},
+            {20, 12, 15},
+            {30, 3, 6},
+            {30, 21, 23},
+            {60, 40, 44},
+    };
+
+    // Default change threshold, see VideoTagService
+    private static final double CHANGE_THRESHOLD = 0.01;
+
+    private static class Clip {
+        File file;
+        double subjectStart;
+        double subjectEnd;
+        boolean generated;
+    }
+
+    private final List<Clip> clips = new ArrayList<Clip>();
+    private final FrameChangeDetector changeDetector = new BlockDifferenceChangeDetector();
+
+    private long clipsReplayed;
+    private long framesCategorised;
+    private long subjectsMissed;
+
+    @Setup(Level.Trial)
+    public void loadCorpus() throws Exception {
+        avutil.av_log_set_level(avutil.AV_LOG_QUIET);
+
+        String corpus = System.getProperty("detectatron.bench.clips");
+
+        if (corpus != null) {
+            File[] subjectFiles = new File(corpus).listFiles((dir, name) -> name.endsWith(".subject"));
+
+            for (File subjectFile : subjectFiles == null ? new File[0] : subjectFiles) {
+                String[] subject = new String(Files.readAllBytes(subjectFile.toPath()), StandardCharsets.UTF_8).trim().split("\\s+");
+
+                Clip clip = new Clip();
+                clip.file = new File(subjectFile.getPath().replaceAll("\\.subject$", ""));
+                clip.subjectStart = Double.parseDouble(subject[0]);
+                clip.subjectEnd = Double.parseDouble(subject[1]);
+                clips.add(clip);
+            }
+        } else {
+            for (double[] generated : GENERATED) {
+                clips.add(generate(generated[0], generated[1], generated[2]));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() {
+        for (Clip clip : clips) {
+            if (clip.generated) {
+                clip.file.delete();
+            }
+        }
+
+        System.out.println();
+        System.out.println("Frames categorised/clip: " + (clipsReplayed > 0 ? (double) framesCategorised / clipsReplayed : 0));
+        System.out.println("Subjects missed: " + (clipsReplayed > 0 ? (double) subjectsMissed / clipsReplayed : 0));
+    }
+
+    private Clip generate(double lengthSeconds, double subjectStart, double subjectEnd) throws Exception {
+        Clip clip = new Clip();
+        clip.file = File.createTempFile("detectatron-bench-", ".mp4");
+        clip.file.deleteOnExit();
+        clip.subjectStart = subjectStart;
+        clip.subjectEnd = subjectEnd;
+        clip.generated = true;
+
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(clip.file, WIDTH, HEIGHT);
+        recorder.setFormat("mp4");
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setFrameRate(FRAME_RATE);
+        recorder.setGopSize(FRAME_RATE * 2);
+        recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+        recorder.start();
+
+        Java2DFrameConverter converter = new Java2DFrameConverter();
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+
+        for (int i = 0; i < lengthSeconds * FRAME_RATE; i++) {
+            double seconds = (double) i / FRAME_RATE;
+
+            Graphics2D graphics = image.createGraphics();
+            graphics.setPaint(new java.awt.GradientPaint(0, 0, Color.DARK_GRAY, WIDTH, HEIGHT, Color.GRAY));
+            graphics.fillRect(0, 0, WIDTH, HEIGHT);
+
+            if (seconds >= subjectStart && seconds < subjectEnd) {
+                // Walks across the scene whilst on screen.
+                int x = (int) ((seconds - subjectStart) / (subjectEnd - subjectStart) * (WIDTH - 60));
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(x, 150, 60, 140);
+            }
+
+            graphics.dispose();
+            recorder.record(converter.convert(image));
+        }
+
+        recorder.stop();
+        recorder.release();
+
+        return clip;
+    }
+
+    /**
+     * Replay a single clip, returning the number of frames categorised before the subject was found (or in total, if
+     * it never was).
+     */
+    private int replay(Clip clip) throws Exception {
+        FFmpegFrameGrabber frameGrabber = new FFmpegFrameGrabber(clip.file);
+        VideoFrameExtractor frameExtractor = new VideoFrameExtractor(frameGrabber, strategy.extractionMode(FrameExtractionMode.SEEK));
+        frameGrabber.start();
+
+        FrameSamplingStrategy.Settings settings = new FrameSamplingStrategy.Settings();
+        settings.changeDetector = changeDetector;
+
+        FrameSampler sampler = strategy.create(settings, frameGrabber.getLengthInFrames(), frameGrabber.getFrameRate());
+        frameExtractor.setSampler(sampler);
+
+        int categorised = 0;
+        boolean found = false;
+        byte[] lastCategorised = null;
+
+        try (FrameEncoder frameEncoder = new FrameEncoder(1280, 720, 0.8f)) {
+            Frame frame;
+
+            while (!found && (frame = frameExtractor.next()) != null) {
+                int frameNumber = frameExtractor.getFrameNumber();
+                BufferedImage image = frameEncoder.convert(frame);
+
+                if (image == null) {
+                    sampler.sampled(frameNumber, null);
+                    continue;
+                }
+
+                byte[] fingerprint = changeDetector.fingerprint(image);
+                sampler.sampled(frameNumber, fingerprint);
+
+                // Unchanged frames are skipped, as per VideoTagService.
+                if (lastCategorised != null && changeDetector.difference(lastCategorised, fingerprint) < CHANGE_THRESHOLD) {
+                    continue;
+                }
+
+                lastCategorised = fingerprint;
+                categorised++;
+
+                double seconds = frameNumber / frameGrabber.getFrameRate();
+                found = seconds >= clip.subjectStart && seconds < clip.subjectEnd;
+            }
+        }
+
+        frameGrabber.stop();
+        frameGrabber.release();
+
+        clipsReplayed++;
+        framesCategorised += categorised;
+
+        if (!found) {
+            subjectsMissed++;
+        }
+
+        return categorised;
+    }
+
+    @Benchmark
+    public int replayCorpus() throws Exception {
+        int categorised = 0;
+
+        for (Clip clip : clips) {
+            categorised += replay(clip);
+        }
+
+        return categorised;
+    }
+
+}
@@ -0,0 +1,124 @@
+package detectatron;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a corpus of clips and images through VideoTagService and ImageTagService, with Rekognition replaced by a
+ * local stand-in (see StubRekognition and ReplayHarness). Everything else - decoding, sampling, encoding, the rate
+ * limiter, merging tags - is the real pipeline, so this is the baseline to compare before and after any change to it.
+ *
+ * Reports throughput (clips or images per second) and the latency distribution including p50/p99. Frames categorised
+ * and requests sent per clip are printed at the end of each iteration, and calls throttled by the stub and mean time
+ * per stage at the end of each trial. For allocation rate, add the GC profiler:
+ *
+ *     gradle jmh -Pjmh.include=ReplayBenchmark -Pjmh.profiler=gc
+ *
+ * Latency, jitter, the stub's transactions per second limit and the application's own rate limit are parameters, eg
+ * -p latencyMillis=400. Set rateLimit above transactionsPerSecond to see how we cope with being throttled.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class ReplayBenchmark {
+
+    @Param({"150"})
+    public long latencyMillis;
+
+    @Param({"50"})
+    public long jitterMillis;
+
+    @Param({"20"})
+    public int transactionsPerSecond;
+
+    // The application's own Rekognition rate limit, see AdaptiveRateLimiter
+    @Param({"18"})
+    public double rateLimit;
+
+    @Param({"0.1"})
+    public double keyLabelRate;
+
+    // Frames tiled into each request, see FrameBatch. Compare with -p batchMaxFrames=1,9
+    @Param({"1"})
+    public int batchMaxFrames;
+
+    private ReplayHarness harness;
+    private VideoTagService videoTagService;
+    private ImageTagService imageTagService;
+    private PipelineMetrics pipelineMetrics;
+
+    // Totals across the clips tagged in the current iteration.
+    private final AtomicLong clips = new AtomicLong();
+    private final AtomicLong framesForwarded = new AtomicLong();
+    private final AtomicLong requestsSent = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        harness = new ReplayHarness(
+                new StubRekognition(latencyMillis, jitterMillis, transactionsPerSecond, keyLabelRate),
+                false,
+                "detectatron.rekognition.rate-limit=" + rateLimit,
+                "detectatron.video.batch-max-frames=" + batchMaxFrames
+        );
+
+        videoTagService = harness.getBean(VideoTagService.class);
+        imageTagService = harness.getBean(ImageTagService.class);
+        pipelineMetrics = harness.getBean(PipelineMetrics.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        clips.set(0);
+        framesForwarded.set(0);
+        requestsSent.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void finishIteration() {
+        if (clips.get() > 0) {
+            System.out.println();
+            System.out.println("Frames categorised/clip: " + (double) framesForwarded.get() / clips.get());
+            System.out.println("Requests/clip: " + (double) requestsSent.get() / clips.get());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        System.out.println();
+        System.out.println("Rekognition calls: " + harness.getRekognition().getCalls() + ", throttled: " + harness.getRekognition().getThrottled());
+
+        for (Map.Entry<String, PipelineMetrics.Timer> timer : pipelineMetrics.getTimers().entrySet()) {
+            long count = timer.getValue().getCount();
+
+            if (count > 0) {
+                System.out.println("Mean " + timer.getKey() + " ms: " + timer.getValue().getTotalNanos() / count / 1e6);
+            }
+        }
+
+        harness.close();
+    }
+
+    @Benchmark
+    public TagModel tagClip() {
+        TagModel videoTags = videoTagService.process(harness.nextClip());
+
+        clips.incrementAndGet();
+        framesForwarded.addAndGet(videoTags.framesForwarded);
+        requestsSent.addAndGet(videoTags.requestsSent);
+
+        return videoTags;
+    }
+
+    @Benchmark
+    public TagModel tagImage() {
+        return imageTagService.process(harness.nextImage());
+    }
+
+}
@@ -0,0 +1,219 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.AmazonRekognition;
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacpp.avutil;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the whole application against StubRekognition and replays a corpus of clips and images through it, for the
+ * replay and load benchmarks.
+ *
+ * The corpus is generated unless -Ddetectatron.bench.replay points at a directory of clips (mp4, avi, mkv, mov) and
+ * images (jpg, png) to replay instead. Clips and images are replayed in turn, so every run sees the same sequence.
+ *
+ * Other application properties can be overridden for the benchmark with a system property, eg
+ * -Ddetectatron.video.sampling-strategy=MOTION (passed to the forked JVM with -jvmArgsAppend).
+ */
+public class ReplayHarness implements AutoCloseable {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+    private static final int FRAME_RATE = 25;
+
+    // Generated clips, as {length in seconds, number of subjects passing through}.
+    private static final int[][] GENERATED_CLIPS = {{10, 1}, {10, 0}, {20, 2}, {30, 1}};
+    private static final int GENERATED_IMAGES = 20;
+
+    private final File workDirectory;
+    private final StubRekognition rekognition;
+    private final ConfigurableApplicationContext context;
+
+    private final List<File> clips = new ArrayList<File>();
+    private final List<byte[]> images = new ArrayList<byte[]>();
+
+    private final AtomicInteger nextClip = new AtomicInteger();
+    private final AtomicInteger nextImage = new AtomicInteger();
+
+    /**
+     * @param rekognition Stand-in for Rekognition.
+     * @param web         Whether to start the web server (on a random port), or just the services.
+     * @param properties  Application properties, as "name=value".
+     * @throws Exception
+     */
+    public ReplayHarness(StubRekognition rekognition, boolean web, String... properties) throws Exception {
+        avutil.av_log_set_level(avutil.AV_LOG_QUIET);
+
+        this.rekognition = rekognition;
+        this.workDirectory = Files.createTempDirectory("detectatron-bench-").toFile();
+
+        loadCorpus();
+
+        // Passed as command line arguments, so they take precedence over application.properties.
+        List<String> arguments = new ArrayList<String>();
+        arguments.add("--detectatron.detector.type=rekognition");
+        arguments.add("--detectatron.label-cache.type=none");
+        arguments.add("--detectatron.spool.directory=" + new File(workDirectory, "spool"));
+        arguments.add("--detectatron.upload.store=filesystem");
+        arguments.add("--detectatron.upload.filesystem.directory=" + new File(workDirectory, "uploads"));
+        arguments.add("--server.port=0");
+        arguments.add("--logging.level.root=WARN");
+
+        for (String property : properties) {
+            arguments.add("--" + property);
+        }
+
+        // Swap the real Rekognition client for the stub, leaving everything in front of it (the label detector, rate
+        // limiter, etc) as it would be in production.
+        this.context = new SpringApplicationBuilder(Application.class)
+                .web(web)
+                .initializers(context -> context.getBeanFactory().addBeanPostProcessor(new BeanPostProcessor() {
+                    @Override
+                    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                        return bean;
+                    }
+
+                    @Override
+                    public Object postProcessAfterInitialization(Object bean, String beanName) {
+                        return bean instanceof AmazonRekognition ? rekognition : bean;
+                    }
+                }))
+                .run(arguments.toArray(new String[0]));
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public ConfigurableApplicationContext getContext() {
+        return context;
+    }
+
+    public StubRekognition getRekognition() {
+        return rekognition;
+    }
+
+    public File nextClip() {
+        return clips.get(Math.floorMod(nextClip.getAndIncrement(), clips.size()));
+    }
+
+    public byte[] nextImage() {
+        return images.get(Math.floorMod(nextImage.getAndIncrement(), images.size()));
+    }
+
+    private void loadCorpus() throws Exception {
+        String corpus = System.getProperty("detectatron.bench.replay");
+
+        if (corpus != null) {
+            File[] files = new File(corpus).listFiles();
+
+            for (File file : files == null ? new File[0] : files) {
+                String name = file.getName().toLowerCase();
+
+                if (name.matches(".*\\.(mp4|avi|mkv|mov)$")) {
+                    clips.add(file);
+                } else if (name.matches(".*\\.(jpe?g|png)$")) {
+                    images.add(Files.readAllBytes(file.toPath()));
+                }
+            }
+
+            if (clips.isEmpty() || images.isEmpty()) {
+                throw new IllegalArgumentException("Replay corpus " + corpus + " needs at least one clip and one image");
+            }
+        } else {
+            Random random = new Random(42);
+
+            for (int[] clip : GENERATED_CLIPS) {
+                clips.add(generateClip(clip[0], clip[1], random));
+            }
+
+            for (int i = 0; i < GENERATED_IMAGES; i++) {
+                ByteArrayOutputStream image = new ByteArrayOutputStream();
+                ImageIO.write(scene(random.nextInt(WIDTH), random.nextInt(HEIGHT)), "jpg", image);
+                images.add(image.toByteArray());
+            }
+        }
+    }
+
+    /**
+     * A clip of a static scene with the given number of subjects walking across it, one after the other.
+     */
+    private File generateClip(int lengthSeconds, int subjects, Random random) throws Exception {
+        File file = new File(workDirectory, "clip-" + clips.size() + ".mp4");
+
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(file, WIDTH, HEIGHT);
+        recorder.setFormat("mp4");
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setFrameRate(FRAME_RATE);
+        recorder.setGopSize(FRAME_RATE * 2);
+        recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+        recorder.start();
+
+        Java2DFrameConverter converter = new Java2DFrameConverter();
+        int totalFrames = lengthSeconds * FRAME_RATE;
+        int y = random.nextInt(HEIGHT - 140);
+
+        for (int i = 0; i < totalFrames; i++) {
+            BufferedImage image;
+
+            if (subjects > 0) {
+                // Each subject takes an equal share of the clip to cross the scene.
+                int framesPerSubject = totalFrames / subjects;
+                image = scene((i % framesPerSubject) * (WIDTH - 60) / framesPerSubject, y);
+            } else {
+                image = scene(-1, -1);
+            }
+
+            recorder.record(converter.convert(image));
+        }
+
+        recorder.stop();
+        recorder.release();
+
+        return file;
+    }
+
+    /**
+     * The scene, with a subject at x, y (or no subject, if x is negative).
+     */
+    private static BufferedImage scene(int x, int y) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.DARK_GRAY, WIDTH, HEIGHT, Color.GRAY));
+        graphics.fillRect(0, 0, WIDTH, HEIGHT);
+
+        if (x >= 0) {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(x, y, 60, 140);
+        }
+
+        graphics.dispose();
+        return image;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        FileSystemUtils.deleteRecursively(workDirectory);
+    }
+
+}
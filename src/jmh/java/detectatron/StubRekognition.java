@@ -0,0 +1,127 @@
+package detectatron;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.rekognition.AbstractAmazonRekognition;
+import com.amazonaws.services.rekognition.model.AmazonRekognitionException;
+import com.amazonaws.services.rekognition.model.DetectLabelsRequest;
+import com.amazonaws.services.rekognition.model.DetectLabelsResult;
+import com.amazonaws.services.rekognition.model.Label;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for AWS Rekognition, so the pipeline can be benchmarked offline and repeatably.
+ *
+ * Each call takes latencyMillis, give or take up to jitterMillis. Calls are allowed at transactionsPerSecond, with
+ * bursts of up to a second's worth after a quiet period, and anything beyond that is rejected with a
+ * ThrottlingException just as Rekognition would. Note that unlike the real client, throttled calls aren't retried.
+ *
+ * The labels returned are derived from the image data, so the same image always gets the same labels, and
+ * keyLabelRate of images are labelled "Person".
+ */
+public class StubRekognition extends AbstractAmazonRekognition {
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final int transactionsPerSecond;
+    private final double keyLabelRate;
+
+    // Token bucket of calls allowed.
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    /**
+     * @param latencyMillis         Average time taken by each call.
+     * @param jitterMillis          Max random variation either side of latencyMillis.
+     * @param transactionsPerSecond Calls allowed per second before throttling, 0 for no limit.
+     * @param keyLabelRate          Proportion (0.0 - 1.0) of images labelled with a key label.
+     */
+    public StubRekognition(long latencyMillis, long jitterMillis, int transactionsPerSecond, double keyLabelRate) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.transactionsPerSecond = transactionsPerSecond;
+        this.keyLabelRate = keyLabelRate;
+        this.tokens = transactionsPerSecond;
+    }
+
+    @Override
+    public DetectLabelsResult detectLabels(DetectLabelsRequest request) {
+        calls.incrementAndGet();
+
+        if (!permitted()) {
+            throttled.incrementAndGet();
+
+            AmazonRekognitionException e = new AmazonRekognitionException("Rate exceeded");
+            e.setErrorCode("ThrottlingException");
+            e.setErrorType(AmazonServiceException.ErrorType.Client);
+            e.setStatusCode(400);
+            throw e;
+        }
+
+        long delay = latencyMillis;
+
+        if (jitterMillis > 0) {
+            delay += ThreadLocalRandom.current().nextLong(-jitterMillis, jitterMillis + 1);
+        }
+
+        try {
+            TimeUnit.MILLISECONDS.sleep(Math.max(0, delay));
+        } catch (InterruptedException e) {
+            // As the real client does when a request is cancelled, eg once another frame has found a key tag.
+            Thread.currentThread().interrupt();
+            throw new AbortedException();
+        }
+
+        return new DetectLabelsResult().withLabels(labels(request.getImage().getBytes()));
+    }
+
+    private synchronized boolean permitted() {
+        if (transactionsPerSecond <= 0) {
+            return true;
+        }
+
+        long now = System.nanoTime();
+        tokens = Math.min(transactionsPerSecond, tokens + (now - lastRefill) * transactionsPerSecond / 1e9);
+        lastRefill = now;
+
+        if (tokens < 1) {
+            return false;
+        }
+
+        tokens--;
+        return true;
+    }
+
+    private List<Label> labels(ByteBuffer image) {
+        Random random = new Random(image.duplicate().hashCode());
+
+        List<Label> labels = new ArrayList<Label>();
+        labels.add(new Label().withName("Outdoors").withConfidence(60 + random.nextFloat() * 40));
+        labels.add(new Label().withName("Tree").withConfidence(50 + random.nextFloat() * 50));
+
+        if (random.nextDouble() < keyLabelRate) {
+            labels.add(new Label().withName("Person").withConfidence(80 + random.nextFloat() * 20));
+        }
+
+        return labels;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+}
@@ -0,0 +1,121 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the labels of thousands of frames into a single TagModel, as happens when tagging long videos or
+ * aggregating results across many clips.
+ *
+ * The previous list scanning implementation is retained here as legacyMerge for comparison.
+ *
+ *     gradle jmh -Pjmh.include=TagModelMergeBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TagModelMergeBenchmark {
+
+    @Param({"1000", "5000"})
+    public int frames;
+
+    // Distinct label names seen across all the frames.
+    @Param({"200"})
+    public int vocabulary;
+
+    private List<List<Label>> frameLabels;
+
+    @Setup(Level.Trial)
+    public void generateLabels() {
+        Random random = new Random(42);
+        frameLabels = new ArrayList<List<Label>>();
+
+        for (int frame = 0; frame < frames; frame++) {
+            List<Label> labels = new ArrayList<Label>();
+
+            // Rekognition returns up to 20 labels per frame
+            for (int i = 0; i < 20; i++) {
+                labels.add(new Label()
+                        .withName(i == 0 && frame % 100 == 0 ? "Person" : "Label" + random.nextInt(vocabulary))
+                        .withConfidence(50F + random.nextFloat() * 50F));
+            }
+
+            frameLabels.add(labels);
+        }
+    }
+
+    @Benchmark
+    public TagModel merge() {
+        TagModel tags = new TagModel();
+
+        for (List<Label> labels : frameLabels) {
+            tags.importLabels(labels);
+        }
+
+        return tags;
+    }
+
+    @Benchmark
+    public List<String> legacyMerge() {
+        List<Label> rawLabels = new ArrayList<Label>();
+        List<Label> keyLabels = new ArrayList<Label>();
+        List<String> allTags = new ArrayList<String>();
+        List<String> keyTags = new ArrayList<String>();
+
+        for (List<Label> labels : frameLabels) {
+
+            loopImport:
+            for (Label importLabel : labels) {
+                for (int i = 0; i < rawLabels.size(); i++) {
+                    Label currentLabel = rawLabels.get(i);
+
+                    if (currentLabel.getName().equals(importLabel.getName())) {
+                        if (importLabel.getConfidence() > currentLabel.getConfidence()) {
+                            rawLabels.remove(i);
+                            break;
+                        } else {
+                            continue loopImport;
+                        }
+                    }
+                }
+                rawLabels.add(importLabel);
+            }
+
+            keyLabels = new ArrayList<Label>();
+            for (Label label : rawLabels) {
+                switch (label.getName().toLowerCase()) {
+                    case "people":
+                    case "person":
+                    case "cat":
+                    case "pet":
+                        keyLabels.add(label);
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            for (Label label : rawLabels) {
+                if (!allTags.contains(label.getName())) {
+                    allTags.add(label.getName());
+                }
+            }
+            for (Label label : keyLabels) {
+                if (!keyTags.contains(label.getName())) {
+                    keyTags.add(label.getName());
+                }
+            }
+        }
+
+        return allTags;
+    }
+
+}
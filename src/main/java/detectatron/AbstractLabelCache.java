@@ -0,0 +1,167 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded, TTL-based LabelCache which tracks the cached hashes and leaves storage of the labels themselves to
+ * the implementation.
+ *
+ * Lookups try for an exact match first, then (if a tolerance has been configured) fall back to a scan for the
+ * closest hash within the tolerance. The scan is linear, but it's only a few XORs per entry and is insignificant
+ * compared to the cost of a Rekognition call for the cache sizes we're dealing with.
+ */
+public abstract class AbstractLabelCache implements LabelCache, PublicMetrics {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final int maxDistance;
+
+    // Hash -> time stored, in least recently used order.
+    private final LinkedHashMap<ImageHash, Long> index = new LinkedHashMap<ImageHash, Long>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong nearHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries  Max images to cache, least recently used images are evicted first.
+     * @param ttlMillis   How long labels are cached for.
+     * @param maxDistance Max Hamming distance between hashes to consider them a match, 0 for exact matches only.
+     */
+    protected AbstractLabelCache(int maxEntries, long ttlMillis, int maxDistance) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Read the labels stored for the hash, or null if they're not available.
+     */
+    protected abstract List<Label> read(ImageHash imageHash);
+
+    protected abstract void write(ImageHash imageHash, List<Label> labels);
+
+    protected abstract void delete(ImageHash imageHash);
+
+    /**
+     * Current time, overridable for testing.
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Add an existing entry to the index without writing it, used by implementations to restore persisted entries.
+     */
+    protected synchronized void restore(ImageHash imageHash, long storedAt) {
+        index.put(imageHash, storedAt);
+        evictExcess();
+    }
+
+    @Override
+    public synchronized List<Label> lookup(ImageHash imageHash) {
+
+        ImageHash match = null;
+        Long storedAt = index.get(imageHash);
+
+        if (isLive(imageHash, storedAt)) {
+            match = imageHash;
+        } else {
+            if (storedAt != null) {
+                // Expired, no point keeping it around.
+                index.remove(imageHash);
+                delete(imageHash);
+            }
+        }
+
+        if (match == null && maxDistance > 0) {
+            int bestDistance = Integer.MAX_VALUE;
+
+            for (Map.Entry<ImageHash, Long> entry : index.entrySet()) {
+                int distance = imageHash.distance(entry.getKey());
+
+                if (distance <= maxDistance && distance < bestDistance && isLive(entry.getKey(), entry.getValue())) {
+                    bestDistance = distance;
+                    match = entry.getKey();
+                }
+            }
+        }
+
+        List<Label> labels = null;
+
+        if (match != null) {
+            index.get(match); // Marks as recently used
+            labels = read(match);
+
+            if (labels == null) {
+                index.remove(match);
+            }
+        }
+
+        if (labels == null) {
+            misses.incrementAndGet();
+        } else if (match.equals(imageHash)) {
+            hits.incrementAndGet();
+        } else {
+            nearHits.incrementAndGet();
+        }
+
+        return labels;
+    }
+
+    @Override
+    public synchronized void store(ImageHash imageHash, List<Label> labels) {
+        if (maxEntries <= 0) {
+            return;
+        }
+
+        index.put(imageHash, now());
+        write(imageHash, labels);
+
+        evictExcess();
+    }
+
+    private boolean isLive(ImageHash imageHash, Long storedAt) {
+        return storedAt != null && now() - storedAt <= ttlMillis;
+    }
+
+    private void evictExcess() {
+        Iterator<ImageHash> eldest = index.keySet().iterator();
+
+        while (index.size() > maxEntries && eldest.hasNext()) {
+            ImageHash imageHash = eldest.next();
+            eldest.remove();
+            delete(imageHash);
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        metrics.add(new Metric<Long>("labelcache.hits", hits.get()));
+        metrics.add(new Metric<Long>("labelcache.hits.near", nearHits.get()));
+        metrics.add(new Metric<Long>("labelcache.misses", misses.get()));
+        metrics.add(new Metric<Long>("labelcache.evictions", evictions.get()));
+        metrics.add(new Metric<Integer>("labelcache.size", size()));
+
+        return metrics;
+    }
+
+}
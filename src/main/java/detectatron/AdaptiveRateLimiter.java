@@ -0,0 +1,298 @@
+package detectatron;
+
+import com.amazonaws.SdkBaseException;
+import com.amazonaws.retry.RetryUtils;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits calls to a rate limited service (Rekognition) shared by every caller in the process.
+ *
+ * Two limits apply to each call:
+ *  - A token bucket caps the request rate at the service's transactions per second limit, allowing short bursts.
+ *  - A concurrency limit is adjusted AIMD style: it grows slowly as calls succeed, and is halved whenever the service
+ *    throttles us, so that under a burst of camera events we back off rather than turning it into a throttling storm
+ *    where every retry makes everyone's latency worse.
+ *
+ * Callers that can't get a permit within the max wait are turned away rather than queuing indefinitely.
+ */
+public class AdaptiveRateLimiter implements PublicMetrics {
+
+    private static final Logger logger = Logger.getLogger("AdaptiveRateLimiter");
+
+    // Don't halve the limit more than once per interval, since a single burst can produce a whole batch of
+    // throttling errors at once.
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Permission to make one call. Must be released once the call completes.
+     */
+    public class Permit {
+        private final int queuePosition;
+        private final long waitMillis;
+        private boolean released = false;
+
+        private Permit(int queuePosition, long waitMillis) {
+            this.queuePosition = queuePosition;
+            this.waitMillis = waitMillis;
+        }
+
+        /**
+         * Number of callers that were already waiting when this caller arrived.
+         */
+        public int getQueuePosition() {
+            return queuePosition;
+        }
+
+        /**
+         * How long this caller waited for the permit.
+         */
+        public long getWaitMillis() {
+            return waitMillis;
+        }
+
+        /**
+         * @param throttled Whether the call was rejected by the service for exceeding its limits. A throttled call
+         *                  doesn't grow the concurrency limit, but backing off is left to throttled(), which the client
+         *                  reports every throttling response to (see AwsClientMetrics), so it isn't counted twice.
+         */
+        public void release(boolean throttled) {
+            if (!released) {
+                released = true;
+                AdaptiveRateLimiter.this.release(throttled);
+            }
+        }
+    }
+
+    private final String prefix;
+    private final double permitsPerSecond;
+    private final double burst;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final long maxWaitNanos;
+    private final LongSupplier nanoTime;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition permitAvailable = lock.newCondition();
+
+    // All guarded by lock
+    private double tokens;
+    private long lastRefillNanos;
+    private double concurrencyLimit;
+    private int inFlight = 0;
+    private int waiting = 0;
+    private long lastDecreaseNanos;
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong waitMillisTotal = new AtomicLong();
+    private volatile long waitMillisMax;
+    private volatile int queuePositionMax;
+
+    /**
+     * @param prefix           Metric name prefix, eg "aws.rekognition.limiter"
+     * @param permitsPerSecond Max sustained request rate.
+     * @param burst            Max requests that can be made at once after a quiet period.
+     * @param minConcurrency   Floor the concurrency limit never backs off below.
+     * @param maxConcurrency   Ceiling (and starting point) of the concurrency limit.
+     * @param maxWaitMillis    Max time a caller will wait for a permit.
+     */
+    public AdaptiveRateLimiter(String prefix, double permitsPerSecond, int burst, int minConcurrency, int maxConcurrency, long maxWaitMillis) {
+        this(prefix, permitsPerSecond, burst, minConcurrency, maxConcurrency, maxWaitMillis, System::nanoTime);
+    }
+
+    AdaptiveRateLimiter(String prefix, double permitsPerSecond, int burst, int minConcurrency, int maxConcurrency, long maxWaitMillis, LongSupplier nanoTime) {
+        this.prefix = prefix;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.minConcurrency = Math.max(1, minConcurrency);
+        this.maxConcurrency = Math.max(this.minConcurrency, maxConcurrency);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.nanoTime = nanoTime;
+
+        this.tokens = this.burst;
+        this.lastRefillNanos = nanoTime.getAsLong();
+        this.lastDecreaseNanos = lastRefillNanos - DECREASE_INTERVAL_NANOS;
+        this.concurrencyLimit = this.maxConcurrency;
+    }
+
+    /**
+     * Whether the exception is the service telling us to slow down (throttling, or provisioned throughput exceeded).
+     *
+     * @param e
+     * @return
+     */
+    public static boolean isThrottling(Exception e) {
+        return e instanceof SdkBaseException && RetryUtils.isThrottlingException((SdkBaseException) e);
+    }
+
+    /**
+     * Wait for a permit to make a call.
+     *
+     * @return The permit, or null if one couldn't be obtained within the max wait.
+     * @throws InterruptedException
+     */
+    public Permit acquire() throws InterruptedException {
+        long startNanos = nanoTime.getAsLong();
+        long deadlineNanos = startNanos + maxWaitNanos;
+
+        lock.lockInterruptibly();
+
+        int queuePosition = waiting;
+        waiting++;
+
+        try {
+            while (true) {
+                long now = nanoTime.getAsLong();
+                refill(now);
+
+                if (inFlight < (int) concurrencyLimit && tokens >= 1) {
+                    tokens -= 1;
+                    inFlight++;
+
+                    long waitMillis = TimeUnit.NANOSECONDS.toMillis(now - startNanos);
+                    recordAcquired(queuePosition, waitMillis);
+
+                    return new Permit(queuePosition, waitMillis);
+                }
+
+                long remainingNanos = deadlineNanos - now;
+
+                if (remainingNanos <= 0) {
+                    timeouts.incrementAndGet();
+                    return null;
+                }
+
+                // If we're only waiting on the bucket we know when the next token is due, otherwise we wait for a
+                // call to complete.
+                if (inFlight < (int) concurrencyLimit) {
+                    long tokenDueNanos = (long) Math.ceil((1 - tokens) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+                    permitAvailable.awaitNanos(Math.max(1, Math.min(tokenDueNanos, remainingNanos)));
+                } else {
+                    permitAvailable.awaitNanos(remainingNanos);
+                }
+            }
+        } finally {
+            waiting--;
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+
+    private void recordAcquired(int queuePosition, long waitMillis) {
+        acquired.incrementAndGet();
+        waitMillisTotal.addAndGet(waitMillis);
+        waitMillisMax = Math.max(waitMillisMax, waitMillis);
+        queuePositionMax = Math.max(queuePositionMax, queuePosition);
+    }
+
+    private void release(boolean wasThrottled) {
+        lock.lock();
+
+        try {
+            inFlight--;
+
+            if (!wasThrottled) {
+                // Additive increase, roughly one extra concurrent call per limit's worth of successful calls.
+                concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+            }
+
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record that the service throttled a call. This is the one place throttles are reported, including those for
+     * calls that the client retried and eventually succeeded, see AwsClientMetrics.
+     */
+    public void throttled() {
+        lock.lock();
+
+        try {
+            decrease();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease() {
+        throttled.incrementAndGet();
+
+        long now = nanoTime.getAsLong();
+
+        if (now - lastDecreaseNanos < DECREASE_INTERVAL_NANOS) {
+            return;
+        }
+
+        lastDecreaseNanos = now;
+        concurrencyLimit = Math.max(minConcurrency, concurrencyLimit / 2);
+
+        // Empty the bucket too, so everyone pauses briefly rather than immediately trying again.
+        tokens = Math.min(tokens, 0);
+
+        logger.log(Level.WARNING, "Throttled, reducing concurrency limit to " + (int) concurrencyLimit);
+    }
+
+    /**
+     * The current concurrency limit.
+     *
+     * @return
+     */
+    public int getConcurrencyLimit() {
+        lock.lock();
+
+        try {
+            return (int) concurrencyLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        int currentLimit;
+        int currentInFlight;
+        int currentWaiting;
+
+        lock.lock();
+        try {
+            currentLimit = (int) concurrencyLimit;
+            currentInFlight = inFlight;
+            currentWaiting = waiting;
+        } finally {
+            lock.unlock();
+        }
+
+        metrics.add(new Metric<Integer>(prefix + ".concurrency.limit", currentLimit));
+        metrics.add(new Metric<Integer>(prefix + ".in.flight", currentInFlight));
+        metrics.add(new Metric<Integer>(prefix + ".waiting", currentWaiting));
+        metrics.add(new Metric<Integer>(prefix + ".queue.position.max", queuePositionMax));
+        metrics.add(new Metric<Long>(prefix + ".acquired", acquired.get()));
+        metrics.add(new Metric<Long>(prefix + ".timeouts", timeouts.get()));
+        metrics.add(new Metric<Long>(prefix + ".throttled", throttled.get()));
+        metrics.add(new Metric<Long>(prefix + ".wait.time.total", waitMillisTotal.get()));
+        metrics.add(new Metric<Long>(prefix + ".wait.time.max", waitMillisMax));
+
+        return metrics;
+    }
+
+}
@@ -1,34 +1,57 @@
 package detectatron;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.AsyncConfigurerSupport;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.concurrent.Executor;
 
 @SpringBootApplication
 @EnableAsync
-public class Application extends AsyncConfigurerSupport {
+public class Application extends AsyncConfigurerSupport implements PublicMetrics {
 
 	public static void main(String[] args) {
 		SpringApplication.run(Application.class, args);
 	}
 
+    // The pool categorising frames and images in the background, kept so we can report how busy it is.
+    private ThreadPoolTaskExecutor asyncExecutor;
+
     /**
      * Configure our specific max limits around pool size and amount of requests we can queue.
      *
      * @return
      */
      @Override
-     public Executor getAsyncExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(25);
-        executor.setMaxPoolSize(25);
-        executor.setQueueCapacity(5000);
-        executor.setThreadNamePrefix("DetectatronAsync-");
-        executor.initialize();
-        return executor;
+     public synchronized Executor getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+            executor.setCorePoolSize(25);
+            executor.setMaxPoolSize(25);
+            executor.setQueueCapacity(5000);
+            executor.setThreadNamePrefix("DetectatronAsync-");
+            executor.initialize();
+            asyncExecutor = executor;
+        }
+        return asyncExecutor;
      }
+
+    @Override
+    public synchronized Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        if (asyncExecutor != null) {
+            metrics.add(new Metric<Integer>("async.pool.size", asyncExecutor.getPoolSize()));
+            metrics.add(new Metric<Integer>("async.pool.active", asyncExecutor.getActiveCount()));
+            metrics.add(new Metric<Integer>("async.pool.queued", asyncExecutor.getThreadPoolExecutor().getQueue().size()));
+        }
+
+        return metrics;
+    }
 }
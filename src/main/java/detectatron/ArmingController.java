@@ -1,6 +1,5 @@
 package detectatron;
 
-import com.amazonaws.services.rekognition.model.InvalidImageFormatException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
@@ -8,14 +7,22 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
-
-import org.springframework.web.multipart.MultipartFile;
-
 /**
- * Allow Detectatron to be armed/disarmed.
+ * Allow Detectatron to be armed/disarmed - as a whole, per zone or per camera.
+ *
+ * Each of the arming endpoints takes an optional "camera" or "zone" parameter, without one they apply to the whole
+ * system. Cameras are identified by the "camera" parameter given to /event and /tag/*.
+ *
+ * Changes must be POSTed, so that link prefetchers and crawlers can't change the arming state. The exception is
+ * /arming/armed and /arming/disarmed, which have always accepted GET and are called that way by alarm integrations.
  */
 @RestController
 @EnableAutoConfiguration
@@ -24,37 +31,134 @@ public class ArmingController {
 
     private static final Logger logger = Logger.getLogger("ArmingController");
 
+    // Shared with the other controllers, see SerializationConfiguration.
+    @Autowired
+    ObjectMapper objectMapper;
+
     @Autowired
     ArmingService myArmingService;
 
     @RequestMapping(value = "/arming", method = RequestMethod.GET)
-    public ResponseEntity<String> armingStatus() {
+    public ResponseEntity<String> armingStatus(
+            @RequestParam(value = "camera", required = false) String camera
+    ) {
 
         logger.log(Level.INFO, "System arming status queried.");
 
-        if (myArmingService.armed == true) {
+        if (myArmingService.isArmed(camera) == true) {
             return ResponseEntity.ok("System Armed");
         } else {
             return ResponseEntity.ok("System Disarmed\n");
         }
     }
 
-    @RequestMapping(value = "/arming/armed", method = RequestMethod.GET)
-    public ResponseEntity<String> arm() {
+    @RequestMapping(value = "/arming/state", method = RequestMethod.GET)
+    public ResponseEntity<String> armingState() throws IOException {
+        return ResponseEntity.ok(objectMapper.writeValueAsString(myArmingService.getState()));
+    }
 
-        myArmingService.armed = true;
+    @RequestMapping(value = "/arming/armed", method = {RequestMethod.GET, RequestMethod.POST})
+    public ResponseEntity<String> arm(
+            @RequestParam(value = "camera", required = false) String camera,
+            @RequestParam(value = "zone", required = false) String zone
+    ) {
+        return apply(camera, zone, ArmingRule.ARMED, "System Armed\n");
+    }
 
-        logger.log(Level.INFO, "System Armed!");
-        return ResponseEntity.ok("System Armed\n");
+    @RequestMapping(value = "/arming/disarmed", method = {RequestMethod.GET, RequestMethod.POST})
+    public ResponseEntity<String> disarm(
+            @RequestParam(value = "camera", required = false) String camera,
+            @RequestParam(value = "zone", required = false) String zone
+    ) {
+        return apply(camera, zone, ArmingRule.DISARMED, "System Disarmed\n");
     }
 
-    @RequestMapping(value = "/arming/disarmed", method = RequestMethod.GET)
-    public ResponseEntity<String> disarm() {
+    /**
+     * Arm only during the given windows, eg window=MON-FRI 08:00-18:00&window=SAT,SUN 00:00-00:00 (see ArmingWindow).
+     *
+     * The windows are read from the request directly, since binding them to a String[] would split a single window
+     * on its commas.
+     */
+    @RequestMapping(value = "/arming/scheduled", method = RequestMethod.POST)
+    public ResponseEntity<String> schedule(
+            @RequestParam(value = "camera", required = false) String camera,
+            @RequestParam(value = "zone", required = false) String zone,
+            HttpServletRequest request
+    ) {
+        String[] windows = request.getParameterValues("window");
+
+        if (windows == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("At least one window must be given.\n");
+        }
+
+        ArmingRule rule;
+
+        try {
+            List<ArmingWindow> parsed = new ArrayList<ArmingWindow>();
+
+            for (String window : windows) {
+                parsed.add(ArmingWindow.parse(window));
+            }
+
+            rule = ArmingRule.scheduled(parsed);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage() + "\n");
+        }
+
+        return apply(camera, zone, rule, "System Scheduled " + rule.windows + "\n");
+    }
 
-        myArmingService.armed = false;
+    /**
+     * Remove a camera or zone's own rule, so it follows its zone (or the system) again.
+     */
+    @RequestMapping(value = "/arming/inherit", method = RequestMethod.POST)
+    public ResponseEntity<String> inherit(
+            @RequestParam(value = "camera", required = false) String camera,
+            @RequestParam(value = "zone", required = false) String zone
+    ) {
+        if (camera == null && zone == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("A camera or zone must be given.\n");
+        }
+
+        return apply(camera, zone, null, "Inheriting\n");
+    }
+
+    /**
+     * Put a camera into a zone, or take it out of its zone if no zone is given.
+     */
+    @RequestMapping(value = "/arming/zone", method = RequestMethod.POST)
+    public ResponseEntity<String> assignZone(
+            @RequestParam(value = "camera") String camera,
+            @RequestParam(value = "zone", required = false) String zone
+    ) {
+        return update(state -> state.withCameraZone(camera, zone),
+                "Camera " + camera + (zone == null ? " removed from its zone\n" : " in zone " + zone + "\n"));
+    }
+
+    private ResponseEntity<String> apply(String camera, String zone, ArmingRule rule, String message) {
+        if (camera != null && zone != null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Only one of camera or zone may be given.\n");
+        }
+
+        if (camera != null) {
+            return update(state -> state.withCamera(camera, rule), "Camera " + camera + ": " + message);
+        } else if (zone != null) {
+            return update(state -> state.withZone(zone, rule), "Zone " + zone + ": " + message);
+        } else {
+            return update(state -> state.withGlobal(rule), message);
+        }
+    }
+
+    private ResponseEntity<String> update(UnaryOperator<ArmingState> change, String message) {
+        try {
+            myArmingService.update(change);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Unable to save arming state: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Unable to save arming state.\n");
+        }
 
-        logger.log(Level.INFO, "System Disarmed!");
-        return ResponseEntity.ok("System Disarmed\n");
+        logger.log(Level.INFO, message.trim());
+        return ResponseEntity.ok(message);
     }
 
 }
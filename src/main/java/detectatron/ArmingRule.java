@@ -0,0 +1,89 @@
+package detectatron;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Whether a camera, zone or the whole system is armed: always, never, or during scheduled windows (see ArmingWindow).
+ * Rules are immutable.
+ */
+public class ArmingRule {
+
+    public enum Mode {
+        ARMED,
+        DISARMED,
+        SCHEDULED
+    }
+
+    public static final ArmingRule ARMED = new ArmingRule(Mode.ARMED, null);
+    public static final ArmingRule DISARMED = new ArmingRule(Mode.DISARMED, null);
+
+    public final Mode mode;
+
+    // Only used when scheduled, never null.
+    public final List<ArmingWindow> windows;
+
+    @JsonCreator
+    public ArmingRule(
+            @JsonProperty("mode") Mode mode,
+            @JsonProperty("windows") List<ArmingWindow> windows
+    ) {
+        if (mode == null) {
+            throw new IllegalArgumentException("An arming rule needs a mode");
+        }
+
+        this.mode = mode;
+        this.windows = windows == null ? Collections.<ArmingWindow>emptyList() : Collections.unmodifiableList(new ArrayList<ArmingWindow>(windows));
+    }
+
+    /**
+     * Armed during any of the supplied windows.
+     *
+     * @param windows
+     * @return
+     */
+    public static ArmingRule scheduled(List<ArmingWindow> windows) {
+        if (windows.isEmpty()) {
+            throw new IllegalArgumentException("A scheduled arming rule needs at least one window");
+        }
+
+        return new ArmingRule(Mode.SCHEDULED, windows);
+    }
+
+    /**
+     * @param now Only called for scheduled rules, so the time isn't looked up when it's not needed.
+     * @return
+     */
+    public boolean isArmed(Supplier<LocalDateTime> now) {
+        switch (mode) {
+            case ARMED:
+                return true;
+
+            case DISARMED:
+                return false;
+
+            default:
+                LocalDateTime time = now.get();
+
+                for (ArmingWindow window : windows) {
+                    if (window.contains(time)) {
+                        return true;
+                    }
+                }
+
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.SCHEDULED ? "scheduled " + windows : mode.toString().toLowerCase();
+    }
+
+}
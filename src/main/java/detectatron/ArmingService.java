@@ -1,15 +1,103 @@
 package detectatron;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /**
- * Support service used to switch the application modes (armed->unarmed and vice-versa).
+ * Support service used to switch the application modes (armed->unarmed and vice-versa), for the whole system, for
+ * zones of cameras, or for individual cameras, optionally on a schedule.
+ *
+ * The state is an immutable snapshot (see ArmingState) which is replaced as a whole on every change, so checking
+ * whether a camera is armed - which happens on every request - is a single volatile read with no locking. Changes
+ * are written to the spool directory, so the state survives restarts.
  */
-
 @Service
 public class ArmingService {
 
-    // Flag whether or not the service is currently armed.
-    public static boolean armed = true;
+    private static final Logger logger = Logger.getLogger("ArmingService");
+
+    @Autowired
+    private SpoolService spoolService;
+
+    // Time zone that arming schedules are in, defaults to the system time zone.
+    @Value("${detectatron.arming.time-zone:}")
+    private String timeZone;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile ArmingState state = ArmingState.DEFAULT;
+
+    private Clock clock;
+    private File stateFile;
+
+    @PostConstruct
+    public void start() throws IOException {
+        clock = timeZone == null || timeZone.isEmpty() ? Clock.systemDefaultZone() : Clock.system(ZoneId.of(timeZone));
+        stateFile = new File(spoolService.directory("arming"), "state.json");
+
+        if (stateFile.exists()) {
+            try {
+                state = objectMapper.readValue(stateFile, ArmingState.class);
+                logger.log(Level.INFO, "Loaded arming state, system is " + state.global);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Unable to read arming state from " + stateFile + ", defaulting to armed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Is the system as a whole armed?
+     *
+     * @return
+     */
+    public boolean isArmed() {
+        return isArmed(null);
+    }
+
+    /**
+     * Is the camera armed?
+     *
+     * @param camera Or null for the system as a whole.
+     * @return
+     */
+    public boolean isArmed(String camera) {
+        return state.isArmed(camera, () -> LocalDateTime.now(clock));
+    }
+
+    public ArmingState getState() {
+        return state;
+    }
+
+    /**
+     * Change the arming state. Changes are applied one at a time, and saved before they take effect.
+     *
+     * @param change Given the current state, returns the new state.
+     * @return The new state.
+     * @throws IOException if the new state couldn't be saved, in which case the state is unchanged.
+     */
+    public synchronized ArmingState update(UnaryOperator<ArmingState> change) throws IOException {
+        ArmingState next = change.apply(state);
+
+        File tmpFile = new File(stateFile.getPath() + ".tmp");
+        objectMapper.writeValue(tmpFile, next);
+        Files.move(tmpFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        state = next;
+        return next;
+    }
 
 }
@@ -0,0 +1,125 @@
+package detectatron;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * An immutable snapshot of the arming state of every camera, see ArmingService.
+ *
+ * Each camera is armed according to its own rule if it has one, otherwise according to the rule of the zone it's in,
+ * otherwise according to the global rule. Changes return a new snapshot, leaving this one untouched, so it can be read
+ * from any thread without locking.
+ */
+public class ArmingState {
+
+    public static final ArmingState DEFAULT = new ArmingState(ArmingRule.ARMED, null, null, null);
+
+    public final ArmingRule global;
+    public final Map<String, ArmingRule> zones;
+    public final Map<String, ArmingRule> cameras;
+
+    // Camera name -> zone name
+    public final Map<String, String> cameraZones;
+
+    @JsonCreator
+    public ArmingState(
+            @JsonProperty("global") ArmingRule global,
+            @JsonProperty("zones") Map<String, ArmingRule> zones,
+            @JsonProperty("cameras") Map<String, ArmingRule> cameras,
+            @JsonProperty("cameraZones") Map<String, String> cameraZones
+    ) {
+        this.global = global == null ? ArmingRule.ARMED : global;
+        this.zones = copy(zones);
+        this.cameras = copy(cameras);
+        this.cameraZones = copy(cameraZones);
+    }
+
+    private static <V> Map<String, V> copy(Map<String, V> map) {
+        return map == null ? Collections.<String, V>emptyMap() : Collections.unmodifiableMap(new TreeMap<String, V>(map));
+    }
+
+    private static <V> Map<String, V> with(Map<String, V> map, String key, V value) {
+        Map<String, V> changed = new TreeMap<String, V>(map);
+
+        if (value == null) {
+            changed.remove(key);
+        } else {
+            changed.put(key, value);
+        }
+
+        return changed;
+    }
+
+    /**
+     * The rule that applies to a camera.
+     *
+     * @param camera Or null for the global rule.
+     * @return
+     */
+    public ArmingRule ruleFor(String camera) {
+        if (camera != null) {
+            ArmingRule rule = cameras.get(camera);
+
+            if (rule != null) {
+                return rule;
+            }
+
+            String zone = cameraZones.get(camera);
+
+            if (zone != null && zones.containsKey(zone)) {
+                return zones.get(zone);
+            }
+        }
+
+        return global;
+    }
+
+    /**
+     * Is the camera armed?
+     *
+     * @param camera Or null for the global state.
+     * @param now    Only called if the camera is on a schedule.
+     * @return
+     */
+    public boolean isArmed(String camera, Supplier<LocalDateTime> now) {
+        return ruleFor(camera).isArmed(now);
+    }
+
+    public ArmingState withGlobal(ArmingRule rule) {
+        return new ArmingState(rule, zones, cameras, cameraZones);
+    }
+
+    /**
+     * @param zone
+     * @param rule Or null for cameras in the zone to follow the global rule.
+     * @return
+     */
+    public ArmingState withZone(String zone, ArmingRule rule) {
+        return new ArmingState(global, with(zones, zone, rule), cameras, cameraZones);
+    }
+
+    /**
+     * @param camera
+     * @param rule   Or null for the camera to follow the rule of its zone.
+     * @return
+     */
+    public ArmingState withCamera(String camera, ArmingRule rule) {
+        return new ArmingState(global, zones, with(cameras, camera, rule), cameraZones);
+    }
+
+    /**
+     * @param camera
+     * @param zone   Or null to remove the camera from its zone.
+     * @return
+     */
+    public ArmingState withCameraZone(String camera, String zone) {
+        return new ArmingState(global, zones, cameras, with(cameraZones, camera, zone));
+    }
+
+}
@@ -0,0 +1,128 @@
+package detectatron;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A recurring window of time in which a camera (or zone) is armed, written as "22:00-06:00" for every day or with the
+ * days the window starts on, eg "MON-FRI 08:30-17:30" or "SAT,SUN 00:00-00:00" (all day).
+ *
+ * Windows ending at or before they start run overnight into the next day. Windows are immutable.
+ */
+public class ArmingWindow {
+
+    private static final DayOfWeek[] DAYS = DayOfWeek.values();
+
+    private final Set<DayOfWeek> days;
+    private final LocalTime start;
+    private final LocalTime end;
+    private final String text;
+
+    private ArmingWindow(Set<DayOfWeek> days, LocalTime start, LocalTime end, String text) {
+        this.days = days;
+        this.start = start;
+        this.end = end;
+        this.text = text;
+    }
+
+    /**
+     * Parse a window.
+     *
+     * @param text eg "22:00-06:00" or "MON-FRI 22:00-06:00"
+     * @return
+     * @throws IllegalArgumentException if the window isn't valid.
+     */
+    @JsonCreator
+    public static ArmingWindow parse(String text) {
+        String[] parts = text.trim().split("\\s+");
+
+        if (parts.length < 1 || parts.length > 2) {
+            throw new IllegalArgumentException("Invalid arming window \"" + text + "\", expected eg \"MON-FRI 22:00-06:00\"");
+        }
+
+        Set<DayOfWeek> days = parts.length == 2 ? parseDays(parts[0], text) : EnumSet.allOf(DayOfWeek.class);
+        String[] times = parts[parts.length - 1].split("-");
+
+        if (times.length != 2) {
+            throw new IllegalArgumentException("Invalid arming window \"" + text + "\", expected a time range such as 22:00-06:00");
+        }
+
+        try {
+            return new ArmingWindow(days, LocalTime.parse(times[0]), LocalTime.parse(times[1]), text.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid time in arming window \"" + text + "\", expected HH:mm");
+        }
+    }
+
+    private static Set<DayOfWeek> parseDays(String days, String text) {
+        Set<DayOfWeek> parsed = EnumSet.noneOf(DayOfWeek.class);
+
+        for (String range : days.split(",")) {
+            String[] ends = range.split("-");
+
+            if (ends.length > 2) {
+                throw new IllegalArgumentException("Invalid days in arming window \"" + text + "\"");
+            }
+
+            DayOfWeek first = day(ends[0], text);
+            DayOfWeek last = day(ends[ends.length - 1], text);
+
+            // Ranges can wrap around the end of the week, eg FRI-MON
+            for (DayOfWeek day = first; ; day = day.plus(1)) {
+                parsed.add(day);
+
+                if (day == last) {
+                    break;
+                }
+            }
+        }
+
+        return parsed;
+    }
+
+    private static DayOfWeek day(String name, String text) {
+        String prefix = name.trim().toUpperCase(Locale.ROOT);
+
+        for (DayOfWeek day : DAYS) {
+            if (prefix.length() >= 3 && day.name().startsWith(prefix)) {
+                return day;
+            }
+        }
+
+        throw new IllegalArgumentException("Invalid day \"" + name + "\" in arming window \"" + text + "\"");
+    }
+
+    /**
+     * Is the given (local) time within the window?
+     *
+     * @param time
+     * @return
+     */
+    public boolean contains(LocalDateTime time) {
+        LocalTime timeOfDay = time.toLocalTime();
+        DayOfWeek day = time.getDayOfWeek();
+
+        if (start.isBefore(end)) {
+            return days.contains(day) && !timeOfDay.isBefore(start) && timeOfDay.isBefore(end);
+        }
+
+        // Overnight (or all day), either started today or carrying on from a window that started yesterday.
+        return (days.contains(day) && !timeOfDay.isBefore(start))
+                || (days.contains(day.minus(1)) && timeOfDay.isBefore(end));
+    }
+
+    @JsonValue
+    @Override
+    public String toString() {
+        return text;
+    }
+
+}
@@ -0,0 +1,113 @@
+package detectatron;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.AWSRequestMetrics.Field;
+import com.amazonaws.util.TimingInfo;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the request and HTTP connection pool metrics that the AWS SDK gathers for each request made by a client,
+ * and exposes them through the Spring Boot actuator /metrics endpoint under the supplied prefix.
+ */
+public class AwsClientMetrics extends RequestMetricCollector implements PublicMetrics {
+
+    private final String prefix;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong executeTimeMillis = new AtomicLong();
+
+    // Connection pool state as of the most recent request.
+    private volatile long poolAvailable;
+    private volatile long poolLeased;
+    private volatile long poolPending;
+
+    // Told about every throttling error, including those the client retried internally.
+    private volatile Runnable throttleListener;
+
+    /**
+     * @param prefix Metric name prefix, eg "aws.rekognition"
+     */
+    public AwsClientMetrics(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Set something to be notified whenever a request is throttled, eg an AdaptiveRateLimiter.
+     *
+     * @param throttleListener
+     */
+    public void setThrottleListener(Runnable throttleListener) {
+        this.throttleListener = throttleListener;
+    }
+
+    @Override
+    public void collectMetrics(Request<?> request, Response<?> response) {
+
+        AWSRequestMetrics requestMetrics = request.getAWSRequestMetrics();
+
+        if (requestMetrics == null || !requestMetrics.isEnabled()) {
+            return;
+        }
+
+        TimingInfo timingInfo = requestMetrics.getTimingInfo();
+
+        requests.incrementAndGet();
+        retries.addAndGet(counter(timingInfo, Field.HttpClientRetryCount));
+
+        List<Object> throttleExceptions = requestMetrics.getProperty(Field.ThrottleException);
+        if (throttleExceptions != null && !throttleExceptions.isEmpty()) {
+            throttled.addAndGet(throttleExceptions.size());
+
+            if (throttleListener != null) {
+                throttleListener.run();
+            }
+        }
+
+        TimingInfo executeTime = timingInfo.getSubMeasurement(Field.ClientExecuteTime.name());
+        if (executeTime != null) {
+            Double executeMillis = executeTime.getTimeTakenMillisIfKnown();
+
+            if (executeMillis != null) {
+                executeTimeMillis.addAndGet(executeMillis.longValue());
+            }
+        }
+
+        if (timingInfo.getCounter(Field.HttpClientPoolAvailableCount.name()) != null) {
+            poolAvailable = counter(timingInfo, Field.HttpClientPoolAvailableCount);
+            poolLeased    = counter(timingInfo, Field.HttpClientPoolLeasedCount);
+            poolPending   = counter(timingInfo, Field.HttpClientPoolPendingCount);
+        }
+    }
+
+    private long counter(TimingInfo timingInfo, Field field) {
+        Number value = timingInfo.getCounter(field.name());
+        return value == null ? 0 : value.longValue();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        metrics.add(new Metric<Long>(prefix + ".requests", requests.get()));
+        metrics.add(new Metric<Long>(prefix + ".retries", retries.get()));
+        metrics.add(new Metric<Long>(prefix + ".throttled", throttled.get()));
+        metrics.add(new Metric<Long>(prefix + ".execute.time.total", executeTimeMillis.get()));
+        metrics.add(new Metric<Long>(prefix + ".pool.available", poolAvailable));
+        metrics.add(new Metric<Long>(prefix + ".pool.leased", poolLeased));
+        metrics.add(new Metric<Long>(prefix + ".pool.pending", poolPending));
+
+        return metrics;
+    }
+
+}
@@ -0,0 +1,48 @@
+package detectatron;
+
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Block sum-of-absolute-differences change detection. Frames are shrunk to a small luma grid and we score the
+ * proportion of grid cells that have changed brightness by more than the noise floor.
+ *
+ * We score by proportion of changed cells rather than mean difference so that a small subject (eg a person at the
+ * far end of the driveway) still registers, rather than being averaged away by the rest of the unchanged scene.
+ */
+@Component
+public class BlockDifferenceChangeDetector implements FrameChangeDetector {
+
+    static final int GRID_WIDTH  = 64;
+    static final int GRID_HEIGHT = 36;
+
+    // Luma change (0-255) a cell must exceed to count as changed. Below this is usually compression or sensor noise.
+    static final int NOISE_FLOOR = 24;
+
+    @Override
+    public byte[] fingerprint(BufferedImage frame) {
+        return LumaThumbnail.of(frame, GRID_WIDTH, GRID_HEIGHT);
+    }
+
+    @Override
+    public double difference(byte[] previous, byte[] current) {
+
+        if (previous.length != current.length) {
+            throw new IllegalArgumentException("Fingerprints must be generated by the same detector to be compared");
+        }
+
+        int changedCells = 0;
+
+        for (int i = 0; i < current.length; i++) {
+            int delta = Math.abs((previous[i] & 0xFF) - (current[i] & 0xFF));
+
+            if (delta > NOISE_FLOOR) {
+                changedCells++;
+            }
+        }
+
+        return (double) changedCells / current.length;
+    }
+
+}
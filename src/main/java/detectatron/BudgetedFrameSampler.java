@@ -0,0 +1,59 @@
+package detectatron;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Limits another sampler to a budget of frames and/or time per video, whichever runs out first.
+ */
+public class BudgetedFrameSampler implements FrameSampler {
+
+    private final FrameSampler sampler;
+    private final int maxFrames;
+    private final long maxMillis;
+    private final LongSupplier clock;
+    private final long startMillis;
+
+    private int frames = 0;
+
+    /**
+     * @param sampler
+     * @param maxFrames Max frames sampled, 0 for no limit.
+     * @param maxMillis Max time from now until the last frame is sampled, 0 for no limit.
+     */
+    public BudgetedFrameSampler(FrameSampler sampler, int maxFrames, long maxMillis) {
+        this(sampler, maxFrames, maxMillis, System::currentTimeMillis);
+    }
+
+    BudgetedFrameSampler(FrameSampler sampler, int maxFrames, long maxMillis, LongSupplier clock) {
+        this.sampler = sampler;
+        this.maxFrames = maxFrames;
+        this.maxMillis = maxMillis;
+        this.clock = clock;
+        this.startMillis = clock.getAsLong();
+    }
+
+    @Override
+    public int next() {
+        if (maxFrames > 0 && frames >= maxFrames) {
+            return -1;
+        }
+
+        if (maxMillis > 0 && clock.getAsLong() - startMillis >= maxMillis) {
+            return -1;
+        }
+
+        int frameNumber = sampler.next();
+
+        if (frameNumber >= 0) {
+            frames++;
+        }
+
+        return frameNumber;
+    }
+
+    @Override
+    public void sampled(int frameNumber, byte[] fingerprint) {
+        sampler.sampled(frameNumber, fingerprint);
+    }
+
+}
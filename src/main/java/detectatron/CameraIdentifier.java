@@ -0,0 +1,50 @@
+package detectatron;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Works out which camera an upload came from - either given explicitly with a "camera" request parameter, or from
+ * the upload's filename if connectors name their files after the camera (see detectatron.camera.filename-pattern).
+ */
+@Component
+public class CameraIdentifier {
+
+    private final Pattern filenamePattern;
+
+    /**
+     * @param filenamePattern Regex whose first group is the camera name, or empty to only use the camera parameter.
+     */
+    public CameraIdentifier(
+            @Value("${detectatron.camera.filename-pattern:}") String filenamePattern
+    ) {
+        this.filenamePattern = filenamePattern == null || filenamePattern.isEmpty() ? null : Pattern.compile(filenamePattern);
+    }
+
+    /**
+     * @param camera   The camera parameter, if any.
+     * @param filename The original filename of the upload, if any.
+     * @return The camera, or null if unknown.
+     */
+    public String identify(String camera, String filename) {
+        if (camera != null && !camera.isEmpty()) {
+            return camera;
+        }
+
+        if (filenamePattern == null || filename == null) {
+            return null;
+        }
+
+        Matcher matcher = filenamePattern.matcher(filename);
+
+        if (matcher.find() && matcher.groupCount() >= 1 && matcher.group(1) != null && !matcher.group(1).isEmpty()) {
+            return matcher.group(1);
+        }
+
+        return null;
+    }
+
+}
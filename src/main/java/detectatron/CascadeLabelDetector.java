@@ -0,0 +1,96 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a cheap local detector first, and only escalates images it's unsure about to a more capable (and expensive)
+ * remote detector.
+ *
+ * Based on the local labels, an image is:
+ *  - Accepted if any label is at least the accept confidence, returning just those labels.
+ *  - Considered empty if no label reaches the reject confidence - nothing interesting here.
+ *  - Ambiguous otherwise, and sent to the remote detector.
+ */
+public class CascadeLabelDetector implements LabelDetector, PublicMetrics {
+
+    private static final Logger logger = Logger.getLogger("CascadeLabelDetector");
+
+    private final LabelDetector localDetector;
+    private final LabelDetector remoteDetector;
+    private final float acceptConfidence;
+    private final float rejectConfidence;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong escalated = new AtomicLong();
+
+    /**
+     * @param localDetector    Run for every image
+     * @param remoteDetector   Run for ambiguous images
+     * @param acceptConfidence Local labels at or above this confidence (percentage) are trusted
+     * @param rejectConfidence Local labels below this confidence (percentage) are ignored
+     */
+    public CascadeLabelDetector(LabelDetector localDetector, LabelDetector remoteDetector, float acceptConfidence, float rejectConfidence) {
+        this.localDetector = localDetector;
+        this.remoteDetector = remoteDetector;
+        this.acceptConfidence = acceptConfidence;
+        this.rejectConfidence = rejectConfidence;
+    }
+
+    @Override
+    public List<Label> detectLabels(byte[] imageBinary) {
+
+        List<Label> confidentLabels = new ArrayList<Label>();
+        boolean ambiguous = false;
+
+        for (Label label : localDetector.detectLabels(imageBinary)) {
+            if (label.getConfidence() >= acceptConfidence) {
+                confidentLabels.add(label);
+            } else if (label.getConfidence() >= rejectConfidence) {
+                ambiguous = true;
+            }
+        }
+
+        if (!confidentLabels.isEmpty()) {
+            accepted.incrementAndGet();
+            return confidentLabels;
+        }
+
+        if (!ambiguous) {
+            rejected.incrementAndGet();
+            return Collections.emptyList();
+        }
+
+        logger.log(Level.INFO, "Local labels ambiguous, escalating to " + remoteDetector);
+        escalated.incrementAndGet();
+
+        return remoteDetector.detectLabels(imageBinary);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        metrics.add(new Metric<Long>("detector.cascade.accepted", accepted.get()));
+        metrics.add(new Metric<Long>("detector.cascade.rejected", rejected.get()));
+        metrics.add(new Metric<Long>("detector.cascade.escalated", escalated.get()));
+
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return localDetector + ", escalating to " + remoteDetector;
+    }
+
+}
@@ -0,0 +1,21 @@
+package detectatron;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+
+/**
+ * Writes responses as CBOR (a compact binary equivalent of JSON) to clients sending "Accept: application/cbor". The
+ * same objects are written as for JSON, but binary fields such as keyframes are written as raw bytes rather than
+ * base64 text. See SerializationConfiguration.
+ */
+public class CborHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+    public static final MediaType APPLICATION_CBOR = MediaType.valueOf("application/cbor");
+
+    public CborHttpMessageConverter() {
+        super(new ObjectMapper(new CBORFactory()), APPLICATION_CBOR);
+    }
+
+}
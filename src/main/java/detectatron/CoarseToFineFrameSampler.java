@@ -0,0 +1,106 @@
+package detectatron;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Coarse-to-fine search for the interesting part of a video. A handful of samples are first spread across the whole
+ * video (including the first and last frames), then we repeatedly sample the midpoint of whichever gap between two
+ * neighbouring samples shows the most change, homing in on where the scene changes like a binary search.
+ *
+ * Where nothing differs, the longest gap is split, so a static video degrades to evenly spread samples. Frames are
+ * sampled out of order, so this needs FrameExtractionMode.SEEK.
+ */
+public class CoarseToFineFrameSampler implements FrameSampler {
+
+    private final FrameChangeDetector changeDetector;
+    private final int minGapFrames;
+
+    // Coarse samples not yet taken.
+    private final Deque<Integer> coarse = new ArrayDeque<Integer>();
+
+    // Fingerprint of each frame sampled so far (null if it couldn't be decoded), by frame number.
+    private final TreeMap<Integer, byte[]> samples = new TreeMap<Integer, byte[]>();
+
+    /**
+     * @param changeDetector
+     * @param videoLengthFrames
+     * @param frameRate
+     * @param coarseSamples     Number of samples in the initial pass, at least 2.
+     * @param minGapSeconds     Gaps between samples shorter than this aren't split any further.
+     */
+    public CoarseToFineFrameSampler(
+            FrameChangeDetector changeDetector,
+            int videoLengthFrames,
+            double frameRate,
+            int coarseSamples,
+            double minGapSeconds
+    ) {
+        this.changeDetector = changeDetector;
+        this.minGapFrames = Math.max(1, (int) Math.round(minGapSeconds * frameRate));
+
+        if (videoLengthFrames > 0 && frameRate > 0) {
+            int count = Math.max(2, coarseSamples);
+            int lastFrame = videoLengthFrames - 1;
+
+            for (int i = 0; i < count; i++) {
+                int frameNumber = (int) Math.round((double) i * lastFrame / (count - 1));
+
+                if (coarse.isEmpty() || coarse.peekLast() != frameNumber) {
+                    coarse.add(frameNumber);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int next() {
+        if (!coarse.isEmpty()) {
+            int frameNumber = coarse.poll();
+            samples.put(frameNumber, null);
+            return frameNumber;
+        }
+
+        // Split the gap with the most change between its ends, or failing that the longest gap.
+        int bestStart = -1, bestEnd = -1;
+        double bestDifference = -1;
+
+        Map.Entry<Integer, byte[]> previous = null;
+
+        for (Map.Entry<Integer, byte[]> sample : samples.entrySet()) {
+            if (previous != null && sample.getKey() - previous.getKey() > minGapFrames) {
+                double difference = 0;
+
+                if (previous.getValue() != null && sample.getValue() != null) {
+                    difference = changeDetector.difference(previous.getValue(), sample.getValue());
+                }
+
+                int gap = sample.getKey() - previous.getKey();
+
+                if (difference > bestDifference || (difference == bestDifference && gap > bestEnd - bestStart)) {
+                    bestDifference = difference;
+                    bestStart = previous.getKey();
+                    bestEnd = sample.getKey();
+                }
+            }
+
+            previous = sample;
+        }
+
+        if (bestStart < 0) {
+            return -1;
+        }
+
+        int frameNumber = bestStart + (bestEnd - bestStart) / 2;
+        samples.put(frameNumber, null);
+        return frameNumber;
+    }
+
+    @Override
+    public void sampled(int frameNumber, byte[] fingerprint) {
+        samples.put(frameNumber, fingerprint);
+    }
+
+}
@@ -0,0 +1,82 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * LabelCache stored as one small JSON file per image in a local directory, so the cache survives restarts. The index
+ * of hashes is held in memory and rebuilt from the directory listing at startup.
+ */
+public class DiskLabelCache extends AbstractLabelCache {
+
+    private static final Logger logger = Logger.getLogger("DiskLabelCache");
+
+    private static final String SUFFIX = ".json";
+
+    private final File directory;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public DiskLabelCache(File directory, int maxEntries, long ttlMillis, int maxDistance) {
+        super(maxEntries, ttlMillis, maxDistance);
+        this.directory = directory;
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+
+        if (files != null) {
+            // Oldest first, so that the LRU ordering is roughly preserved.
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+            for (File file : files) {
+                try {
+                    restore(ImageHash.fromHex(file.getName().substring(0, file.getName().length() - SUFFIX.length())), file.lastModified());
+                } catch (IllegalArgumentException e) {
+                    logger.log(Level.WARNING, "Ignoring unexpected file in label cache: " + file);
+                }
+            }
+
+            logger.log(Level.INFO, "Restored " + size() + " cached images from " + directory);
+        }
+    }
+
+    private File file(ImageHash imageHash) {
+        return new File(directory, imageHash.toHex() + SUFFIX);
+    }
+
+    @Override
+    protected List<Label> read(ImageHash imageHash) {
+        try {
+            return objectMapper.readValue(file(imageHash), new TypeReference<List<Label>>() {});
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to read cached labels for " + imageHash + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    protected void write(ImageHash imageHash, List<Label> labels) {
+        try {
+            objectMapper.writeValue(file(imageHash), labels);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to write cached labels for " + imageHash + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected void delete(ImageHash imageHash) {
+        File file = file(imageHash);
+
+        if (file.exists() && !file.delete()) {
+            logger.log(Level.WARNING, "Unable to remove cached labels " + file);
+        }
+    }
+
+}
@@ -0,0 +1,451 @@
+package detectatron;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local index of processed video events, so events can be found by tag, camera and time (see GET /events) without
+ * listing and reading the metadata of every video in S3.
+ *
+ * Events are appended to a log of JSON records on disk. In memory we only hold, per event, its position in the log
+ * and its time, plus an inverted index of the events with each tag (and from each camera) and the first event of each
+ * day. Queries walk the shortest list of matching events backwards from the end of the time range, so they cost work
+ * proportional to the page of results rather than the number of events indexed, and only the records returned are
+ * read back from the log. The in-memory index is rebuilt from the log at startup.
+ *
+ * Event times are kept in order even if the clock steps backwards, an event is never recorded as earlier than the
+ * event before it.
+ */
+public class EventIndex implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger("EventIndex");
+
+    private static final String LOG = "events.log";
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Growable list of event ids, always in ascending order.
+     */
+    private static class IdList {
+        private int[] ids = new int[4];
+        private int size = 0;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+
+            ids[size++] = id;
+        }
+
+        // Position of the first id >= the given id.
+        int lowerBound(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            return position >= 0 ? position : -position - 1;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    /**
+     * A page of query results, newest first.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Page {
+        public final List<EventRecord> events;
+
+        // Pass as "before" to fetch the next (older) page, null if there are no more events.
+        public final Integer nextBefore;
+
+        Page(List<EventRecord> events, Integer nextBefore) {
+            this.events = events;
+            this.nextBefore = nextBefore;
+        }
+    }
+
+    private final File logFile;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Length of a record that couldn't be read when rebuilding, which only holds its place.
+    private static final int UNREADABLE = -1;
+
+    // Guarded by lock. Event ids are positions in these arrays.
+    private long[] offsets = new long[1024];
+    private int[] lengths = new int[1024];
+    private long[] times = new long[1024];
+    private int size = 0;
+    private long logLength = 0;
+
+    // "tag:person" or "camera:front_door" -> events.
+    private final Map<String, IdList> postings = new HashMap<String, IdList>();
+
+    // Epoch day -> first event of that day.
+    private final TreeMap<Long, Integer> days = new TreeMap<Long, Integer>();
+
+    private FileChannel channel;
+
+    /**
+     * Open the index, rebuilding it from the log in the directory.
+     *
+     * @param directory
+     * @throws IOException
+     */
+    public EventIndex(File directory) throws IOException {
+        this.logFile = new File(directory, LOG);
+
+        long start = System.nanoTime();
+
+        if (logFile.exists()) {
+            rebuild();
+        }
+
+        channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+
+        // Drop any unterminated record left by a crash, so new records start on a line of their own.
+        if (channel.size() > logLength) {
+            logger.log(Level.WARNING, "Discarding " + (channel.size() - logLength) + " bytes of incomplete event records");
+            channel.truncate(logLength);
+        }
+
+        logger.log(Level.INFO, "Indexed " + size + " events in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    private void rebuild() throws IOException {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(logFile), 65536)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            long offset = 0;
+            int b;
+
+            while ((b = input.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+
+                long length = line.size() + 1;
+
+                // Records are a line each, so a bad one only costs us that event, not the rest of the log.
+                try {
+                    index(objectMapper.readValue(line.toByteArray(), EventRecord.class), offset, line.size());
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Skipping unreadable event record at " + offset + ": " + e.getMessage());
+                    skipped(offset);
+                }
+
+                offset += length;
+                logLength = offset;
+                line.reset();
+            }
+        }
+    }
+
+    private static String tagKey(String tag) {
+        return "tag:" + tag.toLowerCase(Locale.ROOT);
+    }
+
+    private static String cameraKey(String camera) {
+        return "camera:" + camera;
+    }
+
+    private void post(String key, int id) {
+        IdList ids = postings.get(key);
+
+        if (ids == null) {
+            ids = new IdList();
+            postings.put(key, ids);
+        }
+
+        ids.add(id);
+    }
+
+    /**
+     * Hold the place of an unreadable record, so later events keep their ids and nextBefore cursors handed out before
+     * a restart still point at the same events.
+     */
+    private void skipped(long offset) {
+        EventRecord placeholder = new EventRecord();
+        placeholder.time = size == 0 ? 0 : times[size - 1];
+
+        index(placeholder, offset, UNREADABLE);
+    }
+
+    private void index(EventRecord record, long offset, int length) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+            times = Arrays.copyOf(times, size * 2);
+        }
+
+        int id = size++;
+        offsets[id] = offset;
+        lengths[id] = length;
+        times[id] = record.time;
+
+        // The same tag may be both a key tag and one of all tags, an event is only posted once per tag.
+        if (record.allTags != null) {
+            for (String tag : record.allTags) {
+                post(tagKey(tag), id);
+            }
+        }
+
+        if (record.keyTags != null) {
+            for (String tag : record.keyTags) {
+                if (record.allTags == null || !record.allTags.contains(tag)) {
+                    post(tagKey(tag), id);
+                }
+            }
+        }
+
+        if (record.camera != null) {
+            post(cameraKey(record.camera), id);
+        }
+
+        days.putIfAbsent(record.time / DAY_MILLIS, id);
+    }
+
+    /**
+     * Record a processed event.
+     *
+     * @param filename
+     * @param camera   May be null.
+     * @param armed
+     * @param tags     The tags found in the event's video.
+     * @return The recorded event.
+     * @throws IOException
+     */
+    public EventRecord add(String filename, String camera, boolean armed, TagModel tags) throws IOException {
+        return add(filename, camera, armed, tags, System.currentTimeMillis());
+    }
+
+    /**
+     * Record an event that happened at the given time, used to build large indexes for testing.
+     */
+    EventRecord add(String filename, String camera, boolean armed, TagModel tags, long time) throws IOException {
+        EventRecord record = new EventRecord();
+        record.filename = filename;
+        record.camera = camera;
+        record.armed = armed;
+        record.keyTags = new ArrayList<String>(tags.getKeyTags());
+        record.allTags = new ArrayList<String>(tags.getAllTags());
+
+        lock.writeLock().lock();
+
+        try {
+            if (channel == null) {
+                throw new IOException("Event index has been closed");
+            }
+
+            record.id = size;
+            record.time = Math.max(time, size == 0 ? 0 : times[size - 1]);
+
+            byte[] line = (objectMapper.writeValueAsString(record) + "\n").getBytes("UTF-8");
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, logLength + buffer.position());
+            }
+
+            index(record, logLength, line.length - 1);
+            logLength += line.length;
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        return record;
+    }
+
+    /**
+     * Number of events indexed, including any unreadable records holding their place.
+     *
+     * @return
+     */
+    public int size() {
+        lock.readLock().lock();
+
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find events, newest first.
+     *
+     * @param tags   Events must have all of these tags (any case), may be empty.
+     * @param camera Events must be from this camera, or null for any.
+     * @param from   Events at or after this time (epoch millis), or null.
+     * @param to     Events before this time (epoch millis), or null.
+     * @param before Events before this id (from a previous page's nextBefore), or null for the first page.
+     * @param limit  Max events returned.
+     * @return
+     * @throws IOException
+     */
+    public Page query(Collection<String> tags, String camera, Long from, Long to, Integer before, int limit) throws IOException {
+        lock.readLock().lock();
+
+        try {
+            int low = from == null ? 0 : firstAtOrAfter(from);
+            int high = to == null ? size : firstAtOrAfter(to);
+
+            if (before != null) {
+                high = Math.min(high, before);
+            }
+
+            // Walk the shortest list of candidate events, checking each against the other lists.
+            List<IdList> filters = new ArrayList<IdList>();
+
+            for (String tag : tags) {
+                filters.add(postings.get(tagKey(tag)));
+            }
+
+            if (camera != null) {
+                filters.add(postings.get(cameraKey(camera)));
+            }
+
+            if (filters.contains(null)) {
+                // A tag or camera we've never seen.
+                return new Page(new ArrayList<EventRecord>(), null);
+            }
+
+            IdList driver = null;
+
+            for (IdList filter : filters) {
+                if (driver == null || filter.size < driver.size) {
+                    driver = filter;
+                }
+            }
+
+            List<Integer> matches = new ArrayList<Integer>();
+            boolean more = false;
+
+            int position = driver == null ? high - 1 : driver.lowerBound(high) - 1;
+
+            while (position >= 0) {
+                int id = driver == null ? position : driver.ids[position];
+
+                if (id < low) {
+                    break;
+                }
+
+                if (lengths[id] != UNREADABLE && matchesAll(filters, driver, id)) {
+                    if (matches.size() == limit) {
+                        more = true;
+                        break;
+                    }
+
+                    matches.add(id);
+                }
+
+                position--;
+            }
+
+            List<EventRecord> events = new ArrayList<EventRecord>();
+
+            for (int id : matches) {
+                events.add(read(id));
+            }
+
+            return new Page(events, more ? matches.get(matches.size() - 1) : null);
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean matchesAll(List<IdList> filters, IdList driver, int id) {
+        for (IdList filter : filters) {
+            if (filter != driver && !filter.contains(id)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * The first event at or after the time, found via the day it's in.
+     */
+    private int firstAtOrAfter(long time) {
+        Map.Entry<Long, Integer> day = days.floorEntry(time / DAY_MILLIS);
+        Map.Entry<Long, Integer> nextDay = days.higherEntry(time / DAY_MILLIS);
+
+        int start = day == null ? 0 : day.getValue();
+        int end = nextDay == null ? size : nextDay.getValue();
+
+        // Times are in order, find the first within the day that's not before the time.
+        while (start < end) {
+            int middle = (start + end) >>> 1;
+
+            if (times[middle] < time) {
+                start = middle + 1;
+            } else {
+                end = middle;
+            }
+        }
+
+        return start;
+    }
+
+    private EventRecord read(int id) throws IOException {
+        long offset = offsets[id];
+
+        ByteBuffer buffer = ByteBuffer.allocate(lengths[id]);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Event log truncated");
+            }
+        }
+
+        return objectMapper.readValue(buffer.array(), 0, buffer.limit(), EventRecord.class);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package detectatron;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Opens the EventIndex in the spool directory, used by EventService to record events and EventQueryController to
+ * find them again.
+ */
+@Configuration
+public class EventIndexConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public EventIndex eventIndex(SpoolService spoolService) throws IOException {
+        return new EventIndex(spoolService.directory("event-index"));
+    }
+
+}
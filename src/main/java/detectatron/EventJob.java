@@ -0,0 +1,48 @@
+package detectatron;
+
+import java.util.List;
+
+/**
+ * A video event queued for background processing, see EventJobQueue. This is also the record written to the job
+ * journal and returned by GET /event/{id}.
+ */
+public class EventJob {
+
+    public enum State {
+        QUEUED,
+        PROCESSING,
+        COMPLETED,
+        FAILED
+    }
+
+    public String id;
+    public String filename;
+
+    // Camera the event came from (may be null), and whether it was armed when the event was submitted. Events are
+    // tagged according to the arming state at the time they happened, not when a worker gets to them.
+    public String camera;
+    public boolean armed = true;
+
+    // Higher priority jobs are processed first, jobs of the same priority in the order they were submitted.
+    public int priority;
+    public long sequence;
+
+    public State state;
+
+    // Set once completed.
+    public List<String> keyTags;
+    public String error;
+
+    // Number of times processing has been attempted, and when a job that failed will next be retried (0 if it isn't
+    // waiting for a retry). The error of the last failed attempt is kept whilst waiting.
+    public int attempts;
+    public long retryAt;
+
+    public long submittedAt;
+    public long updatedAt;
+
+    public boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+
+}
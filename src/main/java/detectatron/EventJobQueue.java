@@ -0,0 +1,565 @@
+package detectatron;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Queue of video events waiting to be processed in the background by a pool of workers, so that /event can return as
+ * soon as the video is safely on disk rather than holding the connection (and a Jetty thread) open while the video is
+ * tagged and uploaded.
+ *
+ * Queued videos are kept in the spool alongside an append-only journal of job state changes. On startup the journal
+ * is replayed, any jobs that hadn't finished are queued again, and the journal is compacted down to the jobs still
+ * worth remembering.
+ *
+ * Jobs that fail are retried with exponential backoff, since the connector has already been told the event was
+ * accepted and won't send it again by itself. Once out of attempts the video is moved into a "failed" directory
+ * rather than being thrown away, so nothing is lost before it has made it to S3.
+ *
+ * Jobs are deduplicated on filename, since connectors may resubmit an event they didn't get a response for. A
+ * resubmitted event that failed is retried with the video we kept, rather than queued as a new job.
+ */
+public class EventJobQueue {
+
+    private static final Logger logger = Logger.getLogger("EventJobQueue");
+
+    private static final String JOURNAL = "journal.log";
+    private static final String VIDEO_SUFFIX = ".video";
+
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    /**
+     * Does the actual work for a job, see EventService.
+     */
+    public interface Processor {
+        /**
+         * @param video The queued video, removed once this returns.
+         * @param job   The job, for the original filename of the video and the camera it came from.
+         * @return The key tags found in the video.
+         * @throws Exception
+         */
+        List<String> process(File video, EventJob job) throws Exception;
+    }
+
+    private final File directory;
+    private final File failedDirectory;
+    private final Processor processor;
+    private final int workers;
+    private final int maxQueued;
+    private final int retainFinished;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private FileOutputStream journalStream;
+    private Writer journal;
+
+    // All jobs we know about by id, and by filename for deduplication. Oldest first. Guarded by this.
+    private final LinkedHashMap<String, EventJob> jobs = new LinkedHashMap<String, EventJob>();
+    private final Map<String, EventJob> jobsByFilename = new HashMap<String, EventJob>();
+    private long nextSequence = 0;
+
+    private final PriorityBlockingQueue<EventJob> queue = new PriorityBlockingQueue<EventJob>(64,
+            Comparator.comparingInt((EventJob job) -> -job.priority).thenComparingLong(job -> job.sequence));
+
+    private ExecutorService workerPool;
+    private ScheduledExecutorService retryScheduler;
+    private volatile boolean stopped = false;
+
+    private final AtomicLong processing = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Thrown when the queue is full.
+     */
+    public static class QueueFullException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public QueueFullException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * @param directory      Local directory holding the journal and queued videos.
+     * @param processor      Processes each job.
+     * @param workers        Number of jobs processed at once.
+     * @param maxQueued      Max jobs waiting for a worker before new jobs are refused.
+     * @param retainFinished Number of finished jobs remembered for status lookups and deduplication.
+     * @param maxAttempts    Attempts at processing a job before giving up on it.
+     * @param retryBackoffMillis Delay before the first retry, doubling with each subsequent attempt.
+     * @throws IOException
+     */
+    public EventJobQueue(
+            File directory,
+            Processor processor,
+            int workers,
+            int maxQueued,
+            int retainFinished,
+            int maxAttempts,
+            long retryBackoffMillis
+    ) throws IOException {
+        this.directory = directory;
+        this.failedDirectory = new File(directory, "failed");
+        this.processor = processor;
+        this.workers = workers;
+        this.maxQueued = maxQueued;
+        this.retainFinished = retainFinished;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMillis = retryBackoffMillis;
+
+        Files.createDirectories(failedDirectory.toPath());
+    }
+
+    /**
+     * Start processing, including any jobs left unfinished by a previous run.
+     *
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("DetectatronEventRetry-"));
+
+        recover();
+
+        workerPool = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("DetectatronEvent-"));
+
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(this::work);
+        }
+    }
+
+    /**
+     * Stop processing. Jobs not yet finished are picked up again by the next start.
+     *
+     * @throws IOException
+     */
+    public synchronized void shutdown() throws IOException {
+        stopped = true;
+
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+        }
+
+        if (retryScheduler != null) {
+            retryScheduler.shutdownNow();
+        }
+
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Replay the journal, requeue anything unfinished and then rewrite the journal with only the jobs we're keeping.
+     */
+    private synchronized void recover() throws IOException {
+        File journalFile = new File(directory, JOURNAL);
+
+        if (journalFile.exists()) {
+            try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+
+                    try {
+                        EventJob job = objectMapper.readValue(line, EventJob.class);
+
+                        // Later records replace earlier ones, but keep the job's original position.
+                        jobs.put(job.id, job);
+                        nextSequence = Math.max(nextSequence, job.sequence + 1);
+                    } catch (IOException e) {
+                        // Most likely a partially written final record from a crash.
+                        logger.log(Level.WARNING, "Skipping unreadable journal record: " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        int requeued = 0;
+
+        for (EventJob job : new ArrayList<EventJob>(jobs.values())) {
+            if (!job.isFinished()) {
+                if (videoFile(job).exists()) {
+                    // Anything that was processing when we stopped starts again from scratch, and anything waiting
+                    // for a retry carries on waiting.
+                    job.state = EventJob.State.QUEUED;
+                    enqueue(job);
+                    requeued++;
+                } else {
+                    job.state = EventJob.State.FAILED;
+                    job.error = "Video missing from spool after restart";
+                }
+            } else if (job.state == EventJob.State.FAILED) {
+                // We may have stopped between giving up on the job and moving its video out of the way.
+                if (videoFile(job).exists()) {
+                    Files.move(videoFile(job).toPath(), failedVideoFile(job).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } else {
+                // We may have stopped between finishing the job and removing its video.
+                Files.deleteIfExists(videoFile(job).toPath());
+            }
+
+            jobsByFilename.put(job.filename, job);
+        }
+
+        trimFinished();
+
+        // Compact the journal down to the jobs we still know about.
+        File compacted = new File(directory, JOURNAL + ".tmp");
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(compacted), StandardCharsets.UTF_8)) {
+            for (EventJob job : jobs.values()) {
+                writer.write(objectMapper.writeValueAsString(job));
+                writer.write('\n');
+            }
+        }
+
+        Files.move(compacted.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        journalStream = new FileOutputStream(journalFile, true);
+        journal = new OutputStreamWriter(journalStream, StandardCharsets.UTF_8);
+
+        if (requeued > 0) {
+            logger.log(Level.INFO, "Resuming " + requeued + " queued events from before restart");
+        }
+    }
+
+    /**
+     * Queue a spooled video for processing. The video is moved into the queue, so the spooled file no longer exists
+     * once this returns.
+     *
+     * @param spooledVideo
+     * @param priority
+     * @return The new job, or the existing job if an event with the same filename has already been submitted.
+     * @throws IOException
+     * @throws QueueFullException
+     */
+    public EventJob submit(SpooledFile spooledVideo, int priority) throws IOException, QueueFullException {
+        return submit(spooledVideo, priority, null, true);
+    }
+
+    /**
+     * Queue a spooled video from a camera for processing, see submit(SpooledFile, int).
+     *
+     * @param spooledVideo
+     * @param priority
+     * @param camera       Camera the video came from, or null if unknown.
+     * @param armed        Whether the camera was armed when the event happened.
+     * @return
+     * @throws IOException
+     * @throws QueueFullException
+     */
+    public synchronized EventJob submit(SpooledFile spooledVideo, int priority, String camera, boolean armed) throws IOException, QueueFullException {
+
+        EventJob existing = jobsByFilename.get(spooledVideo.getOriginalFilename());
+
+        if (existing != null && existing.state != EventJob.State.FAILED) {
+            logger.log(Level.INFO, "Event " + spooledVideo.getOriginalFilename() + " already submitted as job " + existing.id);
+            deduplicated.incrementAndGet();
+            return copy(existing);
+        }
+
+        if (queue.size() >= maxQueued) {
+            rejected.incrementAndGet();
+            throw new QueueFullException("Event queue is full (" + maxQueued + " events)");
+        }
+
+        // A failed event we still have the video of is given another go with a fresh set of attempts. The resubmitted
+        // video is left for the caller to clean up.
+        if (existing != null && failedVideoFile(existing).exists()) {
+            Files.move(failedVideoFile(existing).toPath(), videoFile(existing).toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            existing.state = EventJob.State.QUEUED;
+            existing.attempts = 0;
+            existing.retryAt = 0;
+            existing.error = null;
+            existing.updatedAt = System.currentTimeMillis();
+
+            record(existing);
+            queue.add(existing);
+
+            logger.log(Level.INFO, "Resubmitted failed event " + existing.filename + ", requeued job " + existing.id + " with its original video");
+            return copy(existing);
+        }
+
+        EventJob job = new EventJob();
+        job.id = UUID.randomUUID().toString();
+        job.filename = spooledVideo.getOriginalFilename();
+        job.camera = camera;
+        job.armed = armed;
+        job.priority = priority;
+        job.sequence = nextSequence++;
+        job.state = EventJob.State.QUEUED;
+        job.submittedAt = System.currentTimeMillis();
+        job.updatedAt = job.submittedAt;
+
+        Files.move(spooledVideo.getFile().toPath(), videoFile(job).toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        record(job);
+
+        jobs.put(job.id, job);
+        jobsByFilename.put(job.filename, job);
+        trimFinished();
+
+        queue.add(job);
+
+        logger.log(Level.INFO, "Queued event " + job.filename + " as job " + job.id + " (" + queue.size() + " waiting)");
+        return copy(job);
+    }
+
+    /**
+     * Look up a job.
+     *
+     * @param id
+     * @return A snapshot of the job, or null if there's no such job (or it has been forgotten).
+     */
+    public synchronized EventJob get(String id) {
+        EventJob job = jobs.get(id);
+        return job == null ? null : copy(job);
+    }
+
+    /**
+     * Number of jobs waiting for a worker.
+     *
+     * @return
+     */
+    public int queued() {
+        return queue.size();
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            EventJob job;
+
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            process(job);
+        }
+    }
+
+    private void process(EventJob job) {
+        File video = videoFile(job);
+
+        int attempt;
+
+        // The job's fields are also written by submit() and the retry path, so are only read and written under lock.
+        synchronized (this) {
+            attempt = ++job.attempts;
+            job.retryAt = 0;
+
+            update(job, EventJob.State.PROCESSING, null, job.error);
+        }
+
+        processing.incrementAndGet();
+        logger.log(Level.INFO, "Processing event " + job.filename + " (job " + job.id + ", attempt " + attempt + " of " + maxAttempts + ")");
+
+        try {
+            List<String> keyTags = processor.process(video, job);
+
+            update(job, EventJob.State.COMPLETED, new ArrayList<String>(keyTags), null);
+            completed.incrementAndGet();
+
+        } catch (Exception e) {
+            processing.decrementAndGet();
+
+            if (stopped) {
+                // Interrupted by shutdown, the job is still in the journal as processing so will be retried.
+                logger.log(Level.INFO, "Event job " + job.id + " interrupted by shutdown, will resume on next start");
+                return;
+            }
+
+            e.printStackTrace();
+            failed(job, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+            return;
+        }
+
+        processing.decrementAndGet();
+
+        if (stopped) {
+            // Keep the video, the job's outcome may not have made it into the journal.
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(video.toPath());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to remove queued video " + video + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retry a job that failed after a backoff, or if it's out of attempts give up on it and move its video into the
+     * failed directory.
+     */
+    private synchronized void failed(EventJob job, String error) {
+
+        if (job.attempts < maxAttempts) {
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, retryBackoffMillis << Math.min(job.attempts - 1, 20));
+
+            logger.log(Level.WARNING, "Event job " + job.id + " failed (attempt " + job.attempts + " of " + maxAttempts + "), retrying in " + backoff + "ms: " + error);
+
+            job.retryAt = System.currentTimeMillis() + backoff;
+            update(job, EventJob.State.QUEUED, null, error);
+            retried.incrementAndGet();
+
+            enqueue(job);
+            return;
+        }
+
+        logger.log(Level.SEVERE, "Giving up on event job " + job.id + " after " + job.attempts + " attempts, moving video to " + failedDirectory);
+
+        update(job, EventJob.State.FAILED, null, error);
+        failed.incrementAndGet();
+
+        try {
+            Files.move(videoFile(job).toPath(), failedVideoFile(job).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Unable to move video of failed event job " + job.id + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queue the job for a worker, or schedule it to be queued if it's waiting for a retry.
+     */
+    private void enqueue(EventJob job) {
+        long delay = job.retryAt - System.currentTimeMillis();
+
+        if (delay <= 0) {
+            queue.add(job);
+            return;
+        }
+
+        retryScheduler.schedule(() -> {
+            if (!stopped) {
+                queue.add(job);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private File videoFile(EventJob job) {
+        return new File(directory, job.id + VIDEO_SUFFIX);
+    }
+
+    private File failedVideoFile(EventJob job) {
+        return new File(failedDirectory, job.id + VIDEO_SUFFIX);
+    }
+
+    private synchronized void update(EventJob job, EventJob.State state, List<String> keyTags, String error) {
+        job.state = state;
+        job.keyTags = keyTags;
+        job.error = error;
+        job.updatedAt = System.currentTimeMillis();
+
+        try {
+            record(job);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Unable to write job " + job.id + " to journal: " + e.getMessage());
+        }
+
+        trimFinished();
+    }
+
+    /**
+     * Append the job's current state to the journal, and make sure it's on disk before we carry on.
+     */
+    private void record(EventJob job) throws IOException {
+        if (journal == null) {
+            throw new IOException("Event queue has been shut down");
+        }
+
+        journal.write(objectMapper.writeValueAsString(job));
+        journal.write('\n');
+        journal.flush();
+        journalStream.getFD().sync();
+    }
+
+    /**
+     * Forget the oldest finished jobs beyond the number we retain. They remain in the journal until the next
+     * compaction.
+     */
+    private void trimFinished() {
+        int finished = 0;
+
+        for (EventJob job : jobs.values()) {
+            if (job.isFinished()) {
+                finished++;
+            }
+        }
+
+        Iterator<EventJob> iterator = jobs.values().iterator();
+
+        while (finished > retainFinished && iterator.hasNext()) {
+            EventJob job = iterator.next();
+
+            if (job.isFinished()) {
+                iterator.remove();
+                jobsByFilename.remove(job.filename, job);
+                finished--;
+            }
+        }
+    }
+
+    private EventJob copy(EventJob job) {
+        return objectMapper.convertValue(job, EventJob.class);
+    }
+
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        metrics.add(new Metric<Integer>("event.jobs.queued", queue.size()));
+        metrics.add(new Metric<Long>("event.jobs.processing", processing.get()));
+        metrics.add(new Metric<Long>("event.jobs.completed", completed.get()));
+        metrics.add(new Metric<Long>("event.jobs.failed", failed.get()));
+        metrics.add(new Metric<Long>("event.jobs.retried", retried.get()));
+        metrics.add(new Metric<Long>("event.jobs.deduplicated", deduplicated.get()));
+        metrics.add(new Metric<Long>("event.jobs.rejected", rejected.get()));
+
+        return metrics;
+    }
+
+}
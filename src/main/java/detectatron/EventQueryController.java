@@ -0,0 +1,101 @@
+package detectatron;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Search the events processed by Detectatron (see EventIndex), eg all events with a Person from last night:
+ *
+ *   GET /events?tag=Person&from=2017-01-18T18:00&to=2017-01-19T07:00
+ *
+ * Events are returned newest first, a page at a time. Times are ISO-8601, in the server's time zone unless an offset
+ * is given, or epoch millis.
+ */
+@RestController
+@EnableAutoConfiguration
+public class EventQueryController {
+
+    private static final Logger logger = Logger.getLogger("EventQueryController");
+
+    private static final int MAX_LIMIT = 1000;
+
+    @Autowired
+    EventIndex myEventIndex;
+
+    @RequestMapping(value = "/events", method = RequestMethod.GET)
+    public ResponseEntity<?> findEvents(
+            @RequestParam(value = "tag", required = false) String[] tags,
+            @RequestParam(value = "camera", required = false) String camera,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            @RequestParam(value = "before", required = false) Integer before,
+            @RequestParam(value = "limit", defaultValue = "50") int limit
+    ) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("The limit must be between 1 and " + MAX_LIMIT + ".\n");
+        }
+
+        Long fromMillis;
+        Long toMillis;
+
+        try {
+            fromMillis = parseTime(from);
+            toMillis = parseTime(to);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage() + "\n");
+        }
+
+        try {
+            return ResponseEntity.ok(myEventIndex.query(tags == null ? Collections.<String>emptyList() : Arrays.asList(tags),
+                    camera, fromMillis, toMillis, before, limit));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Unable to query event index: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Unable to query events.\n");
+        }
+    }
+
+    /**
+     * @param time ISO-8601 date-time (with or without an offset) or epoch millis, or null.
+     * @return Epoch millis, or null.
+     */
+    private static Long parseTime(String time) {
+        if (time == null || time.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return Long.parseLong(time);
+        } catch (NumberFormatException e) {
+            // Not millis, try a date-time.
+        }
+
+        try {
+            return OffsetDateTime.parse(time).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // No offset, try the server's time zone.
+        }
+
+        try {
+            return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid time \"" + time + "\", expected eg 2017-01-18T22:00 or epoch millis.");
+        }
+    }
+
+}
@@ -0,0 +1,25 @@
+package detectatron;
+
+import java.util.List;
+
+/**
+ * A processed video event as recorded in the EventIndex, and returned by GET /events.
+ */
+public class EventRecord {
+
+    // Position in the index, events are numbered in the order they were recorded.
+    public int id;
+
+    // When the event was recorded, in epoch millis.
+    public long time;
+
+    public String filename;
+    public String camera;
+
+    // Whether the camera was armed, disarmed events are recorded without tags.
+    public boolean armed;
+
+    public List<String> keyTags;
+    public List<String> allTags;
+
+}
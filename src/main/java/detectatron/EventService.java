@@ -0,0 +1,217 @@
+package detectatron;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Processes a video event submitted by a connector - tags the video (if the camera was armed), uploads it and its
+ * keyframe to S3, and records it in the EventIndex so it can be found with GET /events.
+ *
+ * In sync mode events are processed whilst the connector waits for the result. In async mode they're queued on disk
+ * and processed in the background (see EventJobQueue), with connectors able to check on progress by job ID.
+ */
+@Service
+public class EventService implements PublicMetrics {
+
+    private static final Logger logger = Logger.getLogger("EventService");
+
+    /**
+     * The outcome of processing an event.
+     */
+    public static class Result {
+        public final TagModel videoTags;
+
+        // The key tags as JSON, as returned to connectors ("{}" if we didn't tag the video).
+        public final String keyTagsJson;
+
+        Result(TagModel videoTags, String keyTagsJson) {
+            this.videoTags = videoTags;
+            this.keyTagsJson = keyTagsJson;
+        }
+    }
+
+    @Autowired
+    VideoTagService myVideoTagService;
+
+    @Autowired
+    S3UploadService myS3UploadService;
+
+    @Autowired
+    SpoolService mySpoolService;
+
+    @Autowired
+    EventIndex myEventIndex;
+
+    // Shared with the controllers, see SerializationConfiguration.
+    @Autowired
+    ObjectMapper objectMapper;
+
+    // "sync" to process events before responding, or "async" to queue them and respond straight away.
+    @Value("${detectatron.event.mode:sync}")
+    private String mode;
+
+    @Value("${detectatron.event.workers:2}")
+    private int workers;
+
+    @Value("${detectatron.event.max-queued:1000}")
+    private int maxQueued;
+
+    @Value("${detectatron.event.retain-finished:1000}")
+    private int retainFinished;
+
+    // Events that fail to process are retried with exponential backoff, up to max-attempts.
+    @Value("${detectatron.event.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${detectatron.event.retry-backoff-ms:30000}")
+    private long retryBackoffMillis;
+
+    private EventJobQueue jobQueue;
+
+    @PostConstruct
+    public void start() throws IOException {
+
+        switch (mode) {
+            case "sync":
+                return;
+
+            case "async":
+                jobQueue = new EventJobQueue(mySpoolService.directory("events"),
+                        (videoFile, job) -> process(videoFile, job.filename, job.camera, job.armed).videoTags.getKeyTags(),
+                        workers, maxQueued, retainFinished, maxAttempts, retryBackoffMillis);
+                jobQueue.start();
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown detectatron.event.mode: " + mode);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (jobQueue != null) {
+            jobQueue.shutdown();
+        }
+    }
+
+    /**
+     * Are events being queued for background processing?
+     *
+     * @return
+     */
+    public boolean isAsync() {
+        return jobQueue != null;
+    }
+
+    /**
+     * Queue a spooled event for background processing. Only available in async mode.
+     *
+     * @param spooledVideo Moved into the queue, so no longer exists once this returns.
+     * @param priority     Higher priority events are processed first.
+     * @param camera       Camera the event came from, or null if unknown.
+     * @param armed        Whether the camera was armed when the event was submitted.
+     * @return
+     * @throws IOException
+     * @throws EventJobQueue.QueueFullException
+     */
+    public EventJob submit(SpooledFile spooledVideo, int priority, String camera, boolean armed) throws IOException, EventJobQueue.QueueFullException {
+        if (jobQueue == null) {
+            throw new IllegalStateException("Events are not being queued, set detectatron.event.mode=async");
+        }
+
+        return jobQueue.submit(spooledVideo, priority, camera, armed);
+    }
+
+    /**
+     * Look up a queued event.
+     *
+     * @param id
+     * @return The job, or null if unknown (or we're not queueing events).
+     */
+    public EventJob getJob(String id) {
+        return jobQueue == null ? null : jobQueue.get(id);
+    }
+
+    /**
+     * Process the event. The video file can be removed once this returns.
+     *
+     * @param videoFile
+     * @param filename  The original filename of the video, used as the key when uploading.
+     * @param camera    Camera the event came from, or null if unknown.
+     * @param armed     Whether the camera was armed, see ArmingService.
+     * @return The tags found in the video (empty if disarmed).
+     * @throws JsonProcessingException
+     */
+    public Result process(File videoFile, String filename, String camera, boolean armed) throws JsonProcessingException {
+
+        TagModel videoTags = new TagModel();
+        String videoKeyTags = "{}";
+
+        /**
+         * Perform tagging of the video. This step is dependent on the state of Detectatron - if unarmed, we do not
+         * tag (or even decode) the video in order to keep our running costs low.
+         */
+        if (!armed) {
+            // Disarmed, so we cannot tag the video.
+            logger.log(Level.INFO, "Skipping video tagging as Detectatron disarmed.");
+        } else {
+            // Tag baby, tag!
+            videoTags = myVideoTagService.process(videoFile, camera, null);
+
+            videoKeyTags = objectMapper.writeValueAsString(videoTags.getKeyTags());
+        }
+
+
+        /**
+         * Upload the file into the S3 bucket. This would be a bit dodgy if we were doing it for other people since we
+         * trust the original filename of the video, but as Detectatron is a backend service we don't need to worry
+         * about the trust worthyness of the data and can trust the filenames to be unique and sensible.
+         */
+        myS3UploadService.uploader(filename, videoFile, videoKeyTags);
+
+        // We should also upload the keyframe. This is the frame that best shows a key event, or failing that the
+        // sharpest and busiest frame categorised (see KeyFrameSelector), along with the strip of the best few frames
+        // if one is being made.
+        if (videoTags.keyFrameData != null) {
+            myS3UploadService.uploader(filename + "_keyframe.jpg", videoTags.keyFrameData, "");
+        }
+
+        if (videoTags.keyFrameStripData != null) {
+            myS3UploadService.uploader(filename + "_keyframes.jpg", videoTags.keyFrameStripData, "");
+        }
+
+        // Record the event so it can be found again without going through S3. The event has been processed by now,
+        // so failing to index it isn't worth failing the event over.
+        try {
+            myEventIndex.add(filename, camera, armed, videoTags);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to index event " + filename + ": " + e.getMessage());
+        }
+
+        return new Result(videoTags, videoKeyTags);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        if (jobQueue == null) {
+            return Collections.emptyList();
+        }
+
+        return jobQueue.metrics();
+    }
+
+}
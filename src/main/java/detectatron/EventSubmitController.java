@@ -1,29 +1,27 @@
 package detectatron;
 
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.PutObjectRequest;
-import com.amazonaws.services.s3.model.StorageClass;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This controller performs tagging and also S3 storage of any submitted video. It's specifically targeted for use by
  * the connectors for uploading, storing and tagging videos where they need a simple API which handles the lot for them.
+ *
+ * When detectatron.event.mode=async, events are queued and processed in the background (see EventService), with the
+ * connector getting back a job ID it can check on with GET /event/{id}.
  */
 @RestController
 @EnableAutoConfiguration
@@ -31,92 +29,120 @@ public class EventSubmitController {
 
     private static final Logger logger = Logger.getLogger("EventSubmitController");
 
+    // Shared with the other controllers, see SerializationConfiguration.
+    @Autowired
+    ObjectMapper objectMapper;
+
 
+    @Autowired
+    EventService myEventService;
 
     @Autowired
-    VideoTagService myVideoTagService;
+    SpoolService mySpoolService;
 
     @Autowired
     ArmingService myArmingService;
 
     @Autowired
-    S3UploadService myS3UploadService;
+    CameraIdentifier myCameraIdentifier;
 
 
     @RequestMapping(value = "/event", method = RequestMethod.POST)
     public ResponseEntity<String> submitEvent(
-            @RequestParam("file") MultipartFile videoFile
+            @RequestParam("file") MultipartFile videoFile,
+            @RequestParam(value = "priority", defaultValue = "0") int priority,
+            @RequestParam(value = "camera", required = false) String cameraParam
     ) {
         logger.log(Level.INFO, "Received video event for processing");
 
-        byte[] videoBinary;
-        TagModel videoTags = new TagModel();
-        String videoKeyTags = "{}";
+        String camera = myCameraIdentifier.identify(cameraParam, videoFile.getOriginalFilename());
 
+        // Events are tagged according to whether the camera was armed when the event happened, even if it's queued.
+        boolean armed = myArmingService.isArmed(camera);
 
         /**
-         * Convert the video from MultiPart form to actual binary data (and make sure we actually got a damn image).
+         * Spool the video from the MultiPart form to disk (and make sure we actually got a damn video). We work with
+         * the video on disk from here on, so we never need to hold the whole thing in memory.
          */
+        SpooledFile videoSpool;
+
         try {
             logger.log(Level.INFO, "Processing file: " + videoFile.getOriginalFilename());
-            videoBinary = videoFile.getBytes();
+            videoSpool = mySpoolService.spool(videoFile);
         } catch (java.io.IOException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("A binary video must be POSTed to this endpoint.\n");
         }
 
-        /**
-         * Perform tagging of the video. This step is dependent on the state of Detectatron - if unarmed, we do not
-         * tag the video in order to keep our running costs low.
-         */
-        if (!myArmingService.armed) {
-            // Disarmed, so we cannot tag the video.
-            logger.log(Level.INFO, "Skipping video tagging as Detectatron disarmed.");
-        } else {
-            // Tag baby, tag!
-
-            try {
-                videoTags = myVideoTagService.process(videoBinary);
-
-                ObjectMapper objectMapper = new ObjectMapper();
-                videoKeyTags = objectMapper.writeValueAsString(videoTags.keyTags);
+        try (SpooledFile spooledVideo = videoSpool) {
+
+            /**
+             * In async mode, queue the event and let the connector know where to find the result. Once queued, the
+             * event will be processed even if Detectatron restarts.
+             */
+            if (myEventService.isAsync()) {
+                EventJob job;
+
+                try {
+                    job = myEventService.submit(spooledVideo, priority, camera, armed);
+                } catch (EventJobQueue.QueueFullException e) {
+                    logger.log(Level.WARNING, e.getMessage());
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many events waiting to be processed, try again later.\n");
+                }
+
+                ObjectNode body = objectMapper.createObjectNode();
+                body.put("id", job.id);
+                body.put("status", job.state.toString());
+
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .header("Location", "/event/" + job.id)
+                        .body(objectMapper.writeValueAsString(body));
+            }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("A failure occurred when categorising the video");
+            /**
+             * Otherwise, tag and upload the video whilst the connector waits.
+             */
+            EventService.Result result = myEventService.process(spooledVideo.getFile(), videoFile.getOriginalFilename(), camera, armed);
+
+            /**
+             * We have two different success codes:
+             * 200 - Video submitted and uploaded successfully.
+             * 201 - Video submitted, uploaded successfully and key tags were found.
+             *
+             * Either way, we also return the key tags JSON string.
+             */
+            if (result.videoTags.getKeyTags().size() > 0) {
+                return ResponseEntity.status(HttpStatus.CREATED).body(result.keyTagsJson);
+            } else {
+                return ResponseEntity.status(HttpStatus.OK).body(result.keyTagsJson);
             }
-        }
 
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("A failure occurred when categorising the video");
+        }
 
-        /**
-         * Upload the file into the S3 bucket. This would be a bit dodgy if we were doing it for other people since we
-         * trust the original filename of the video, but as Detectatron is a backend service we don't need to worry
-         * about the trust worthyness of the data and can trust the filenames to be unique and sensible.
-         */
-        myS3UploadService.uploader(videoFile.getOriginalFilename(), videoBinary, videoKeyTags);
+    }
 
-        // We should also upload the keyframe. This is the first frame that matched a key event, or the last processed
-        // frame in the video if nothing got matched.
-        if (videoTags.keyFrameData != null) {
-            myS3UploadService.uploader(videoFile.getOriginalFilename() + "_keyframe.jpg", videoTags.keyFrameData, "");
-        }
 
+    /**
+     * Return the state of a queued event (async mode only).
+     */
+    @RequestMapping(value = "/event/{id}", method = RequestMethod.GET)
+    public ResponseEntity<String> getEvent(
+            @PathVariable("id") String id
+    ) {
+        EventJob job = myEventService.getJob(id);
 
-        /**
-         * We have two different success codes:
-         * 200 - Video submitted and uploaded successfully.
-         * 201 - Video submitted, uploaded successfully and key tags were found.
-         *
-         * Either way, we also return the key tags JSON string.
-         */
-        if (videoTags.keyTags.size() > 0) {
-            return ResponseEntity.status(HttpStatus.CREATED).body(videoKeyTags);
-        } else {
-            return ResponseEntity.status(HttpStatus.OK).body(videoKeyTags);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No such event.\n");
         }
 
-
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(objectMapper.writeValueAsString(job));
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Unable to serialise event.\n");
+        }
     }
 
-
-
 }
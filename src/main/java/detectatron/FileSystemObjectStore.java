@@ -0,0 +1,42 @@
+package detectatron;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores files in a local directory, with any metadata in a ".metadata" file alongside. Handy for development and
+ * testing without an S3 bucket, or for installs that ship the directory off elsewhere themselves.
+ */
+public class FileSystemObjectStore implements ObjectStore {
+
+    private final File directory;
+
+    public FileSystemObjectStore(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void put(String key, File file, String customMetadata) throws Exception {
+
+        File target = new File(directory, key);
+        Files.createDirectories(target.getParentFile().toPath());
+
+        // Copy via a temp file so that a half-written file is never visible under the final name.
+        File temp = new File(target.getParentFile(), "." + target.getName() + ".tmp");
+        Files.copy(file.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (!customMetadata.equals("")) {
+            Files.write(new File(target.getParentFile(), target.getName() + ".metadata").toPath(),
+                    customMetadata.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return directory.getPath();
+    }
+
+}
@@ -0,0 +1,56 @@
+package detectatron;
+
+/**
+ * Samples a frame every interval, starting from the first frame of the video. If that would take more than the max
+ * number of samples, the interval is stretched so the samples are spread evenly across the whole video instead.
+ *
+ * Positions are calculated from the actual (often fractional, eg 29.97) frame rate and rounded, so the samples don't
+ * drift away from the interval over the length of the video.
+ */
+public class FixedRateFrameSampler implements FrameSampler {
+
+    private final int videoLengthFrames;
+    private final double step;
+
+    private int sample = 0;
+
+    /**
+     * @param videoLengthFrames
+     * @param frameRate
+     * @param intervalSeconds
+     * @param maxSamples        0 for no limit.
+     */
+    public FixedRateFrameSampler(int videoLengthFrames, double frameRate, double intervalSeconds, int maxSamples) {
+        this.videoLengthFrames = videoLengthFrames;
+
+        double intervalFrames = Math.max(1, intervalSeconds * frameRate);
+
+        if (maxSamples > 0) {
+            intervalFrames = Math.max(intervalFrames, (double) videoLengthFrames / maxSamples);
+        }
+
+        this.step = frameRate > 0 ? intervalFrames : 0;
+    }
+
+    @Override
+    public int next() {
+        if (step <= 0) {
+            return -1;
+        }
+
+        int frameNumber = (int) Math.round(sample * step);
+
+        if (frameNumber >= videoLengthFrames) {
+            return -1;
+        }
+
+        sample++;
+        return frameNumber;
+    }
+
+    @Override
+    public void sampled(int frameNumber, byte[] fingerprint) {
+        // Fixed schedule, doesn't care what's in the frames.
+    }
+
+}
@@ -0,0 +1,187 @@
+package detectatron;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects downscaled frames of a video to be tiled into a single grid image (see Mosaic.grid), so that several
+ * frames can be categorised with one request rather than paying the round-trip for each of them.
+ *
+ * How many frames go in each grid adapts to the size of the frames: as many as will fit (up to maxFrames) within the
+ * max grid dimensions without the tiles being scaled below minTileWidth. Small frames are tiled at their own size,
+ * larger ones are scaled down to fit.
+ */
+public class FrameBatch {
+
+    private final int capacity;
+    private final int columns;
+    private final int tileWidth;
+    private final int tileHeight;
+
+    private final List<BufferedImage> tiles = new ArrayList<BufferedImage>();
+    private final List<Integer> frameNumbers = new ArrayList<Integer>();
+
+    // Full size copy of the frame with the most change, which is used as the key frame for the batch.
+    private BufferedImage keyFrame;
+    private int keyFrameNumber;
+    private double maxDifference = -1;
+
+    private FrameBatch(int capacity, int columns, int tileWidth, int tileHeight) {
+        this.capacity = capacity;
+        this.columns = columns;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * Work out the grid for frames of the given size.
+     *
+     * @param frameWidth
+     * @param frameHeight
+     * @param maxFrames    Most frames to tile into a grid.
+     * @param maxWidth     Max dimensions of the grid image.
+     * @param maxHeight
+     * @param minTileWidth Frames aren't scaled to less than this width (unless they're already smaller).
+     * @return
+     */
+    public static FrameBatch create(int frameWidth, int frameHeight, int maxFrames, int maxWidth, int maxHeight, int minTileWidth) {
+
+        int minWidth = Math.min(minTileWidth, frameWidth);
+
+        for (int frames = Math.max(1, maxFrames); frames >= 1; frames--) {
+
+            // Choose the arrangement of this many frames that needs the least scaling down.
+            double bestScale = 0;
+            int bestColumns = 1;
+
+            for (int columns = 1; columns <= frames; columns++) {
+                int rows = (frames + columns - 1) / columns;
+
+                double scale = Math.min(1.0, Math.min(
+                        (maxWidth - Mosaic.GAP * (columns - 1)) / (double) (columns * frameWidth),
+                        (maxHeight - Mosaic.GAP * (rows - 1)) / (double) (rows * frameHeight)));
+
+                if (scale > bestScale) {
+                    bestScale = scale;
+                    bestColumns = columns;
+                }
+            }
+
+            int tileWidth = (int) (frameWidth * bestScale);
+
+            if (frames == 1 || tileWidth >= minWidth) {
+                return new FrameBatch(frames, bestColumns, Math.max(1, tileWidth), Math.max(1, (int) (frameHeight * bestScale)));
+            }
+        }
+
+        throw new IllegalStateException("Unreachable, a single frame always fits");
+    }
+
+    /**
+     * Add a frame to the batch. The frame is copied, so the image can be reused by the caller.
+     *
+     * @param frameNumber
+     * @param frame
+     * @param difference  Difference (0.0 - 1.0) to the previously categorised frame.
+     * @return True if the batch is now full.
+     */
+    public boolean add(int frameNumber, BufferedImage frame, double difference) {
+        BufferedImage tile = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_3BYTE_BGR);
+
+        Graphics2D graphics = tile.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(frame, 0, 0, tileWidth, tileHeight, null);
+        graphics.dispose();
+
+        tiles.add(tile);
+        frameNumbers.add(frameNumber);
+
+        if (difference > maxDifference) {
+            keyFrame = copy(keyFrame, frame);
+            keyFrameNumber = frameNumber;
+            maxDifference = difference;
+        }
+
+        return isFull();
+    }
+
+    private static BufferedImage copy(BufferedImage target, BufferedImage frame) {
+        if (target == null || target.getWidth() != frame.getWidth() || target.getHeight() != frame.getHeight()) {
+            target = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        }
+
+        Graphics2D graphics = target.createGraphics();
+        graphics.drawImage(frame, 0, 0, null);
+        graphics.dispose();
+
+        return target;
+    }
+
+    /**
+     * @return The frames in the batch tiled into a single image.
+     */
+    public BufferedImage render() {
+        return Mosaic.grid(tiles, columns).getImage();
+    }
+
+    /**
+     * Empty the batch ready for the next frames. The key frame image is kept for reuse.
+     */
+    public void clear() {
+        tiles.clear();
+        frameNumbers.clear();
+        maxDifference = -1;
+    }
+
+    public boolean isFull() {
+        return tiles.size() >= capacity;
+    }
+
+    public boolean isEmpty() {
+        return tiles.isEmpty();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * @return The downscaled frames, in the order they were added.
+     */
+    public List<BufferedImage> getTiles() {
+        return Collections.unmodifiableList(tiles);
+    }
+
+    public List<Integer> getFrameNumbers() {
+        return Collections.unmodifiableList(frameNumbers);
+    }
+
+    public BufferedImage getKeyFrame() {
+        return keyFrame;
+    }
+
+    public int getKeyFrameNumber() {
+        return keyFrameNumber;
+    }
+
+    public double getMaxDifference() {
+        return maxDifference;
+    }
+
+}
@@ -0,0 +1,80 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.BoundingBox;
+
+import java.util.List;
+
+/**
+ * A decoded and encoded video frame waiting to be categorised, along with how likely we think it is to be
+ * interesting so the most promising frames can be categorised first.
+ */
+public class FrameCandidate implements Comparable<FrameCandidate> {
+
+    // Weighting given to how close the frame is to the middle of the clip vs how much motion it shows. Motion is the
+    // stronger signal, position is mostly a tie-breaker between static frames.
+    static final double CENTRE_WEIGHT = 0.05;
+
+    public final int frameNumber;
+    public final byte[] imageData;
+
+    // The whole frame, which differs from imageData when only regions of the frame are being categorised.
+    public final byte[] frameData;
+
+    // The regions of the frame in imageData, or null if imageData is the whole frame.
+    public final List<BoundingBox> regions;
+    public final double motionScore;
+    public final double priority;
+
+    // Variance of the Laplacian of the whole frame (see Sharpness), used when choosing the keyframe.
+    public final double sharpness;
+
+    /**
+     * @param frameNumber
+     * @param imageData     Encoded (JPG) frame, ready to be passed to ImageTagService.
+     * @param motionScore   Difference (0.0 - 1.0) to the previously categorised frame.
+     * @param sharpness     See Sharpness.
+     * @param videoLengthFrames
+     */
+    public FrameCandidate(int frameNumber, byte[] imageData, double motionScore, double sharpness, int videoLengthFrames) {
+        this(frameNumber, imageData, imageData, null, motionScore, sharpness, videoLengthFrames);
+    }
+
+    /**
+     * @param frameNumber
+     * @param imageData     Encoded (JPG) crop or mosaic of regions of the frame, ready to be passed to ImageTagService.
+     * @param frameData     Encoded (JPG) whole frame.
+     * @param regions       Regions of the frame (as ratios of the frame dimensions) that labels found in imageData
+     *                      are attributed to, or null if imageData is the whole frame.
+     * @param motionScore   Difference (0.0 - 1.0) to the previously categorised frame.
+     * @param sharpness     See Sharpness, of the whole frame.
+     * @param videoLengthFrames
+     */
+    public FrameCandidate(int frameNumber, byte[] imageData, byte[] frameData, List<BoundingBox> regions, double motionScore, double sharpness, int videoLengthFrames) {
+        this.frameNumber = frameNumber;
+        this.imageData = imageData;
+        this.frameData = frameData;
+        this.regions = regions;
+        this.motionScore = motionScore;
+        this.sharpness = sharpness;
+
+        // Subjects are usually framed in the middle of a motion-triggered clip, with the start and end of the clip
+        // being the pre/post record buffers where they're entering or leaving.
+        double centrality = 0;
+
+        if (videoLengthFrames > 0) {
+            double middle = videoLengthFrames / 2.0;
+            centrality = Math.max(0, 1 - Math.abs(frameNumber - middle) / middle);
+        }
+
+        this.priority = motionScore + (CENTRE_WEIGHT * centrality);
+    }
+
+    /**
+     * Highest priority sorts first.
+     */
+    @Override
+    public int compareTo(FrameCandidate other) {
+        return Double.compare(other.priority, priority);
+    }
+
+}
@@ -0,0 +1,29 @@
+package detectatron;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Decides how different a decoded frame is to the last frame that was sent for categorisation. This lets the video
+ * service skip frames where nothing has changed (eg a static driveway) rather than paying Rekognition to tell us the
+ * same thing again.
+ */
+public interface FrameChangeDetector {
+
+    /**
+     * Reduce the frame down to a compact fingerprint that can be retained and cheaply compared against later frames.
+     *
+     * @param frame
+     * @return
+     */
+    byte[] fingerprint(BufferedImage frame);
+
+    /**
+     * Score the difference between two fingerprints, from 0.0 (identical) through to 1.0 (completely different).
+     *
+     * @param previous
+     * @param current
+     * @return
+     */
+    double difference(byte[] previous, byte[] current);
+
+}
@@ -0,0 +1,290 @@
+package detectatron;
+
+import org.springframework.util.concurrent.ListenableFuture;
+
+import javax.validation.ValidationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Categorises the frames of a single video in parallel.
+ *
+ * The decoding thread submit()s frames into a bounded queue and a limited number of them are categorised at any one
+ * time, always taking the most promising frame from the queue next. As soon as a key tag is found, everything still
+ * queued or in-flight is cancelled and submit() returns false to tell the decoder to stop.
+ *
+ * This keeps most of the cost savings of the old "stop on first match" sequential processing, since we only ever
+ * have a handful of frames in-flight, but a video with nothing in it no longer waits for each frame one by one.
+ */
+public class FrameClassificationPipeline {
+
+    private static final Logger logger = Logger.getLogger("FrameClassificationPipeline");
+
+    private final Function<byte[], ListenableFuture<TagModel>> classifier;
+    private final TagModel videoTags;
+    private final int maxInFlight;
+    private final int queueCapacity;
+
+    private final PriorityQueue<FrameCandidate> queue = new PriorityQueue<FrameCandidate>();
+    private final Map<FrameCandidate, ListenableFuture<TagModel>> inFlight = new HashMap<FrameCandidate, ListenableFuture<TagModel>>();
+
+    // Told about each frame as it's categorised, if anyone is interested.
+    private BiConsumer<FrameCandidate, TagModel> frameListener;
+
+    // Merge timings and frame counts, if anyone is collecting them.
+    private PipelineMetrics metrics;
+
+    private boolean cancelled = false;
+    private RuntimeException failure;
+
+    // Chooses the frame held in videoTags.keyFrameData
+    private KeyFrameSelector keyFrameSelector = new KeyFrameSelector(0);
+
+    /**
+     * @param classifier    Normally ImageTagService::processAsync
+     * @param videoTags     Tags for the overall video, which frame results are merged into.
+     * @param maxInFlight   Max frames being categorised at any one time.
+     * @param queueCapacity Max frames decoded and waiting to be categorised.
+     */
+    public FrameClassificationPipeline(
+            Function<byte[], ListenableFuture<TagModel>> classifier,
+            TagModel videoTags,
+            int maxInFlight,
+            int queueCapacity
+    ) {
+        this.classifier = classifier;
+        this.videoTags = videoTags;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Set a listener to be called with each frame's tags once it's categorised, after they've been merged into the
+     * video's tags. The listener is called whilst holding the pipeline's lock, on the thread that categorised the
+     * frame, so must hand the result off rather than doing anything slow (see SseEventQueue).
+     *
+     * @param frameListener
+     */
+    public synchronized void setFrameListener(BiConsumer<FrameCandidate, TagModel> frameListener) {
+        this.frameListener = frameListener;
+    }
+
+    /**
+     * Record the time taken merging each frame's tags and the number of frames categorised and cancelled.
+     *
+     * @param metrics
+     */
+    public synchronized void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Keep the best few frames for a keyframe strip (see getKeyFrameStrip()), rather than only the keyframe. Must be
+     * set before any frames are submitted.
+     *
+     * @param stripFrames
+     */
+    public synchronized void setKeyFrameStripFrames(int stripFrames) {
+        this.keyFrameSelector = new KeyFrameSelector(stripFrames);
+    }
+
+    /**
+     * The best frames categorised so far, in the order they appear in the video - just the keyframe unless
+     * setKeyFrameStripFrames() was called.
+     *
+     * @return
+     */
+    public synchronized List<KeyFrameSelector.Selection> getKeyFrameStrip() {
+        return keyFrameSelector.getStripFrames();
+    }
+
+    /**
+     * Queue a frame for categorisation, blocking whilst the queue is full.
+     *
+     * @param candidate
+     * @return False if the pipeline has been cancelled and no further frames should be submitted.
+     * @throws InterruptedException
+     */
+    public synchronized boolean submit(FrameCandidate candidate) throws InterruptedException {
+
+        while (!cancelled && queue.size() >= queueCapacity) {
+            wait();
+        }
+
+        if (cancelled) {
+            return false;
+        }
+
+        queue.add(candidate);
+        dispatch();
+
+        return !cancelled;
+    }
+
+    /**
+     * Whether a key tag has been found (or a failure occurred) and the remaining work abandoned.
+     *
+     * @return
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Wait for all queued and in-flight frames to be categorised (or cancelled). Any failure categorising a frame
+     * is rethrown here.
+     *
+     * @throws InterruptedException
+     */
+    public synchronized void awaitCompletion() throws InterruptedException {
+
+        while (!queue.isEmpty() || !inFlight.isEmpty()) {
+            wait();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Start categorising queued frames until we reach the in-flight limit. Must hold the lock.
+     */
+    private void dispatch() {
+
+        while (!cancelled && inFlight.size() < maxInFlight && !queue.isEmpty()) {
+            final FrameCandidate candidate = queue.poll();
+
+            logger.log(Level.INFO, "Submitting frame number " + candidate.frameNumber + " (priority " + candidate.priority + ") for categorisation");
+
+            ListenableFuture<TagModel> future;
+
+            try {
+                future = classifier.apply(candidate.imageData);
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+
+            inFlight.put(candidate, future);
+            videoTags.requestsSent++;
+
+            // Note that if the future has already completed the callback runs immediately on this thread, which is
+            // fine since our lock is re-entrant.
+            future.addCallback(
+                    frameTags -> completed(candidate, frameTags),
+                    e -> failed(candidate, e)
+            );
+        }
+
+        notifyAll();
+    }
+
+    private synchronized void completed(FrameCandidate candidate, TagModel frameTags) {
+
+        if (inFlight.remove(candidate) == null) {
+            // Already cancelled, we don't want results we've said we're not interested in.
+            return;
+        }
+
+        // Import the tags on this frame into the overall detected tags
+        long startTime = System.nanoTime();
+
+        videoTags.importLabels(frameTags.getRawLabels());
+
+        if (candidate.regions != null) {
+            videoTags.importLabelRegions(candidate.frameNumber, frameTags.getRawLabels(), candidate.regions);
+        }
+
+        if (metrics != null) {
+            metrics.timer("tags.merge").stop(startTime);
+            metrics.increment("video.frames.classified");
+        }
+
+        if (frameListener != null) {
+            try {
+                frameListener.accept(candidate, frameTags);
+            } catch (RuntimeException e) {
+                // A listener going away (eg a client disconnecting) shouldn't stop us categorising the video.
+                logger.log(Level.WARNING, "Frame listener failed: " + e.getMessage());
+            }
+        }
+
+        // Retain a copy of the frame if it's the best we've seen, see KeyFrameSelector.
+        if (keyFrameSelector.offer(candidate, frameTags, videoTags)) {
+            videoTags.keyFrameData = candidate.frameData;
+        }
+
+        if (videoTags.getKeyTags().size() > 0) {
+            logger.log(Level.INFO, "Exiting video processing early - keyTag found already.");
+
+            if (metrics != null) {
+                metrics.increment("video.early.exits");
+            }
+
+            cancel();
+        } else {
+            dispatch();
+        }
+
+        notifyAll();
+    }
+
+    private synchronized void failed(FrameCandidate candidate, Throwable e) {
+
+        if (inFlight.remove(candidate) == null) {
+            return;
+        }
+
+        if (e instanceof CancellationException) {
+            dispatch();
+            return;
+        }
+
+        if (e instanceof RuntimeException) {
+            fail((RuntimeException) e);
+        } else {
+            fail(new ValidationException("An unexpected fault occurred when categorising frame " + candidate.frameNumber, e));
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        if (failure == null) {
+            failure = e;
+        }
+
+        cancel();
+    }
+
+    /**
+     * Abandon everything that's queued and stop any in-flight requests. Must hold the lock.
+     */
+    private void cancel() {
+        cancelled = true;
+
+        if (!queue.isEmpty() || !inFlight.isEmpty()) {
+            logger.log(Level.INFO, "Cancelling " + queue.size() + " queued and " + inFlight.size() + " in-flight frames.");
+
+            if (metrics != null) {
+                metrics.increment("video.frames.cancelled", queue.size() + inFlight.size());
+            }
+        }
+
+        queue.clear();
+
+        for (ListenableFuture<TagModel> future : inFlight.values()) {
+            future.cancel(true);
+        }
+        inFlight.clear();
+
+        notifyAll();
+    }
+
+}
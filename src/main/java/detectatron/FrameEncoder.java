@@ -0,0 +1,155 @@
+package detectatron;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.Size;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+
+import static org.bytedeco.javacpp.opencv_imgproc.INTER_AREA;
+import static org.bytedeco.javacpp.opencv_imgproc.resize;
+
+/**
+ * Converts decoded video frames into JPEGs for categorisation.
+ *
+ * Frames larger than the max dimensions are scaled down natively (OpenCV) straight out of the decoder, before they're
+ * converted into a Java image - Rekognition doesn't need a 4K frame to find a person, and it's far cheaper to scale
+ * before converting and encoding than after.
+ *
+ * A single encoder is used for all the frames of a video, so the scaled frame and its size, frame converters (which
+ * keep their BufferedImage between frames of the same size), JPEG writer and output buffer are all reused rather than
+ * allocated per frame. Not thread safe, and the BufferedImage returned by convert() is overwritten by the next call.
+ */
+public class FrameEncoder implements Closeable {
+
+    private final int maxWidth;
+    private final int maxHeight;
+
+    private final OpenCVFrameConverter.ToMat matConverter = new OpenCVFrameConverter.ToMat();
+    private final Java2DFrameConverter frameConverter = new Java2DFrameConverter();
+    private final Mat scaledFrame = new Mat();
+
+    // Native size the frames are scaled to, only replaced if the size of the frames changes.
+    private Size scaledSize;
+
+    private final ImageWriter jpegWriter;
+    private final ImageWriteParam jpegParams;
+    private final ByteArrayOutputStream jpegBuffer = new ByteArrayOutputStream(128 * 1024);
+
+    /**
+     * @param maxWidth    Max width of encoded frames, 0 for no limit.
+     * @param maxHeight   Max height of encoded frames, 0 for no limit.
+     * @param jpegQuality JPEG quality from 0.0 (smallest) to 1.0 (best).
+     */
+    public FrameEncoder(int maxWidth, int maxHeight, float jpegQuality) {
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+
+        jpegWriter = ImageIO.getImageWritersByFormatName("jpg").next();
+
+        jpegParams = jpegWriter.getDefaultWriteParam();
+        jpegParams.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        jpegParams.setCompressionQuality(jpegQuality);
+    }
+
+    /**
+     * Calculate the dimensions of an image scaled down to fit within the max width and height, keeping its aspect
+     * ratio. Images that already fit (or a max of 0) are left as they are.
+     *
+     * @param width
+     * @param height
+     * @param maxWidth
+     * @param maxHeight
+     * @return {width, height}
+     */
+    public static int[] fitWithin(int width, int height, int maxWidth, int maxHeight) {
+        double scale = 1.0;
+
+        if (maxWidth > 0 && width > maxWidth) {
+            scale = Math.min(scale, (double) maxWidth / width);
+        }
+
+        if (maxHeight > 0 && height > maxHeight) {
+            scale = Math.min(scale, (double) maxHeight / height);
+        }
+
+        if (scale == 1.0) {
+            return new int[] { width, height };
+        }
+
+        return new int[] { Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale)) };
+    }
+
+    /**
+     * Convert the frame into an image scaled to fit the max dimensions, or null if the frame has no image.
+     *
+     * @param frame
+     * @return
+     */
+    public BufferedImage convert(Frame frame) {
+
+        if (frame == null || frame.image == null) {
+            return null;
+        }
+
+        int[] size = fitWithin(frame.imageWidth, frame.imageHeight, maxWidth, maxHeight);
+
+        if (size[0] != frame.imageWidth || size[1] != frame.imageHeight) {
+            // INTER_AREA averages the source pixels, avoiding the aliasing you get from simpler filters when
+            // scaling down by large factors.
+            if (scaledSize == null || scaledSize.width() != size[0] || scaledSize.height() != size[1]) {
+                if (scaledSize != null) {
+                    scaledSize.deallocate();
+                }
+
+                scaledSize = new Size(size[0], size[1]);
+            }
+
+            resize(matConverter.convert(frame), scaledFrame, scaledSize, 0, 0, INTER_AREA);
+            frame = matConverter.convert(scaledFrame);
+        }
+
+        return frameConverter.convert(frame);
+    }
+
+    /**
+     * Encode the image as a JPEG. Note - we use JPG specifically since Rekognition supports only PNG or JPG, and the
+     * image sizes generated by the PNG writer from ImageIO are about 10x the size of JPGs.
+     *
+     * @param image
+     * @return
+     * @throws IOException
+     */
+    public byte[] encode(BufferedImage image) throws IOException {
+        jpegBuffer.reset();
+
+        try (ImageOutputStream output = new MemoryCacheImageOutputStream(jpegBuffer)) {
+            jpegWriter.setOutput(output);
+            jpegWriter.write(null, new IIOImage(image, null, null), jpegParams);
+        }
+
+        return jpegBuffer.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        jpegWriter.dispose();
+        scaledFrame.release();
+
+        if (scaledSize != null) {
+            scaledSize.deallocate();
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+package detectatron;
+
+/**
+ * How VideoFrameExtractor pulls the scheduled frames out of a video.
+ */
+public enum FrameExtractionMode {
+
+    /**
+     * Seek to each scheduled frame. With inter-frame codecs like H.264 every seek jumps back to the previous keyframe
+     * and decodes forwards again, so the cost of each sample depends on the keyframe interval of the camera.
+     */
+    SEEK,
+
+    /**
+     * Single forward pass through the video, decoding every frame but only converting the scheduled ones. Beats SEEK
+     * only when samples are closer together than the keyframe interval, see FrameExtractionBenchmark.
+     */
+    SEQUENTIAL,
+
+    /**
+     * Single forward pass where the decoder discards everything except keyframes, taking the first keyframe at or
+     * after each scheduled frame. Much cheaper again, at the cost of the samples only landing on GOP boundaries.
+     */
+    KEYFRAME
+
+}
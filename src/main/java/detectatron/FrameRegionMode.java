@@ -0,0 +1,27 @@
+package detectatron;
+
+/**
+ * What VideoTagService sends for categorisation when it can see where in a frame the motion is, see
+ * MotionRegionDetector. Frames where we can't tell (eg the first frame, or when most of the scene has changed) are
+ * always sent whole.
+ */
+public enum FrameRegionMode {
+
+    /**
+     * Always send the whole frame.
+     */
+    FRAME,
+
+    /**
+     * Send a padded crop of each region of motion as its own image. Small subjects fill more of the image so are
+     * categorised with more confidence, at the cost of one request per region.
+     */
+    CROPS,
+
+    /**
+     * Pack the padded crops of a frame into a single mosaic image, so each frame is still a single request but
+     * without the unchanged parts of the scene.
+     */
+    MOSAIC
+
+}
@@ -0,0 +1,32 @@
+package detectatron;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The tags found in a single frame of a video, as reported to a FrameResultListener whilst the rest of the video is
+ * still being processed.
+ */
+public class FrameResult {
+
+    public final int frameNumber;
+
+    // Position of the frame in the video, in seconds.
+    public final double timestamp;
+
+    // Tags found in this frame.
+    public final List<String> allTags;
+    public final List<String> keyTags;
+
+    // Key tags found in the video so far, including this frame.
+    public final List<String> videoKeyTags;
+
+    public FrameResult(int frameNumber, double timestamp, TagModel frameTags, TagModel videoTags) {
+        this.frameNumber = frameNumber;
+        this.timestamp = timestamp;
+        this.allTags = new ArrayList<String>(frameTags.getAllTags());
+        this.keyTags = new ArrayList<String>(frameTags.getKeyTags());
+        this.videoKeyTags = new ArrayList<String>(videoTags.getKeyTags());
+    }
+
+}
@@ -0,0 +1,16 @@
+package detectatron;
+
+/**
+ * Notified as each frame of a video is categorised, see VideoTagService.
+ */
+public interface FrameResultListener {
+
+    /**
+     * Called as each frame is categorised. This is called whilst the video's results are locked, on a thread shared
+     * with other requests, so must not block - hand the result off to be dealt with elsewhere.
+     *
+     * @param result
+     */
+    void frameClassified(FrameResult result);
+
+}
@@ -0,0 +1,24 @@
+package detectatron;
+
+/**
+ * Decides which frames of a video to sample for categorisation, one at a time, so that strategies can adapt to what
+ * they've seen so far (see FrameSamplingStrategy). One instance per video, not thread safe.
+ */
+public interface FrameSampler {
+
+    /**
+     * The next frame number to sample, or -1 once we're done with the video.
+     *
+     * @return
+     */
+    int next();
+
+    /**
+     * Feedback on a sampled frame.
+     *
+     * @param frameNumber The frame actually sampled, which may be later than requested (eg in KEYFRAME mode).
+     * @param fingerprint FrameChangeDetector fingerprint of the frame, or null if it couldn't be decoded.
+     */
+    void sampled(int frameNumber, byte[] fingerprint);
+
+}
@@ -0,0 +1,103 @@
+package detectatron;
+
+/**
+ * How VideoTagService chooses which frames of a video to categorise. Whatever the strategy, the number of frames (and
+ * optionally time) spent on each video is capped by the sampling budget, see BudgetedFrameSampler.
+ *
+ * Compare strategies with FrameSamplingBenchmark.
+ */
+public enum FrameSamplingStrategy {
+
+    /**
+     * A frame every interval from the start of the video, stretched to spread the budget evenly across longer videos.
+     */
+    FIXED_RATE {
+        @Override
+        FrameSampler sampler(Settings settings, int videoLengthFrames, double frameRate) {
+            return new FixedRateFrameSampler(videoLengthFrames, frameRate, settings.intervalSeconds, settings.maxFrames);
+        }
+    },
+
+    /**
+     * Every keyframe, decoding nothing else.
+     */
+    KEYFRAME {
+        @Override
+        FrameSampler sampler(Settings settings, int videoLengthFrames, double frameRate) {
+            return new KeyframeFrameSampler(videoLengthFrames);
+        }
+
+        @Override
+        FrameExtractionMode extractionMode(FrameExtractionMode configured) {
+            return FrameExtractionMode.KEYFRAME;
+        }
+    },
+
+    /**
+     * Denser samples where the difference between samples spikes, sparser through static footage.
+     */
+    MOTION {
+        @Override
+        FrameSampler sampler(Settings settings, int videoLengthFrames, double frameRate) {
+            return new MotionFrameSampler(settings.changeDetector, videoLengthFrames, frameRate,
+                    settings.intervalSeconds, settings.maxFrames, settings.motionThreshold);
+        }
+    },
+
+    /**
+     * A coarse pass across the whole video, then bisecting whichever gap between samples shows the most change.
+     */
+    COARSE_TO_FINE {
+        @Override
+        FrameSampler sampler(Settings settings, int videoLengthFrames, double frameRate) {
+            return new CoarseToFineFrameSampler(settings.changeDetector, videoLengthFrames, frameRate,
+                    settings.coarseSamples, settings.minGapSeconds);
+        }
+
+        @Override
+        FrameExtractionMode extractionMode(FrameExtractionMode configured) {
+            // Samples are out of order, so we have to seek.
+            return FrameExtractionMode.SEEK;
+        }
+    };
+
+    /**
+     * Configuration shared by the strategies.
+     */
+    public static class Settings {
+        public FrameChangeDetector changeDetector;
+        public double intervalSeconds = 1.0;
+        public double motionThreshold = 0.02;
+        public int coarseSamples = 5;
+        public double minGapSeconds = 0.5;
+
+        // Budget per video, 0 for no limit.
+        public int maxFrames = 10;
+        public long maxMillis = 0;
+    }
+
+    abstract FrameSampler sampler(Settings settings, int videoLengthFrames, double frameRate);
+
+    /**
+     * The extraction mode needed by this strategy, given the configured mode.
+     *
+     * @param configured
+     * @return
+     */
+    FrameExtractionMode extractionMode(FrameExtractionMode configured) {
+        return configured;
+    }
+
+    /**
+     * Create a sampler for a video, limited to the budget.
+     *
+     * @param settings
+     * @param videoLengthFrames
+     * @param frameRate
+     * @return
+     */
+    public FrameSampler create(Settings settings, int videoLengthFrames, double frameRate) {
+        return new BudgetedFrameSampler(sampler(settings, videoLengthFrames, frameRate), settings.maxFrames, settings.maxMillis);
+    }
+
+}
@@ -0,0 +1,157 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.InvalidImageFormatException;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A batch of images POSTed to /tag/images, either as several file parts or as a single zip archive of images, and the
+ * per image results returned.
+ */
+public class ImageBatch {
+
+    /**
+     * An image in the batch.
+     */
+    public static class Image {
+        public final int index;
+        public final String name;
+        public final byte[] data;
+
+        Image(int index, String name, byte[] data) {
+            this.index = index;
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    /**
+     * The outcome of tagging one image of the batch. Failures of one image don't affect the rest of the batch, so
+     * each result has its own HTTP-style status.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Result {
+        public final int index;
+        public final String name;
+        public final int status;
+
+        // Set on failure.
+        public final String error;
+
+        // Set on success, in the requested response schema (see TagController).
+        public final Object tags;
+
+        private Result(int index, String name, int status, String error, Object tags) {
+            this.index = index;
+            this.name = name;
+            this.status = status;
+            this.error = error;
+            this.tags = tags;
+        }
+
+        public static Result success(Image image, Object tags) {
+            return new Result(image.index, image.name, 200, null, tags);
+        }
+
+        public static Result failure(Image image, Throwable e) {
+            if (e instanceof ExecutionException && e.getCause() != null) {
+                e = e.getCause();
+            }
+
+            if (e instanceof InvalidImageFormatException) {
+                return new Result(image.index, image.name, 400, "An invalid image format was supplied - use JPG or PNG only", null);
+            } else if (e instanceof TaskRejectedException) {
+                return new Result(image.index, image.name, 503, "Too many images waiting to be categorised, try again later", null);
+            } else {
+                return new Result(image.index, image.name, 500, "A failure occurred when categorising the image", null);
+            }
+        }
+    }
+
+    private ImageBatch() {
+    }
+
+    /**
+     * Read the images of a batch into memory, in the order they were supplied.
+     *
+     * @param files         Image file parts, may be null.
+     * @param archive       A zip archive of images, may be null.
+     * @param maxImages     Max images in the batch.
+     * @param maxImageBytes Max size of each image, as the whole batch is held in memory.
+     * @return
+     * @throws IOException
+     * @throws IllegalArgumentException if there are no images, too many, or an image is too large.
+     */
+    public static List<Image> read(MultipartFile[] files, MultipartFile archive, int maxImages, int maxImageBytes) throws IOException {
+        List<Image> images = new ArrayList<Image>();
+
+        if (files != null) {
+            for (MultipartFile file : files) {
+                checkSize(images, maxImages);
+
+                if (file.getSize() > maxImageBytes) {
+                    throw new IllegalArgumentException("Image " + file.getOriginalFilename() + " is too large, images must be at most " + maxImageBytes + " bytes.");
+                }
+
+                images.add(new Image(images.size(), file.getOriginalFilename(), file.getBytes()));
+            }
+        }
+
+        if (archive != null) {
+            try (ZipInputStream zip = new ZipInputStream(archive.getInputStream())) {
+                ZipEntry entry;
+
+                while ((entry = zip.getNextEntry()) != null) {
+                    // Skip directories and the metadata macOS adds to archives.
+                    if (entry.isDirectory() || entry.getName().startsWith("__MACOSX/")) {
+                        continue;
+                    }
+
+                    checkSize(images, maxImages);
+                    images.add(new Image(images.size(), entry.getName(), readEntry(zip, entry, maxImageBytes)));
+                }
+            }
+        }
+
+        if (images.isEmpty()) {
+            throw new IllegalArgumentException("At least one image must be POSTed to this endpoint, as file parts or a zip archive.");
+        }
+
+        return images;
+    }
+
+    /**
+     * Read an entry of the archive, without trusting the size the archive claims it is.
+     */
+    private static byte[] readEntry(ZipInputStream zip, ZipEntry entry, int maxImageBytes) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while ((read = zip.read(buffer)) != -1) {
+            if (data.size() + read > maxImageBytes) {
+                throw new IllegalArgumentException("Image " + entry.getName() + " is too large, images must be at most " + maxImageBytes + " bytes.");
+            }
+
+            data.write(buffer, 0, read);
+        }
+
+        return data.toByteArray();
+    }
+
+    private static void checkSize(List<Image> images, int maxImages) {
+        if (images.size() >= maxImages) {
+            throw new IllegalArgumentException("Too many images, at most " + maxImages + " may be tagged in one batch.");
+        }
+    }
+
+}
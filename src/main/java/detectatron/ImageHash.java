@@ -0,0 +1,162 @@
+package detectatron;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * 256-bit perceptual difference hash (dHash) of an image. Each bit records whether a cell of a 17x16 grayscale
+ * thumbnail is brighter than its right-hand neighbour, so near-identical images (eg re-encoded, or the same camera
+ * view a few seconds later) produce the same or very similar hashes.
+ *
+ * We use 256 bits rather than the more common 64 so that a small subject in a large scene (a person at the end of the
+ * driveway) still changes the hash, otherwise we'd happily serve up the labels of the empty driveway.
+ */
+public final class ImageHash {
+
+    static final int HASH_WIDTH  = 16;
+    static final int HASH_HEIGHT = 16;
+
+    private final long[] bits;
+
+    private ImageHash(long[] bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * Hash a decoded image.
+     *
+     * @param image
+     * @return
+     */
+    public static ImageHash of(BufferedImage image) {
+        byte[] luma = LumaThumbnail.of(image, HASH_WIDTH + 1, HASH_HEIGHT);
+        long[] bits = new long[(HASH_WIDTH * HASH_HEIGHT) / 64];
+
+        int bit = 0;
+
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH; x++) {
+                int left  = luma[y * (HASH_WIDTH + 1) + x] & 0xFF;
+                int right = luma[y * (HASH_WIDTH + 1) + x + 1] & 0xFF;
+
+                if (left > right) {
+                    bits[bit / 64] |= 1L << (bit % 64);
+                }
+                bit++;
+            }
+        }
+
+        return new ImageHash(bits);
+    }
+
+    /**
+     * Hash an encoded (JPG, PNG, etc) image. We only need a tiny thumbnail, so the image is subsampled whilst decoding
+     * which is considerably cheaper than decoding the full image.
+     *
+     * @param imageBinary
+     * @return The hash, or null if the image could not be decoded.
+     */
+    public static ImageHash of(byte[] imageBinary) {
+
+        try (ImageInputStream imageStream = ImageIO.createImageInputStream(new ByteArrayInputStream(imageBinary))) {
+
+            if (imageStream == null) {
+                return null;
+            }
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageStream);
+
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(imageStream, true, true);
+
+                // Keep at least 8 source pixels per thumbnail cell.
+                int subsampling = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / (HASH_HEIGHT * 8));
+
+                ImageReadParam readParam = reader.getDefaultReadParam();
+                readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                return of(reader.read(0, readParam));
+            } finally {
+                reader.dispose();
+            }
+
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a hash previously generated by toHex()
+     *
+     * @param hex
+     * @return
+     */
+    public static ImageHash fromHex(String hex) {
+        long[] bits = new long[(HASH_WIDTH * HASH_HEIGHT) / 64];
+
+        if (hex.length() != bits.length * 16) {
+            throw new IllegalArgumentException("Invalid image hash: " + hex);
+        }
+
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = Long.parseUnsignedLong(hex.substring(i * 16, (i + 1) * 16), 16);
+        }
+
+        return new ImageHash(bits);
+    }
+
+    /**
+     * Number of bits that differ between the two hashes (Hamming distance), 0 being identical.
+     *
+     * @param other
+     * @return
+     */
+    public int distance(ImageHash other) {
+        int distance = 0;
+
+        for (int i = 0; i < bits.length; i++) {
+            distance += Long.bitCount(bits[i] ^ other.bits[i]);
+        }
+
+        return distance;
+    }
+
+    public String toHex() {
+        StringBuilder hex = new StringBuilder();
+
+        for (long word : bits) {
+            hex.append(String.format("%016x", word));
+        }
+
+        return hex.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ImageHash && Arrays.equals(bits, ((ImageHash) other).bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bits);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+}
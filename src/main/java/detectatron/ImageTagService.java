@@ -1,17 +1,17 @@
 package detectatron;
 
-import com.amazonaws.services.rekognition.AmazonRekognitionClient;
 import com.amazonaws.services.rekognition.model.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.stereotype.Service;
+import org.springframework.util.concurrent.ListenableFuture;
 
-import javax.validation.ValidationException;
-import java.nio.ByteBuffer;
-import java.util.concurrent.Future;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,6 +24,20 @@ public class ImageTagService {
 
     private static final Logger logger = Logger.getLogger("ImageTagService");
 
+    // Rekognition, a local model or both, see LabelDetectorConfiguration
+    @Autowired
+    private LabelDetector labelDetector;
+
+    // Labels of images we've recently categorised, see LabelCacheConfiguration
+    @Autowired
+    private LabelCache labelCache;
+
+    @Autowired
+    private KeyLabelSet keyLabelSet;
+
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
     /**
      * Process the supplied image.
      * @param imageBinary
@@ -33,88 +47,56 @@ public class ImageTagService {
             byte[] imageBinary
     ) {
 
-        // Take the byte array and create an image object that we can pass directly into AWS.
-        //
-        // Note that this is limited to 5MB maximum size - anything larger needs to be stored in S3 first, however that
-        // will increase the price somewhat since then we'll be paying for an S3 transaction as well - so if it's under
-        // 5 MB, we really should just post it up directly.
+        // Have we seen this image (or one near enough to it) recently? If so, no need to pay to categorise it again.
+        // Images we can't decode ourselves aren't cached, the label detector will be the judge of whether they're
+        // valid.
+        ImageHash imageHash = ImageHash.of(imageBinary);
 
-        // TODO: We need to properly detect and be able to handle > 5MB images. Interestingly, Rekognition doesn't
-        // actually appear to enforce the 5MB upload limit currently...
+        if (imageHash != null) {
+            List<Label> cachedLabels = labelCache.lookup(imageHash);
 
-        ByteBuffer imageByteBuffer = ByteBuffer.wrap(imageBinary);
-        Image imageObject = new Image();
-        imageObject.setBytes(imageByteBuffer);
+            if (cachedLabels != null) {
+                TagModel imageTags = new TagModel(cachedLabels, keyLabelSet);
 
-
-        /*
-        // debug - write the buffer to a file
-        try {
-            File file = new File("/tmp/debug.jpg");
-            FileChannel wChannel = new FileOutputStream(file, false).getChannel();
-            wChannel.write(imageByteBuffer);
-            wChannel.close();
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Debug termination");
-
-        } catch (Exception e) {
-            e.printStackTrace();
+                logger.log(Level.INFO, "Image matched label cache, all tags: " + imageTags.getAllTags());
+                return imageTags;
+            }
         }
-        */
-
 
-        // Send AWS a request for label detection for our image. We only care about the top 20 over 50% score.
-        logger.log(Level.INFO, "Sending image label request to AWS Rekognition");
-        DetectLabelsRequest request = new DetectLabelsRequest()
-                .withImage(imageObject)
-                .withMaxLabels(20)
-                .withMinConfidence(50F);
+        // Send the image for label detection. This command can take a while, so we time it and report it through
+        // the label.detect stage timer (see PipelineMetrics).
+        long startTime = System.nanoTime();
 
-        // TODO: Currently hard coded to us-east-1 and with no graceful handling of credentials and validation.
-        AmazonRekognitionClient rekognitionClient = new AmazonRekognitionClient()
-                .withEndpoint("rekognition.us-east-1.amazonaws.com");
-        rekognitionClient.setSignerRegionOverride("us-east-1");
+        List<Label> labels = labelDetector.detectLabels(imageBinary);
+        pipelineMetrics.timer("label.detect").stop(startTime);
 
+        TagModel imageTags = new TagModel(labels, keyLabelSet);
 
-        // Send request to AWS. This command can take a while, so we time and report for future use.
-        // TODO: send duration metrics into stats/datadog
-        try {
-
-            long startTime = System.currentTimeMillis();
-
-            DetectLabelsResult result = rekognitionClient.detectLabels(request);
-            TagModel imageTags = new TagModel(result.getLabels());
-
-            long stopTime = System.currentTimeMillis();
-            int elapsedTime = (int) (stopTime - startTime) / 1000;
+        if (imageHash != null) {
+            labelCache.store(imageHash, labels);
+        }
 
-            logger.log(Level.INFO, "Request processed in: " + elapsedTime + " seconds.");
-            logger.log(Level.INFO, "All tags: " + imageTags.allTags);
-            return imageTags;
+        long elapsedTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
 
-        } catch (InvalidImageFormatException e) {
-            e.printStackTrace();
-            throw e;
-        } catch (AmazonRekognitionException e) {
-            e.printStackTrace();
-            throw new ValidationException("An unexpected fault occurred when interacting with AWS Rekognition");
-        }
+        logger.log(Level.INFO, "Request processed in: " + elapsedTime + " ms.");
+        logger.log(Level.INFO, "All tags: " + imageTags.getAllTags());
+        return imageTags;
 
     }
 
     /**
      * Process the image in a background asynchronous thread. This is used by the video categorisation service
      * in order to get the data for multiple frames quickly. Note that threading performance can be limited by the
-     * external services we use - for example, Rekognition has a max transactions per second limit.
+     * external services we use - for example, Rekognition has a max transactions per second limit, which is enforced
+     * across all callers by the AdaptiveRateLimiter.
      *
      * @param imageBinary
      * @return
      */
     @Async
-    public Future<TagModel> processAsync(
+    public ListenableFuture<TagModel> processAsync(
             byte[] imageBinary
-    )
-            throws InterruptedException
-    {
+    ) {
         TagModel results = process(imageBinary);
         return new AsyncResult<>(results);
     }
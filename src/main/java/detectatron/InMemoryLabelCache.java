@@ -0,0 +1,35 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LabelCache held in the Java heap. Lost on restart, but fast and with no local storage requirements.
+ */
+public class InMemoryLabelCache extends AbstractLabelCache {
+
+    private final Map<ImageHash, List<Label>> labelsByHash = new HashMap<ImageHash, List<Label>>();
+
+    public InMemoryLabelCache(int maxEntries, long ttlMillis, int maxDistance) {
+        super(maxEntries, ttlMillis, maxDistance);
+    }
+
+    @Override
+    protected List<Label> read(ImageHash imageHash) {
+        return labelsByHash.get(imageHash);
+    }
+
+    @Override
+    protected void write(ImageHash imageHash, List<Label> labels) {
+        labelsByHash.put(imageHash, labels);
+    }
+
+    @Override
+    protected void delete(ImageHash imageHash) {
+        labelsByHash.remove(imageHash);
+    }
+
+}
@@ -0,0 +1,160 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.BoundingBox;
+import com.amazonaws.services.rekognition.model.Label;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Chooses the keyframe of a video - the frame that best shows what's in it - from the frames as they're categorised.
+ *
+ * Each frame is scored on how confident we are it shows a key label, how much of the frame the subject takes up and
+ * how sharp it is, so a clear close-up of a person beats a blurred frame of them disappearing off the edge. Only the
+ * encoded JPEG of the best frame so far is kept (or of the best few, if a strip of them has been asked for), rather
+ * than holding on to every frame until the end.
+ *
+ * Not thread safe, FrameClassificationPipeline calls it whilst holding its lock.
+ */
+public class KeyFrameSelector {
+
+    // Weightings of each part of the score. Each part is 0.0 - 1.0 before weighting, and key labels are weighted so
+    // that any frame with a reasonably confident key label beats one without.
+    static final double KEY_LABEL_WEIGHT = 2.0;
+    static final double AREA_WEIGHT = 0.5;
+    static final double SHARPNESS_WEIGHT = 0.5;
+
+    // Laplacian variance at which a frame counts as half sharp, see Sharpness.
+    static final double SHARPNESS_MIDPOINT = 100;
+
+    /**
+     * A frame kept as the keyframe or as part of the strip.
+     */
+    public static class Selection {
+        public final int frameNumber;
+        public final byte[] frameData;
+        public final double score;
+
+        Selection(int frameNumber, byte[] frameData, double score) {
+            this.frameNumber = frameNumber;
+            this.frameData = frameData;
+            this.score = score;
+        }
+    }
+
+    // Best first, with later frames winning ties (as the latest frame was the keyframe before frames were scored).
+    private static final Comparator<Selection> BEST_FIRST = (a, b) -> {
+        int order = Double.compare(b.score, a.score);
+        return order != 0 ? order : Integer.compare(b.frameNumber, a.frameNumber);
+    };
+
+    private final int stripFrames;
+
+    // The best frames so far, best first - just the one unless we're building a strip.
+    private final List<Selection> best = new ArrayList<Selection>();
+
+    /**
+     * @param stripFrames Number of frames to keep for the keyframe strip, 0 (or 1) for only the keyframe.
+     */
+    public KeyFrameSelector(int stripFrames) {
+        this.stripFrames = Math.max(1, stripFrames);
+    }
+
+    /**
+     * Score a categorised frame, out of KEY_LABEL_WEIGHT + AREA_WEIGHT + SHARPNESS_WEIGHT.
+     *
+     * Labels don't come with their own bounding boxes, so the subject's area is taken to be the regions of the frame
+     * that were categorised, when only regions with motion were. Whole frames score nothing for area - how much of the
+     * frame changed isn't the subject's area, and the first frame sampled always counts as wholly changed even when
+     * it's the empty scene before anything happens.
+     *
+     * @param candidate
+     * @param frameTags  Tags found in the frame.
+     * @param videoTags  Tags of the video, which decides what counts as a key label.
+     * @return
+     */
+    public static double score(FrameCandidate candidate, TagModel frameTags, TagModel videoTags) {
+
+        float keyConfidence = 0;
+
+        for (Label label : frameTags.getRawLabels()) {
+            if (videoTags.isKeyLabel(label.getName())) {
+                keyConfidence = Math.max(keyConfidence, label.getConfidence());
+            }
+        }
+
+        double area = 0;
+
+        if (candidate.regions != null) {
+            for (BoundingBox region : candidate.regions) {
+                area += region.getWidth() * region.getHeight();
+            }
+        }
+
+        double sharpness = candidate.sharpness / (candidate.sharpness + SHARPNESS_MIDPOINT);
+
+        return KEY_LABEL_WEIGHT * (keyConfidence / 100.0)
+                + AREA_WEIGHT * Math.min(1.0, Math.max(0.0, area))
+                + SHARPNESS_WEIGHT * sharpness;
+    }
+
+    /**
+     * Consider a categorised frame.
+     *
+     * @param candidate
+     * @param frameTags
+     * @param videoTags
+     * @return True if the frame is now the keyframe.
+     */
+    public boolean offer(FrameCandidate candidate, TagModel frameTags, TagModel videoTags) {
+
+        Selection selection = new Selection(candidate.frameNumber, candidate.frameData, score(candidate, frameTags, videoTags));
+
+        // Regions of the same frame are categorised separately, the frame itself only needs to be kept once.
+        for (int i = 0; i < best.size(); i++) {
+            if (best.get(i).frameNumber == selection.frameNumber) {
+                if (BEST_FIRST.compare(selection, best.get(i)) >= 0) {
+                    return false;
+                }
+
+                best.remove(i);
+                break;
+            }
+        }
+
+        if (best.size() >= stripFrames && BEST_FIRST.compare(selection, best.get(best.size() - 1)) >= 0) {
+            return false;
+        }
+
+        best.add(selection);
+        best.sort(BEST_FIRST);
+
+        while (best.size() > stripFrames) {
+            best.remove(best.size() - 1);
+        }
+
+        return best.get(0) == selection;
+    }
+
+    /**
+     * The best frame so far, or null if no frames have been offered.
+     *
+     * @return
+     */
+    public Selection getKeyFrame() {
+        return best.isEmpty() ? null : best.get(0);
+    }
+
+    /**
+     * The best frames so far for the keyframe strip, in the order they appear in the video.
+     *
+     * @return
+     */
+    public List<Selection> getStripFrames() {
+        List<Selection> frames = new ArrayList<Selection>(best);
+        frames.sort(Comparator.comparingInt(selection -> selection.frameNumber));
+        return Collections.unmodifiableList(frames);
+    }
+}
@@ -0,0 +1,57 @@
+package detectatron;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Holds the keyframes of recently tagged videos, so clients that want a video's keyframe can fetch it separately
+ * (from GET /tag/keyframe/{id}) rather than having it base64 encoded into the tag response. Only the most recent
+ * keyframes are kept, in memory.
+ */
+@Component
+public class KeyFrameStore {
+
+    @Value("${detectatron.response.keyframe-store.max-entries:100}")
+    private int maxEntries;
+
+    // Guarded by this.
+    private final LinkedHashMap<String, byte[]> keyFrames = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public KeyFrameStore() {
+    }
+
+    public KeyFrameStore(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param keyFrame JPEG data.
+     * @return The ID to fetch the keyframe with.
+     */
+    public synchronized String put(byte[] keyFrame) {
+        String id = UUID.randomUUID().toString();
+        keyFrames.put(id, keyFrame);
+
+        return id;
+    }
+
+    /**
+     * @param id
+     * @return The keyframe, or null if unknown or no longer held.
+     */
+    public synchronized byte[] get(String id) {
+        return keyFrames.get(id);
+    }
+
+}
@@ -0,0 +1,68 @@
+package detectatron;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The labels we consider "key" - the ones that make a video interesting enough to alert on, such as people or pets.
+ *
+ * Configured with the detectatron.key-labels property. Matching is case-insensitive.
+ */
+@Component
+public class KeyLabelSet {
+
+    public static final KeyLabelSet DEFAULT = new KeyLabelSet("People", "Person", "Cat", "Pet");
+
+    private final Set<String> names;
+
+    public KeyLabelSet(
+            @Value("${detectatron.key-labels:People,Person,Cat,Pet}") String... names
+    ) {
+        Set<String> lowerCaseNames = new HashSet<String>();
+
+        for (String name : names) {
+            if (!name.trim().isEmpty()) {
+                lowerCaseNames.add(name.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        this.names = Collections.unmodifiableSet(lowerCaseNames);
+    }
+
+    /**
+     * Whether the label is one of our key labels.
+     *
+     * @param labelName
+     * @return
+     */
+    public boolean contains(String labelName) {
+        return names.contains(labelName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * This set, less the named labels.
+     *
+     * @param labelNames
+     * @return
+     */
+    public KeyLabelSet without(Collection<String> labelNames) {
+        Set<String> remaining = new HashSet<String>(names);
+
+        for (String labelName : labelNames) {
+            remaining.remove(labelName.toLowerCase(Locale.ROOT));
+        }
+
+        return new KeyLabelSet(remaining.toArray(new String[remaining.size()]));
+    }
+
+    public Set<String> getNames() {
+        return names;
+    }
+
+}
@@ -0,0 +1,38 @@
+package detectatron;
+
+/**
+ * Samples every keyframe of the video. Only makes sense with FrameExtractionMode.KEYFRAME, which takes the first
+ * keyframe at or after each requested frame, so we just keep asking for the frame after the last keyframe.
+ *
+ * Keyframes are usually where cameras put the best quality image, and with motion-triggered clips encoders often
+ * insert extra keyframes on scene changes, so they're a cheap to decode and reasonably well placed set of samples.
+ */
+public class KeyframeFrameSampler implements FrameSampler {
+
+    private final int videoLengthFrames;
+
+    private int lastFrameNumber = -1;
+
+    public KeyframeFrameSampler(int videoLengthFrames) {
+        this.videoLengthFrames = videoLengthFrames;
+    }
+
+    @Override
+    public int next() {
+        int frameNumber = lastFrameNumber + 1;
+
+        if (frameNumber >= videoLengthFrames) {
+            return -1;
+        }
+
+        // Until we get feedback, assume we got the frame we asked for so we never ask for the same one twice.
+        lastFrameNumber = frameNumber;
+        return frameNumber;
+    }
+
+    @Override
+    public void sampled(int frameNumber, byte[] fingerprint) {
+        lastFrameNumber = Math.max(lastFrameNumber, frameNumber);
+    }
+
+}
@@ -0,0 +1,283 @@
+package detectatron;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Learns the labels each camera normally sees - the parked car, the plants, the outdoors - so that they can stop
+ * being treated as key labels for that camera, and only labels that depart from the camera's baseline raise key tags
+ * (see LabelBaselineService).
+ *
+ * For each camera and each hour of the day, we keep an exponentially decayed frequency of the clips each label
+ * appears in, so the baseline follows changes to the scene (the car leaves, the garden grows) within a few dozen
+ * clips. Each camera also has an all day bucket, used for hours that haven't seen enough clips to go on yet.
+ *
+ * Decay is applied lazily, each label only remembers its weight as of the last clip it was seen in, so observing a
+ * clip only costs work proportional to the number of labels in it.
+ */
+public class LabelBaseline {
+
+    private static final int ALL_DAY = 24;
+
+    /**
+     * A label's decayed weight as of a particular clip of its bucket.
+     */
+    public static class Entry {
+        public double weight;
+        public long clip;
+    }
+
+    /**
+     * The clips of one camera in one hour of the day (or all day).
+     */
+    public static class Bucket {
+        public long clips;
+        public Map<String, Entry> labels = new HashMap<String, Entry>();
+    }
+
+    private final double alpha;
+    private final double threshold;
+    private final int minClips;
+
+    // Labels which always remain key labels however often they're seen, normalised.
+    private final Set<String> exemptLabels = new HashSet<String>();
+
+    // Camera -> buckets for each hour of the day then all day. Each camera's buckets are guarded by the array.
+    private final ConcurrentHashMap<String, Bucket[]> cameras = new ConcurrentHashMap<String, Bucket[]>();
+
+    /**
+     * @param halfLifeClips Number of clips (in each bucket) after which a label's past appearances count for half.
+     * @param threshold     Labels appearing in at least this fraction of recent clips are part of the baseline.
+     * @param minClips      Clips a bucket must have seen before it's trusted.
+     */
+    public LabelBaseline(double halfLifeClips, double threshold, int minClips) {
+        this(halfLifeClips, threshold, minClips, Collections.<String>emptyList());
+    }
+
+    /**
+     * @param halfLifeClips Number of clips (in each bucket) after which a label's past appearances count for half.
+     * @param threshold     Labels appearing in at least this fraction of recent clips are part of the baseline.
+     * @param minClips      Clips a bucket must have seen before it's trusted.
+     * @param exemptLabels  Labels that stay key labels even when they're part of the baseline, eg Person - someone
+     *                      at the front door every clip is still someone at the front door.
+     */
+    public LabelBaseline(double halfLifeClips, double threshold, int minClips, Collection<String> exemptLabels) {
+        this.alpha = 1 - Math.pow(0.5, 1 / halfLifeClips);
+        this.threshold = threshold;
+        this.minClips = minClips;
+
+        for (String label : exemptLabels) {
+            if (!label.trim().isEmpty()) {
+                this.exemptLabels.add(normalise(label.trim()));
+            }
+        }
+    }
+
+    private static String normalise(String label) {
+        return label.toLowerCase(Locale.ROOT);
+    }
+
+    private Bucket[] buckets(String camera) {
+        return cameras.computeIfAbsent(camera, name -> {
+            Bucket[] buckets = new Bucket[ALL_DAY + 1];
+
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new Bucket();
+            }
+
+            return buckets;
+        });
+    }
+
+    private void observe(Bucket bucket, Set<String> labels) {
+        bucket.clips++;
+
+        for (String label : labels) {
+            Entry entry = bucket.labels.get(label);
+
+            if (entry == null) {
+                entry = new Entry();
+                bucket.labels.put(label, entry);
+            }
+
+            entry.weight = decayed(entry, bucket.clips - 1) * (1 - alpha) + alpha;
+            entry.clip = bucket.clips;
+        }
+    }
+
+    private double decayed(Entry entry, long clips) {
+        return entry.weight * Math.pow(1 - alpha, clips - entry.clip);
+    }
+
+    /**
+     * Fraction of the bucket's recent clips the label appeared in, with older clips counting for less.
+     */
+    private double frequency(Bucket bucket, String label) {
+        Entry entry = bucket.labels.get(label);
+
+        if (entry == null || bucket.clips == 0) {
+            return 0;
+        }
+
+        // Weights start from nothing, so normalise by the weight of a label appearing in every clip so far.
+        return decayed(entry, bucket.clips) / (1 - Math.pow(1 - alpha, bucket.clips));
+    }
+
+    /**
+     * The bucket to judge the hour by, or null if we haven't seen enough of the camera yet.
+     */
+    private Bucket trusted(Bucket[] buckets, int hour) {
+        if (buckets[hour].clips >= minClips) {
+            return buckets[hour];
+        }
+
+        if (buckets[ALL_DAY].clips >= minClips) {
+            return buckets[ALL_DAY];
+        }
+
+        return null;
+    }
+
+    /**
+     * Record the labels found in a clip from the camera.
+     *
+     * @param camera
+     * @param hour   Hour of the day (0-23) the clip was recorded in.
+     * @param labels
+     */
+    public void observe(String camera, int hour, Collection<String> labels) {
+        Set<String> names = new HashSet<String>();
+
+        for (String label : labels) {
+            names.add(normalise(label));
+        }
+
+        Bucket[] buckets = buckets(camera);
+
+        synchronized (buckets) {
+            observe(buckets[hour], names);
+            observe(buckets[ALL_DAY], names);
+        }
+    }
+
+    /**
+     * How often the label normally appears in clips from the camera at this hour.
+     *
+     * @param camera
+     * @param hour
+     * @param label
+     * @return Fraction of recent clips, or 0 if we haven't seen enough of the camera to say.
+     */
+    public double frequency(String camera, int hour, String label) {
+        Bucket[] buckets = cameras.get(camera);
+
+        if (buckets == null) {
+            return 0;
+        }
+
+        synchronized (buckets) {
+            Bucket bucket = trusted(buckets, hour);
+            return bucket == null ? 0 : frequency(bucket, normalise(label));
+        }
+    }
+
+    /**
+     * Whether the label is part of the camera's normal scenery at this hour.
+     *
+     * @param camera
+     * @param hour
+     * @param label
+     * @return
+     */
+    public boolean isBaseline(String camera, int hour, String label) {
+        return frequency(camera, hour, label) >= threshold;
+    }
+
+    /**
+     * The key labels that would raise key tags for the camera at this hour, ie the key labels less any that are
+     * part of the camera's baseline and not exempt.
+     *
+     * @param camera
+     * @param hour
+     * @param keyLabelSet
+     * @return
+     */
+    public KeyLabelSet keyLabelsFor(String camera, int hour, KeyLabelSet keyLabelSet) {
+        Set<String> scenery = new HashSet<String>();
+
+        for (String label : keyLabelSet.getNames()) {
+            if (!exemptLabels.contains(label) && isBaseline(camera, hour, label)) {
+                scenery.add(label);
+            }
+        }
+
+        return scenery.isEmpty() ? keyLabelSet : keyLabelSet.without(scenery);
+    }
+
+    /**
+     * A copy of the baseline for saving, leaving out labels that have decayed to almost nothing.
+     *
+     * @return Camera -> buckets for each hour of the day, then all day.
+     */
+    public Map<String, Bucket[]> snapshot() {
+        Map<String, Bucket[]> snapshot = new HashMap<String, Bucket[]>();
+
+        for (Map.Entry<String, Bucket[]> camera : cameras.entrySet()) {
+            Bucket[] buckets = camera.getValue();
+            Bucket[] copies = new Bucket[buckets.length];
+
+            synchronized (buckets) {
+                for (int i = 0; i < buckets.length; i++) {
+                    prune(buckets[i]);
+
+                    copies[i] = new Bucket();
+                    copies[i].clips = buckets[i].clips;
+
+                    for (Map.Entry<String, Entry> label : buckets[i].labels.entrySet()) {
+                        Entry copy = new Entry();
+                        copy.weight = label.getValue().weight;
+                        copy.clip = label.getValue().clip;
+                        copies[i].labels.put(label.getKey(), copy);
+                    }
+                }
+            }
+
+            snapshot.put(camera.getKey(), copies);
+        }
+
+        return snapshot;
+    }
+
+    private void prune(Bucket bucket) {
+        Iterator<Map.Entry<String, Entry>> iterator = bucket.labels.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            if (frequency(bucket, iterator.next().getKey()) < 0.01) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Restore a saved baseline, replacing the baseline of any cameras in it.
+     *
+     * @param snapshot As returned by snapshot().
+     */
+    public void restore(Map<String, Bucket[]> snapshot) {
+        for (Map.Entry<String, Bucket[]> camera : snapshot.entrySet()) {
+            if (camera.getValue() == null || camera.getValue().length != ALL_DAY + 1) {
+                throw new IllegalArgumentException("Baseline of camera " + camera.getKey() + " should have " + (ALL_DAY + 1) + " buckets");
+            }
+
+            cameras.put(camera.getKey(), camera.getValue());
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package detectatron;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Learns each camera's baseline of normal labels from the videos it sends (see LabelBaseline), and supplies the key
+ * labels for each video with the camera's scenery taken out - so a car parked in view of the driveway camera doesn't
+ * count as a key tag, or end video processing early, on every clip. Labels such as Person are exempt, so a camera
+ * that usually sees people never stops reporting them.
+ *
+ * The baseline is held in memory and snapshotted to the spool directory periodically and on shutdown, so it survives
+ * restarts (losing at most the last few minutes of learning).
+ */
+@Service
+public class LabelBaselineService {
+
+    private static final Logger logger = Logger.getLogger("LabelBaselineService");
+
+    @Autowired
+    private SpoolService spoolService;
+
+    @Value("${detectatron.baseline.enabled:false}")
+    private boolean enabled;
+
+    @Value("${detectatron.baseline.half-life-clips:20}")
+    private double halfLifeClips;
+
+    @Value("${detectatron.baseline.threshold:0.8}")
+    private double threshold;
+
+    @Value("${detectatron.baseline.min-clips:10}")
+    private int minClips;
+
+    @Value("${detectatron.baseline.exempt-labels:Person,People}")
+    private String[] exemptLabels;
+
+    @Value("${detectatron.baseline.snapshot-interval-seconds:300}")
+    private long snapshotIntervalSeconds;
+
+    // Hours of the day are in the same time zone as arming schedules.
+    @Value("${detectatron.arming.time-zone:}")
+    private String timeZone;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private LabelBaseline baseline;
+    private Clock clock;
+    private File snapshotFile;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        baseline = new LabelBaseline(halfLifeClips, threshold, minClips, Arrays.asList(exemptLabels));
+        clock = timeZone == null || timeZone.isEmpty() ? Clock.systemDefaultZone() : Clock.system(ZoneId.of(timeZone));
+        snapshotFile = new File(spoolService.directory("baseline"), "baseline.json");
+
+        if (snapshotFile.exists()) {
+            try {
+                Map<String, LabelBaseline.Bucket[]> snapshot = objectMapper.readValue(snapshotFile,
+                        new TypeReference<Map<String, LabelBaseline.Bucket[]>>() {});
+                baseline.restore(snapshot);
+
+                logger.log(Level.INFO, "Restored label baseline of " + snapshot.size() + " cameras");
+            } catch (IOException | IllegalArgumentException e) {
+                logger.log(Level.WARNING, "Unable to restore label baseline from " + snapshotFile + ", starting afresh: " + e.getMessage());
+            }
+        }
+
+        scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("DetectatronBaseline-"));
+        scheduler.scheduleWithFixedDelay(this::snapshot, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            snapshot();
+        }
+    }
+
+    private int hour() {
+        return LocalDateTime.now(clock).getHour();
+    }
+
+    /**
+     * The key labels for a video from the camera, less those that are part of its baseline at this time of day.
+     *
+     * @param camera      Or null if unknown, in which case there's no baseline to go on.
+     * @param keyLabelSet
+     * @return
+     */
+    public KeyLabelSet keyLabelsFor(String camera, KeyLabelSet keyLabelSet) {
+        if (baseline == null || camera == null) {
+            return keyLabelSet;
+        }
+
+        KeyLabelSet cameraKeyLabels = baseline.keyLabelsFor(camera, hour(), keyLabelSet);
+
+        if (cameraKeyLabels != keyLabelSet) {
+            logger.log(Level.INFO, "Ignoring key labels normally seen by " + camera + " at this time: "
+                    + keyLabelSet.without(cameraKeyLabels.getNames()).getNames());
+        }
+
+        return cameraKeyLabels;
+    }
+
+    /**
+     * Learn from the tags found in a video from the camera.
+     *
+     * @param camera Or null if unknown, in which case there's nothing to learn.
+     * @param tags
+     */
+    public void observe(String camera, TagModel tags) {
+        if (baseline == null || camera == null) {
+            return;
+        }
+
+        baseline.observe(camera, hour(), tags.getAllTags());
+    }
+
+    /**
+     * Save the baseline, replacing the previous snapshot.
+     */
+    public void snapshot() {
+        try {
+            File tmpFile = new File(snapshotFile.getPath() + ".tmp");
+            objectMapper.writeValue(tmpFile, baseline.snapshot());
+            Files.move(tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to snapshot label baseline to " + snapshotFile + ": " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,30 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+
+import java.util.List;
+
+/**
+ * Cache of the labels previously returned for an image, keyed by the image's perceptual hash. This allows us to skip
+ * categorising images we've (near enough) seen before, such as a fixed camera re-sending the same frame or clients
+ * retrying a request.
+ */
+public interface LabelCache {
+
+    /**
+     * Find the labels of a previously categorised image matching the hash.
+     *
+     * @param imageHash
+     * @return The cached labels, or null if there's no match.
+     */
+    List<Label> lookup(ImageHash imageHash);
+
+    /**
+     * Cache the labels for an image.
+     *
+     * @param imageHash
+     * @param labels
+     */
+    void store(ImageHash imageHash, List<Label> labels);
+
+}
@@ -0,0 +1,66 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Selects the LabelCache implementation used by ImageTagService.
+ */
+@Configuration
+public class LabelCacheConfiguration {
+
+    private static final Logger logger = Logger.getLogger("LabelCacheConfiguration");
+
+    // One of "memory", "disk" or "none"
+    @Value("${detectatron.label-cache.type:memory}")
+    private String type;
+
+    @Value("${detectatron.label-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${detectatron.label-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${detectatron.label-cache.max-distance:0}")
+    private int maxDistance;
+
+    @Bean
+    public LabelCache labelCache(SpoolService spoolService) throws IOException {
+
+        logger.log(Level.INFO, "Using " + type + " label cache");
+
+        long ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+
+        switch (type) {
+            case "memory":
+                return new InMemoryLabelCache(maxEntries, ttlMillis, maxDistance);
+
+            case "disk":
+                return new DiskLabelCache(spoolService.directory("label-cache"), maxEntries, ttlMillis, maxDistance);
+
+            case "none":
+                return new LabelCache() {
+                    @Override
+                    public List<Label> lookup(ImageHash imageHash) {
+                        return null;
+                    }
+
+                    @Override
+                    public void store(ImageHash imageHash, List<Label> labels) {
+                    }
+                };
+
+            default:
+                throw new IllegalArgumentException("Unknown detectatron.label-cache.type: " + type);
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+
+import java.util.List;
+
+/**
+ * Finds the labels (objects, scenes, etc) in an image. Detectors return Rekognition's Label type whatever the
+ * backend, so their results can be merged into a TagModel and cached alongside each other.
+ *
+ * See LabelDetectorConfiguration for selecting between Rekognition, a local model, or a cascade of the two.
+ */
+public interface LabelDetector {
+
+    /**
+     * Detect the labels in a JPEG or PNG image.
+     *
+     * @param imageBinary
+     * @return The labels found, with confidence as a percentage.
+     */
+    List<Label> detectLabels(byte[] imageBinary);
+
+}
@@ -0,0 +1,130 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.AmazonRekognition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Selects the LabelDetector used by ImageTagService.
+ */
+@Configuration
+public class LabelDetectorConfiguration {
+
+    private static final Logger logger = Logger.getLogger("LabelDetectorConfiguration");
+
+    // One of "rekognition", "local" or "cascade"
+    @Value("${detectatron.detector.type:rekognition}")
+    private String type;
+
+    @Value("${detectatron.detector.local.model-config:}")
+    private String modelConfig;
+
+    @Value("${detectatron.detector.local.model-weights:}")
+    private String modelWeights;
+
+    @Value("${detectatron.detector.local.labels:}")
+    private String labels;
+
+    @Value("${detectatron.detector.local.output:prob}")
+    private String outputBlob;
+
+    @Value("${detectatron.detector.local.input-width:224}")
+    private int inputWidth;
+
+    @Value("${detectatron.detector.local.input-height:224}")
+    private int inputHeight;
+
+    // Per channel (BGR) mean
+    @Value("${detectatron.detector.local.mean:104,117,123}")
+    private String[] mean;
+
+    @Value("${detectatron.detector.local.scale:1.0}")
+    private double scale;
+
+    @Value("${detectatron.detector.local.min-confidence:50}")
+    private float minConfidence;
+
+    @Value("${detectatron.detector.cascade.accept-confidence:80}")
+    private float acceptConfidence;
+
+    @Value("${detectatron.detector.cascade.reject-confidence:20}")
+    private float rejectConfidence;
+
+    @PostConstruct
+    public void checkType() {
+        switch (type) {
+            case "rekognition":
+            case "local":
+            case "cascade":
+                logger.log(Level.INFO, "Using " + type + " label detector");
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown detectatron.detector.type: " + type);
+        }
+    }
+
+    // One bean per type, each declared as its concrete class so that detectors reporting metrics (eg the cascade's
+    // counts of labels decided locally) are picked up as PublicMetrics.
+
+    @Bean
+    @ConditionalOnProperty(name = "detectatron.detector.type", havingValue = "rekognition", matchIfMissing = true)
+    public RekognitionLabelDetector rekognitionLabelDetector(AmazonRekognition rekognitionClient, AdaptiveRateLimiter rekognitionRateLimiter) {
+        return new RekognitionLabelDetector(rekognitionClient, rekognitionRateLimiter);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "detectatron.detector.type", havingValue = "local")
+    public OpenCvLabelDetector localLabelDetector() throws IOException {
+        return localDetector(minConfidence);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "detectatron.detector.type", havingValue = "cascade")
+    public CascadeLabelDetector cascadeLabelDetector(AmazonRekognition rekognitionClient, AdaptiveRateLimiter rekognitionRateLimiter) throws IOException {
+        return new CascadeLabelDetector(
+                localDetector(rejectConfidence),
+                new RekognitionLabelDetector(rekognitionClient, rekognitionRateLimiter),
+                acceptConfidence,
+                rejectConfidence
+        );
+    }
+
+    private OpenCvLabelDetector localDetector(float minConfidence) throws IOException {
+
+        if (modelConfig.isEmpty() || labels.isEmpty()) {
+            throw new IllegalArgumentException("detectatron.detector.local.model-config and detectatron.detector.local.labels must be set to use a local label detector");
+        }
+
+        if (mean.length != 3) {
+            throw new IllegalArgumentException("detectatron.detector.local.mean must have a value for each of the 3 (BGR) channels");
+        }
+
+        double[] channelMean = new double[3];
+
+        for (int i = 0; i < 3; i++) {
+            channelMean[i] = Double.parseDouble(mean[i].trim());
+        }
+
+        return new OpenCvLabelDetector(
+                new File(modelConfig),
+                modelWeights.isEmpty() ? null : new File(modelWeights),
+                new File(labels),
+                outputBlob,
+                inputWidth,
+                inputHeight,
+                channelMean,
+                scale,
+                minConfidence
+        );
+    }
+
+}
@@ -0,0 +1,23 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.BoundingBox;
+
+/**
+ * Where in a video a label was detected - the frame and the region of that frame which was categorised, with the
+ * bounding box given as ratios of the frame dimensions (as per Rekognition's own bounding boxes).
+ */
+public class LabelRegion {
+
+    public final String name;
+    public final Float confidence;
+    public final int frameNumber;
+    public final BoundingBox boundingBox;
+
+    public LabelRegion(String name, Float confidence, int frameNumber, BoundingBox boundingBox) {
+        this.name = name;
+        this.confidence = confidence;
+        this.frameNumber = frameNumber;
+        this.boundingBox = boundingBox;
+    }
+
+}
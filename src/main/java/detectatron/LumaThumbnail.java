@@ -0,0 +1,37 @@
+package detectatron;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Reduces a frame down to a tiny grayscale thumbnail. Comparing a few hundred luma values is far cheaper than
+ * comparing full frames and averaging across each cell smooths out most of the sensor noise from cheap cameras.
+ */
+public final class LumaThumbnail {
+
+    private LumaThumbnail() {
+    }
+
+    /**
+     * Scale the image down to the requested dimensions in grayscale and return the raw luma values (0-255, stored
+     * in signed bytes so mask with 0xFF before use), row by row.
+     *
+     * @param image
+     * @param width
+     * @param height
+     * @return
+     */
+    public static byte[] of(BufferedImage image, int width, int height) {
+
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+
+        Graphics2D graphics = thumbnail.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+
+        return ((DataBufferByte) thumbnail.getRaster().getDataBuffer()).getData();
+    }
+}
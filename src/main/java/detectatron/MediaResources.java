@@ -0,0 +1,211 @@
+package detectatron;
+
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.avcodec;
+import org.bytedeco.javacpp.avformat;
+import org.bytedeco.javacpp.avutil;
+import org.bytedeco.javacpp.opencv_imgproc;
+import org.bytedeco.javacpp.swscale;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FrameGrabber;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Owns the lifecycle of the native (FFmpeg/OpenCV) resources used to process video.
+ *
+ * The native libraries are loaded and configured once at startup, rather than on (and slowing down) the first request.
+ * Each video is decoded within a VideoDecodeSession, which releases the grabber as soon as the video is done. Frame
+ * encoders hold sizeable native and Java image buffers, so a few idle ones are kept warm for the next video rather
+ * than being rebuilt each time.
+ *
+ * Also reports off-heap memory use and live grabber counts, so that any native memory growth shows up in /metrics
+ * long before it shows up as an out of memory node.
+ */
+@Component
+public class MediaResources implements PublicMetrics {
+
+    private static final Logger logger = Logger.getLogger("MediaResources");
+
+    // Frames are scaled down to fit within these dimensions (0 for no limit) before being encoded. Rekognition doesn't
+    // need full resolution frames to find a person, and smaller frames are cheaper to encode and upload.
+    @Value("${detectatron.video.max-frame-width:1280}")
+    private int maxFrameWidth;
+
+    @Value("${detectatron.video.max-frame-height:720}")
+    private int maxFrameHeight;
+
+    // JPEG quality (0.0 - 1.0) of frames sent for categorisation.
+    @Value("${detectatron.video.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    // Max idle frame encoders kept for reuse.
+    @Value("${detectatron.video.encoder-pool-size:4}")
+    private int encoderPoolSize;
+
+    private BlockingQueue<FrameEncoder> idleEncoders;
+
+    private final AtomicLong grabbersOpened = new AtomicLong();
+    private final AtomicLong grabbersLive = new AtomicLong();
+    private final AtomicLong encodersCreated = new AtomicLong();
+
+    @PostConstruct
+    public void initialise() {
+        idleEncoders = new ArrayBlockingQueue<FrameEncoder>(Math.max(1, encoderPoolSize));
+
+        // Load the native libraries now, so the first video doesn't pay for it.
+        Loader.load(avutil.class);
+        Loader.load(avcodec.class);
+        Loader.load(avformat.class);
+        Loader.load(swscale.class);
+        Loader.load(opencv_imgproc.class);
+
+        avformat.av_register_all();
+
+        // Silence the output of ffmpeg. You may wish to comment this out if debugging some nasty issue, but it
+        // makes the logs very noisy otherwise.
+        avutil.av_log_set_level(avutil.AV_LOG_QUIET);
+
+        logger.log(Level.INFO, "Native media libraries loaded, off-heap memory limit " + Pointer.maxBytes() + " bytes");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        FrameEncoder frameEncoder;
+
+        while ((frameEncoder = idleEncoders.poll()) != null) {
+            frameEncoder.close();
+        }
+    }
+
+    /**
+     * Start a session for decoding a video file. FFmpeg reads directly from the file.
+     *
+     * @param videoFile
+     * @return
+     */
+    public VideoDecodeSession open(File videoFile) {
+        return open(new TrackedFrameGrabber(videoFile));
+    }
+
+    /**
+     * Start a session for decoding a video held in memory.
+     *
+     * @param videoBinary
+     * @return
+     */
+    public VideoDecodeSession open(byte[] videoBinary) {
+        return open(new TrackedFrameGrabber(new ByteArrayInputStream(videoBinary)));
+    }
+
+    private VideoDecodeSession open(TrackedFrameGrabber frameGrabber) {
+        FrameEncoder frameEncoder = idleEncoders.poll();
+
+        if (frameEncoder == null) {
+            frameEncoder = new FrameEncoder(maxFrameWidth, maxFrameHeight, jpegQuality);
+            encodersCreated.incrementAndGet();
+        }
+
+        return new VideoDecodeSession(this, frameGrabber, frameEncoder);
+    }
+
+    void release(VideoDecodeSession session) {
+        try {
+            // Stops (if started) and releases the grabber's native contexts and buffers.
+            session.getFrameGrabber().close();
+        } catch (FrameGrabber.Exception e) {
+            logger.log(Level.WARNING, "Unable to release frame grabber: " + e.getMessage());
+        }
+
+        if (!idleEncoders.offer(session.getFrameEncoder())) {
+            session.getFrameEncoder().close();
+        }
+    }
+
+    /**
+     * Number of frame grabbers that have been created but not yet released.
+     *
+     * @return
+     */
+    public long getLiveGrabbers() {
+        return grabbersLive.get();
+    }
+
+    /**
+     * Number of frame encoders ever created.
+     *
+     * @return
+     */
+    public long getEncodersCreated() {
+        return encodersCreated.get();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        metrics.add(new Metric<Long>("media.grabbers.opened", grabbersOpened.get()));
+        metrics.add(new Metric<Long>("media.grabbers.live", grabbersLive.get()));
+        metrics.add(new Metric<Long>("media.encoders.created", encodersCreated.get()));
+        metrics.add(new Metric<Integer>("media.encoders.idle", idleEncoders.size()));
+
+        // Native memory allocated through JavaCPP (FFmpeg/OpenCV buffers), and the resident size of the process.
+        metrics.add(new Metric<Long>("native.bytes.total", Pointer.totalBytes()));
+        metrics.add(new Metric<Long>("native.bytes.max", Pointer.maxBytes()));
+        metrics.add(new Metric<Long>("native.bytes.physical", Pointer.physicalBytes()));
+
+        return metrics;
+    }
+
+    /**
+     * Frame grabber that keeps the live grabber count up to date. Release can happen more than once (close, then
+     * finalize), but is only counted once.
+     */
+    private class TrackedFrameGrabber extends FFmpegFrameGrabber {
+
+        private boolean released = false;
+
+        TrackedFrameGrabber(File file) {
+            super(file);
+            opened();
+        }
+
+        TrackedFrameGrabber(ByteArrayInputStream inputStream) {
+            super(inputStream);
+            opened();
+        }
+
+        private void opened() {
+            grabbersOpened.incrementAndGet();
+            grabbersLive.incrementAndGet();
+        }
+
+        @Override
+        public synchronized void release() throws Exception {
+            try {
+                super.release();
+            } finally {
+                if (!released) {
+                    released = true;
+                    grabbersLive.decrementAndGet();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package detectatron;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs several images into a single image, so they can be categorised with one request.
+ *
+ * Tiles are packed onto shelves (rows), tallest first, with the mosaic roughly square so that it scales down evenly if
+ * the label detector resizes it. Tiles are separated by a black gap so that the edges of neighbouring tiles don't run
+ * into each other.
+ */
+public class Mosaic {
+
+    static final int GAP = 8;
+
+    private final BufferedImage image;
+    private final List<Rectangle> placements;
+
+    private Mosaic(BufferedImage image, List<Rectangle> placements) {
+        this.image = image;
+        this.placements = placements;
+    }
+
+    /**
+     * @return The packed image.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * @return Where each tile was placed in the mosaic, in the order the tiles were supplied.
+     */
+    public List<Rectangle> getPlacements() {
+        return placements;
+    }
+
+    /**
+     * Pack the tiles into a mosaic.
+     *
+     * @param tiles
+     * @return
+     */
+    public static Mosaic pack(List<BufferedImage> tiles) {
+
+        if (tiles.isEmpty()) {
+            throw new IllegalArgumentException("A mosaic needs at least one tile");
+        }
+
+        long area = 0;
+        int widest = 0;
+
+        for (BufferedImage tile : tiles) {
+            area += (long) (tile.getWidth() + GAP) * (tile.getHeight() + GAP);
+            widest = Math.max(widest, tile.getWidth());
+        }
+
+        int shelfWidth = Math.max(widest, (int) Math.ceil(Math.sqrt(area)));
+
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < tiles.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, Comparator.comparingInt((Integer i) -> tiles.get(i).getHeight()).reversed());
+
+        Rectangle[] placements = new Rectangle[tiles.size()];
+        int x = 0, y = 0, shelfHeight = 0, width = 0;
+
+        for (int i : order) {
+            BufferedImage tile = tiles.get(i);
+
+            if (x > 0 && x + tile.getWidth() > shelfWidth) {
+                // Start a new shelf
+                y += shelfHeight + GAP;
+                x = 0;
+                shelfHeight = 0;
+            }
+
+            placements[i] = new Rectangle(x, y, tile.getWidth(), tile.getHeight());
+
+            x += tile.getWidth() + GAP;
+            width = Math.max(width, x - GAP);
+            shelfHeight = Math.max(shelfHeight, tile.getHeight());
+        }
+
+        BufferedImage image = new BufferedImage(width, y + shelfHeight, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+        for (int i = 0; i < tiles.size(); i++) {
+            graphics.drawImage(tiles.get(i), placements[i].x, placements[i].y, null);
+        }
+
+        graphics.dispose();
+
+        List<Rectangle> placementList = new ArrayList<Rectangle>();
+        Collections.addAll(placementList, placements);
+
+        return new Mosaic(image, placementList);
+    }
+
+    /**
+     * Lay the tiles out in a grid, left to right and top to bottom, with each cell the size of the largest tile.
+     *
+     * @param tiles
+     * @param columns
+     * @return
+     */
+    public static Mosaic grid(List<BufferedImage> tiles, int columns) {
+
+        if (tiles.isEmpty()) {
+            throw new IllegalArgumentException("A mosaic needs at least one tile");
+        }
+
+        int cellWidth = 0, cellHeight = 0;
+
+        for (BufferedImage tile : tiles) {
+            cellWidth = Math.max(cellWidth, tile.getWidth());
+            cellHeight = Math.max(cellHeight, tile.getHeight());
+        }
+
+        columns = Math.max(1, Math.min(columns, tiles.size()));
+        int rows = (tiles.size() + columns - 1) / columns;
+
+        BufferedImage image = new BufferedImage(
+                columns * (cellWidth + GAP) - GAP,
+                rows * (cellHeight + GAP) - GAP,
+                BufferedImage.TYPE_3BYTE_BGR);
+
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+        List<Rectangle> placements = new ArrayList<Rectangle>();
+
+        for (int i = 0; i < tiles.size(); i++) {
+            BufferedImage tile = tiles.get(i);
+            Rectangle placement = new Rectangle((i % columns) * (cellWidth + GAP), (i / columns) * (cellHeight + GAP), tile.getWidth(), tile.getHeight());
+
+            graphics.drawImage(tile, placement.x, placement.y, null);
+            placements.add(placement);
+        }
+
+        graphics.dispose();
+
+        return new Mosaic(image, placements);
+    }
+
+}
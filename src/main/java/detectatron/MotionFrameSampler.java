@@ -0,0 +1,96 @@
+package detectatron;
+
+/**
+ * Samples more densely where the scene is changing. Each sample is compared to the previous one - if the difference
+ * spikes above the threshold the step to the next sample is halved (down to a quarter of the base interval), otherwise
+ * it's doubled (up to twice the base interval).
+ *
+ * Static footage either side of an event is skimmed through with fewer samples than a fixed rate, whilst the event
+ * itself gets more samples, which gives a better chance of catching the subject clearly.
+ */
+public class MotionFrameSampler implements FrameSampler {
+
+    private final FrameChangeDetector changeDetector;
+    private final int videoLengthFrames;
+    private final double threshold;
+    private final double minStep;
+    private final double maxStep;
+
+    private double step;
+    private double position = 0;
+    private int lastFrameNumber = -1;
+    private byte[] lastFingerprint;
+
+    /**
+     * @param changeDetector
+     * @param videoLengthFrames
+     * @param frameRate
+     * @param intervalSeconds   Base interval between samples.
+     * @param maxSamples        If set, the base interval is stretched so a fixed rate would spread this many samples
+     *                          across the video.
+     * @param threshold         Difference (0.0 - 1.0) between samples considered a spike in motion.
+     */
+    public MotionFrameSampler(
+            FrameChangeDetector changeDetector,
+            int videoLengthFrames,
+            double frameRate,
+            double intervalSeconds,
+            int maxSamples,
+            double threshold
+    ) {
+        this.changeDetector = changeDetector;
+        this.videoLengthFrames = videoLengthFrames;
+        this.threshold = threshold;
+
+        double baseStep = Math.max(1, intervalSeconds * frameRate);
+
+        if (maxSamples > 0) {
+            baseStep = Math.max(baseStep, (double) videoLengthFrames / maxSamples);
+        }
+
+        this.step = frameRate > 0 ? baseStep : 0;
+        this.minStep = Math.max(1, baseStep / 4);
+        this.maxStep = baseStep * 2;
+    }
+
+    @Override
+    public int next() {
+        if (step <= 0) {
+            return -1;
+        }
+
+        if (lastFrameNumber >= 0) {
+            position = Math.max(position + step, lastFrameNumber + 1);
+        }
+
+        int frameNumber = (int) Math.round(position);
+
+        if (frameNumber >= videoLengthFrames) {
+            return -1;
+        }
+
+        lastFrameNumber = frameNumber;
+        return frameNumber;
+    }
+
+    @Override
+    public void sampled(int frameNumber, byte[] fingerprint) {
+        lastFrameNumber = Math.max(lastFrameNumber, frameNumber);
+        position = Math.max(position, frameNumber);
+
+        if (fingerprint == null) {
+            return;
+        }
+
+        if (lastFingerprint != null) {
+            if (changeDetector.difference(lastFingerprint, fingerprint) >= threshold) {
+                step = Math.max(minStep, step / 2);
+            } else {
+                step = Math.min(maxStep, step * 2);
+            }
+        }
+
+        lastFingerprint = fingerprint;
+    }
+
+}
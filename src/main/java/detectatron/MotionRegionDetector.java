@@ -0,0 +1,196 @@
+package detectatron;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the regions of a frame that differ from the background of the scene, so that only those regions need to be
+ * categorised (see FrameRegionMode).
+ *
+ * The background is a running average of the luma grid of each sampled frame, which lets it settle on the static
+ * scene even if the first frame already had something moving in it. Cells that differ from the background by more
+ * than the noise floor are grouped into connected blobs, and the bounding box of each blob is scaled back up to the
+ * frame and padded, since a crop that is tight on the motion tends to cut off the subject and lose the context that
+ * helps categorisation.
+ *
+ * One instance per video, not thread safe.
+ */
+public class MotionRegionDetector {
+
+    static final int GRID_WIDTH  = 64;
+    static final int GRID_HEIGHT = 36;
+
+    // Luma change (0-255) a cell must exceed to count as changed, see BlockDifferenceChangeDetector.
+    static final int NOISE_FLOOR = 24;
+
+    // Blobs smaller than this many cells are noise (or too small to categorise anyway).
+    static final int MIN_CELLS = 2;
+
+    private final double learningRate;
+    private final double padding;
+    private final int minSize;
+
+    private float[] background;
+
+    /**
+     * @param learningRate Weight (0.0 - 1.0) given to each new frame when updating the background.
+     * @param padding      Padding added to each side of a region, as a proportion of the region's size.
+     * @param minSize      Minimum width and height (in pixels) of a region, small regions are grown around their
+     *                     centre to this size.
+     */
+    public MotionRegionDetector(double learningRate, double padding, int minSize) {
+        this.learningRate = learningRate;
+        this.padding = padding;
+        this.minSize = minSize;
+    }
+
+    /**
+     * Find the regions of the frame that differ from the background, then update the background with the frame.
+     *
+     * @param frame
+     * @return Regions in frame pixel coordinates, empty if there's no background yet or nothing has changed.
+     */
+    public List<Rectangle> detect(BufferedImage frame) {
+
+        byte[] luma = LumaThumbnail.of(frame, GRID_WIDTH, GRID_HEIGHT);
+        List<Rectangle> regions = new ArrayList<Rectangle>();
+
+        if (background == null) {
+            background = new float[luma.length];
+
+            for (int i = 0; i < luma.length; i++) {
+                background[i] = luma[i] & 0xFF;
+            }
+
+            return regions;
+        }
+
+        boolean[] changed = new boolean[luma.length];
+
+        for (int i = 0; i < luma.length; i++) {
+            changed[i] = Math.abs((luma[i] & 0xFF) - background[i]) > NOISE_FLOOR;
+            background[i] += learningRate * ((luma[i] & 0xFF) - background[i]);
+        }
+
+        double cellWidth = (double) frame.getWidth() / GRID_WIDTH;
+        double cellHeight = (double) frame.getHeight() / GRID_HEIGHT;
+
+        for (Rectangle blob : blobs(changed)) {
+            Rectangle region = new Rectangle(
+                    (int) Math.floor(blob.x * cellWidth),
+                    (int) Math.floor(blob.y * cellHeight),
+                    (int) Math.ceil(blob.width * cellWidth),
+                    (int) Math.ceil(blob.height * cellHeight));
+
+            int padX = Math.max((int) (region.width * padding), (minSize - region.width + 1) / 2);
+            int padY = Math.max((int) (region.height * padding), (minSize - region.height + 1) / 2);
+            region.grow(padX, padY);
+
+            regions.add(region.intersection(new Rectangle(0, 0, frame.getWidth(), frame.getHeight())));
+        }
+
+        return merge(regions);
+    }
+
+    /**
+     * Proportion (0.0 - 1.0) of the frame covered by the regions, ignoring any overlap between them.
+     *
+     * @param regions
+     * @param width
+     * @param height
+     * @return
+     */
+    public static double coverage(List<Rectangle> regions, int width, int height) {
+        long area = 0;
+
+        for (Rectangle region : regions) {
+            area += (long) region.width * region.height;
+        }
+
+        return (double) area / ((long) width * height);
+    }
+
+    /**
+     * Bounding boxes (in grid cells) of each 8-connected group of changed cells.
+     */
+    private static List<Rectangle> blobs(boolean[] changed) {
+        List<Rectangle> blobs = new ArrayList<Rectangle>();
+        boolean[] visited = new boolean[changed.length];
+        int[] stack = new int[changed.length];
+
+        for (int start = 0; start < changed.length; start++) {
+            if (!changed[start] || visited[start]) {
+                continue;
+            }
+
+            int minX = GRID_WIDTH, minY = GRID_HEIGHT, maxX = -1, maxY = -1;
+            int cells = 0;
+            int top = 0;
+
+            stack[top++] = start;
+            visited[start] = true;
+
+            while (top > 0) {
+                int cell = stack[--top];
+                int x = cell % GRID_WIDTH;
+                int y = cell / GRID_WIDTH;
+
+                cells++;
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int nx = x + dx;
+                        int ny = y + dy;
+
+                        if (nx < 0 || ny < 0 || nx >= GRID_WIDTH || ny >= GRID_HEIGHT) {
+                            continue;
+                        }
+
+                        int neighbour = ny * GRID_WIDTH + nx;
+
+                        if (changed[neighbour] && !visited[neighbour]) {
+                            visited[neighbour] = true;
+                            stack[top++] = neighbour;
+                        }
+                    }
+                }
+            }
+
+            if (cells >= MIN_CELLS) {
+                blobs.add(new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1));
+            }
+        }
+
+        return blobs;
+    }
+
+    /**
+     * Merge overlapping regions (which padding often creates from nearby blobs of the same subject) until none
+     * overlap.
+     */
+    private static List<Rectangle> merge(List<Rectangle> regions) {
+        boolean merged = true;
+
+        while (merged) {
+            merged = false;
+
+            for (int i = 0; i < regions.size() && !merged; i++) {
+                for (int j = i + 1; j < regions.size() && !merged; j++) {
+                    if (regions.get(i).intersects(regions.get(j))) {
+                        regions.set(i, regions.get(i).union(regions.remove(j)));
+                        merged = true;
+                    }
+                }
+            }
+        }
+
+        return regions;
+    }
+
+}
@@ -0,0 +1,20 @@
+package detectatron;
+
+import java.io.File;
+
+/**
+ * Somewhere to store video events and keyframes long term - normally S3.
+ */
+public interface ObjectStore {
+
+    /**
+     * Store the file under the supplied key, returning only once it's been stored.
+     *
+     * @param key
+     * @param file
+     * @param customMetadata Optional metadata (tags) to store alongside the file, empty for none.
+     * @throws Exception if the file could not be stored, the upload queue will retry.
+     */
+    void put(String key, File file, String customMetadata) throws Exception;
+
+}
@@ -0,0 +1,230 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.Scalar;
+import org.bytedeco.javacpp.opencv_core.Size;
+import org.bytedeco.javacpp.opencv_dnn.Blob;
+import org.bytedeco.javacpp.opencv_dnn.Importer;
+import org.bytedeco.javacpp.opencv_dnn.Net;
+
+import javax.validation.ValidationException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.bytedeco.javacpp.opencv_core.CV_32F;
+import static org.bytedeco.javacpp.opencv_core.CV_32FC3;
+import static org.bytedeco.javacpp.opencv_core.subtract;
+import static org.bytedeco.javacpp.opencv_dnn.createCaffeImporter;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMREAD_COLOR;
+import static org.bytedeco.javacpp.opencv_imgcodecs.imdecode;
+import static org.bytedeco.javacpp.opencv_imgproc.INTER_AREA;
+import static org.bytedeco.javacpp.opencv_imgproc.resize;
+
+/**
+ * Detects labels locally on the CPU by running a Caffe image classification model through OpenCV's DNN module, so
+ * there's no network round-trip (or Rekognition bill) per frame.
+ *
+ * The labels file maps the model's output classes to Detectatron labels, one line per class in the model's class
+ * order. Each line holds the comma separated labels for that class (eg "Cat,Pet" for every breed of cat in an
+ * ImageNet model), or is left blank for classes we don't care about such as background. Where several classes map to
+ * the same label their probabilities are added together.
+ *
+ * A Net isn't thread safe, so images are classified one at a time.
+ */
+public class OpenCvLabelDetector implements LabelDetector, Closeable {
+
+    private static final Logger logger = Logger.getLogger("OpenCvLabelDetector");
+
+    // In OpenCV 3.1 the inputs declared by a Caffe model are named with a leading "."
+    private static final String INPUT_BLOB = ".data";
+
+    private final Net net;
+    private final String outputBlob;
+    private final List<List<String>> classLabels;
+    private final Size inputSize;
+    private final Mat meanImage;
+    private final double scale;
+    private final float minConfidence;
+
+    /**
+     * @param modelConfig   Caffe .prototxt describing the network
+     * @param modelWeights  Caffe .caffemodel with the trained weights (may be null for networks without weights)
+     * @param labelsFile    Labels for each of the model's output classes, see above
+     * @param outputBlob    Name of the layer holding the class probabilities, normally "prob"
+     * @param inputWidth    Size the model expects images to be scaled to
+     * @param inputHeight
+     * @param mean          Per channel (BGR) mean subtracted from each pixel
+     * @param scale         Multiplier applied to each pixel after the mean is subtracted
+     * @param minConfidence Minimum confidence (percentage) of labels returned
+     * @throws IOException
+     */
+    public OpenCvLabelDetector(
+            File modelConfig,
+            File modelWeights,
+            File labelsFile,
+            String outputBlob,
+            int inputWidth,
+            int inputHeight,
+            double[] mean,
+            double scale,
+            float minConfidence
+    ) throws IOException {
+        this.outputBlob = outputBlob;
+        this.inputSize = new Size(inputWidth, inputHeight);
+        this.meanImage = new Mat(inputHeight, inputWidth, CV_32FC3, new Scalar(mean[0], mean[1], mean[2], 0));
+        this.scale = scale;
+        this.minConfidence = minConfidence;
+        this.classLabels = readLabels(labelsFile);
+
+        if (!modelConfig.exists() || (modelWeights != null && !modelWeights.exists())) {
+            throw new IOException("Unable to find model " + modelConfig + (modelWeights == null ? "" : " / " + modelWeights));
+        }
+
+        Importer importer = createCaffeImporter(modelConfig.getPath(), modelWeights == null ? "" : modelWeights.getPath());
+
+        if (importer == null || importer.isNull()) {
+            throw new IOException("Unable to load model " + modelConfig);
+        }
+
+        this.net = new Net();
+        importer.populateNet(net);
+        importer.close();
+
+        logger.log(Level.INFO, "Loaded model " + modelConfig + " with " + classLabels.size() + " classes");
+    }
+
+    private static List<List<String>> readLabels(File labelsFile) throws IOException {
+        List<List<String>> classLabels = new ArrayList<List<String>>();
+
+        for (String line : Files.readAllLines(labelsFile.toPath(), StandardCharsets.UTF_8)) {
+            List<String> labels = new ArrayList<String>();
+
+            for (String label : line.split(",")) {
+                if (!label.trim().isEmpty()) {
+                    labels.add(label.trim());
+                }
+            }
+
+            classLabels.add(labels);
+        }
+
+        return classLabels;
+    }
+
+    @Override
+    public List<Label> detectLabels(byte[] imageBinary) {
+
+        // The native copies of the image are released as soon as we're done with them, rather than waiting for the
+        // garbage collector to get round to finalising them.
+        float[] probabilities;
+
+        BytePointer imageBytes = new BytePointer(imageBinary);
+        Mat encoded = new Mat(imageBytes);
+        Mat image = null;
+
+        try {
+            image = imdecode(encoded, IMREAD_COLOR);
+
+            if (image == null || image.empty()) {
+                throw new ValidationException("Unable to decode image for local label detection");
+            }
+
+            probabilities = classify(image);
+
+        } finally {
+            if (image != null) {
+                image.release();
+            }
+            encoded.release();
+            imageBytes.deallocate();
+        }
+
+        if (probabilities.length != classLabels.size()) {
+            logger.log(Level.WARNING, "Model returned " + probabilities.length + " classes but the labels file has " + classLabels.size());
+        }
+
+        // Add up the probability of each label across all the classes that map to it.
+        Map<String, Float> labelConfidence = new LinkedHashMap<String, Float>();
+
+        for (int i = 0; i < probabilities.length && i < classLabels.size(); i++) {
+            for (String label : classLabels.get(i)) {
+                labelConfidence.merge(label, probabilities[i] * 100, Float::sum);
+            }
+        }
+
+        List<Label> labels = new ArrayList<Label>();
+
+        for (Map.Entry<String, Float> entry : labelConfidence.entrySet()) {
+            if (entry.getValue() >= minConfidence) {
+                labels.add(new Label().withName(entry.getKey()).withConfidence(Math.min(100f, entry.getValue())));
+            }
+        }
+
+        // Most confident first, like Rekognition.
+        Collections.sort(labels, (a, b) -> Float.compare(b.getConfidence(), a.getConfidence()));
+
+        return labels;
+    }
+
+    private synchronized float[] classify(Mat image) {
+        Mat input = new Mat();
+        Blob inputBlob = null;
+        Blob output = null;
+
+        try {
+            resize(image, input, inputSize, 0, 0, INTER_AREA);
+            input.convertTo(input, CV_32F);
+            subtract(input, meanImage, input);
+
+            if (scale != 1.0) {
+                input.convertTo(input, CV_32F, scale, 0);
+            }
+
+            inputBlob = new Blob(input);
+            net.setBlob(INPUT_BLOB, inputBlob);
+            net.forward();
+
+            output = net.getBlob(outputBlob);
+            FloatPointer outputData = output.ptrf();
+
+            float[] probabilities = new float[(int) output.total()];
+            outputData.get(probabilities);
+
+            return probabilities;
+
+        } finally {
+            if (output != null) {
+                output.deallocate();
+            }
+            if (inputBlob != null) {
+                inputBlob.deallocate();
+            }
+            input.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        net.close();
+        meanImage.release();
+    }
+
+    @Override
+    public String toString() {
+        return "local model";
+    }
+
+}
@@ -0,0 +1,162 @@
+package detectatron;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings and counts for each stage of processing (decoding, encoding, categorisation, uploads etc), so we can tell
+ * where a slow request spent its time.
+ *
+ * Timers keep a count, total and max along with a histogram of durations over fixed buckets. The summary values are
+ * reported through the actuator /metrics endpoint, and the full histograms through /prometheus (see
+ * PrometheusEndpoint).
+ */
+@Component
+public class PipelineMetrics implements PublicMetrics {
+
+    // Upper bounds of the histogram buckets, in milliseconds.
+    static final long[] BUCKETS_MILLIS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    // The same bounds in nanoseconds, so durations are compared without being truncated to whole milliseconds.
+    private static final long[] BUCKETS_NANOS = new long[BUCKETS_MILLIS.length];
+
+    static {
+        for (int i = 0; i < BUCKETS_MILLIS.length; i++) {
+            BUCKETS_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BUCKETS_MILLIS[i]);
+        }
+    }
+
+    /**
+     * Durations of a single stage.
+     */
+    public static class Timer {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        // Count of durations falling in each bucket (not cumulative), with the last being anything over the top bucket.
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_MILLIS.length + 1);
+
+        /**
+         * Record the time since startNanos (from System.nanoTime()).
+         *
+         * @param startNanos
+         */
+        public void stop(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+
+            int bucket = 0;
+
+            while (bucket < BUCKETS_NANOS.length && nanos > BUCKETS_NANOS[bucket]) {
+                bucket++;
+            }
+
+            buckets.incrementAndGet(bucket);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * Number of durations that fell within each bucket, see BUCKETS_MILLIS.
+         *
+         * @return
+         */
+        public long[] getBucketCounts() {
+            long[] counts = new long[buckets.length()];
+
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+            }
+
+            return counts;
+        }
+    }
+
+    // Sorted so the output is stable.
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<String, Timer>();
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * The timer for the named stage, eg "video.decode".
+     *
+     * @param name
+     * @return
+     */
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, key -> new Timer());
+    }
+
+    /**
+     * Add to the named counter, eg "video.frames.sampled".
+     *
+     * @param name
+     * @param delta
+     */
+    public void increment(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public void increment(String name) {
+        increment(name, 1);
+    }
+
+    public Map<String, Timer> getTimers() {
+        return timers;
+    }
+
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new ConcurrentSkipListMap<String, Long>();
+
+        for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().get());
+        }
+
+        return values;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        for (Map.Entry<String, Timer> timer : timers.entrySet()) {
+            String name = "timer." + timer.getKey();
+
+            metrics.add(new Metric<Long>(name + ".count", timer.getValue().getCount()));
+            metrics.add(new Metric<Long>(name + ".total-ms", TimeUnit.NANOSECONDS.toMillis(timer.getValue().getTotalNanos())));
+            metrics.add(new Metric<Long>(name + ".max-ms", TimeUnit.NANOSECONDS.toMillis(timer.getValue().getMaxNanos())));
+        }
+
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            metrics.add(new Metric<Long>("counter." + counter.getKey(), counter.getValue()));
+        }
+
+        return metrics;
+    }
+
+}
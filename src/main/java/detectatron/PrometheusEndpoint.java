@@ -0,0 +1,128 @@
+package detectatron;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.endpoint.mvc.AbstractMvcEndpoint;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Actuator endpoint (/prometheus) exposing our metrics in the Prometheus text exposition format, so they can be
+ * scraped without anything else in between.
+ *
+ * The stage timers from PipelineMetrics are exported as histograms and its counters as counters. Everything else
+ * reported through /metrics is exported as a gauge, since we can't tell counters and gauges apart there.
+ */
+@Component
+@ConfigurationProperties(prefix = "endpoints.prometheus")
+public class PrometheusEndpoint extends AbstractMvcEndpoint {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
+    @Autowired
+    private Collection<PublicMetrics> publicMetrics;
+
+    public PrometheusEndpoint() {
+        super("/prometheus", true);
+    }
+
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public ResponseEntity<String> invoke() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(CONTENT_TYPE))
+                .body(render(pipelineMetrics, publicMetrics));
+    }
+
+    /**
+     * Render the supplied metrics in the Prometheus text format.
+     *
+     * @param pipelineMetrics
+     * @param publicMetrics   Any other metrics, which are exported as gauges. pipelineMetrics is skipped if present.
+     * @return
+     */
+    static String render(PipelineMetrics pipelineMetrics, Collection<PublicMetrics> publicMetrics) {
+        StringBuilder output = new StringBuilder();
+
+        String histogram = "detectatron_stage_duration_seconds";
+        output.append("# HELP ").append(histogram).append(" Time spent in each stage of processing.\n");
+        output.append("# TYPE ").append(histogram).append(" histogram\n");
+
+        for (Map.Entry<String, PipelineMetrics.Timer> timer : pipelineMetrics.getTimers().entrySet()) {
+            String stage = "stage=\"" + timer.getKey() + "\"";
+            long[] counts = timer.getValue().getBucketCounts();
+            long cumulative = 0;
+
+            for (int i = 0; i < PipelineMetrics.BUCKETS_MILLIS.length; i++) {
+                cumulative += counts[i];
+                output.append(histogram).append("_bucket{").append(stage)
+                        .append(",le=\"").append(PipelineMetrics.BUCKETS_MILLIS[i] / 1000.0).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+
+            output.append(histogram).append("_bucket{").append(stage).append(",le=\"+Inf\"} ")
+                    .append(timer.getValue().getCount()).append('\n');
+            output.append(histogram).append("_sum{").append(stage).append("} ")
+                    .append(timer.getValue().getTotalNanos() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+            output.append(histogram).append("_count{").append(stage).append("} ")
+                    .append(timer.getValue().getCount()).append('\n');
+        }
+
+        for (Map.Entry<String, Long> counter : pipelineMetrics.getCounters().entrySet()) {
+            String name = "detectatron_" + sanitise(counter.getKey()) + "_total";
+            output.append("# TYPE ").append(name).append(" counter\n");
+            output.append(name).append(' ').append(counter.getValue()).append('\n');
+        }
+
+        // Several beans may report the same metric (eg both label caches), only the first is exported.
+        Set<String> exported = new HashSet<String>();
+
+        for (PublicMetrics source : publicMetrics) {
+            if (source == pipelineMetrics) {
+                continue;
+            }
+
+            for (Metric<?> metric : source.metrics()) {
+                String name = sanitise(metric.getName());
+
+                if (metric.getValue() == null || !exported.add(name)) {
+                    continue;
+                }
+
+                output.append("# TYPE ").append(name).append(" gauge\n");
+                output.append(name).append(' ').append(metric.getValue().doubleValue()).append('\n');
+            }
+        }
+
+        return output.toString();
+    }
+
+    /**
+     * Metric names may only contain letters, digits, underscores and colons, and can't start with a digit.
+     */
+    static String sanitise(String name) {
+        String sanitised = name.replaceAll("[^a-zA-Z0-9_:]", "_");
+
+        if (!sanitised.isEmpty() && Character.isDigit(sanitised.charAt(0))) {
+            sanitised = "_" + sanitised;
+        }
+
+        return sanitised;
+    }
+
+}
@@ -0,0 +1,107 @@
+package detectatron;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.services.rekognition.AmazonRekognition;
+import com.amazonaws.services.rekognition.AmazonRekognitionClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds the single, shared AWS Rekognition client.
+ *
+ * The client is thread safe and holds the HTTP connection pool, so sharing one across all requests means we keep
+ * connections (and their TLS sessions) open between frames rather than doing a fresh TLS handshake for every frame.
+ *
+ * Calls to the client should be made through the shared AdaptiveRateLimiter, which keeps us within Rekognition's
+ * transactions per second limit across all requests.
+ */
+@Configuration
+public class RekognitionConfiguration {
+
+    private static final Logger logger = Logger.getLogger("RekognitionConfiguration");
+
+    @Value("${detectatron.rekognition.region:us-east-1}")
+    private String region;
+
+    // Optional endpoint override, otherwise the standard endpoint for the region is used.
+    @Value("${detectatron.rekognition.endpoint:}")
+    private String endpoint;
+
+    @Value("${detectatron.rekognition.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${detectatron.rekognition.connection-timeout-ms:10000}")
+    private int connectionTimeout;
+
+    @Value("${detectatron.rekognition.socket-timeout-ms:30000}")
+    private int socketTimeout;
+
+    @Value("${detectatron.rekognition.max-error-retry:3}")
+    private int maxErrorRetry;
+
+    // Rekognition's transactions per second limit for the account, and how many requests can be made at once after
+    // a quiet period.
+    @Value("${detectatron.rekognition.rate-limit:5}")
+    private double rateLimit;
+
+    @Value("${detectatron.rekognition.rate-limit-burst:5}")
+    private int rateLimitBurst;
+
+    // Concurrent requests start at the max, and back off towards the min whenever we get throttled.
+    @Value("${detectatron.rekognition.min-concurrency:1}")
+    private int minConcurrency;
+
+    @Value("${detectatron.rekognition.max-concurrency:10}")
+    private int maxConcurrency;
+
+    // How long a request will wait for its turn before giving up.
+    @Value("${detectatron.rekognition.max-wait-ms:60000}")
+    private long maxWait;
+
+    @Bean
+    public AdaptiveRateLimiter rekognitionRateLimiter() {
+        return new AdaptiveRateLimiter("aws.rekognition.limiter", rateLimit, rateLimitBurst, minConcurrency, maxConcurrency, maxWait);
+    }
+
+    @Bean
+    public AwsClientMetrics rekognitionClientMetrics(AdaptiveRateLimiter rekognitionRateLimiter) {
+        AwsClientMetrics clientMetrics = new AwsClientMetrics("aws.rekognition");
+
+        // Throttles the client retried internally still need to slow everyone down.
+        clientMetrics.setThrottleListener(rekognitionRateLimiter::throttled);
+
+        return clientMetrics;
+    }
+
+    @Bean
+    public AmazonRekognition amazonRekognition(AwsClientMetrics rekognitionClientMetrics) {
+
+        ClientConfiguration clientConfiguration = new ClientConfiguration()
+                .withMaxConnections(maxConnections)
+                .withConnectionTimeout(connectionTimeout)
+                .withSocketTimeout(socketTimeout)
+                .withTcpKeepAlive(true)
+                .withRetryPolicy(PredefinedRetryPolicies.getDefaultRetryPolicyWithCustomMaxRetries(maxErrorRetry));
+
+        String clientEndpoint = endpoint.isEmpty() ? "rekognition." + region + ".amazonaws.com" : endpoint;
+
+        AmazonRekognitionClient rekognitionClient = new AmazonRekognitionClient(
+                DefaultAWSCredentialsProviderChain.getInstance(),
+                clientConfiguration,
+                rekognitionClientMetrics
+        );
+        rekognitionClient.setEndpoint(clientEndpoint);
+        rekognitionClient.setSignerRegionOverride(region);
+
+        logger.log(Level.INFO, "Using AWS Rekognition endpoint " + clientEndpoint + " (" + region + ")");
+
+        return rekognitionClient;
+    }
+
+}
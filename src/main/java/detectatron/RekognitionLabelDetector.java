@@ -0,0 +1,96 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.AmazonRekognition;
+import com.amazonaws.services.rekognition.model.*;
+
+import javax.validation.ValidationException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Detects labels with AWS Rekognition.
+ */
+public class RekognitionLabelDetector implements LabelDetector {
+
+    private static final Logger logger = Logger.getLogger("RekognitionLabelDetector");
+
+    private final AmazonRekognition rekognitionClient;
+    private final AdaptiveRateLimiter rekognitionRateLimiter;
+
+    /**
+     * @param rekognitionClient      Shared client, see RekognitionConfiguration
+     * @param rekognitionRateLimiter Shared by everything calling Rekognition, see RekognitionConfiguration
+     */
+    public RekognitionLabelDetector(AmazonRekognition rekognitionClient, AdaptiveRateLimiter rekognitionRateLimiter) {
+        this.rekognitionClient = rekognitionClient;
+        this.rekognitionRateLimiter = rekognitionRateLimiter;
+    }
+
+    @Override
+    public List<Label> detectLabels(byte[] imageBinary) {
+
+        // Take the byte array and create an image object that we can pass directly into AWS.
+        //
+        // Note that this is limited to 5MB maximum size - anything larger needs to be stored in S3 first, however that
+        // will increase the price somewhat since then we'll be paying for an S3 transaction as well - so if it's under
+        // 5 MB, we really should just post it up directly.
+
+        // TODO: We need to properly detect and be able to handle > 5MB images. Interestingly, Rekognition doesn't
+        // actually appear to enforce the 5MB upload limit currently...
+
+        ByteBuffer imageByteBuffer = ByteBuffer.wrap(imageBinary);
+        Image imageObject = new Image();
+        imageObject.setBytes(imageByteBuffer);
+
+
+        // Send AWS a request for label detection for our image. We only care about the top 20 over 50% score.
+        logger.log(Level.INFO, "Sending image label request to AWS Rekognition");
+        DetectLabelsRequest request = new DetectLabelsRequest()
+                .withImage(imageObject)
+                .withMaxLabels(20)
+                .withMinConfidence(50F);
+
+        // Wait our turn, we share Rekognition's transactions per second limit with every other request.
+        AdaptiveRateLimiter.Permit permit;
+
+        try {
+            permit = rekognitionRateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValidationException("Interrupted whilst waiting to send request to AWS Rekognition");
+        }
+
+        if (permit == null) {
+            throw new ValidationException("Timed out waiting to send request to AWS Rekognition, too many requests queued");
+        }
+
+        if (permit.getWaitMillis() > 0) {
+            logger.log(Level.INFO, "Waited " + permit.getWaitMillis() + "ms for AWS Rekognition (queue position " + permit.getQueuePosition() + ")");
+        }
+
+        boolean throttled = false;
+
+        try {
+            DetectLabelsResult result = rekognitionClient.detectLabels(request);
+            return result.getLabels();
+
+        } catch (InvalidImageFormatException e) {
+            e.printStackTrace();
+            throw e;
+        } catch (AmazonRekognitionException e) {
+            throttled = AdaptiveRateLimiter.isThrottling(e);
+            e.printStackTrace();
+            throw new ValidationException("An unexpected fault occurred when interacting with AWS Rekognition");
+        } finally {
+            permit.release(throttled);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AWS Rekognition";
+    }
+
+}
@@ -0,0 +1,55 @@
+package detectatron;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.StorageClass;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerConfiguration;
+
+import java.io.File;
+
+/**
+ * Stores files in an S3 bucket. Uploads go through a TransferManager, so larger videos are uploaded as parallel
+ * multipart uploads rather than one long PUT.
+ */
+public class S3ObjectStore implements ObjectStore {
+
+    private final String s3Bucket;
+    private final TransferManager transferManager;
+
+    public S3ObjectStore(AmazonS3 s3Client, String s3Bucket, long multipartThresholdBytes) {
+        this.s3Bucket = s3Bucket;
+
+        TransferManagerConfiguration transferConfiguration = new TransferManagerConfiguration();
+        transferConfiguration.setMultipartUploadThreshold(multipartThresholdBytes);
+
+        this.transferManager = new TransferManager(s3Client);
+        this.transferManager.setConfiguration(transferConfiguration);
+    }
+
+    @Override
+    public void put(String key, File file, String customMetadata) throws Exception {
+
+        ObjectMetadata s3Meta = new ObjectMetadata();
+
+        if (!customMetadata.equals("")) {
+            s3Meta.setHeader("x-amz-meta-detectatron", customMetadata); // Optional tag
+        }
+
+        PutObjectRequest s3Request = new PutObjectRequest(s3Bucket, key, file).withMetadata(s3Meta);
+        s3Request.setStorageClass(StorageClass.StandardInfrequentAccess); // Save money - most of this stuff is store & forget.
+
+        transferManager.upload(s3Request).waitForCompletion();
+    }
+
+    public void shutdown() {
+        transferManager.shutdownNow(true);
+    }
+
+    @Override
+    public String toString() {
+        return "s3://" + s3Bucket;
+    }
+
+}
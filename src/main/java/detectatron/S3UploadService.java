@@ -1,57 +1,156 @@
 package detectatron;
 
-import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.PutObjectRequest;
-import com.amazonaws.services.s3.model.StorageClass;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Uploads a file into S3 with some handling around the requirements of Detectatron specifically.
+ *
+ * Uploads are queued on local disk and sent in the background (see UploadQueue), so a slow or unavailable S3 never
+ * holds up the response to the camera, and any uploads outstanding when Detectatron stops are resumed on startup.
  */
 @Service
-public class S3UploadService {
+public class S3UploadService implements PublicMetrics {
     private static final Logger logger = Logger.getLogger("S3UploadService");
 
-    private static final String s3Bucket = System.getenv("S3_BUCKET"); // todo we should be using spring configuration?
-    private static AmazonS3 s3Client = new AmazonS3Client();
+    @Autowired
+    private SpoolService spoolService;
 
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
 
-    public void uploader(String fileName, byte[] fileData, String customMetadata) {
+    // Bucket to upload into, falls back to the S3_BUCKET environment variable.
+    @Value("${detectatron.s3.bucket:${S3_BUCKET:}}")
+    private String s3Bucket;
 
-        if (s3Bucket == null) {
-            logger.log(Level.WARNING, "No S3 bucket configured, unable to upload "+ fileName);
-        } else {
-            logger.log(Level.INFO, "Uploading file to S3 bucket (s3://" + s3Bucket + "/" + fileName + ")...");
+    // Where uploads are stored: "s3", or "filesystem" to write them into a local directory instead.
+    @Value("${detectatron.upload.store:s3}")
+    private String storeType;
+
+    @Value("${detectatron.upload.filesystem.directory:}")
+    private String filesystemDirectory;
+
+    @Value("${detectatron.upload.workers:2}")
+    private int workers;
+
+    @Value("${detectatron.upload.queue-capacity:100}")
+    private int queueCapacity;
 
-            try {
-                InputStream fileBinaryStream = new ByteArrayInputStream(fileData);
+    @Value("${detectatron.upload.max-attempts:10}")
+    private int maxAttempts;
 
-                ObjectMetadata s3Meta = new ObjectMetadata();
-                s3Meta.setContentLength(fileData.length);
+    @Value("${detectatron.upload.retry-backoff-ms:5000}")
+    private long retryBackoffMillis;
 
-                if (!customMetadata.equals("")) {
-                    s3Meta.setHeader("x-amz-meta-detectatron", customMetadata); // Optional tag
+    // Files larger than this are uploaded to S3 as parallel multipart uploads.
+    @Value("${detectatron.upload.multipart-threshold-mb:16}")
+    private long multipartThresholdMb;
+
+    private ObjectStore objectStore;
+    private UploadQueue uploadQueue;
+
+    @PostConstruct
+    public void start() throws IOException {
+
+        switch (storeType) {
+            case "s3":
+                if (s3Bucket == null || s3Bucket.isEmpty()) {
+                    logger.log(Level.WARNING, "No S3 bucket configured, uploads are disabled");
+                    return;
                 }
 
-                PutObjectRequest s3Request = new PutObjectRequest(s3Bucket, fileName, fileBinaryStream, s3Meta);
-                s3Request.setStorageClass(StorageClass.StandardInfrequentAccess); // Save money - most of this stuff is store & forget.
+                objectStore = new S3ObjectStore(new AmazonS3Client(), s3Bucket, multipartThresholdMb * 1024 * 1024);
+                break;
+
+            case "filesystem":
+                if (filesystemDirectory == null || filesystemDirectory.isEmpty()) {
+                    objectStore = new FileSystemObjectStore(spoolService.directory("uploads-store"));
+                } else {
+                    objectStore = new FileSystemObjectStore(new File(filesystemDirectory));
+                }
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown detectatron.upload.store: " + storeType);
+        }
+
+        logger.log(Level.INFO, "Uploading events to " + objectStore);
+
+        uploadQueue = new UploadQueue(objectStore, spoolService.directory("upload-queue"),
+                workers, queueCapacity, maxAttempts, retryBackoffMillis);
+        uploadQueue.setMetrics(pipelineMetrics);
+        uploadQueue.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (uploadQueue != null) {
+            uploadQueue.shutdown();
+        }
+
+        if (objectStore instanceof S3ObjectStore) {
+            ((S3ObjectStore) objectStore).shutdown();
+        }
+    }
 
-                s3Client.putObject(s3Request);
+    public void uploader(String fileName, byte[] fileData, String customMetadata) {
 
-                logger.log(Level.INFO, "Upload completed");
+        if (uploadQueue == null) {
+            logger.log(Level.WARNING, "No S3 bucket configured, unable to upload "+ fileName);
+            return;
+        }
 
-            } catch (RuntimeException e) {
-                e.printStackTrace();
-                logger.log(Level.SEVERE, "An unexpected error occurred whilst uploading the file to S3");
-            }
+        try {
+            uploadQueue.enqueue(fileName, fileData, customMetadata);
+        } catch (IOException e) {
+            e.printStackTrace();
+            logger.log(Level.SEVERE, "An unexpected error occurred whilst queuing " + fileName + " for upload");
         }
     }
 
+    /**
+     * Upload a file from disk. The file is queued for upload before this returns, so the caller is free to remove
+     * it afterwards.
+     *
+     * @param fileName
+     * @param file
+     * @param customMetadata
+     */
+    public void uploader(String fileName, File file, String customMetadata) {
+
+        if (uploadQueue == null) {
+            logger.log(Level.WARNING, "No S3 bucket configured, unable to upload "+ fileName);
+            return;
+        }
+
+        try {
+            uploadQueue.enqueue(fileName, file, customMetadata);
+        } catch (IOException e) {
+            e.printStackTrace();
+            logger.log(Level.SEVERE, "An unexpected error occurred whilst queuing " + fileName + " for upload");
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        if (uploadQueue == null) {
+            return Collections.emptyList();
+        }
+
+        return uploadQueue.metrics();
+    }
+
 }
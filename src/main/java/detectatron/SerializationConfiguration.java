@@ -0,0 +1,24 @@
+package detectatron;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import java.util.List;
+
+/**
+ * Response serialisation. Controllers return objects (eg TagResponse) which are streamed straight to the response
+ * by Spring's message converters, using the application's shared Jackson ObjectMapper for JSON, rather than each
+ * request building its own ObjectMapper and JSON string.
+ *
+ * CBOR is added after the existing converters, so JSON remains the default unless the client asks for CBOR.
+ */
+@Configuration
+public class SerializationConfiguration extends WebMvcConfigurerAdapter {
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new CborHttpMessageConverter());
+    }
+
+}
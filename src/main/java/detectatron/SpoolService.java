@@ -0,0 +1,85 @@
+package detectatron;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Manages Detectatron's local spool directory, where uploaded files are written to disk whilst we work on them rather
+ * than being held in memory.
+ */
+@Service
+public class SpoolService {
+
+    private static final Logger logger = Logger.getLogger("SpoolService");
+
+    // Where to spool files, defaults to a detectatron directory under the system temp directory.
+    @Value("${detectatron.spool.directory:}")
+    private String spoolDirectory;
+
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
+    /**
+     * Return (creating if needed) the named directory inside the spool.
+     *
+     * @param name
+     * @return
+     * @throws IOException
+     */
+    public File directory(String name) throws IOException {
+
+        File base;
+
+        if (spoolDirectory == null || spoolDirectory.isEmpty()) {
+            base = new File(System.getProperty("java.io.tmpdir"), "detectatron");
+        } else {
+            base = new File(spoolDirectory);
+        }
+
+        File directory = new File(base, name);
+        Files.createDirectories(directory.toPath());
+
+        return directory;
+    }
+
+    /**
+     * Stream an uploaded file into the spool. The servlet container will have already written any large upload
+     * to its own temp file, so this is a disk to disk copy with a small fixed buffer no matter the size of the upload.
+     *
+     * @param upload
+     * @return
+     * @throws IOException
+     */
+    public SpooledFile spool(MultipartFile upload) throws IOException {
+
+        long startTime = System.nanoTime();
+        File file = File.createTempFile("upload-", ".tmp", directory("uploads"));
+
+        try (InputStream uploadStream = upload.getInputStream()) {
+            Files.copy(uploadStream, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            if (!file.delete()) {
+                logger.log(Level.WARNING, "Unable to remove partially spooled file " + file);
+            }
+            throw e;
+        }
+
+        pipelineMetrics.timer("multipart.read").stop(startTime);
+        pipelineMetrics.increment("multipart.read.bytes", file.length());
+
+        logger.log(Level.INFO, "Spooled " + upload.getOriginalFilename() + " (" + file.length() + " bytes) to " + file);
+
+        return new SpooledFile(file, upload.getOriginalFilename());
+    }
+
+}
@@ -0,0 +1,43 @@
+package detectatron;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An uploaded file that has been written into the spool directory. The file is removed once closed, so use with
+ * try-with-resources.
+ */
+public class SpooledFile implements Closeable {
+
+    private static final Logger logger = Logger.getLogger("SpooledFile");
+
+    private final File file;
+    private final String originalFilename;
+
+    public SpooledFile(File file, String originalFilename) {
+        this.file = file;
+        this.originalFilename = originalFilename;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    public long length() {
+        return file.length();
+    }
+
+    @Override
+    public void close() {
+        if (file.exists() && !file.delete()) {
+            logger.log(Level.WARNING, "Unable to remove spooled file " + file);
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package detectatron;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Server-Sent Events waiting to be sent to a client.
+ *
+ * Results are produced on shared threads (the async pool categorising frames and images, often whilst holding the
+ * video's pipeline lock), so rather than writing to the client there and then they're handed over through a bounded
+ * queue and sent by a thread of the stream's own. A slow client then only holds up its own sender, and if it falls too
+ * far behind, results are dropped rather than holding up the categorisation.
+ */
+public class SseEventQueue implements Runnable {
+
+    private static final Logger logger = Logger.getLogger("SseEventQueue");
+
+    // Marks the end of the stream.
+    private static final SseEmitter.SseEventBuilder END = SseEmitter.event();
+
+    private final SseEmitter emitter;
+    private final BlockingQueue<SseEmitter.SseEventBuilder> events;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param emitter
+     * @param capacity Max events waiting to be sent.
+     */
+    public SseEventQueue(SseEmitter emitter, int capacity) {
+        this.emitter = emitter;
+        this.events = new ArrayBlockingQueue<SseEmitter.SseEventBuilder>(Math.max(1, capacity) + 1);
+    }
+
+    /**
+     * Queue an event to send, without blocking.
+     *
+     * @param event
+     * @return False if the client has fallen too far behind and the event was dropped.
+     */
+    public boolean offer(SseEmitter.SseEventBuilder event) {
+        if (events.offer(event)) {
+            return true;
+        }
+
+        if (dropped.getAndIncrement() == 0) {
+            logger.log(Level.WARNING, "Client is too slow receiving streamed results, dropping results");
+        }
+
+        return false;
+    }
+
+    /**
+     * Queue the final event of the stream, waiting for room if need be. The stream is completed once it's sent.
+     *
+     * @param event
+     * @throws InterruptedException
+     */
+    public void finish(SseEmitter.SseEventBuilder event) throws InterruptedException {
+        events.put(event);
+        events.put(END);
+    }
+
+    /**
+     * Number of events dropped because the queue was full.
+     *
+     * @return
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Send queued events until the stream is finished.
+     */
+    @Override
+    public void run() {
+        boolean connected = true;
+
+        try {
+            while (true) {
+                SseEmitter.SseEventBuilder event = events.take();
+
+                if (event == END) {
+                    if (connected) {
+                        emitter.complete();
+                    }
+                    return;
+                }
+
+                if (!connected) {
+                    // Keep draining, so whoever is producing results never waits on a client that's gone.
+                    continue;
+                }
+
+                try {
+                    emitter.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    // Client has most likely gone away, results still end up in the cache.
+                    logger.log(Level.INFO, "Unable to stream result: " + e.getMessage());
+                    connected = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            emitter.completeWithError(e);
+        }
+    }
+
+}
@@ -1,13 +1,32 @@
 package detectatron;
 
 import com.amazonaws.services.rekognition.model.InvalidImageFormatException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.SettableListenableFuture;
 import org.springframework.web.bind.annotation.*;
-
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -15,7 +34,12 @@ import java.util.logging.Level;
 import org.springframework.web.multipart.MultipartFile;
 
 /**
- * Accepts an image via POST and returns a JSON object with scoring information.
+ * Accepts an image via POST and returns a JSON object with scoring information (see TagResponse), or CBOR if the client
+ * asks for it with "Accept: application/cbor".
+ *
+ * Several images can be tagged in one request with /tag/images. Videos can also be POSTed to /tag/video/stream, which
+ * returns Server-Sent Events with the tags of each frame as soon as it's categorised, rather than waiting for the whole
+ * video.
  */
 @RestController
 @EnableAutoConfiguration
@@ -33,6 +57,57 @@ public class TagController {
     @Autowired
     ArmingService myArmingService;
 
+    @Autowired
+    SpoolService mySpoolService;
+
+    @Autowired
+    KeyFrameStore myKeyFrameStore;
+
+    @Autowired
+    CameraIdentifier myCameraIdentifier;
+
+    // Response schema returned unless the client asks for another with the schema parameter - 2 for TagResponse, or 1
+    // for the original TagModel (including the keyframe).
+    @Value("${detectatron.response.schema:2}")
+    private int defaultSchema;
+
+    // Max videos (and image batches) being streamed at once, each one holds a thread for the duration of the video.
+    @Value("${detectatron.video.stream-workers:4}")
+    private int streamWorkers;
+
+    // How long a client is given to receive the results of a streamed video before we give up on them.
+    @Value("${detectatron.video.stream-timeout-ms:300000}")
+    private long streamTimeoutMillis;
+
+    // Max frame results of a streamed video waiting to be sent to the client before further ones are dropped.
+    @Value("${detectatron.video.stream-queue-capacity:100}")
+    private int streamQueueCapacity;
+
+    // Max images in a single /tag/images batch, and max size of each image in the batch.
+    @Value("${detectatron.tag.batch-max-images:100}")
+    private int batchMaxImages;
+
+    @Value("${detectatron.tag.batch-max-image-bytes:5242880}")
+    private int batchMaxImageBytes;
+
+    private ThreadPoolExecutor streamExecutor;
+
+    // Sends the results of each streamed video (see SseEventQueue). Only as many videos as there are stream workers are
+    // processed at once, so there's always a sender free for each of them.
+    private ExecutorService streamSendExecutor;
+
+    @PostConstruct
+    public void start() {
+        streamExecutor = new ThreadPoolExecutor(streamWorkers, streamWorkers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(streamWorkers), new CustomizableThreadFactory("DetectatronStream-"));
+        streamSendExecutor = Executors.newFixedThreadPool(streamWorkers, new CustomizableThreadFactory("DetectatronStreamSend-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        streamExecutor.shutdownNow();
+        streamSendExecutor.shutdownNow();
+    }
 
 
     @RequestMapping(value = "/tag", method = RequestMethod.GET)
@@ -41,13 +116,17 @@ public class TagController {
     }
 
     @RequestMapping(value = "/tag/image", method = RequestMethod.POST)
-    public ResponseEntity<String> tagImage(
-            @RequestParam("file") MultipartFile imageFile
+    public ResponseEntity<?> tagImage(
+            @RequestParam("file") MultipartFile imageFile,
+            @RequestParam(value = "camera", required = false) String cameraParam,
+            @RequestParam(value = "schema", required = false) Integer schema
         ) {
 
         logger.log(Level.INFO, "Received binary image for processing");
 
-        if (myArmingService.armed == false) {
+        String camera = myCameraIdentifier.identify(cameraParam, imageFile.getOriginalFilename());
+
+        if (!myArmingService.isArmed(camera)) {
             logger.log(Level.INFO, "Discarding request, Detectatron is currently disarmed.");
             return ResponseEntity.status(HttpStatus.METHOD_NOT_ALLOWED).body("Detectatron is disarmed, not accepting images for tagging");
         }
@@ -63,13 +142,14 @@ public class TagController {
         }
 
 
+        if (!isValidSchema(schema)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Unknown response schema, use 1 or 2.\n");
+        }
+
         // Process result
         try {
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            String tagsAsJSON = objectMapper.writeValueAsString(myImageTagService.process(imageBinary));
-
-            return ResponseEntity.ok(tagsAsJSON);
+            return ResponseEntity.ok(responseBody(myImageTagService.process(imageBinary), schema, TagResponse.KeyFrameMode.NONE));
 
         } catch (InvalidImageFormatException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("An invalid image format was supplied - use JPG or PNG only");
@@ -81,33 +161,214 @@ public class TagController {
 
     }
 
+    /**
+     * Tag a batch of images, POSTed as several "file" parts or as a zip archive in an "archive" part. The images are
+     * categorised concurrently and the results returned together, in the order the images were supplied. Each image
+     * has its own status, so one bad image doesn't fail the rest of the batch.
+     */
+    @RequestMapping(value = "/tag/images", method = RequestMethod.POST)
+    public ResponseEntity<?> tagImages(
+            @RequestParam(value = "file", required = false) MultipartFile[] imageFiles,
+            @RequestParam(value = "archive", required = false) MultipartFile archive,
+            @RequestParam(value = "camera", required = false) String cameraParam,
+            @RequestParam(value = "schema", required = false) Integer schema
+    ) {
+        logger.log(Level.INFO, "Received batch of images for processing");
+
+        String camera = myCameraIdentifier.identify(cameraParam, null);
+
+        if (!myArmingService.isArmed(camera)) {
+            logger.log(Level.INFO, "Discarding request, Detectatron is currently disarmed.");
+            return ResponseEntity.status(HttpStatus.METHOD_NOT_ALLOWED).body("Detectatron is disarmed, not accepting images for tagging");
+        }
+
+        if (!isValidSchema(schema)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Unknown response schema, use 1 or 2.\n");
+        }
+
+        List<ImageBatch.Image> images;
+
+        try {
+            images = ImageBatch.read(imageFiles, archive, batchMaxImages, batchMaxImageBytes);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage() + "\n");
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Binary images or a zip archive of images must be POSTed to this endpoint.\n");
+        }
+
+        logger.log(Level.INFO, "Processing batch of " + images.size() + " images");
+
+        // Fan out across the shared async pool, then collect the results in order.
+        List<ListenableFuture<TagModel>> futures = submitBatch(images);
+        List<ImageBatch.Result> results = new ArrayList<ImageBatch.Result>();
+
+        for (int i = 0; i < images.size(); i++) {
+            ImageBatch.Image image = images.get(i);
+
+            try {
+                results.add(ImageBatch.Result.success(image, responseBody(futures.get(i).get(), schema, TagResponse.KeyFrameMode.NONE)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Interrupted whilst categorising the images.\n");
+            } catch (Exception e) {
+                results.add(ImageBatch.Result.failure(image, e));
+            }
+        }
+
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Tag a batch of images as per /tag/images, streaming each image's result back as a Server-Sent Event as soon as
+     * it's categorised:
+     *
+     *  image - The result of an image (see ImageBatch.Result), in the order they complete.
+     *  done  - All images have been categorised.
+     */
+    @RequestMapping(value = "/tag/images/stream", method = RequestMethod.POST)
+    public ResponseEntity<SseEmitter> tagImagesStream(
+            @RequestParam(value = "file", required = false) MultipartFile[] imageFiles,
+            @RequestParam(value = "archive", required = false) MultipartFile archive,
+            @RequestParam(value = "camera", required = false) String cameraParam,
+            @RequestParam(value = "schema", required = false) Integer schema
+    ) {
+        logger.log(Level.INFO, "Received batch of images for streamed processing");
+
+        String camera = myCameraIdentifier.identify(cameraParam, null);
+
+        if (!myArmingService.isArmed(camera)) {
+            logger.log(Level.INFO, "Discarding request, Detectatron is currently disarmed.");
+            return ResponseEntity.status(HttpStatus.METHOD_NOT_ALLOWED).body(errorStream("Detectatron is disarmed, not accepting images for tagging"));
+        }
+
+        if (!isValidSchema(schema)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorStream("Unknown response schema, use 1 or 2."));
+        }
+
+        List<ImageBatch.Image> images;
+
+        try {
+            images = ImageBatch.read(imageFiles, archive, batchMaxImages, batchMaxImageBytes);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorStream(e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorStream("Binary images or a zip archive of images must be POSTed to this endpoint."));
+        }
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        AtomicInteger remaining = new AtomicInteger(images.size());
+
+        // Callbacks run on the async pool, so results are handed to a sender rather than written to the client there,
+        // see SseEventQueue. There's room for every result, so none are dropped.
+        SseEventQueue events = new SseEventQueue(emitter, images.size() + 1);
+
+        try {
+            streamExecutor.execute(events);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorStream("Too many streams in progress, try again later."));
+        }
+
+        List<ListenableFuture<TagModel>> futures = submitBatch(images);
+
+        for (int i = 0; i < images.size(); i++) {
+            ImageBatch.Image image = images.get(i);
+
+            futures.get(i).addCallback(new ListenableFutureCallback<TagModel>() {
+                @Override
+                public void onSuccess(TagModel tags) {
+                    send(ImageBatch.Result.success(image, responseBody(tags, schema, TagResponse.KeyFrameMode.NONE)));
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    send(ImageBatch.Result.failure(image, e));
+                }
+
+                private void send(ImageBatch.Result result) {
+                    events.offer(SseEmitter.event()
+                            .name("image")
+                            .id(Integer.toString(result.index))
+                            .data(result, MediaType.APPLICATION_JSON));
+
+                    if (remaining.decrementAndGet() == 0) {
+                        try {
+                            events.finish(SseEmitter.event().name("done").data(""));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            });
+        }
+
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * Queue each image of the batch on the shared async pool. Images that can't be queued get a failed future rather
+     * than failing the batch.
+     */
+    private List<ListenableFuture<TagModel>> submitBatch(List<ImageBatch.Image> images) {
+        List<ListenableFuture<TagModel>> futures = new ArrayList<ListenableFuture<TagModel>>();
+
+        for (ImageBatch.Image image : images) {
+            try {
+                futures.add(myImageTagService.processAsync(image.data));
+            } catch (TaskRejectedException e) {
+                SettableListenableFuture<TagModel> rejected = new SettableListenableFuture<TagModel>();
+                rejected.setException(e);
+                futures.add(rejected);
+            }
+        }
+
+        return futures;
+    }
+
+    /**
+     * Tag a video. The keyframe is left out of the response unless asked for with keyframe=inline, or keyframe=ref
+     * for a path to fetch it from.
+     */
     @RequestMapping(value = "/tag/video", method = RequestMethod.POST)
-    public ResponseEntity<String> tagVideo(
-            @RequestParam("file") MultipartFile videoFile
+    public ResponseEntity<?> tagVideo(
+            @RequestParam("file") MultipartFile videoFile,
+            @RequestParam(value = "camera", required = false) String cameraParam,
+            @RequestParam(value = "schema", required = false) Integer schema,
+            @RequestParam(value = "keyframe", defaultValue = "none") String keyframe
     ) {
         logger.log(Level.INFO, "Received binary video for processing");
 
-        if (myArmingService.armed == false) {
+        String camera = myCameraIdentifier.identify(cameraParam, videoFile.getOriginalFilename());
+
+        if (!myArmingService.isArmed(camera)) {
             logger.log(Level.INFO, "Discarding request, Detectatron is currently disarmed.");
             return ResponseEntity.status(HttpStatus.METHOD_NOT_ALLOWED).body("Detectatron is disarmed, not accepting videos for tagging");
         }
 
-        // Convert the image from MultiPart form to actual binary data (and make sure we actually got a damn image).
-        byte[] videoBinary;
+        TagResponse.KeyFrameMode keyFrameMode;
+
+        try {
+            keyFrameMode = TagResponse.KeyFrameMode.valueOf(keyframe.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Unknown keyframe mode, use none, inline or ref.\n");
+        }
+
+        if (!isValidSchema(schema)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Unknown response schema, use 1 or 2.\n");
+        }
+
+        // Spool the video from the MultiPart form to disk (and make sure we actually got a damn video).
+        SpooledFile videoSpool;
 
         try {
             logger.log(Level.INFO, "Processing file: " + videoFile.getOriginalFilename());
-            videoBinary = videoFile.getBytes();
+            videoSpool = mySpoolService.spool(videoFile);
         } catch (java.io.IOException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("A binary video must be POSTed to this endpoint.\n");
         }
 
         // Process result
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            String tagsAsJSON = objectMapper.writeValueAsString(myVideoTagService.process(videoBinary));
-
-            return ResponseEntity.ok(tagsAsJSON);
+        try (SpooledFile spooledVideo = videoSpool) {
+            return ResponseEntity.ok(responseBody(myVideoTagService.process(spooledVideo.getFile(), camera, null), schema, keyFrameMode));
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -115,4 +376,125 @@ public class TagController {
         }
     }
 
+    /**
+     * Tag a video, streaming the results back as Server-Sent Events:
+     *
+     *  frame   - The tags of each frame as it's categorised (see FrameResult), in the order they complete.
+     *  summary - The tags of the whole video (as per /tag/video), once processing is complete.
+     *  error   - Processing failed, sent instead of the summary.
+     */
+    @RequestMapping(value = "/tag/video/stream", method = RequestMethod.POST)
+    public ResponseEntity<SseEmitter> tagVideoStream(
+            @RequestParam("file") MultipartFile videoFile,
+            @RequestParam(value = "camera", required = false) String cameraParam
+    ) {
+        logger.log(Level.INFO, "Received binary video for streamed processing");
+
+        String camera = myCameraIdentifier.identify(cameraParam, videoFile.getOriginalFilename());
+
+        if (!myArmingService.isArmed(camera)) {
+            logger.log(Level.INFO, "Discarding request, Detectatron is currently disarmed.");
+            return ResponseEntity.status(HttpStatus.METHOD_NOT_ALLOWED).body(errorStream("Detectatron is disarmed, not accepting videos for tagging"));
+        }
+
+        // Spool the video from the MultiPart form to disk whilst we've still got the request.
+        SpooledFile videoSpool;
+
+        try {
+            logger.log(Level.INFO, "Processing file: " + videoFile.getOriginalFilename());
+            videoSpool = mySpoolService.spool(videoFile);
+        } catch (java.io.IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorStream("A binary video must be POSTed to this endpoint."));
+        }
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+
+        try {
+            streamExecutor.execute(() -> {
+                // Frame results are handed to a sender rather than written to the client from the async pool thread
+                // that categorised the frame, see SseEventQueue.
+                SseEventQueue events = new SseEventQueue(emitter, streamQueueCapacity);
+                streamSendExecutor.execute(events);
+
+                try {
+                    try (SpooledFile spooledVideo = videoSpool) {
+
+                        TagModel videoTags = myVideoTagService.process(spooledVideo.getFile(), camera, frameResult ->
+                                events.offer(SseEmitter.event()
+                                        .name("frame")
+                                        .id(Integer.toString(frameResult.frameNumber))
+                                        .data(frameResult, MediaType.APPLICATION_JSON)));
+
+                        events.finish(SseEmitter.event()
+                                .name("summary")
+                                .data(responseBody(videoTags, null, TagResponse.KeyFrameMode.NONE), MediaType.APPLICATION_JSON));
+
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        events.finish(SseEmitter.event().name("error").data("A failure occurred when categorising the video"));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    emitter.completeWithError(e);
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+            videoSpool.close();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorStream("Too many videos being streamed, try again later."));
+        }
+
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * Fetch the keyframe of a recently tagged video, as referenced by a keyFrameRef in its tags.
+     */
+    @RequestMapping(value = "/tag/keyframe/{id}", method = RequestMethod.GET)
+    public ResponseEntity<?> keyFrame(
+            @PathVariable("id") String id
+    ) {
+        byte[] keyFrame = myKeyFrameStore.get(id);
+
+        if (keyFrame == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No such keyframe, it may have expired.\n");
+        }
+
+        return ResponseEntity.ok().contentType(MediaType.IMAGE_JPEG).body(keyFrame);
+    }
+
+    private boolean isValidSchema(Integer schema) {
+        return schema == null || schema == 1 || schema == TagResponse.SCHEMA;
+    }
+
+    /**
+     * The tags in the requested response schema, written out by the message converters (see
+     * SerializationConfiguration).
+     */
+    private Object responseBody(TagModel tags, Integer schema, TagResponse.KeyFrameMode keyFrameMode) {
+        if ((schema == null ? defaultSchema : schema) == 1) {
+            return tags;
+        }
+
+        return TagResponse.of(tags, keyFrameMode, myKeyFrameStore);
+    }
+
+    /**
+     * A stream consisting of just an error event.
+     */
+    private SseEmitter errorStream(String message) {
+        SseEmitter emitter = new SseEmitter();
+
+        try {
+            emitter.send(SseEmitter.event().name("error").data(message));
+        } catch (IOException e) {
+            // Only buffered until the response starts, so can't actually fail here.
+        }
+
+        emitter.complete();
+        return emitter;
+    }
+
 }
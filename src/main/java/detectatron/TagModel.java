@@ -1,26 +1,69 @@
 package detectatron;
 
+import com.amazonaws.services.rekognition.model.BoundingBox;
 import com.amazonaws.services.rekognition.model.Label;
-import com.google.gson.JsonObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * Created by jethro on 21/01/17.
+ * The labels detected in an image or video.
+ *
+ * Labels are indexed by name as they're imported, so merging the labels from each frame of a video only costs work
+ * proportional to the number of new labels, no matter how many frames have already been merged. The lists returned
+ * are read-only views in the order each label was first seen.
  */
 public class TagModel {
 
-    public List<Label> rawLabels = new ArrayList<Label>();
-    public List<Label> keyLabels = new ArrayList<Label>();
-    public List<String> allTags = new ArrayList<String>();
-    public List<String> keyTags = new ArrayList<String>();
+    private final KeyLabelSet keyLabelSet;
+
+    // The highest confidence version of each label, with the position of each label name in the list.
+    private final List<Label> rawLabels = new ArrayList<Label>();
+    private final Map<String, Integer> rawLabelIndex = new HashMap<String, Integer>();
+
+    // The subset of labels that are key labels.
+    private final List<Label> keyLabels = new ArrayList<Label>();
+    private final Map<String, Integer> keyLabelIndex = new HashMap<String, Integer>();
+
+    private final List<String> allTags = new ArrayList<String>();
+    private final List<String> keyTags = new ArrayList<String>();
+
+    // Where in the video each label was found, when only regions of frames were categorised.
+    private final List<LabelRegion> labelRegions = new ArrayList<LabelRegion>();
+
     public byte[] keyFrameData;
 
+    // When tagging video with a keyframe strip configured, a JPEG of the best few frames side by side in the order
+    // they appear in the video (see KeyFrameSelector).
+    public byte[] keyFrameStripData;
+
+    // When tagging video, the number of sampled frames sent for categorisation vs skipped due to lack of change.
+    public int framesForwarded;
+    public int framesSkipped;
+
+    // When tagging video, how frames were sent for categorisation: FRAME, CROPS or MOSAIC (see FrameRegionMode), or
+    // BATCH when several frames are tiled into each request (see FrameBatch), along with the max frames per request
+    // and the number of requests actually sent.
+    public String submissionMode;
+    public int framesPerRequest = 1;
+    public int requestsSent;
+
     /**
      * Instantiation with no data is acceptable.
      */
     public TagModel() {
+        this(KeyLabelSet.DEFAULT);
+    }
+
+    /**
+     * Instantiate with a specific set of key labels.
+     * @param keyLabelSet
+     */
+    public TagModel(KeyLabelSet keyLabelSet) {
+        this.keyLabelSet = keyLabelSet;
     }
 
     /**
@@ -28,94 +71,111 @@ public class TagModel {
      * @param rekognitionLabels
      */
     public TagModel(List<Label> rekognitionLabels) {
+        this(rekognitionLabels, KeyLabelSet.DEFAULT);
+    }
+
+    /**
+     * Create new object using labels provided from Rekognition and a specific set of key labels.
+     * @param rekognitionLabels
+     * @param keyLabelSet
+     */
+    public TagModel(List<Label> rekognitionLabels, KeyLabelSet keyLabelSet) {
+        this(keyLabelSet);
         importLabels(rekognitionLabels);
     }
 
     /**
      * Import additional labels from AWS rekognition.
+     *
+     * We import only the highest confidence version of any given label - we are only interested in what items we
+     * are sure was in the video.
+     *
      * @param rekognitionLabels
      */
     public void importLabels(List<Label> rekognitionLabels) {
 
-        // Import only the highest confidence version of any given label - we are only interested in what items we
-        // are sure was in the video.
-        //
-        // TOOD: is there a better way of doing this? This is a pretty evil for loop where we use the index to avoid
-        // throwing a ConcurrentModificationException
-        loopImport:
-        for (Label importLabel: rekognitionLabels) {
-
-            loopRaw:
-            for (int i =0; i < rawLabels.size(); i++) {
-                Label currentLabel = rawLabels.get(i);
-
-                if (currentLabel.getName().equals(importLabel.getName())) {
-                    if (importLabel.getConfidence() > currentLabel.getConfidence()) {
-                        // Remove the existing label to make room for the new one
-                        rawLabels.remove(i);
-                        break loopRaw;
-                    }
-                    else
-                    {
-                        // New label is lower confidence, ignore and jump to the next one to process.
-                        continue loopImport;
-                    }
+        for (Label importLabel : rekognitionLabels) {
+            String name = importLabel.getName();
+            Integer position = rawLabelIndex.get(name);
+
+            if (position == null) {
+                // New label
+                rawLabelIndex.put(name, rawLabels.size());
+                rawLabels.add(importLabel);
+                allTags.add(name);
+
+                if (keyLabelSet.contains(name)) {
+                    keyLabelIndex.put(name, keyLabels.size());
+                    keyLabels.add(importLabel);
+                    keyTags.add(name);
                 }
-            }
 
-            rawLabels.add(importLabel);
-        }
+            } else if (importLabel.getConfidence() > rawLabels.get(position).getConfidence()) {
+                // More confident than the version we already have, replace it.
+                rawLabels.set(position, importLabel);
 
-        // Extract useful data
-        extractKeyLabels();
-        extractTagsOnly();
+                Integer keyPosition = keyLabelIndex.get(name);
+                if (keyPosition != null) {
+                    keyLabels.set(keyPosition, importLabel);
+                }
+            }
+        }
     }
 
     /**
-     * Extract key labels we care about.
+     * Record that the labels were found within the given regions of a video frame.
+     *
+     * @param frameNumber
+     * @param labels
+     * @param regions     Bounding boxes as ratios of the frame dimensions.
      */
-    private void extractKeyLabels() {
-
-        // Reset current key labels
-        keyLabels = new ArrayList<Label>();
-
-        // Add all interesting labels from the raw data.
-        for (Label label: rawLabels) {
-            String labelName = label.getName().toLowerCase();
-
-            switch (labelName) {
-
-                case "people":
-                case "person":
-                case "cat":
-                case "pet":
-                    keyLabels.add(label);
-                    break;
-
-                default:
-                    // Nothing todo if we don't match
-                    break;
+    public void importLabelRegions(int frameNumber, List<Label> labels, List<BoundingBox> regions) {
+        for (BoundingBox region : regions) {
+            for (Label label : labels) {
+                labelRegions.add(new LabelRegion(label.getName(), label.getConfidence(), frameNumber, region));
             }
         }
     }
 
     /**
-     * Create list of strings of the main tags.
+     * Highest confidence seen for the named label, or null if the label hasn't been seen.
+     *
+     * @param labelName
+     * @return
      */
-    private void extractTagsOnly() {
+    public Float getConfidence(String labelName) {
+        Integer position = rawLabelIndex.get(labelName);
+        return position == null ? null : rawLabels.get(position).getConfidence();
+    }
 
-        for (Label label: rawLabels) {
-            if (!allTags.contains(label.getName())) {
-                allTags.add(label.getName());
-            }
-        }
+    /**
+     * Whether the named label counts as a key label for this image or video.
+     *
+     * @param labelName
+     * @return
+     */
+    public boolean isKeyLabel(String labelName) {
+        return keyLabelSet.contains(labelName);
+    }
 
-        for (Label label: keyLabels) {
-            if (!keyTags.contains(label.getName())) {
-                keyTags.add(label.getName());
-            }
-        }
+    public List<Label> getRawLabels() {
+        return Collections.unmodifiableList(rawLabels);
+    }
+
+    public List<Label> getKeyLabels() {
+        return Collections.unmodifiableList(keyLabels);
     }
 
+    public List<String> getAllTags() {
+        return Collections.unmodifiableList(allTags);
+    }
+
+    public List<LabelRegion> getLabelRegions() {
+        return Collections.unmodifiableList(labelRegions);
+    }
+
+    public List<String> getKeyTags() {
+        return Collections.unmodifiableList(keyTags);
+    }
 
 }
@@ -0,0 +1,116 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tags of an image or video as returned by /tag/image and /tag/video. This is schema version 2 - version 1 was
+ * the TagModel itself, which is still returned to clients that ask for it with schema=1.
+ *
+ * Compared to version 1, label confidences are a single map rather than repeated Label objects, video statistics are
+ * grouped together (and left out for images), and the keyframe is left out unless asked for - either inline, or as a
+ * reference to fetch it separately from GET /tag/keyframe/{id} (see KeyFrameStore).
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TagResponse {
+
+    public static final int SCHEMA = 2;
+
+    /**
+     * How the keyframe is returned, if at all.
+     */
+    public enum KeyFrameMode {
+        NONE,
+        INLINE,
+        REF
+    }
+
+    /**
+     * How frames of a video were sent for categorisation, see TagModel.
+     */
+    public static class Video {
+        public final int framesForwarded;
+        public final int framesSkipped;
+        public final String submissionMode;
+        public final int framesPerRequest;
+        public final int requestsSent;
+
+        Video(TagModel tags) {
+            this.framesForwarded = tags.framesForwarded;
+            this.framesSkipped = tags.framesSkipped;
+            this.submissionMode = tags.submissionMode;
+            this.framesPerRequest = tags.framesPerRequest;
+            this.requestsSent = tags.requestsSent;
+        }
+    }
+
+    public final int schema = SCHEMA;
+
+    public final List<String> allTags;
+    public final List<String> keyTags;
+
+    // Highest confidence seen for each tag, in the order of allTags.
+    public final Map<String, Float> confidence;
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public final List<LabelRegion> labelRegions;
+
+    // Only for videos.
+    public final Video video;
+
+    // JPEG of the keyframe, only if asked for inline (base64 encoded in JSON, raw bytes in CBOR).
+    public final byte[] keyFrame;
+
+    // Path to fetch the keyframe from, only if asked for by reference.
+    public final String keyFrameRef;
+
+    // As per keyFrame and keyFrameRef, for the strip of the best frames if one was made.
+    public final byte[] keyFrameStrip;
+    public final String keyFrameStripRef;
+
+    private TagResponse(TagModel tags, byte[] keyFrame, String keyFrameRef, byte[] keyFrameStrip, String keyFrameStripRef) {
+        this.allTags = tags.getAllTags();
+        this.keyTags = tags.getKeyTags();
+        this.labelRegions = tags.getLabelRegions();
+        this.video = tags.submissionMode == null ? null : new Video(tags);
+        this.keyFrame = keyFrame;
+        this.keyFrameRef = keyFrameRef;
+        this.keyFrameStrip = keyFrameStrip;
+        this.keyFrameStripRef = keyFrameStripRef;
+
+        this.confidence = new LinkedHashMap<String, Float>();
+
+        for (Label label : tags.getRawLabels()) {
+            this.confidence.put(label.getName(), label.getConfidence());
+        }
+    }
+
+    /**
+     * Build the response for the tags.
+     *
+     * @param tags
+     * @param keyFrameMode
+     * @param keyFrameStore Holds the keyframe when returned by reference.
+     * @return
+     */
+    public static TagResponse of(TagModel tags, KeyFrameMode keyFrameMode, KeyFrameStore keyFrameStore) {
+        if (keyFrameMode == KeyFrameMode.INLINE) {
+            return new TagResponse(tags, tags.keyFrameData, null, tags.keyFrameStripData, null);
+        }
+
+        if (keyFrameMode == KeyFrameMode.REF) {
+            return new TagResponse(tags, null, ref(tags.keyFrameData, keyFrameStore), null, ref(tags.keyFrameStripData, keyFrameStore));
+        }
+
+        return new TagResponse(tags, null, null, null, null);
+    }
+
+    private static String ref(byte[] image, KeyFrameStore keyFrameStore) {
+        return image == null ? null : "/tag/keyframe/" + keyFrameStore.put(image);
+    }
+
+}
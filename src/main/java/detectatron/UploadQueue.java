@@ -0,0 +1,342 @@
+package detectatron;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Uploads files into an ObjectStore in the background.
+ *
+ * Every upload is first written to a local spool directory as a data file plus a small JSON journal entry, so that
+ * queued uploads survive a restart and are picked up again by start(). A fixed pool of workers then uploads from the
+ * spool, retrying failures with exponential backoff. Uploads that still fail after the max number of attempts are
+ * moved into a "failed" directory for someone to look at.
+ *
+ * The in-memory queue is bounded. If it's full the upload remains in the spool and is picked up by the periodic sweep
+ * once the workers catch up, so a slow or unavailable store never blocks the caller.
+ */
+public class UploadQueue implements PublicMetrics {
+
+    private static final Logger logger = Logger.getLogger("UploadQueue");
+
+    private static final String DATA_SUFFIX = ".data";
+    private static final String JOB_SUFFIX = ".json";
+
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long SWEEP_INTERVAL_SECONDS = 60;
+
+    /**
+     * Journal entry for a queued upload.
+     */
+    public static class UploadJob {
+        public String id;
+        public String key;
+        public String customMetadata;
+        public int attempts;
+    }
+
+    private final ObjectStore objectStore;
+    private final File spoolDirectory;
+    private final File failedDirectory;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Jobs currently queued, uploading or waiting for a retry, so that the sweep doesn't pick them up twice.
+    private final Set<String> activeJobs = ConcurrentHashMap.newKeySet();
+
+    // Once shut down, uploads still in progress leave their job in the spool untouched for the next run.
+    private volatile boolean stopped = false;
+
+    private final AtomicLong uploaded = new AtomicLong();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    // Upload timings, if anyone is collecting them.
+    private volatile PipelineMetrics pipelineMetrics;
+
+    /**
+     * @param objectStore        Where to upload to.
+     * @param spoolDirectory     Local directory holding the queued uploads.
+     * @param workers            Number of concurrent uploads.
+     * @param queueCapacity      Max uploads queued in memory waiting for a worker.
+     * @param maxAttempts        Attempts before giving up on an upload.
+     * @param retryBackoffMillis Delay before the first retry, doubling with each subsequent attempt.
+     * @throws IOException
+     */
+    public UploadQueue(
+            ObjectStore objectStore,
+            File spoolDirectory,
+            int workers,
+            int queueCapacity,
+            int maxAttempts,
+            long retryBackoffMillis
+    ) throws IOException {
+        this.objectStore = objectStore;
+        this.spoolDirectory = spoolDirectory;
+        this.failedDirectory = new File(spoolDirectory, "failed");
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoffMillis;
+
+        Files.createDirectories(failedDirectory.toPath());
+
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new CustomizableThreadFactory("DetectatronUpload-"));
+
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("DetectatronUploadRetry-"));
+    }
+
+    /**
+     * Time each upload to the object store as the upload.put stage.
+     *
+     * @param pipelineMetrics
+     */
+    public void setMetrics(PipelineMetrics pipelineMetrics) {
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    /**
+     * Start uploading, including any uploads left in the spool from a previous run.
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::sweep, 0, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop uploading. Anything not yet uploaded remains in the spool for next time.
+     */
+    public void shutdown() {
+        stopped = true;
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queue data held in memory (eg a keyframe) for upload.
+     *
+     * @param key
+     * @param data
+     * @param customMetadata
+     * @throws IOException if the upload could not be written to the spool.
+     */
+    public void enqueue(String key, byte[] data, String customMetadata) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Files.write(dataFile(id).toPath(), data);
+
+        enqueue(id, key, customMetadata);
+    }
+
+    /**
+     * Queue a file for upload. The file is linked (or copied, if linking isn't possible) into the spool, so the
+     * caller is free to remove the original once this returns.
+     *
+     * @param key
+     * @param file
+     * @param customMetadata
+     * @throws IOException if the upload could not be written to the spool.
+     */
+    public void enqueue(String key, File file, String customMetadata) throws IOException {
+        String id = UUID.randomUUID().toString();
+
+        try {
+            Files.createLink(dataFile(id).toPath(), file.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(file.toPath(), dataFile(id).toPath());
+        }
+
+        enqueue(id, key, customMetadata);
+    }
+
+    private void enqueue(String id, String key, String customMetadata) throws IOException {
+        UploadJob job = new UploadJob();
+        job.id = id;
+        job.key = key;
+        job.customMetadata = customMetadata;
+
+        // The job file is written last, an upload only exists once it has a job file.
+        writeJob(job);
+
+        logger.log(Level.INFO, "Queued " + key + " for upload to " + objectStore);
+        submit(job);
+    }
+
+    /**
+     * Number of uploads in the spool waiting to be uploaded.
+     *
+     * @return
+     */
+    public int pending() {
+        String[] jobs = spoolDirectory.list((dir, name) -> name.endsWith(JOB_SUFFIX));
+        return jobs == null ? 0 : jobs.length;
+    }
+
+    private File dataFile(String id) {
+        return new File(spoolDirectory, id + DATA_SUFFIX);
+    }
+
+    private File jobFile(String id) {
+        return new File(spoolDirectory, id + JOB_SUFFIX);
+    }
+
+    private void writeJob(UploadJob job) throws IOException {
+        File temp = new File(spoolDirectory, job.id + JOB_SUFFIX + ".tmp");
+        objectMapper.writeValue(temp, job);
+        Files.move(temp.toPath(), jobFile(job.id).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Hand the job to a worker, unless it's already being handled.
+     */
+    private void submit(UploadJob job) {
+        if (activeJobs.add(job.id)) {
+            execute(job);
+        }
+    }
+
+    private void execute(UploadJob job) {
+        try {
+            workers.execute(() -> upload(job));
+        } catch (RejectedExecutionException e) {
+            // Queue is full (or we're shutting down), the sweep will pick the job up from the spool later.
+            logger.log(Level.WARNING, "Upload queue full, " + job.key + " will be uploaded later");
+            activeJobs.remove(job.id);
+        }
+    }
+
+    /**
+     * Pick up any jobs in the spool that aren't already queued - either left over from a previous run, or ones that
+     * didn't fit in the queue at the time.
+     */
+    private void sweep() {
+        File[] jobFiles = spoolDirectory.listFiles((dir, name) -> name.endsWith(JOB_SUFFIX));
+
+        if (jobFiles == null) {
+            return;
+        }
+
+        for (File jobFile : jobFiles) {
+            try {
+                UploadJob job = objectMapper.readValue(jobFile, UploadJob.class);
+
+                if (!activeJobs.contains(job.id)) {
+                    logger.log(Level.INFO, "Resuming upload of " + job.key + " from spool");
+                    submit(job);
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to read upload job " + jobFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void upload(UploadJob job) {
+        File dataFile = dataFile(job.id);
+
+        // The sweep may have read the job just before another worker finished uploading it.
+        if (!jobFile(job.id).exists()) {
+            activeJobs.remove(job.id);
+            return;
+        }
+
+        try {
+            logger.log(Level.INFO, "Uploading " + job.key + " to " + objectStore + "...");
+            long length = dataFile.length();
+            long startTime = System.nanoTime();
+
+            objectStore.put(job.key, dataFile, job.customMetadata);
+
+            if (pipelineMetrics != null) {
+                pipelineMetrics.timer("upload.put").stop(startTime);
+            }
+
+            // Done, remove the job before the data so we never have a job without data.
+            Files.deleteIfExists(jobFile(job.id).toPath());
+            Files.deleteIfExists(dataFile.toPath());
+            activeJobs.remove(job.id);
+
+            uploaded.incrementAndGet();
+            uploadedBytes.addAndGet(length);
+            logger.log(Level.INFO, "Upload of " + job.key + " completed");
+
+        } catch (Exception e) {
+            job.attempts++;
+            logger.log(Level.WARNING, "Upload of " + job.key + " failed (attempt " + job.attempts + " of " + maxAttempts + "): " + e.getMessage());
+
+            retryOrFail(job);
+        }
+    }
+
+    private void retryOrFail(UploadJob job) {
+        if (stopped) {
+            // Most likely interrupted by the shutdown. Rewriting the job now could resurrect it after the next run
+            // has already uploaded it, so leave it as it was.
+            activeJobs.remove(job.id);
+            return;
+        }
+
+        try {
+            if (job.attempts >= maxAttempts) {
+                logger.log(Level.SEVERE, "Giving up on upload of " + job.key + ", moving to " + failedDirectory);
+
+                Files.move(dataFile(job.id).toPath(), new File(failedDirectory, job.id + DATA_SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(jobFile(job.id).toPath(), new File(failedDirectory, job.id + JOB_SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+                activeJobs.remove(job.id);
+                failed.incrementAndGet();
+                return;
+            }
+
+            writeJob(job);
+
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Unable to update upload job " + job.id + ": " + e.getMessage());
+        }
+
+        // Exponential backoff, the job remains active so the sweep leaves it alone in the meantime.
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, retryBackoffMillis << Math.min(job.attempts - 1, 20));
+        retries.incrementAndGet();
+
+        try {
+            scheduler.schedule(() -> execute(job), backoff, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            activeJobs.remove(job.id);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        metrics.add(new Metric<Integer>("upload.queue.pending", pending()));
+        metrics.add(new Metric<Integer>("upload.queue.active", activeJobs.size()));
+        metrics.add(new Metric<Long>("upload.uploaded", uploaded.get()));
+        metrics.add(new Metric<Long>("upload.uploaded.bytes", uploadedBytes.get()));
+        metrics.add(new Metric<Long>("upload.retries", retries.get()));
+        metrics.add(new Metric<Long>("upload.failed", failed.get()));
+
+        return metrics;
+    }
+
+}
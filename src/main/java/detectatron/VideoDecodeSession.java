@@ -0,0 +1,40 @@
+package detectatron;
+
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+
+import java.io.Closeable;
+
+/**
+ * The native resources needed to decode a single video - its frame grabber, and a frame encoder borrowed from the
+ * pool in MediaResources. Both are confined to the thread processing the video.
+ *
+ * Must be closed (try-with-resources) once the video has been processed, which stops and releases the grabber's
+ * native FFmpeg contexts and buffers straight away rather than whenever the garbage collector gets around to
+ * finalizing it, and returns the encoder to the pool.
+ */
+public class VideoDecodeSession implements Closeable {
+
+    private final MediaResources mediaResources;
+    private final FFmpegFrameGrabber frameGrabber;
+    private final FrameEncoder frameEncoder;
+
+    VideoDecodeSession(MediaResources mediaResources, FFmpegFrameGrabber frameGrabber, FrameEncoder frameEncoder) {
+        this.mediaResources = mediaResources;
+        this.frameGrabber = frameGrabber;
+        this.frameEncoder = frameEncoder;
+    }
+
+    public FFmpegFrameGrabber getFrameGrabber() {
+        return frameGrabber;
+    }
+
+    public FrameEncoder getFrameEncoder() {
+        return frameEncoder;
+    }
+
+    @Override
+    public void close() {
+        mediaResources.release(this);
+    }
+
+}
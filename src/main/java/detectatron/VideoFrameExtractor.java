@@ -0,0 +1,135 @@
+package detectatron;
+
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+
+/**
+ * Pulls the frames chosen by a FrameSampler out of a video using the selected FrameExtractionMode.
+ *
+ * Usage is to construct the extractor before starting the grabber (some modes need to configure the decoder), start
+ * the grabber, set the sampler and then call next() until it returns null.
+ *
+ * SEQUENTIAL and KEYFRAME modes only move forwards - any frame requested at or before a frame already passed is
+ * treated as already sampled and skipped.
+ *
+ * Note that the frames returned are owned by the grabber and will be overwritten by the next call to next(), so they
+ * need to be converted before moving on.
+ */
+public class VideoFrameExtractor {
+
+    private final FFmpegFrameGrabber frameGrabber;
+    private final FrameExtractionMode mode;
+
+    private FrameSampler sampler = new FixedRateFrameSampler(0, 0, 0, 0);
+
+    // Number of video frames decoded so far in a sequential pass.
+    private int decodedFrames = 0;
+
+    // Frame number of the frame most recently returned by next()
+    private int frameNumber = -1;
+
+    public VideoFrameExtractor(FFmpegFrameGrabber frameGrabber, FrameExtractionMode mode) {
+        this.frameGrabber = frameGrabber;
+        this.mode = mode;
+
+        if (mode == FrameExtractionMode.KEYFRAME) {
+            // Have the decoder throw away all non-keyframes, saves decoding frames we're never going to look at.
+            frameGrabber.setVideoOption("skip_frame", "nokey");
+        }
+    }
+
+    /**
+     * Set the sampler choosing which frames to extract.
+     *
+     * @param sampler
+     */
+    public void setSampler(FrameSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    /**
+     * The frame number of the frame last returned by next(). In KEYFRAME mode this is the keyframe's actual position,
+     * which may be later than the requested frame.
+     *
+     * @return
+     */
+    public int getFrameNumber() {
+        return frameNumber;
+    }
+
+    /**
+     * Return the next sampled frame, or null once the sampler (or video) has been exhausted.
+     *
+     * @return
+     * @throws FrameGrabber.Exception
+     */
+    public Frame next() throws FrameGrabber.Exception {
+
+        int target = sampler.next();
+
+        // Forward-only modes can't go back for frames we've already passed.
+        while (mode != FrameExtractionMode.SEEK && target >= 0 && target <= frameNumber) {
+            target = sampler.next();
+        }
+
+        if (target < 0) {
+            return null;
+        }
+
+        switch (mode) {
+            case SEEK:
+                return nextBySeeking(target);
+            case KEYFRAME:
+                return nextKeyFrame(target);
+            default:
+                return nextSequential(target);
+        }
+    }
+
+    private Frame nextBySeeking(int target) throws FrameGrabber.Exception {
+        frameNumber = target;
+        frameGrabber.setFrameNumber(frameNumber);
+
+        return frameGrabber.grabImage();
+    }
+
+    private Frame nextSequential(int target) throws FrameGrabber.Exception {
+
+        // Decode (but don't convert) everything up until the frame we want.
+        while (decodedFrames < target) {
+            if (frameGrabber.grabFrame(false, true, false, false) == null) {
+                return null;
+            }
+            decodedFrames++;
+        }
+
+        Frame frame = frameGrabber.grabFrame(false, true, true, false);
+        decodedFrames++;
+
+        frameNumber = target;
+        return frame;
+    }
+
+    private Frame nextKeyFrame(int target) throws FrameGrabber.Exception {
+
+        Frame frame;
+        int keyFrameNumber;
+
+        do {
+            frame = frameGrabber.grabImage();
+
+            if (frame == null) {
+                return null;
+            }
+
+            keyFrameNumber = (int) Math.round(frameGrabber.getTimestamp() * frameGrabber.getFrameRate() / 1000000);
+        } while (keyFrameNumber < target);
+
+        // One keyframe can cover several requested frames if the GOP is longer than the sampling interval, these are
+        // skipped by next() as they're now behind us.
+        frameNumber = keyFrameNumber;
+        return frame;
+    }
+
+}
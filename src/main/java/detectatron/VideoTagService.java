@@ -1,33 +1,47 @@
 package detectatron;
 
 
-import com.amazonaws.services.rekognition.model.Label;
+import com.amazonaws.services.rekognition.model.BoundingBox;
 import javax.validation.ValidationException;
-import org.bytedeco.javacpp.avutil;
 import org.bytedeco.javacv.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 
 /**
  * Takes a video and breaks it into stills, which are then processed by the ImageTagService library.
  *
  * We make some lazy assumptions in this class. Since we're processing surveillance video we're not worried about
- * sub-second imagery, generally any event we care about will take more than 1 second - so we just grab a frame for
- * each second of footage and run those through the image categorisation class.
+ * sub-second imagery, generally any event we care about will take more than 1 second - so by default we just grab a
+ * frame for each second of footage (within a budget of frames per video) and run those through the image
+ * categorisation class. Other sampling strategies can find the interesting part of a video with fewer frames, see
+ * FrameSamplingStrategy.
+ *
+ * Sampled frames are categorised in parallel, most promising first, with everything outstanding being cancelled as
+ * soon as any key tags are found (see FrameClassificationPipeline).
+ *
+ * Frames that have barely changed since the last frame we categorised are skipped (see FrameChangeDetector), since
+ * most surveillance footage is a static scene with a short burst of activity and there's no point paying to have the
+ * same empty driveway categorised ten times over.
+ *
+ * Optionally only the regions of each frame that differ from the background of the scene are categorised, rather than
+ * the whole frame (see FrameRegionMode and MotionRegionDetector).
  *
  * TODO: some areas for improvement:
- *  - Add logic that compares before/after of frames and determine if there's actually enough change to justify
- *    categorising each independently or not. This could save significant compute/cost.
  *  - Add logic that can detect movement of categorised objects. Eg if a car has been detected, is that car moving
  *    in the frames (eg driving up a driveway).
  *
@@ -41,6 +55,113 @@ public class VideoTagService {
     @Autowired
     private ImageTagService myImageTagService;
 
+    @Autowired
+    private FrameChangeDetector myFrameChangeDetector;
+
+    @Autowired
+    private KeyLabelSet keyLabelSet;
+
+    // Each camera's usual labels, which don't count as key labels for it, see LabelBaselineService.
+    @Autowired
+    private LabelBaselineService labelBaselineService;
+
+    // Native grabbers and frame encoders, see MediaResources
+    @Autowired
+    private MediaResources mediaResources;
+
+    // Stage timings and frame counts, see PipelineMetrics
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
+    // Minimum difference score (0.0 - 1.0) between a frame and the last categorised frame before we consider it worth
+    // categorising. Set to 0 to categorise every sampled frame.
+    @Value("${detectatron.video.change-threshold:0.01}")
+    private double changeThreshold;
+
+    // How frames are pulled out of the video - see FrameExtractionMode.
+    @Value("${detectatron.video.extraction-mode:SEEK}")
+    private FrameExtractionMode extractionMode;
+
+    // Which frames are sampled - see FrameSamplingStrategy.
+    @Value("${detectatron.video.sampling-strategy:FIXED_RATE}")
+    private FrameSamplingStrategy samplingStrategy;
+
+    @Value("${detectatron.video.sampling-interval-seconds:1.0}")
+    private double samplingIntervalSeconds;
+
+    @Value("${detectatron.video.sampling-motion-threshold:0.02}")
+    private double samplingMotionThreshold;
+
+    @Value("${detectatron.video.sampling-coarse-samples:5}")
+    private int samplingCoarseSamples;
+
+    // Budget of frames sampled and time spent sampling per video, 0 for no limit.
+    @Value("${detectatron.video.sampling-max-frames:10}")
+    private int samplingMaxFrames;
+
+    @Value("${detectatron.video.sampling-max-ms:0}")
+    private long samplingMaxMillis;
+
+    // Max frames of a single video being categorised at once. Higher values reduce latency for videos without any
+    // key tags, but mean more frames may already be in-flight (and paid for) by the time a key tag is found.
+    @Value("${detectatron.video.max-in-flight:4}")
+    private int maxInFlightFrames;
+
+    // Max decoded frames waiting for categorisation before the decoder pauses.
+    @Value("${detectatron.video.frame-queue-capacity:10}")
+    private int frameQueueCapacity;
+
+    // Whether to categorise whole frames, or just the regions of them with motion.
+    @Value("${detectatron.video.region-mode:FRAME}")
+    private FrameRegionMode regionMode;
+
+    // Weight (0.0 - 1.0) given to each sampled frame when updating the background model.
+    @Value("${detectatron.video.region-learning-rate:0.3}")
+    private double regionLearningRate;
+
+    // Padding around each region, as a proportion of the region's size.
+    @Value("${detectatron.video.region-padding:0.25}")
+    private double regionPadding;
+
+    // Minimum width and height (pixels) of each region.
+    @Value("${detectatron.video.region-min-size:128}")
+    private int regionMinSize;
+
+    // Frames with more regions than this, or with regions covering more than this proportion of the frame, are sent
+    // whole as there's little to be saved by cropping.
+    @Value("${detectatron.video.region-max-count:4}")
+    private int regionMaxCount;
+
+    @Value("${detectatron.video.region-max-coverage:0.5}")
+    private double regionMaxCoverage;
+
+    // Max frames tiled into a grid and categorised with a single request, see FrameBatch. 1 to send frames one at a
+    // time. Batching takes precedence over the region mode.
+    @Value("${detectatron.video.batch-max-frames:1}")
+    private int batchMaxFrames;
+
+    // Max dimensions of the grid, and how far frames can be scaled down to fit more of them into it.
+    @Value("${detectatron.video.batch-max-width:1920}")
+    private int batchMaxWidth;
+
+    @Value("${detectatron.video.batch-max-height:1080}")
+    private int batchMaxHeight;
+
+    @Value("${detectatron.video.batch-min-tile-width:320}")
+    private int batchMinTileWidth;
+
+    // Grids that encode larger than this (Rekognition's limit for images sent directly) are sent as separate frames.
+    @Value("${detectatron.video.batch-max-bytes:5242880}")
+    private int batchMaxBytes;
+
+    // Number of the best frames to put side by side in a keyframe strip, 0 for no strip, and the width each frame is
+    // scaled down to in the strip.
+    @Value("${detectatron.video.keyframe-strip-frames:0}")
+    private int keyFrameStripFrames;
+
+    @Value("${detectatron.video.keyframe-strip-width:320}")
+    private int keyFrameStripWidth;
+
 
     /**
      * Take the full video binary (as byte array), extracts the frames and processes each one
@@ -52,25 +173,77 @@ public class VideoTagService {
     public TagModel process (
             byte[] videoBinary
     ) {
-        logger.log(Level.INFO, "Extracting frames from the supplied video file...");
+        return process(mediaResources.open(videoBinary), null, null);
+    }
 
-        // We need to collect all the tags
-        TagModel videoTags = new TagModel();
+    /**
+     * Take a video file on disk, extracts the frames and processes each one for categorisation. This is preferred
+     * over passing a byte array for uploaded videos, since FFmpeg reads directly from the file and the video never
+     * needs to be held in the Java heap.
+     *
+     * @param videoFile
+     * @return
+     */
+    public TagModel process (
+            File videoFile
+    ) {
+        return process(mediaResources.open(videoFile), null, null);
+    }
 
-        // Silence the output of ffmpeg. You may wish to comment this out if debugging some nasty issue, but it
-        // makes the logs very noisy otherwise.
-        avutil.av_log_set_level(avutil.AV_LOG_QUIET);
+    /**
+     * As per process(File), but with the listener told about the tags in each frame as soon as it's categorised
+     * rather than waiting for the whole video.
+     *
+     * @param videoFile
+     * @param listener
+     * @return
+     */
+    public TagModel process (
+            File videoFile,
+            FrameResultListener listener
+    ) {
+        return process(mediaResources.open(videoFile), null, listener);
+    }
 
-        // Note that normally it would be better to use streams rather than loading the entire video into memory at
-        // once to reduce G/C and avoid running out of heap, but in our use case we expect lots of smaller files and
-        // the need to analyse frames in relation to other frames, requiring most of it to be in memory buffers rather
-        // than streaming from the upload/HTTP POST.
+    /**
+     * As per process(File, FrameResultListener), for a video from a known camera. Labels that are part of the
+     * camera's usual scenery aren't counted as key tags, and the camera's baseline learns from the video's tags.
+     *
+     * @param videoFile
+     * @param camera    Or null if unknown.
+     * @param listener  Or null.
+     * @return
+     */
+    public TagModel process (
+            File videoFile,
+            String camera,
+            FrameResultListener listener
+    ) {
+        return process(mediaResources.open(videoFile), camera, listener);
+    }
 
-        InputStream videoStream = new ByteArrayInputStream(videoBinary);
-        FFmpegFrameGrabber frameGrabber = new FFmpegFrameGrabber(videoStream);
+    private TagModel process (
+            VideoDecodeSession session,
+            String camera,
+            FrameResultListener listener
+    ) {
+        logger.log(Level.INFO, "Extracting frames from the supplied video file...");
 
-        try {
+        // We need to collect all the tags. Key tags are only those unusual for the camera, so early exit (see
+        // FrameClassificationPipeline) happens on real events rather than the scenery.
+        TagModel videoTags = new TagModel(labelBaselineService.keyLabelsFor(camera, keyLabelSet));
+
+        // The session releases the grabber's native resources once we're done with the video, no matter how we exit.
+        try (VideoDecodeSession decodeSession = session) {
+            FFmpegFrameGrabber frameGrabber = decodeSession.getFrameGrabber();
+            FrameEncoder frameEncoder = decodeSession.getFrameEncoder();
+
+            // Must be set up before the grabber is started, as some extraction modes need to configure the decoder.
+            VideoFrameExtractor frameExtractor = new VideoFrameExtractor(frameGrabber, samplingStrategy.extractionMode(extractionMode));
+
+            long startTime = System.nanoTime();
             frameGrabber.start();
+            pipelineMetrics.timer("video.grabber.start").stop(startTime);
 
             // Useful debugging stats
             int videoLengthSeconds = (int) frameGrabber.getLengthInTime() / 1000000;
@@ -79,94 +252,147 @@ public class VideoTagService {
             logger.log(Level.INFO, "Video in format: " + frameGrabber.getFormat());
             logger.log(Level.INFO, "Length (frame count): " + videoLengthFrames);
             logger.log(Level.INFO, "Length (seconds): " + videoLengthSeconds);
+            logger.log(Level.INFO, "Frame rate: " + frameGrabber.getFrameRate() + " frames/second");
+            logger.log(Level.INFO, "Resolution: " + frameGrabber.getImageWidth() + "x" + frameGrabber.getImageHeight());
 
+            // Choose which frames to sample, within the budget for the video.
+            FrameSampler sampler = samplingStrategy.create(samplingSettings(), videoLengthFrames, frameGrabber.getFrameRate());
+            frameExtractor.setSampler(sampler);
 
-            // Get the frame rate, we need this in order to pick off one frame per second. We round down to the nearest
-            // integer to ensure we can iterate through it properly.
-            int videoFrameRate = (int) Math.floor( frameGrabber.getFrameRate() );
-            logger.log(Level.INFO, "Frame rate: " + videoFrameRate + " frames/second");
+            // Frames are categorised in parallel as they're decoded, see FrameClassificationPipeline.
+            FrameClassificationPipeline pipeline = new FrameClassificationPipeline(
+                    myImageTagService::processAsync, videoTags, maxInFlightFrames, frameQueueCapacity);
+            pipeline.setMetrics(pipelineMetrics);
 
-            // We process up to 10 seconds of footage at the rate of 1 frame per second. If we get a video that is
-            // longer than this, we should only pull a max of 10 frames, but expand how frequently we obtain them.
-            if (videoLengthSeconds >= 10) {
-                logger.log(Level.INFO, "Video submitted is longer than 10 seconds, skipping frames.");
+            if (keyFrameStripFrames > 0) {
+                pipeline.setKeyFrameStripFrames(keyFrameStripFrames);
+            }
 
-                // Basically we increase the frame rate to assume the video was 10 seconds long, which means we take
-                // samples across the entire duration of the video, but just not as frequently. This new framerate is
-                // then used when we loop through the video.
-                videoFrameRate = (videoLengthFrames / 10);
+            if (listener != null) {
+                double frameRate = frameGrabber.getFrameRate();
+
+                pipeline.setFrameListener((candidate, frameTags) -> listener.frameClassified(new FrameResult(
+                        candidate.frameNumber, frameRate > 0 ? candidate.frameNumber / frameRate : 0, frameTags, videoTags)));
             }
 
-            // Create an array of futures to allow for background processing.
-            List<Future<TagModel>> frameCategorisations = new ArrayList<Future<TagModel>>();
+            // Fingerprint of the last frame we actually sent for categorisation.
+            byte[] lastSubmittedFingerprint = null;
+
+            // Background model of the scene, if we're only categorising the regions that differ from it.
+            MotionRegionDetector regionDetector = null;
 
-            // Process one frame per second of video.
-            for (int i=1; i < (videoLengthFrames / videoFrameRate); i++) {
+            if (regionMode != FrameRegionMode.FRAME && batchMaxFrames <= 1) {
+                regionDetector = new MotionRegionDetector(regionLearningRate, regionPadding, regionMinSize);
+            }
 
-                // We need to jump to specific frames based on the framerate to grab one for each second of the video.
-                int frameNumber = (i * videoFrameRate);
-                frameGrabber.setFrameNumber(frameNumber);
+            // Frames waiting to be tiled into a single request, once we know the size of the frames.
+            FrameBatch batch = null;
+            videoTags.submissionMode = batchMaxFrames > 1 ? "BATCH" : regionMode.toString();
 
-                // Extract the frame
-                BufferedImage currentFrameBuff = new Java2DFrameConverter().convert(frameGrabber.grab());
-                ByteArrayOutputStream currentFrameJpg = new ByteArrayOutputStream();
+            Frame currentFrame;
+            long decodeStartTime = System.nanoTime();
 
-                // Encode the frame as JPG format (Reckognition supports only PNG or JPG) and we generally
-                // wouldn't want to pass around full size binary anyway. Note - we use JPG specifically since the image
-                // sizes generated by the PNG writer from ImageIO are bloody awful... about 10x the size of JPGs.
-                ImageIO.write(currentFrameBuff, "jpg", currentFrameJpg);
-                byte[] currentFrameBytes = currentFrameJpg.toByteArray();
+            while (!pipeline.isCancelled() && (currentFrame = frameExtractor.next()) != null) {
 
-                // Debug example
-                //ImageIO.write(currentFrameBuff, "png", new File("/tmp/debug-" + frameNumber + ".png"));
+                int frameNumber = frameExtractor.getFrameNumber();
 
-                logger.log(Level.INFO, "Frame number " + frameNumber + " size is: "+ currentFrameBytes.length + " bytes.");
+                // Extract (and scale down) the frame. Note that the image is reused by the encoder for the next frame.
+                BufferedImage currentFrameBuff = frameEncoder.convert(currentFrame);
 
+                // Seeking/decoding through to the sampled frame and converting it counts as decode time.
+                pipelineMetrics.timer("video.decode").stop(decodeStartTime);
+                pipelineMetrics.increment("video.frames.sampled");
 
-                /*
-                  Currently if we do async costs get extremely high since we're paying per frame and we end up
-                  processing frames that we simply don't need to process. For now, let's process synchronously and
-                  return on the first match of any keyTags.
+                if (currentFrameBuff == null) {
+                    logger.log(Level.WARNING, "Unable to decode frame number " + frameNumber + ", skipping.");
+                    sampler.sampled(frameNumber, null);
+                    pipelineMetrics.increment("video.frames.undecodable");
+                    decodeStartTime = System.nanoTime();
+                    continue;
+                }
 
-                  Note that the use of the spring frameworks means multiple videos will be processes async since each
-                  HTTP request takes place in a different thread.
+                // Every sampled frame updates the background, even those we don't categorise.
+                List<Rectangle> regions = Collections.emptyList();
 
-                // Pass the frame to the image categorisation async background pool
-                logger.log(Level.INFO, "Submitted frame for background processing...");
-                frameCategorisations.add(myImageTagService.processAsync(currentFrameBytes));
-                */
+                if (regionDetector != null) {
+                    regions = regionDetector.detect(currentFrameBuff);
+                }
 
-                // Import the tags on this frame into the overall detected tags
-               videoTags.importLabels( myImageTagService.process(currentFrameBytes).rawLabels );
+                // Don't bother categorising frames that are near-identical to the last one we categorised.
+                byte[] currentFingerprint = myFrameChangeDetector.fingerprint(currentFrameBuff);
 
-               // Retain a copy of the current frame.
-               videoTags.keyFrameData = currentFrameBytes;
+                // Let adaptive samplers know what we found.
+                sampler.sampled(frameNumber, currentFingerprint);
 
+                // The first frame has nothing to compare against, so it counts as all motion.
+                double difference = 1.0;
 
-               if (videoTags.keyTags.size() > 0) {
-                   logger.log(Level.INFO, "Exiting video processing early - keyTag found already.");
-                   return videoTags;
-               }
-            }
+                if (lastSubmittedFingerprint != null && changeThreshold > 0) {
+                    difference = myFrameChangeDetector.difference(lastSubmittedFingerprint, currentFingerprint);
+
+                    if (difference < changeThreshold) {
+                        logger.log(Level.INFO, "Frame number " + frameNumber + " unchanged (difference " + difference + "), skipping.");
+                        videoTags.framesSkipped++;
+                        pipelineMetrics.increment("video.frames.skipped");
+                        decodeStartTime = System.nanoTime();
+                        continue;
+                    }
+                }
 
+                lastSubmittedFingerprint = currentFingerprint;
+                videoTags.framesForwarded++;
 
-            /*
-             As per comment above re async cost.
+                // Batched frames are only encoded and submitted once we have a full grid of them.
+                if (batchMaxFrames > 1) {
+                    if (batch == null) {
+                        batch = FrameBatch.create(currentFrameBuff.getWidth(), currentFrameBuff.getHeight(),
+                                batchMaxFrames, batchMaxWidth, batchMaxHeight, batchMinTileWidth);
+                        videoTags.framesPerRequest = batch.getCapacity();
 
-            // Now we wait for all background workers to complete.
-            logger.log(Level.INFO, "All frames submitted, waiting for data to be returned....");
-            for (Future<TagModel> frameResult : frameCategorisations) {
+                        logger.log(Level.INFO, "Batching up to " + batch.getCapacity() + " frames per request, as "
+                                + batch.getTileWidth() + "x" + batch.getTileHeight() + " tiles");
+                    }
 
-                // Wait until this particular frame's processing has been completed.
-                while (!frameResult.isDone()) {
-                    Thread.sleep(1000);
+                    if (batch.add(frameNumber, currentFrameBuff, difference) && !submitBatch(pipeline, frameEncoder, batch, videoLengthFrames)) {
+                        break;
+                    }
+
+                    decodeStartTime = System.nanoTime();
+                    continue;
                 }
 
-                // Results!
-                TagModel frameTags = frameResult.get();
-                videoTags.importLabels(frameTags.rawLabels);
+                // Encode the frame as JPG format (Reckognition supports only PNG or JPG) and we generally
+                // wouldn't want to pass around full size binary anyway.
+                byte[] currentFrameBytes = encode(frameEncoder, currentFrameBuff);
+                double sharpness = Sharpness.of(currentFrameBuff);
+
+                // Debug example
+                //ImageIO.write(currentFrameBuff, "png", new File("/tmp/debug-" + frameNumber + ".png"));
+
+                logger.log(Level.INFO, "Frame number " + frameNumber + " size is: "+ currentFrameBytes.length + " bytes.");
+
+
+                // Queue the frame for categorisation. If a key tag has already been found there's no point decoding
+                // any more of the video.
+                if (!submitFrame(pipeline, frameEncoder, frameNumber, currentFrameBuff, currentFrameBytes, sharpness, regions, difference, videoLengthFrames)) {
+                    break;
+                }
+
+                decodeStartTime = System.nanoTime();
+            }
+
+            // Whatever's left over is sent as a smaller grid.
+            if (batch != null && !batch.isEmpty() && !pipeline.isCancelled()) {
+                submitBatch(pipeline, frameEncoder, batch, videoLengthFrames);
+            }
+
+            // Wait for the remaining frames to be categorised.
+            logger.log(Level.INFO, "All frames submitted, waiting for categorisation to complete...");
+            pipeline.awaitCompletion();
+
+            if (keyFrameStripFrames > 0) {
+                videoTags.keyFrameStripData = renderKeyFrameStrip(frameEncoder, pipeline.getKeyFrameStrip());
             }
-            */
 
         } catch (org.bytedeco.javacv.FrameGrabber.Exception e) {
             e.printStackTrace();
@@ -174,16 +400,194 @@ public class VideoTagService {
         } catch (java.io.IOException e) {
             e.printStackTrace();
             throw new ValidationException("An unexpected fault occurred when transcoding frame to image.");
-            /*
         } catch (java.lang.InterruptedException e) {
             e.printStackTrace();
             throw new ValidationException("Process terminated before background workers completed.");
-        } catch (java.util.concurrent.ExecutionException e) {
-            e.printStackTrace();
-            throw new ValidationException("Something went really wrong with the background workers.");
-            */
         }
 
+        labelBaselineService.observe(camera, videoTags);
+
         return videoTags;
     }
+
+    private FrameSamplingStrategy.Settings samplingSettings() {
+        FrameSamplingStrategy.Settings settings = new FrameSamplingStrategy.Settings();
+        settings.changeDetector = myFrameChangeDetector;
+        settings.intervalSeconds = samplingIntervalSeconds;
+        settings.motionThreshold = samplingMotionThreshold;
+        settings.coarseSamples = samplingCoarseSamples;
+        settings.maxFrames = samplingMaxFrames;
+        settings.maxMillis = samplingMaxMillis;
+        return settings;
+    }
+
+    /**
+     * Submit a frame for categorisation - either the whole frame, or crops of the regions of it with motion.
+     *
+     * @return False if the pipeline has been cancelled and no further frames should be submitted.
+     */
+    private boolean submitFrame(
+            FrameClassificationPipeline pipeline,
+            FrameEncoder frameEncoder,
+            int frameNumber,
+            BufferedImage frame,
+            byte[] frameBytes,
+            double sharpness,
+            List<Rectangle> regions,
+            double difference,
+            int videoLengthFrames
+    ) throws IOException, InterruptedException {
+
+        // Where we can't tell where the motion is, or it's most of the frame anyway, categorise the whole frame.
+        if (regionMode == FrameRegionMode.FRAME
+                || regions.isEmpty()
+                || regions.size() > regionMaxCount
+                || MotionRegionDetector.coverage(regions, frame.getWidth(), frame.getHeight()) > regionMaxCoverage) {
+
+            return pipeline.submit(new FrameCandidate(frameNumber, frameBytes, difference, sharpness, videoLengthFrames));
+        }
+
+        List<BufferedImage> crops = new ArrayList<BufferedImage>();
+
+        for (Rectangle region : regions) {
+            crops.add(frame.getSubimage(region.x, region.y, region.width, region.height));
+        }
+
+        if (regionMode == FrameRegionMode.CROPS) {
+            for (int i = 0; i < regions.size(); i++) {
+                byte[] cropBytes = encode(frameEncoder, crops.get(i));
+
+                logger.log(Level.INFO, "Frame number " + frameNumber + " region " + regions.get(i) + " size is: " + cropBytes.length + " bytes.");
+
+                FrameCandidate candidate = new FrameCandidate(frameNumber, cropBytes, frameBytes,
+                        Collections.singletonList(boundingBox(regions.get(i), frame)), difference, sharpness, videoLengthFrames);
+
+                if (!pipeline.submit(candidate)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        // Mosaic of the crops. Labels aren't located within the mosaic, so they're attributed to the area spanning
+        // all the regions.
+        byte[] mosaicBytes = encode(frameEncoder, Mosaic.pack(crops).getImage());
+
+        Rectangle span = regions.get(0);
+        for (Rectangle region : regions) {
+            span = span.union(region);
+        }
+
+        logger.log(Level.INFO, "Frame number " + frameNumber + " mosaic of " + regions.size() + " regions size is: " + mosaicBytes.length + " bytes.");
+
+        return pipeline.submit(new FrameCandidate(frameNumber, mosaicBytes, frameBytes,
+                Collections.singletonList(boundingBox(span, frame)), difference, sharpness, videoLengthFrames));
+    }
+
+    /**
+     * Submit a batch of frames for categorisation as a single grid image, and empty the batch.
+     *
+     * Labels found in the grid can't be placed in any one frame, so they're attributed to the video as a whole, and
+     * the frame with the most change in the batch is kept as the key frame.
+     *
+     * @return False if the pipeline has been cancelled and no further frames should be submitted.
+     */
+    private boolean submitBatch(
+            FrameClassificationPipeline pipeline,
+            FrameEncoder frameEncoder,
+            FrameBatch batch,
+            int videoLengthFrames
+    ) throws IOException, InterruptedException {
+
+        try {
+            byte[] gridBytes = encode(frameEncoder, batch.render());
+
+            if (gridBytes.length > batchMaxBytes) {
+                // Too big to send in one go, so fall back to sending the (downscaled) frames one at a time.
+                logger.log(Level.WARNING, "Grid of " + batch.getFrameNumbers().size() + " frames is " + gridBytes.length + " bytes, sending frames separately.");
+
+                for (int i = 0; i < batch.getTiles().size(); i++) {
+                    byte[] tileBytes = encode(frameEncoder, batch.getTiles().get(i));
+                    double sharpness = Sharpness.of(batch.getTiles().get(i));
+
+                    if (!pipeline.submit(new FrameCandidate(batch.getFrameNumbers().get(i), tileBytes, batch.getMaxDifference(), sharpness, videoLengthFrames))) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+
+            byte[] keyFrameBytes = encode(frameEncoder, batch.getKeyFrame());
+            double sharpness = Sharpness.of(batch.getKeyFrame());
+
+            logger.log(Level.INFO, "Frame numbers " + batch.getFrameNumbers() + " grid size is: " + gridBytes.length + " bytes.");
+
+            return pipeline.submit(new FrameCandidate(batch.getKeyFrameNumber(), gridBytes, keyFrameBytes, null,
+                    batch.getMaxDifference(), sharpness, videoLengthFrames));
+
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * Put the best frames of the video side by side, scaled down, as a single JPEG. The frames are only decoded again
+     * here, once categorisation is done, so that only their JPEGs are held whilst the video is processed.
+     *
+     * @return The JPEG, or null if there are no frames.
+     */
+    private byte[] renderKeyFrameStrip(FrameEncoder frameEncoder, List<KeyFrameSelector.Selection> frames) throws IOException {
+
+        List<BufferedImage> tiles = new ArrayList<BufferedImage>();
+
+        for (KeyFrameSelector.Selection selection : frames) {
+            BufferedImage frame = ImageIO.read(new ByteArrayInputStream(selection.frameData));
+
+            if (frame == null) {
+                continue;
+            }
+
+            int[] size = FrameEncoder.fitWithin(frame.getWidth(), frame.getHeight(), keyFrameStripWidth, 0);
+            BufferedImage tile = new BufferedImage(size[0], size[1], BufferedImage.TYPE_3BYTE_BGR);
+
+            Graphics2D graphics = tile.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(frame, 0, 0, size[0], size[1], null);
+            graphics.dispose();
+
+            tiles.add(tile);
+        }
+
+        if (tiles.isEmpty()) {
+            return null;
+        }
+
+        logger.log(Level.INFO, "Keyframe strip of frame numbers " + frames.stream().map(f -> f.frameNumber).collect(Collectors.toList()));
+
+        return frameEncoder.encode(Mosaic.grid(tiles, tiles.size()).getImage());
+    }
+
+    /**
+     * Encode an image for categorisation, timing it as the video.encode stage.
+     */
+    private byte[] encode(FrameEncoder frameEncoder, BufferedImage image) throws IOException {
+        long startTime = System.nanoTime();
+        byte[] imageBytes = frameEncoder.encode(image);
+        pipelineMetrics.timer("video.encode").stop(startTime);
+        return imageBytes;
+    }
+
+    /**
+     * Convert a region in pixels into a bounding box in ratios of the frame dimensions.
+     */
+    private static BoundingBox boundingBox(Rectangle region, BufferedImage frame) {
+        return new BoundingBox()
+                .withLeft((float) region.x / frame.getWidth())
+                .withTop((float) region.y / frame.getHeight())
+                .withWidth((float) region.width / frame.getWidth())
+                .withHeight((float) region.height / frame.getHeight());
+    }
+
 }
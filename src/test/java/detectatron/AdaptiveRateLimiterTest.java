@@ -0,0 +1,144 @@
+package detectatron;
+
+import com.amazonaws.AmazonServiceException;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the token bucket and AIMD concurrency limits of the rate limiter.
+ */
+public class AdaptiveRateLimiterTest {
+
+    // Manually advanced clock, so that token refill is deterministic.
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    private AdaptiveRateLimiter limiter(double permitsPerSecond, int burst, int minConcurrency, int maxConcurrency, long maxWaitMillis) {
+        return new AdaptiveRateLimiter("test", permitsPerSecond, burst, minConcurrency, maxConcurrency, maxWaitMillis, clock::get);
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void testBurstThenRateLimited() throws Exception {
+        AdaptiveRateLimiter limiter = limiter(5, 3, 1, 10, 0);
+
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(limiter.acquire());
+        }
+
+        // Bucket is empty, and we won't wait.
+        assertNull(limiter.acquire());
+
+        // 5 per second is a new token every 200ms.
+        advance(200);
+        assertNotNull(limiter.acquire());
+        assertNull(limiter.acquire());
+    }
+
+    @Test
+    public void testConcurrencyLimited() throws Exception {
+        AdaptiveRateLimiter limiter = limiter(100, 100, 1, 2, 0);
+
+        AdaptiveRateLimiter.Permit first = limiter.acquire();
+        assertNotNull(limiter.acquire());
+        assertNull(limiter.acquire());
+
+        first.release(false);
+        assertNotNull(limiter.acquire());
+    }
+
+    private long metric(AdaptiveRateLimiter limiter, String name) {
+        for (Metric<?> metric : limiter.metrics()) {
+            if (metric.getName().equals(name)) {
+                return metric.getValue().longValue();
+            }
+        }
+        throw new AssertionError("No metric " + name);
+    }
+
+    @Test
+    public void testThrottlingHalvesConcurrencyAndSuccessGrowsIt() throws Exception {
+        AdaptiveRateLimiter limiter = limiter(100, 100, 1, 8, 0);
+        assertEquals(8, limiter.getConcurrencyLimit());
+
+        // A throttled call doesn't grow the limit, but it's the client's throttle report that backs off.
+        limiter.acquire().release(true);
+        assertEquals(8, limiter.getConcurrencyLimit());
+
+        limiter.throttled();
+        assertEquals(4, limiter.getConcurrencyLimit());
+        assertEquals(1L, metric(limiter, "test.throttled"));
+
+        // Further throttles from the same burst don't keep halving it.
+        limiter.throttled();
+        assertEquals(4, limiter.getConcurrencyLimit());
+
+        advance(1000);
+        limiter.throttled();
+        assertEquals(2, limiter.getConcurrencyLimit());
+
+        advance(1000);
+        limiter.throttled();
+        advance(1000);
+        limiter.throttled();
+        assertEquals("Never backs off below the min", 1, limiter.getConcurrencyLimit());
+
+        // Additive increase, one extra concurrent call per limit's worth of successes.
+        for (int i = 0; i < 5; i++) {
+            advance(100);
+            limiter.acquire().release(false);
+        }
+
+        assertEquals(3, limiter.getConcurrencyLimit());
+    }
+
+    @Test
+    public void testWaitingCallerGetsPermitOnRelease() throws Exception {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter("test", 100, 100, 1, 1, 10000);
+
+        AdaptiveRateLimiter.Permit first = limiter.acquire();
+
+        AtomicReference<AdaptiveRateLimiter.Permit> second = new AtomicReference<>();
+        CountDownLatch acquired = new CountDownLatch(1);
+
+        new Thread(() -> {
+            try {
+                second.set(limiter.acquire());
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }).start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        first.release(false);
+
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals("Nobody else was waiting", 0, second.get().getQueuePosition());
+        assertTrue(second.get().getWaitMillis() >= 150);
+    }
+
+    @Test
+    public void testThrottlingErrorsRecognised() {
+        AmazonServiceException throttling = new AmazonServiceException("Slow down");
+        throttling.setErrorCode("ProvisionedThroughputExceededException");
+
+        AmazonServiceException accessDenied = new AmazonServiceException("No");
+        accessDenied.setErrorCode("AccessDeniedException");
+
+        assertTrue(AdaptiveRateLimiter.isThrottling(throttling));
+        assertFalse(AdaptiveRateLimiter.isThrottling(accessDenied));
+        assertFalse(AdaptiveRateLimiter.isThrottling(new IllegalStateException()));
+    }
+
+}
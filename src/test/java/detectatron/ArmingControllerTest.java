@@ -0,0 +1,88 @@
+package detectatron;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+/**
+ * Unit tests for the arming endpoints, against an arming state kept in a temporary spool.
+ */
+public class ArmingControllerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // A Wednesday.
+    private static final LocalDateTime WEDNESDAY_NOON = LocalDateTime.of(2017, 1, 18, 12, 0);
+
+    private ArmingService armingService;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() throws Exception {
+        SpoolService spoolService = new SpoolService();
+        ReflectionTestUtils.setField(spoolService, "spoolDirectory", temporaryFolder.getRoot().getPath());
+
+        armingService = new ArmingService();
+        ReflectionTestUtils.setField(armingService, "spoolService", spoolService);
+        ReflectionTestUtils.setField(armingService, "timeZone", "UTC");
+        armingService.start();
+
+        ArmingController armingController = new ArmingController();
+        armingController.objectMapper = new ObjectMapper();
+        armingController.myArmingService = armingService;
+
+        mockMvc = standaloneSetup(armingController).build();
+    }
+
+    @Test
+    public void testMultiDayWindowKeptWhole() throws Exception {
+        mockMvc.perform(post("/arming/scheduled")
+                .param("camera", "front_door")
+                .param("window", "MON-FRI 22:00-06:00")
+                .param("window", "SAT,SUN 00:00-00:00"))
+                .andExpect(status().isOk());
+
+        ArmingRule rule = armingService.getState().ruleFor("front_door");
+
+        assertEquals(ArmingRule.Mode.SCHEDULED, rule.mode);
+        assertEquals(2, rule.windows.size());
+        assertTrue(rule.isArmed(() -> WEDNESDAY_NOON.plusDays(4)));
+        assertFalse(rule.isArmed(() -> WEDNESDAY_NOON));
+    }
+
+    @Test
+    public void testScheduleNeedsWindow() throws Exception {
+        mockMvc.perform(post("/arming/scheduled").param("camera", "front_door"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testChangesMustBePosted() throws Exception {
+        mockMvc.perform(get("/arming/scheduled").param("window", "22:00-06:00"))
+                .andExpect(status().isMethodNotAllowed());
+        mockMvc.perform(get("/arming/zone").param("camera", "front_door").param("zone", "outside"))
+                .andExpect(status().isMethodNotAllowed());
+        mockMvc.perform(get("/arming/inherit").param("camera", "front_door"))
+                .andExpect(status().isMethodNotAllowed());
+
+        assertEquals(ArmingRule.Mode.ARMED, armingService.getState().ruleFor("front_door").mode);
+
+        // Alarm integrations arm and disarm the whole system with a GET.
+        mockMvc.perform(get("/arming/disarmed")).andExpect(status().isOk());
+
+        assertFalse(armingService.isArmed("front_door"));
+    }
+
+}
@@ -0,0 +1,111 @@
+package detectatron;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for per camera/zone arming and arming schedules.
+ */
+public class ArmingServiceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private SpoolService spoolService;
+
+    // A Wednesday.
+    private static final LocalDateTime WEDNESDAY_NOON = LocalDateTime.of(2017, 1, 18, 12, 0);
+
+    @Before
+    public void setUp() {
+        spoolService = new SpoolService();
+        ReflectionTestUtils.setField(spoolService, "spoolDirectory", temporaryFolder.getRoot().getPath());
+    }
+
+    private ArmingService armingService() throws Exception {
+        ArmingService armingService = new ArmingService();
+        ReflectionTestUtils.setField(armingService, "spoolService", spoolService);
+        ReflectionTestUtils.setField(armingService, "timeZone", "UTC");
+        armingService.start();
+
+        return armingService;
+    }
+
+    @Test
+    public void testWindows() {
+        ArmingWindow overnight = ArmingWindow.parse("22:00-06:00");
+
+        assertTrue(overnight.contains(WEDNESDAY_NOON.withHour(23)));
+        assertTrue(overnight.contains(WEDNESDAY_NOON.withHour(5)));
+        assertFalse(overnight.contains(WEDNESDAY_NOON));
+
+        // Friday night runs into Saturday morning, but Sunday night isn't covered.
+        ArmingWindow weeknights = ArmingWindow.parse("MON-FRI 22:00-06:00");
+
+        assertTrue(weeknights.contains(WEDNESDAY_NOON.plusDays(3).withHour(5)));
+        assertFalse(weeknights.contains(WEDNESDAY_NOON.plusDays(4).withHour(23)));
+
+        ArmingWindow weekends = ArmingWindow.parse("SAT,SUN 00:00-00:00");
+
+        assertTrue(weekends.contains(WEDNESDAY_NOON.plusDays(4)));
+        assertFalse(weekends.contains(WEDNESDAY_NOON));
+        assertEquals("SAT,SUN 00:00-00:00", weekends.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWindow() {
+        ArmingWindow.parse("weekdays 9-5");
+    }
+
+    @Test
+    public void testCameraThenZoneThenGlobal() {
+        ArmingState state = ArmingState.DEFAULT
+                .withCameraZone("front_door", "outside")
+                .withCameraZone("driveway", "outside")
+                .withZone("outside", ArmingRule.DISARMED)
+                .withCamera("driveway", ArmingRule.scheduled(Collections.singletonList(ArmingWindow.parse("08:00-18:00"))));
+
+        assertFalse(state.isArmed("front_door", () -> WEDNESDAY_NOON));
+        assertTrue(state.isArmed("driveway", () -> WEDNESDAY_NOON));
+        assertFalse(state.isArmed("driveway", () -> WEDNESDAY_NOON.withHour(20)));
+        assertTrue(state.isArmed("lounge", () -> WEDNESDAY_NOON));
+        assertTrue(state.isArmed(null, () -> WEDNESDAY_NOON));
+
+        // Disarming everything doesn't affect cameras with their own rules.
+        state = state.withGlobal(ArmingRule.DISARMED).withZone("outside", null);
+
+        assertFalse(state.isArmed("front_door", () -> WEDNESDAY_NOON));
+        assertFalse(state.isArmed("lounge", () -> WEDNESDAY_NOON));
+        assertTrue(state.isArmed("driveway", () -> WEDNESDAY_NOON));
+    }
+
+    @Test
+    public void testStateSurvivesRestart() throws Exception {
+        ArmingService armingService = armingService();
+        assertTrue(armingService.isArmed());
+
+        armingService.update(state -> state
+                .withGlobal(ArmingRule.DISARMED)
+                .withCameraZone("front_door", "outside")
+                .withZone("outside", ArmingRule.scheduled(Arrays.asList(ArmingWindow.parse("MON-FRI 22:00-06:00"), ArmingWindow.parse("SAT,SUN 00:00-00:00")))));
+
+        ArmingState restored = armingService().getState();
+
+        assertEquals(ArmingRule.Mode.DISARMED, restored.global.mode);
+        assertEquals("outside", restored.cameraZones.get("front_door"));
+        assertEquals(ArmingRule.Mode.SCHEDULED, restored.ruleFor("front_door").mode);
+        assertEquals(2, restored.ruleFor("front_door").windows.size());
+        assertTrue(restored.isArmed("front_door", () -> WEDNESDAY_NOON.plusDays(4)));
+        assertFalse(restored.isArmed("front_door", () -> WEDNESDAY_NOON));
+    }
+
+}
@@ -0,0 +1,74 @@
+package detectatron;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.AWSRequestMetrics.Field;
+import com.amazonaws.util.AWSRequestMetricsFullSupport;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for collecting AWS SDK request metrics.
+ */
+public class AwsClientMetricsTest {
+
+    private Map<String, Number> metricsByName(AwsClientMetrics clientMetrics) {
+        Map<String, Number> values = new HashMap<String, Number>();
+
+        for (Metric<?> metric : clientMetrics.metrics()) {
+            values.put(metric.getName(), metric.getValue());
+        }
+
+        return values;
+    }
+
+    private DefaultRequest<Object> request(long available, long leased, long pending, boolean throttled) {
+        AWSRequestMetrics requestMetrics = new AWSRequestMetricsFullSupport();
+        requestMetrics.setCounter(Field.HttpClientPoolAvailableCount, available);
+        requestMetrics.setCounter(Field.HttpClientPoolLeasedCount, leased);
+        requestMetrics.setCounter(Field.HttpClientPoolPendingCount, pending);
+
+        if (throttled) {
+            requestMetrics.setCounter(Field.HttpClientRetryCount, 1);
+            requestMetrics.addProperty(Field.ThrottleException, "ThrottlingException");
+        }
+
+        DefaultRequest<Object> request = new DefaultRequest<Object>("rekognition");
+        request.setAWSRequestMetrics(requestMetrics);
+        return request;
+    }
+
+    @Test
+    public void testPoolAndRequestMetricsCollected() {
+        AwsClientMetrics clientMetrics = new AwsClientMetrics("aws.test");
+
+        clientMetrics.collectMetrics(request(5, 1, 0, false), null);
+        clientMetrics.collectMetrics(request(3, 2, 1, true), null);
+
+        Map<String, Number> values = metricsByName(clientMetrics);
+
+        assertEquals(2L, values.get("aws.test.requests"));
+        assertEquals(1L, values.get("aws.test.retries"));
+        assertEquals(1L, values.get("aws.test.throttled"));
+        assertEquals(3L, values.get("aws.test.pool.available"));
+        assertEquals(2L, values.get("aws.test.pool.leased"));
+        assertEquals(1L, values.get("aws.test.pool.pending"));
+    }
+
+    @Test
+    public void testRequestsWithoutMetricsIgnored() {
+        AwsClientMetrics clientMetrics = new AwsClientMetrics("aws.test");
+
+        DefaultRequest<Object> request = new DefaultRequest<Object>("rekognition");
+        request.setAWSRequestMetrics(new AWSRequestMetrics());
+        clientMetrics.collectMetrics(request, null);
+
+        assertEquals(0L, metricsByName(clientMetrics).get("aws.test.requests"));
+    }
+
+}
@@ -0,0 +1,61 @@
+package detectatron;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the block difference frame change detector.
+ */
+public class BlockDifferenceChangeDetectorTest {
+
+    private final BlockDifferenceChangeDetector detector = new BlockDifferenceChangeDetector();
+
+    /**
+     * Generate a plain grey "driveway", optionally with a bright "person" standing in it.
+     */
+    private BufferedImage scene(boolean withSubject) {
+        BufferedImage image = new BufferedImage(640, 360, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+
+        graphics.setColor(Color.DARK_GRAY);
+        graphics.fillRect(0, 0, 640, 360);
+
+        if (withSubject) {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(500, 200, 40, 100);
+        }
+
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    public void testIdenticalFramesHaveNoDifference() {
+        byte[] first  = detector.fingerprint(scene(false));
+        byte[] second = detector.fingerprint(scene(false));
+
+        assertEquals(0.0, detector.difference(first, second), 0.0);
+    }
+
+    @Test
+    public void testSmallSubjectRegistersAsChange() {
+        byte[] empty    = detector.fingerprint(scene(false));
+        byte[] occupied = detector.fingerprint(scene(true));
+
+        double difference = detector.difference(empty, occupied);
+
+        assertTrue("Subject should exceed the default threshold, got " + difference, difference > 0.01);
+        assertTrue("Subject should not look like a whole new scene, got " + difference, difference < 0.1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMismatchedFingerprintsRejected() {
+        detector.difference(new byte[10], new byte[20]);
+    }
+
+}
@@ -0,0 +1,58 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for escalating ambiguous images from the local detector to the remote detector.
+ */
+public class CascadeLabelDetectorTest {
+
+    private final AtomicInteger remoteCalls = new AtomicInteger();
+
+    private final LabelDetector remoteDetector = imageBinary -> {
+        remoteCalls.incrementAndGet();
+        return Collections.singletonList(new Label().withName("Person").withConfidence(97f));
+    };
+
+    private CascadeLabelDetector cascade(Label... localLabels) {
+        List<Label> labels = Arrays.asList(localLabels);
+        return new CascadeLabelDetector(imageBinary -> labels, remoteDetector, 80, 20);
+    }
+
+    @Test
+    public void testConfidentLocalLabelsAccepted() {
+        List<Label> labels = cascade(
+                new Label().withName("Car").withConfidence(91f),
+                new Label().withName("Person").withConfidence(30f)
+        ).detectLabels(new byte[0]);
+
+        assertEquals(1, labels.size());
+        assertEquals("Car", labels.get(0).getName());
+        assertEquals(0, remoteCalls.get());
+    }
+
+    @Test
+    public void testNothingFoundLocallyNotEscalated() {
+        assertTrue(cascade(new Label().withName("Person").withConfidence(5f)).detectLabels(new byte[0]).isEmpty());
+        assertTrue(cascade().detectLabels(new byte[0]).isEmpty());
+        assertEquals(0, remoteCalls.get());
+    }
+
+    @Test
+    public void testAmbiguousImagesEscalated() {
+        List<Label> labels = cascade(new Label().withName("Person").withConfidence(45f)).detectLabels(new byte[0]);
+
+        assertEquals("Person", labels.get(0).getName());
+        assertEquals(97f, labels.get(0).getConfidence(), 0.01);
+        assertEquals(1, remoteCalls.get());
+    }
+
+}
@@ -0,0 +1,165 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the local index of processed events.
+ */
+public class EventIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private EventIndex eventIndex;
+
+    @After
+    public void tearDown() throws Exception {
+        if (eventIndex != null) {
+            eventIndex.close();
+        }
+    }
+
+    private static TagModel tags(String... names) {
+        List<Label> labels = new ArrayList<Label>();
+
+        for (String name : names) {
+            labels.add(new Label().withName(name).withConfidence(90f));
+        }
+
+        return new TagModel(labels);
+    }
+
+    private static List<String> filenames(EventIndex.Page page) {
+        List<String> filenames = new ArrayList<String>();
+
+        for (EventRecord event : page.events) {
+            filenames.add(event.filename);
+        }
+
+        return filenames;
+    }
+
+    @Test
+    public void testQueryByTagAndCamera() throws Exception {
+        eventIndex = new EventIndex(temporaryFolder.getRoot());
+
+        eventIndex.add("1.mp4", "front_door", true, tags("Person", "Outdoors"));
+        eventIndex.add("2.mp4", "driveway", true, tags("Car"));
+        eventIndex.add("3.mp4", "driveway", true, tags("Person", "Car"));
+        eventIndex.add("4.mp4", "front_door", false, new TagModel());
+
+        assertEquals(Arrays.asList("3.mp4", "1.mp4"), filenames(eventIndex.query(Collections.singletonList("person"), null, null, null, null, 10)));
+        assertEquals(Collections.singletonList("3.mp4"), filenames(eventIndex.query(Arrays.asList("Person", "Car"), null, null, null, null, 10)));
+        assertEquals(Arrays.asList("4.mp4", "1.mp4"), filenames(eventIndex.query(Collections.<String>emptyList(), "front_door", null, null, null, 10)));
+        assertTrue(eventIndex.query(Collections.singletonList("Cat"), null, null, null, null, 10).events.isEmpty());
+
+        EventRecord event = eventIndex.query(Collections.singletonList("Person"), "front_door", null, null, null, 10).events.get(0);
+        assertEquals(Collections.singletonList("Person"), event.keyTags);
+        assertEquals("front_door", event.camera);
+    }
+
+    @Test
+    public void testPagingAndTimeRange() throws Exception {
+        eventIndex = new EventIndex(temporaryFolder.getRoot());
+
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < 25; i++) {
+            eventIndex.add(i + ".mp4", null, true, tags("Person"));
+        }
+
+        EventIndex.Page first = eventIndex.query(Collections.singletonList("Person"), null, null, null, null, 10);
+        assertEquals("24.mp4", first.events.get(0).filename);
+        assertNotNull(first.nextBefore);
+
+        EventIndex.Page second = eventIndex.query(Collections.singletonList("Person"), null, null, null, first.nextBefore, 10);
+        assertEquals("14.mp4", second.events.get(0).filename);
+
+        EventIndex.Page last = eventIndex.query(Collections.singletonList("Person"), null, null, null, second.nextBefore, 10);
+        assertEquals(5, last.events.size());
+        assertNull(last.nextBefore);
+
+        long end = System.currentTimeMillis() + 1;
+
+        assertEquals(25, eventIndex.query(Collections.<String>emptyList(), null, start, end, null, 100).events.size());
+        assertTrue(eventIndex.query(Collections.<String>emptyList(), null, end, null, null, 100).events.isEmpty());
+        assertTrue(eventIndex.query(Collections.<String>emptyList(), null, null, start, null, 100).events.isEmpty());
+    }
+
+    @Test
+    public void testRebuiltFromLogAfterRestart() throws Exception {
+        File directory = temporaryFolder.getRoot();
+
+        eventIndex = new EventIndex(directory);
+        eventIndex.add("1.mp4", "front_door", true, tags("Person"));
+        eventIndex.add("2.mp4", "front_door", true, tags("Car"));
+        eventIndex.close();
+
+        // A record only partly written when we stopped.
+        try (FileOutputStream log = new FileOutputStream(new File(directory, "events.log"), true)) {
+            log.write("{\"id\":2,\"filen".getBytes());
+        }
+
+        eventIndex = new EventIndex(directory);
+        assertEquals(2, eventIndex.size());
+
+        eventIndex.add("3.mp4", "front_door", true, tags("Person"));
+        assertEquals(Arrays.asList("3.mp4", "1.mp4"), filenames(eventIndex.query(Collections.singletonList("Person"), null, null, null, null, 10)));
+
+        eventIndex.close();
+        eventIndex = new EventIndex(directory);
+        assertEquals(3, eventIndex.size());
+        assertEquals(2, eventIndex.query(Collections.singletonList("Person"), "front_door", null, null, null, 10).events.size());
+    }
+
+    @Test
+    public void testCorruptRecordSkipped() throws Exception {
+        File directory = temporaryFolder.getRoot();
+
+        eventIndex = new EventIndex(directory);
+        eventIndex.add("1.mp4", "front_door", true, tags("Person"));
+        eventIndex.add("2.mp4", "front_door", true, tags("Person"));
+        eventIndex.add("3.mp4", "front_door", true, tags("Person"));
+        eventIndex.close();
+
+        // Damage the middle record, leaving its line in place.
+        Path log = new File(directory, "events.log").toPath();
+        List<String> lines = Files.readAllLines(log);
+        lines.set(1, lines.get(1).substring(0, 10) + "\u0000\u0000");
+        Files.write(log, lines);
+
+        eventIndex = new EventIndex(directory);
+        assertEquals(3, eventIndex.size());
+
+        EventIndex.Page page = eventIndex.query(Collections.singletonList("Person"), null, null, null, null, 10);
+        assertEquals(Arrays.asList("3.mp4", "1.mp4"), filenames(page));
+        assertEquals(Arrays.asList("3.mp4", "1.mp4"), filenames(eventIndex.query(Collections.<String>emptyList(), null, null, null, null, 10)));
+
+        // Later events keep their ids, so cursors from before the restart still page from the same place.
+        assertEquals(2, page.events.get(0).id);
+        assertEquals(Collections.singletonList("1.mp4"), filenames(eventIndex.query(Collections.<String>emptyList(), null, null, null, 2, 10)));
+
+        // Later records are still written on a line of their own, and survive another restart.
+        eventIndex.add("4.mp4", "front_door", true, tags("Person"));
+        eventIndex.close();
+
+        eventIndex = new EventIndex(directory);
+        assertEquals(Arrays.asList("4.mp4", "3.mp4", "1.mp4"), filenames(eventIndex.query(Collections.singletonList("Person"), null, null, null, null, 10)));
+    }
+
+}
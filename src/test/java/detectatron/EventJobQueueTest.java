@@ -0,0 +1,254 @@
+package detectatron;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the background event job queue.
+ */
+public class EventJobQueueTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private EventJobQueue jobQueue;
+
+    @After
+    public void tearDown() throws Exception {
+        if (jobQueue != null) {
+            jobQueue.shutdown();
+        }
+    }
+
+    private SpooledFile spooled(String filename) throws Exception {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), ("video of " + filename).getBytes());
+        return new SpooledFile(file, filename);
+    }
+
+    private EventJob awaitFinished(EventJobQueue queue, String id) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            EventJob job = queue.get(id);
+
+            if (job.isFinished()) {
+                return job;
+            }
+
+            Thread.sleep(50);
+        }
+
+        fail("Job " + id + " never finished");
+        return null;
+    }
+
+    @Test
+    public void testProcessesQueuedEvent() throws Exception {
+        File directory = temporaryFolder.newFolder("events");
+        List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+
+        jobQueue = new EventJobQueue(directory, (video, job) -> {
+            processed.add(new String(Files.readAllBytes(video.toPath())));
+            return Collections.singletonList("Person");
+        }, 2, 10, 10, 1, 0);
+        jobQueue.start();
+
+        SpooledFile spooledFile = spooled("front_door.mp4");
+        EventJob job = jobQueue.submit(spooledFile, 0);
+
+        // The spooled file is moved into the queue.
+        assertFalse(spooledFile.getFile().exists());
+
+        job = awaitFinished(jobQueue, job.id);
+
+        assertEquals(EventJob.State.COMPLETED, job.state);
+        assertEquals(Collections.singletonList("Person"), job.keyTags);
+        assertEquals(Collections.singletonList("video of front_door.mp4"), processed);
+        assertFalse(new File(directory, job.id + ".video").exists());
+    }
+
+    @Test
+    public void testDeduplicatesByFilename() throws Exception {
+        jobQueue = new EventJobQueue(temporaryFolder.newFolder("events"), (video, job) -> Collections.emptyList(), 1, 10, 10, 1, 0);
+        jobQueue.start();
+
+        EventJob first = jobQueue.submit(spooled("front_door.mp4"), 0);
+        awaitFinished(jobQueue, first.id);
+
+        EventJob second = jobQueue.submit(spooled("front_door.mp4"), 0);
+        assertEquals(first.id, second.id);
+
+        EventJob other = jobQueue.submit(spooled("back_door.mp4"), 0);
+        assertNotEquals(first.id, other.id);
+    }
+
+    @Test
+    public void testFailedEventRetried() throws Exception {
+        File directory = temporaryFolder.newFolder("events");
+        AtomicInteger attempts = new AtomicInteger();
+
+        jobQueue = new EventJobQueue(directory, (video, job) -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("S3 unavailable");
+            }
+            return Collections.singletonList("Person");
+        }, 1, 10, 10, 3, 10);
+        jobQueue.start();
+
+        EventJob job = awaitFinished(jobQueue, jobQueue.submit(spooled("front_door.mp4"), 0).id);
+
+        assertEquals(EventJob.State.COMPLETED, job.state);
+        assertEquals(3, job.attempts);
+        assertNull(job.error);
+        assertFalse(new File(directory, job.id + ".video").exists());
+    }
+
+    @Test
+    public void testFailedEventKeptAndResubmitted() throws Exception {
+        File directory = temporaryFolder.newFolder("events");
+        AtomicBoolean succeed = new AtomicBoolean(false);
+        List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+
+        jobQueue = new EventJobQueue(directory, (video, job) -> {
+            processed.add(new String(Files.readAllBytes(video.toPath())));
+
+            if (!succeed.get()) {
+                throw new IllegalStateException("Unable to decode video");
+            }
+            return Collections.emptyList();
+        }, 1, 10, 10, 2, 10);
+        jobQueue.start();
+
+        EventJob job = awaitFinished(jobQueue, jobQueue.submit(spooled("front_door.mp4"), 0).id);
+
+        assertEquals(EventJob.State.FAILED, job.state);
+        assertEquals("Unable to decode video", job.error);
+        assertEquals(2, job.attempts);
+
+        // Out of attempts, but the video is kept rather than lost.
+        assertFalse(new File(directory, job.id + ".video").exists());
+        assertTrue(new File(directory, "failed/" + job.id + ".video").exists());
+
+        // Resubmitting retries the same job with the video we kept, the resubmitted copy is left to the caller.
+        succeed.set(true);
+
+        File resubmitted = temporaryFolder.newFile();
+        Files.write(resubmitted.toPath(), "resubmitted video".getBytes());
+
+        assertEquals(job.id, jobQueue.submit(new SpooledFile(resubmitted, "front_door.mp4"), 0).id);
+        assertTrue(resubmitted.exists());
+
+        job = awaitFinished(jobQueue, job.id);
+
+        assertEquals(EventJob.State.COMPLETED, job.state);
+        assertEquals(Collections.nCopies(3, "video of front_door.mp4"), processed);
+        assertFalse(new File(directory, "failed/" + job.id + ".video").exists());
+    }
+
+    @Test
+    public void testHigherPriorityProcessedFirst() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+
+        jobQueue = new EventJobQueue(temporaryFolder.newFolder("events"), (video, job) -> {
+            blocker.await(5, TimeUnit.SECONDS);
+            processed.add(job.filename);
+            return Collections.emptyList();
+        }, 1, 10, 10, 1, 0);
+        jobQueue.start();
+
+        // Occupies the only worker whilst the rest are queued.
+        jobQueue.submit(spooled("first.mp4"), 0);
+        Thread.sleep(200);
+
+        jobQueue.submit(spooled("low.mp4"), 0);
+        jobQueue.submit(spooled("lower.mp4"), -1);
+        EventJob last = jobQueue.submit(spooled("high.mp4"), 5);
+
+        blocker.countDown();
+        awaitFinished(jobQueue, last.id);
+        Thread.sleep(200);
+
+        assertEquals(4, processed.size());
+        assertEquals("first.mp4", processed.get(0));
+        assertEquals("high.mp4", processed.get(1));
+        assertEquals("low.mp4", processed.get(2));
+        assertEquals("lower.mp4", processed.get(3));
+    }
+
+    @Test
+    public void testRefusesWhenFull() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        jobQueue = new EventJobQueue(temporaryFolder.newFolder("events"), (video, job) -> {
+            blocker.await(5, TimeUnit.SECONDS);
+            return Collections.emptyList();
+        }, 1, 1, 10, 1, 0);
+        jobQueue.start();
+
+        jobQueue.submit(spooled("first.mp4"), 0);
+        Thread.sleep(200);
+        jobQueue.submit(spooled("second.mp4"), 0);
+
+        SpooledFile refused = spooled("third.mp4");
+
+        try {
+            jobQueue.submit(refused, 0);
+            fail("Expected the queue to be full");
+        } catch (EventJobQueue.QueueFullException e) {
+            // Expected, and the spooled file is left for the caller to clean up.
+            assertTrue(refused.getFile().exists());
+        }
+
+        blocker.countDown();
+    }
+
+    @Test
+    public void testResumesAfterRestart() throws Exception {
+        File directory = temporaryFolder.newFolder("events");
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        EventJobQueue stoppedQueue = new EventJobQueue(directory, (video, job) -> {
+            blocker.await();
+            return Collections.emptyList();
+        }, 1, 10, 10, 1, 0);
+        stoppedQueue.start();
+
+        EventJob processing = stoppedQueue.submit(spooled("processing.mp4"), 0);
+        Thread.sleep(200);
+        EventJob queued = stoppedQueue.submit(spooled("queued.mp4"), 0);
+
+        stoppedQueue.shutdown();
+        Thread.sleep(200);
+
+        List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+
+        jobQueue = new EventJobQueue(directory, (video, job) -> {
+            processed.add(new String(Files.readAllBytes(video.toPath())));
+            return Collections.singletonList("Cat");
+        }, 1, 10, 10, 1, 0);
+        jobQueue.start();
+
+        assertEquals(EventJob.State.COMPLETED, awaitFinished(jobQueue, processing.id).state);
+        assertEquals(EventJob.State.COMPLETED, awaitFinished(jobQueue, queued.id).state);
+        assertTrue(processed.contains("video of processing.mp4"));
+        assertTrue(processed.contains("video of queued.mp4"));
+
+        // Still deduplicated after the restart.
+        assertEquals(queued.id, jobQueue.submit(spooled("queued.mp4"), 0).id);
+    }
+
+}
@@ -0,0 +1,100 @@
+package detectatron;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for tiling several frames into a single grid image.
+ */
+public class FrameBatchTest {
+
+    private BufferedImage frame(int width, int height, Color colour) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(colour);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    public void testGridAdaptsToFrameSize() {
+        // Small frames fit in the grid at their own size.
+        FrameBatch small = FrameBatch.create(320, 180, 16, 1920, 1080, 480);
+        assertEquals(16, small.getCapacity());
+        assertEquals(320, small.getTileWidth());
+        assertEquals(180, small.getTileHeight());
+
+        // Larger frames are scaled down, but no further than the min tile width.
+        FrameBatch large = FrameBatch.create(1280, 720, 16, 1920, 1080, 480);
+        assertEquals(9, large.getCapacity());
+        assertEquals(3, large.getColumns());
+        assertTrue(large.getTileWidth() >= 480);
+
+        // A single frame larger than the grid is still scaled to fit it.
+        FrameBatch huge = FrameBatch.create(3840, 2160, 4, 1920, 1080, 2000);
+        assertEquals(1, huge.getCapacity());
+        assertEquals(1920, huge.getTileWidth());
+    }
+
+    @Test
+    public void testBatchTilesFrames() {
+        // 2x2 fits without scaling, where a row of 3 would need to be scaled down slightly.
+        FrameBatch batch = FrameBatch.create(640, 360, 3, 1920, 1080, 320);
+        assertEquals(3, batch.getCapacity());
+        assertEquals(2, batch.getColumns());
+        assertEquals(640, batch.getTileWidth());
+
+        BufferedImage reused = frame(640, 360, Color.RED);
+        assertFalse(batch.add(10, reused, 0.1));
+
+        // The caller reuses its image for the next frame, which mustn't affect the frames already added.
+        Graphics2D graphics = reused.createGraphics();
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(0, 0, 640, 360);
+        graphics.dispose();
+
+        assertFalse(batch.add(20, reused, 0.5));
+        assertTrue(batch.add(30, frame(640, 360, Color.GREEN), 0.2));
+
+        assertEquals(Arrays.asList(10, 20, 30), batch.getFrameNumbers());
+        assertEquals(20, batch.getKeyFrameNumber());
+        assertEquals(0.5, batch.getMaxDifference(), 0.0);
+        assertEquals(Color.BLUE.getRGB(), batch.getKeyFrame().getRGB(320, 180));
+
+        BufferedImage grid = batch.render();
+        assertEquals(640 * 2 + Mosaic.GAP, grid.getWidth());
+        assertEquals(360 * 2 + Mosaic.GAP, grid.getHeight());
+        assertEquals(Color.RED.getRGB(), grid.getRGB(10, 10));
+        assertEquals(Color.BLUE.getRGB(), grid.getRGB(grid.getWidth() - 10, 10));
+        assertEquals(Color.GREEN.getRGB(), grid.getRGB(10, grid.getHeight() - 10));
+
+        batch.clear();
+        assertTrue(batch.isEmpty());
+        assertFalse(batch.isFull());
+    }
+
+    @Test
+    public void testMosaicGrid() {
+        List<BufferedImage> tiles = Arrays.asList(
+                frame(100, 50, Color.RED), frame(100, 50, Color.GREEN), frame(100, 50, Color.BLUE), frame(60, 30, Color.WHITE));
+
+        Mosaic mosaic = Mosaic.grid(tiles, 2);
+        List<Rectangle> placements = mosaic.getPlacements();
+
+        assertEquals(200 + Mosaic.GAP, mosaic.getImage().getWidth());
+        assertEquals(100 + Mosaic.GAP, mosaic.getImage().getHeight());
+        assertEquals(new Rectangle(100 + Mosaic.GAP, 0, 100, 50), placements.get(1));
+        assertEquals(new Rectangle(100 + Mosaic.GAP, 50 + Mosaic.GAP, 60, 30), placements.get(3));
+        assertEquals(Color.BLUE.getRGB(), mosaic.getImage().getRGB(50, 75));
+    }
+
+}
@@ -0,0 +1,162 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the parallel frame categorisation pipeline, using a fake classifier in place of Rekognition.
+ */
+public class FrameClassificationPipelineTest {
+
+    private ThreadPoolTaskExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.initialize();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Fake classifier where the single byte of "image data" identifies the frame, frames matching personFrame are
+     * labelled as containing a person.
+     */
+    private Function<byte[], ListenableFuture<TagModel>> classifier(int personFrame, List<Integer> classified) {
+        return imageData -> executor.submitListenable(() -> {
+            synchronized (classified) {
+                classified.add((int) imageData[0]);
+            }
+            Thread.sleep(20);
+
+            String name = imageData[0] == personFrame ? "Person" : "Driveway";
+            return new TagModel(Collections.singletonList(new Label().withName(name).withConfidence(90F)));
+        });
+    }
+
+    private FrameCandidate frame(int frameNumber, double motionScore) {
+        return new FrameCandidate(frameNumber, new byte[] {(byte) frameNumber}, motionScore, 0, 100);
+    }
+
+    @Test
+    public void testAllFramesClassifiedWithoutKeyTags() throws Exception {
+        List<Integer> classified = new ArrayList<Integer>();
+        TagModel videoTags = new TagModel();
+
+        FrameClassificationPipeline pipeline = new FrameClassificationPipeline(classifier(-1, classified), videoTags, 3, 5);
+
+        for (int i = 1; i <= 9; i++) {
+            assertTrue(pipeline.submit(frame(i * 10, 0.1)));
+        }
+        pipeline.awaitCompletion();
+
+        assertEquals(9, classified.size());
+        assertTrue(videoTags.getKeyTags().isEmpty());
+        assertEquals(90, videoTags.keyFrameData[0]);
+    }
+
+    @Test
+    public void testKeyTagCancelsRemainingFrames() throws Exception {
+        List<Integer> classified = new ArrayList<Integer>();
+        TagModel videoTags = new TagModel();
+
+        FrameClassificationPipeline pipeline = new FrameClassificationPipeline(classifier(10, classified), videoTags, 1, 10);
+
+        int submitted = 0;
+        for (int i = 1; i <= 9; i++) {
+            if (!pipeline.submit(frame(i * 10, 0.1))) {
+                break;
+            }
+            submitted++;
+        }
+        pipeline.awaitCompletion();
+
+        assertTrue(pipeline.isCancelled());
+        assertEquals(Collections.singletonList("Person"), videoTags.getKeyTags());
+        assertEquals(10, videoTags.keyFrameData[0]);
+        assertTrue("Frames after the key tag should not be categorised", classified.size() < submitted);
+    }
+
+    @Test
+    public void testHighestPriorityFramesFirst() throws Exception {
+        List<Integer> classified = new ArrayList<Integer>();
+        AtomicInteger calls = new AtomicInteger();
+        TagModel videoTags = new TagModel();
+
+        // Hold up the first frame so that the rest queue up behind it.
+        Function<byte[], ListenableFuture<TagModel>> slowFirst = imageData -> executor.submitListenable(() -> {
+            if (calls.getAndIncrement() == 0) {
+                Thread.sleep(200);
+            }
+            synchronized (classified) {
+                classified.add((int) imageData[0]);
+            }
+            return new TagModel(Collections.singletonList(new Label().withName("Driveway").withConfidence(90F)));
+        });
+
+        FrameClassificationPipeline pipeline = new FrameClassificationPipeline(slowFirst, videoTags, 1, 10);
+
+        pipeline.submit(frame(10, 1.0));
+        pipeline.submit(frame(20, 0.02));
+        pipeline.submit(frame(30, 0.5));
+        pipeline.submit(frame(50, 0.02));
+        pipeline.awaitCompletion();
+
+        assertEquals(Integer.valueOf(10), classified.get(0));
+        assertEquals(Integer.valueOf(30), classified.get(1));
+
+        // With equal motion, the frame in the middle of the clip wins.
+        assertEquals(Integer.valueOf(50), classified.get(2));
+        assertEquals(Integer.valueOf(20), classified.get(3));
+    }
+
+    @Test
+    public void testFrameListenerToldAsFramesComplete() throws Exception {
+        List<Integer> classified = new ArrayList<Integer>();
+        List<String> reported = new ArrayList<String>();
+        TagModel videoTags = new TagModel();
+
+        FrameClassificationPipeline pipeline = new FrameClassificationPipeline(classifier(30, classified), videoTags, 1, 10);
+
+        // Running key tags are reported with each frame, so the frame with the person already includes it.
+        pipeline.setFrameListener((candidate, frameTags) ->
+                reported.add(candidate.frameNumber + ":" + frameTags.getAllTags() + ":" + videoTags.getKeyTags()));
+
+        pipeline.submit(frame(10, 1.0));
+        pipeline.submit(frame(30, 0.5));
+        pipeline.awaitCompletion();
+
+        assertEquals(2, reported.size());
+        assertEquals("10:[Driveway]:[]", reported.get(0));
+        assertEquals("30:[Person]:[Person]", reported.get(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailuresRethrown() throws Exception {
+        FrameClassificationPipeline pipeline = new FrameClassificationPipeline(
+                imageData -> executor.submitListenable(() -> {
+                    throw new IllegalStateException("Rekognition unavailable");
+                }),
+                new TagModel(), 2, 2);
+
+        pipeline.submit(frame(10, 1.0));
+        pipeline.awaitCompletion();
+    }
+
+}
@@ -0,0 +1,54 @@
+package detectatron;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for scaling and encoding video frames.
+ */
+public class FrameEncoderTest {
+
+    private Frame frame(int width, int height) {
+        return new Java2DFrameConverter().convert(new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR));
+    }
+
+    @Test
+    public void testLargeFramesScaledToFit() {
+        assertArrayEquals(new int[] {1280, 720}, FrameEncoder.fitWithin(3840, 2160, 1280, 720));
+        assertArrayEquals(new int[] {960, 720}, FrameEncoder.fitWithin(1440, 1080, 1280, 720));
+        assertArrayEquals(new int[] {640, 360}, FrameEncoder.fitWithin(1920, 1080, 640, 0));
+    }
+
+    @Test
+    public void testSmallFramesNotScaled() {
+        assertArrayEquals(new int[] {640, 480}, FrameEncoder.fitWithin(640, 480, 1280, 720));
+        assertArrayEquals(new int[] {1920, 1080}, FrameEncoder.fitWithin(1920, 1080, 0, 0));
+    }
+
+    @Test
+    public void testFramesScaledAndEncoded() throws Exception {
+        try (FrameEncoder frameEncoder = new FrameEncoder(1280, 720, 0.8f)) {
+
+            BufferedImage image = frameEncoder.convert(frame(1920, 1080));
+            assertEquals(1280, image.getWidth());
+            assertEquals(720, image.getHeight());
+
+            BufferedImage jpeg = ImageIO.read(new ByteArrayInputStream(frameEncoder.encode(image)));
+            assertEquals(1280, jpeg.getWidth());
+            assertEquals(720, jpeg.getHeight());
+
+            // Smaller frames pass straight through, and the encoder is reusable across frame sizes.
+            image = frameEncoder.convert(frame(640, 480));
+            assertEquals(640, image.getWidth());
+            assertEquals(480, ImageIO.read(new ByteArrayInputStream(frameEncoder.encode(image))).getHeight());
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package detectatron;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the frame sampling strategies used by the video frame extractor.
+ */
+public class FrameSamplerTest {
+
+    /**
+     * Change detector where the single byte fingerprint is the "scene", frames differ completely if their scene does.
+     */
+    private final FrameChangeDetector changeDetector = new FrameChangeDetector() {
+        @Override
+        public byte[] fingerprint(java.awt.image.BufferedImage frame) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public double difference(byte[] previous, byte[] current) {
+            return previous[0] == current[0] ? 0.0 : 1.0;
+        }
+    };
+
+    /**
+     * Run the sampler over a video where the frames between subjectStart and subjectEnd (exclusive) show a different
+     * scene to the rest, returning the frames sampled in the order they were sampled.
+     */
+    private List<Integer> run(FrameSampler sampler, int subjectStart, int subjectEnd) {
+        List<Integer> sampled = new ArrayList<Integer>();
+        int frameNumber;
+
+        while ((frameNumber = sampler.next()) >= 0) {
+            sampled.add(frameNumber);
+
+            boolean subject = frameNumber >= subjectStart && frameNumber < subjectEnd;
+            sampler.sampled(frameNumber, new byte[] {(byte) (subject ? 1 : 0)});
+
+            assertTrue("Sampler should finish", sampled.size() < 1000);
+        }
+
+        return sampled;
+    }
+
+    private int[] toArray(List<Integer> frames) {
+        return frames.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void testShortVideoSampledEverySecondFromStart() {
+        assertArrayEquals(new int[] {0, 30, 60, 90, 120}, toArray(run(new FixedRateFrameSampler(150, 30, 1.0, 10), 0, 0)));
+    }
+
+    @Test
+    public void testFractionalFrameRateDoesNotDrift() {
+        List<Integer> sampled = run(new FixedRateFrameSampler(9000, 29.97, 1.0, 0), 0, 0);
+
+        // Five minutes at 29.97fps, rounding the frame rate down would have been 10 seconds out by the end.
+        assertEquals(301, sampled.size());
+        assertEquals(Integer.valueOf(8991), sampled.get(300));
+    }
+
+    @Test
+    public void testLongVideoSpreadAcrossMaxSamples() {
+        int[] sampled = toArray(run(new FixedRateFrameSampler(25 * 60, 25, 1.0, 10), 0, 0));
+
+        assertEquals(10, sampled.length);
+        assertEquals(0, sampled[0]);
+        assertEquals(150, sampled[1]);
+        assertEquals(1350, sampled[9]);
+    }
+
+    @Test
+    public void testEmptyVideoHasNoSamples() {
+        assertEquals(0, run(new FixedRateFrameSampler(0, 25, 1.0, 10), 0, 0).size());
+        assertEquals(0, run(new FixedRateFrameSampler(100, 0, 1.0, 10), 0, 0).size());
+        assertEquals(0, run(new CoarseToFineFrameSampler(changeDetector, 0, 25, 5, 0.5), 0, 0).size());
+        assertEquals(0, run(new MotionFrameSampler(changeDetector, 100, 0, 1.0, 10, 0.02), 0, 0).size());
+    }
+
+    @Test
+    public void testKeyframeSamplerFollowsKeyframes() {
+        KeyframeFrameSampler sampler = new KeyframeFrameSampler(100);
+
+        assertEquals(0, sampler.next());
+        sampler.sampled(0, null);
+
+        // The extractor landed on the next keyframe at 50, so we carry on from there.
+        assertEquals(1, sampler.next());
+        sampler.sampled(50, null);
+        assertEquals(51, sampler.next());
+        sampler.sampled(99, null);
+        assertEquals(-1, sampler.next());
+    }
+
+    @Test
+    public void testMotionSamplerDenserAroundChange() {
+        // 60 seconds at 25fps with a subject passing through from 30s to 34s.
+        List<Integer> sampled = run(new MotionFrameSampler(changeDetector, 1500, 25, 1.0, 0, 0.02), 750, 850);
+
+        int duringSubject = 0;
+        for (int frameNumber : sampled) {
+            if (frameNumber >= 750 && frameNumber < 850) {
+                duringSubject++;
+            }
+        }
+
+        // Fewer samples than once a second overall...
+        assertTrue(sampled.size() < 60);
+
+        // ...but still catching the subject.
+        assertTrue(duringSubject >= 1);
+    }
+
+    @Test
+    public void testCoarseToFineHomesInOnChange() {
+        // 60 seconds at 25fps with a subject passing through from 21s to 23s, missed by the coarse pass.
+        CoarseToFineFrameSampler sampler = new CoarseToFineFrameSampler(changeDetector, 1500, 25, 5, 0.5);
+        List<Integer> sampled = new ArrayList<Integer>();
+        int frameNumber;
+
+        while ((frameNumber = sampler.next()) >= 0) {
+            sampled.add(frameNumber);
+            sampler.sampled(frameNumber, new byte[] {(byte) (frameNumber >= 525 && frameNumber < 575 ? 1 : 0)});
+
+            if (frameNumber >= 525 && frameNumber < 575) {
+                break;
+            }
+        }
+
+        assertEquals(Integer.valueOf(0), sampled.get(0));
+        assertEquals(Integer.valueOf(1499), sampled.get(4));
+        assertTrue(frameNumber >= 525 && frameNumber < 575);
+    }
+
+    @Test
+    public void testCoarseToFineRefinesTowardsChange() {
+        // Once something has been seen, further samples bracket where the scene changes.
+        List<Integer> sampled = run(new BudgetedFrameSampler(
+                new CoarseToFineFrameSampler(changeDetector, 1000, 25, 5, 0.5), 10, 0), 600, 1000);
+
+        assertEquals(10, sampled.size());
+
+        // After the 5 coarse samples, every refinement lands between the last empty (500) and first subject (749)
+        // coarse sample, bisecting down to within half a second of the change.
+        for (int frameNumber : sampled.subList(5, sampled.size())) {
+            assertTrue("Sample " + frameNumber + " outside changing region", frameNumber > 500 && frameNumber < 749);
+        }
+
+        assertTrue(sampled.contains(600));
+    }
+
+    @Test
+    public void testBudgetLimitsFrames() {
+        assertEquals(3, run(new BudgetedFrameSampler(new FixedRateFrameSampler(250, 25, 1.0, 0), 3, 0), 0, 0).size());
+    }
+
+    @Test
+    public void testBudgetLimitsTime() {
+        AtomicLong clock = new AtomicLong(1000);
+        BudgetedFrameSampler sampler = new BudgetedFrameSampler(new FixedRateFrameSampler(250, 25, 1.0, 0), 0, 500, clock::get);
+
+        assertEquals(0, sampler.next());
+        clock.addAndGet(499);
+        assertEquals(25, sampler.next());
+        clock.addAndGet(1);
+        assertEquals(-1, sampler.next());
+    }
+
+}
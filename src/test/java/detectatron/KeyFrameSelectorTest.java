@@ -0,0 +1,178 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.BoundingBox;
+import com.amazonaws.services.rekognition.model.Label;
+import org.junit.Test;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for choosing the keyframe of a video by score, and measuring the sharpness that feeds into it.
+ */
+public class KeyFrameSelectorTest {
+
+    private TagModel tags(String name, float confidence) {
+        return new TagModel(Collections.singletonList(new Label().withName(name).withConfidence(confidence)));
+    }
+
+    private FrameCandidate frame(int frameNumber, double motionScore, double sharpness) {
+        return new FrameCandidate(frameNumber, new byte[] {(byte) frameNumber}, motionScore, sharpness, 100);
+    }
+
+    private FrameCandidate region(int frameNumber, float width, float height) {
+        BoundingBox box = new BoundingBox().withLeft(0F).withTop(0F).withWidth(width).withHeight(height);
+        return new FrameCandidate(frameNumber, new byte[] {0}, new byte[] {(byte) frameNumber},
+                Collections.singletonList(box), 0.1, 100, 100);
+    }
+
+    /**
+     * Black and white squares, optionally smeared out by averaging each pixel with its neighbours.
+     */
+    private BufferedImage checkerboard(int blurRadius) {
+        BufferedImage image = new BufferedImage(160, 120, BufferedImage.TYPE_3BYTE_BGR);
+
+        Graphics2D graphics = image.createGraphics();
+        for (int y = 0; y < 120; y += 8) {
+            for (int x = 0; x < 160; x += 8) {
+                graphics.setColor(((x + y) / 8) % 2 == 0 ? Color.WHITE : Color.BLACK);
+                graphics.fillRect(x, y, 8, 8);
+            }
+        }
+        graphics.dispose();
+
+        if (blurRadius == 0) {
+            return image;
+        }
+
+        BufferedImage blurred = new BufferedImage(160, 120, BufferedImage.TYPE_3BYTE_BGR);
+
+        for (int y = 0; y < 120; y++) {
+            for (int x = 0; x < 160; x++) {
+                int sum = 0, count = 0;
+
+                for (int dy = -blurRadius; dy <= blurRadius; dy++) {
+                    for (int dx = -blurRadius; dx <= blurRadius; dx++) {
+                        int sx = Math.min(159, Math.max(0, x + dx));
+                        int sy = Math.min(119, Math.max(0, y + dy));
+                        sum += image.getRGB(sx, sy) & 0xFF;
+                        count++;
+                    }
+                }
+
+                int luma = sum / count;
+                blurred.setRGB(x, y, (luma << 16) | (luma << 8) | luma);
+            }
+        }
+
+        return blurred;
+    }
+
+    @Test
+    public void testSharpness() {
+        double sharp = Sharpness.of(checkerboard(0));
+        double blurred = Sharpness.of(checkerboard(3));
+
+        assertTrue("Blurring should reduce sharpness, " + sharp + " vs " + blurred, blurred < sharp / 4);
+        assertEquals(0, Sharpness.of(new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR)), 0.001);
+    }
+
+    @Test
+    public void testKeyLabelBeatsSharperFrame() {
+        TagModel videoTags = new TagModel();
+        KeyFrameSelector selector = new KeyFrameSelector(0);
+
+        assertTrue(selector.offer(frame(10, 0.2, 50), tags("Person", 80F), videoTags));
+        assertFalse(selector.offer(frame(20, 0.2, 1000), tags("Driveway", 99F), videoTags));
+        assertEquals(10, selector.getKeyFrame().frameNumber);
+
+        // A more confident person wins over the first.
+        assertTrue(selector.offer(frame(30, 0.2, 50), tags("Person", 95F), videoTags));
+        assertEquals(30, selector.getKeyFrame().frameNumber);
+    }
+
+    @Test
+    public void testSharperAndLargerFramesPreferred() {
+        TagModel videoTags = new TagModel();
+        KeyFrameSelector selector = new KeyFrameSelector(0);
+
+        selector.offer(frame(10, 0.2, 500), tags("Driveway", 90F), videoTags);
+        selector.offer(frame(20, 0.2, 20), tags("Driveway", 90F), videoTags);
+        assertEquals(10, selector.getKeyFrame().frameNumber);
+
+        // With the same labels and sharpness, the frame where the subject takes up more of it wins.
+        selector = new KeyFrameSelector(0);
+        selector.offer(region(10, 0.6F, 0.6F), tags("Person", 90F), videoTags);
+        selector.offer(region(20, 0.2F, 0.2F), tags("Person", 90F), videoTags);
+        assertEquals(10, selector.getKeyFrame().frameNumber);
+
+        // Equal scores go to the latest frame.
+        selector = new KeyFrameSelector(0);
+        selector.offer(frame(10, 0.2, 0), tags("Driveway", 90F), videoTags);
+        selector.offer(frame(20, 0.2, 0), tags("Driveway", 90F), videoTags);
+        assertEquals(20, selector.getKeyFrame().frameNumber);
+    }
+
+    @Test
+    public void testEmptyFirstFrameDoesNotWin() {
+        TagModel videoTags = new TagModel();
+        KeyFrameSelector selector = new KeyFrameSelector(0);
+
+        // The first frame sampled always counts as wholly changed, even when it's the empty scene before anything
+        // happens, whilst a later frame showing something only changes part of the frame.
+        selector.offer(frame(0, 1.0, 100), tags("Driveway", 90F), videoTags);
+        selector.offer(frame(25, 0.2, 1000), tags("Driveway", 90F), videoTags);
+        assertEquals(25, selector.getKeyFrame().frameNumber);
+    }
+
+    @Test
+    public void testStripKeepsBestFramesInVideoOrder() {
+        TagModel videoTags = new TagModel();
+        KeyFrameSelector selector = new KeyFrameSelector(3);
+
+        selector.offer(frame(10, 0.1, 10), tags("Driveway", 90F), videoTags);
+        selector.offer(frame(20, 0.1, 400), tags("Driveway", 90F), videoTags);
+        selector.offer(frame(30, 0.1, 5), tags("Driveway", 90F), videoTags);
+        selector.offer(frame(40, 0.1, 50), tags("Person", 90F), videoTags);
+        selector.offer(frame(50, 0.1, 200), tags("Driveway", 90F), videoTags);
+
+        List<KeyFrameSelector.Selection> strip = selector.getStripFrames();
+
+        assertEquals(3, strip.size());
+        assertEquals(20, strip.get(0).frameNumber);
+        assertEquals(40, strip.get(1).frameNumber);
+        assertEquals(50, strip.get(2).frameNumber);
+        assertEquals(40, selector.getKeyFrame().frameNumber);
+
+        // Regions of a frame that's already in the strip don't take a second place in it.
+        selector.offer(region(40, 0.5F, 0.5F), tags("Person", 99F), videoTags);
+        assertEquals(3, selector.getStripFrames().size());
+        assertEquals(40, selector.getKeyFrame().frameNumber);
+        assertEquals(20, selector.getStripFrames().get(0).frameNumber);
+    }
+
+    @Test
+    public void testPipelineKeepsBestFrame() throws Exception {
+        TagModel videoTags = new TagModel();
+
+        // Classified immediately, with the same labels in every frame.
+        FrameClassificationPipeline pipeline = new FrameClassificationPipeline(imageData -> {
+            SettableListenableFuture<TagModel> future = new SettableListenableFuture<TagModel>();
+            future.set(tags("Driveway", 90F));
+            return future;
+        }, videoTags, 1, 10);
+
+        pipeline.submit(frame(10, 0.1, 20));
+        pipeline.submit(frame(20, 0.1, 800));
+        pipeline.submit(frame(30, 0.1, 40));
+        pipeline.awaitCompletion();
+
+        assertEquals(20, videoTags.keyFrameData[0]);
+    }
+}
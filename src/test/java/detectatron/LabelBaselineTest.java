@@ -0,0 +1,133 @@
+package detectatron;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for learning each camera's baseline of usual labels.
+ */
+public class LabelBaselineTest {
+
+    private static final KeyLabelSet KEY_LABELS = new KeyLabelSet("Person", "Car");
+
+    @Test
+    public void testSceneryStopsBeingKey() {
+        LabelBaseline baseline = new LabelBaseline(20, 0.8, 10);
+
+        // Not enough clips to go on yet.
+        for (int i = 0; i < 9; i++) {
+            baseline.observe("driveway", 3, Arrays.asList("Car", "Outdoors", i % 5 == 0 ? "Person" : "Plant"));
+        }
+
+        assertSame(KEY_LABELS, baseline.keyLabelsFor("driveway", 3, KEY_LABELS));
+
+        baseline.observe("driveway", 3, Arrays.asList("Car", "Outdoors"));
+
+        KeyLabelSet keyLabels = baseline.keyLabelsFor("driveway", 3, KEY_LABELS);
+        assertFalse(keyLabels.contains("Car"));
+        assertTrue(keyLabels.contains("Person"));
+        assertTrue(baseline.isBaseline("driveway", 3, "outdoors"));
+
+        // Other cameras have their own baseline.
+        assertSame(KEY_LABELS, baseline.keyLabelsFor("front_door", 3, KEY_LABELS));
+    }
+
+    @Test
+    public void testExemptLabelsStayKey() {
+        LabelBaseline baseline = new LabelBaseline(20, 0.8, 10, Arrays.asList("Person", "People"));
+
+        // A front door camera that sees someone in nearly every clip, and the cat on the doorstep most of the time.
+        for (int i = 0; i < 30; i++) {
+            baseline.observe("front_door", 18, Arrays.asList("Person", "People", "Cat", "Outdoors"));
+        }
+
+        assertTrue(baseline.isBaseline("front_door", 18, "Person"));
+
+        KeyLabelSet keyLabels = baseline.keyLabelsFor("front_door", 18, KeyLabelSet.DEFAULT);
+        assertTrue(keyLabels.contains("Person"));
+        assertTrue(keyLabels.contains("People"));
+        assertFalse(keyLabels.contains("Cat"));
+        assertTrue(keyLabels.contains("Pet"));
+    }
+
+    @Test
+    public void testQuietHoursFallBackToAllDay() {
+        LabelBaseline baseline = new LabelBaseline(20, 0.8, 10);
+
+        for (int i = 0; i < 10; i++) {
+            baseline.observe("driveway", i % 2 == 0 ? 8 : 18, Collections.singletonList("Car"));
+        }
+
+        // Neither hour has enough clips on its own, but the camera as a whole does.
+        assertTrue(baseline.isBaseline("driveway", 8, "Car"));
+        assertTrue(baseline.isBaseline("driveway", 2, "Car"));
+
+        // Once an hour has enough clips of its own, it's judged on those - the car is never there at 2am, but always
+        // at 8am.
+        for (int i = 0; i < 10; i++) {
+            baseline.observe("driveway", 2, Collections.singletonList("Outdoors"));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            baseline.observe("driveway", 8, Collections.singletonList("Car"));
+        }
+
+        assertFalse(baseline.isBaseline("driveway", 2, "Car"));
+        assertTrue(baseline.isBaseline("driveway", 8, "Car"));
+    }
+
+    @Test
+    public void testBaselineFollowsChangesToScene() {
+        LabelBaseline baseline = new LabelBaseline(5, 0.8, 5);
+
+        for (int i = 0; i < 20; i++) {
+            baseline.observe("driveway", 12, Collections.singletonList("Car"));
+        }
+
+        assertTrue(baseline.isBaseline("driveway", 12, "Car"));
+
+        // The car is sold.
+        for (int i = 0; i < 5; i++) {
+            baseline.observe("driveway", 12, Collections.singletonList("Outdoors"));
+        }
+
+        assertEquals(0.5, baseline.frequency("driveway", 12, "Car"), 0.05);
+        assertFalse(baseline.isBaseline("driveway", 12, "Car"));
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        LabelBaseline baseline = new LabelBaseline(20, 0.8, 10);
+
+        for (int i = 0; i < 12; i++) {
+            baseline.observe("driveway", 7, Arrays.asList("Car", "Outdoors"));
+        }
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        String json = objectMapper.writeValueAsString(baseline.snapshot());
+
+        LabelBaseline restored = new LabelBaseline(20, 0.8, 10);
+        restored.restore(objectMapper.<Map<String, LabelBaseline.Bucket[]>>readValue(json, new TypeReference<Map<String, LabelBaseline.Bucket[]>>() {}));
+
+        assertEquals(baseline.frequency("driveway", 7, "Car"), restored.frequency("driveway", 7, "Car"), 0.0001);
+        assertTrue(restored.isBaseline("driveway", 7, "Car"));
+    }
+
+    @Test
+    public void testCameraIdentifiedFromFilename() {
+        CameraIdentifier cameraIdentifier = new CameraIdentifier("^([a-z_]+)_\\d{4}-");
+
+        assertEquals("front_door", cameraIdentifier.identify(null, "front_door_2017-01-19_0640.mp4"));
+        assertEquals("garage", cameraIdentifier.identify("garage", "front_door_2017-01-19_0640.mp4"));
+        assertNull(cameraIdentifier.identify(null, "VID0001.mp4"));
+        assertNull(new CameraIdentifier("").identify(null, "front_door_2017-01-19_0640.mp4"));
+    }
+
+}
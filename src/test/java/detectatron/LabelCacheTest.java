@@ -0,0 +1,148 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the perceptual hash label caches.
+ */
+public class LabelCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final List<Label> LABELS = Collections.singletonList(new Label().withName("Driveway").withConfidence(80F));
+
+    /**
+     * In memory cache where we control the clock.
+     */
+    private static class TestCache extends InMemoryLabelCache {
+        long time = 0;
+
+        TestCache(int maxEntries, long ttlMillis, int maxDistance) {
+            super(maxEntries, ttlMillis, maxDistance);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+    }
+
+    private BufferedImage scene(int subjectX) {
+        BufferedImage image = new BufferedImage(1280, 720, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+
+        graphics.setPaint(new java.awt.GradientPaint(0, 0, Color.BLACK, 1280, 720, Color.LIGHT_GRAY));
+        graphics.fillRect(0, 0, 1280, 720);
+
+        if (subjectX >= 0) {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(subjectX, 400, 60, 160);
+        }
+
+        graphics.dispose();
+        return image;
+    }
+
+    private byte[] jpeg(BufferedImage image) throws Exception {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", jpeg);
+        return jpeg.toByteArray();
+    }
+
+    @Test
+    public void testHashStableAcrossEncoding() throws Exception {
+        BufferedImage image = scene(-1);
+
+        assertEquals(ImageHash.of(image), ImageHash.of(jpeg(image)));
+        assertEquals(ImageHash.of(image), ImageHash.fromHex(ImageHash.of(image).toHex()));
+    }
+
+    @Test
+    public void testSmallSubjectChangesHash() {
+        assertTrue(ImageHash.of(scene(-1)).distance(ImageHash.of(scene(900))) > 0);
+    }
+
+    @Test
+    public void testUndecodableImageHasNoHash() {
+        assertNull(ImageHash.of("Unit Testing".getBytes()));
+    }
+
+    @Test
+    public void testExactAndNearHits() {
+        ImageHash empty = ImageHash.of(scene(-1));
+        ImageHash occupied = ImageHash.of(scene(900));
+        int distance = empty.distance(occupied);
+
+        TestCache exactCache = new TestCache(10, 1000, 0);
+        exactCache.store(empty, LABELS);
+
+        assertEquals(LABELS, exactCache.lookup(empty));
+        assertNull(exactCache.lookup(occupied));
+
+        TestCache tolerantCache = new TestCache(10, 1000, distance);
+        tolerantCache.store(empty, LABELS);
+
+        assertEquals(LABELS, tolerantCache.lookup(occupied));
+    }
+
+    @Test
+    public void testExpiry() {
+        ImageHash hash = ImageHash.of(scene(-1));
+
+        TestCache cache = new TestCache(10, 1000, 0);
+        cache.store(hash, LABELS);
+
+        cache.time = 1000;
+        assertEquals(LABELS, cache.lookup(hash));
+
+        cache.time = 1001;
+        assertNull(cache.lookup(hash));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        ImageHash first = ImageHash.of(scene(100));
+        ImageHash second = ImageHash.of(scene(500));
+        ImageHash third = ImageHash.of(scene(900));
+
+        TestCache cache = new TestCache(2, 1000, 0);
+        cache.store(first, LABELS);
+        cache.store(second, LABELS);
+        cache.lookup(first);
+        cache.store(third, LABELS);
+
+        assertEquals(LABELS, cache.lookup(first));
+        assertNull(cache.lookup(second));
+        assertEquals(LABELS, cache.lookup(third));
+    }
+
+    @Test
+    public void testDiskCacheSurvivesRestart() throws Exception {
+        ImageHash hash = ImageHash.of(scene(-1));
+
+        new DiskLabelCache(temporaryFolder.getRoot(), 10, 60000, 0).store(hash, LABELS);
+
+        DiskLabelCache restarted = new DiskLabelCache(temporaryFolder.getRoot(), 10, 60000, 0);
+        List<Label> labels = restarted.lookup(hash);
+
+        assertEquals(1, restarted.size());
+        assertEquals("Driveway", labels.get(0).getName());
+        assertEquals(80F, labels.get(0).getConfidence(), 0.001);
+    }
+
+}
@@ -0,0 +1,92 @@
+package detectatron;
+
+import org.bytedeco.javacv.FrameGrabber;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the lifecycle of native video decoding resources.
+ */
+public class MediaResourcesTest {
+
+    private MediaResources mediaResources;
+
+    @Before
+    public void setUp() {
+        mediaResources = new MediaResources();
+        ReflectionTestUtils.setField(mediaResources, "maxFrameWidth", 1280);
+        ReflectionTestUtils.setField(mediaResources, "maxFrameHeight", 720);
+        ReflectionTestUtils.setField(mediaResources, "jpegQuality", 0.8f);
+        ReflectionTestUtils.setField(mediaResources, "encoderPoolSize", 1);
+        mediaResources.initialise();
+    }
+
+    @After
+    public void tearDown() {
+        mediaResources.shutdown();
+    }
+
+    @Test
+    public void testGrabbersReleasedOnClose() {
+        try (VideoDecodeSession session = mediaResources.open(new byte[] {1, 2, 3})) {
+            assertNotNull(session.getFrameGrabber());
+            assertEquals(1, mediaResources.getLiveGrabbers());
+        }
+
+        assertEquals(0, mediaResources.getLiveGrabbers());
+    }
+
+    @Test
+    public void testGrabbersReleasedWhenVideoInvalid() {
+        try (VideoDecodeSession session = mediaResources.open("not really a video".getBytes())) {
+            session.getFrameGrabber().start();
+            fail("Expected the grabber to reject the video");
+        } catch (FrameGrabber.Exception e) {
+            // Expected
+        }
+
+        assertEquals(0, mediaResources.getLiveGrabbers());
+    }
+
+    @Test
+    public void testEncodersReused() {
+        FrameEncoder first;
+
+        try (VideoDecodeSession session = mediaResources.open(new byte[0])) {
+            first = session.getFrameEncoder();
+        }
+
+        try (VideoDecodeSession session = mediaResources.open(new byte[0])) {
+            assertSame(first, session.getFrameEncoder());
+
+            // A second concurrent video needs its own encoder.
+            try (VideoDecodeSession concurrent = mediaResources.open(new byte[0])) {
+                assertNotSame(first, concurrent.getFrameEncoder());
+            }
+        }
+
+        assertEquals(2, mediaResources.getEncodersCreated());
+    }
+
+    @Test
+    public void testNativeMemoryReported() {
+        Map<String, Number> values = new HashMap<String, Number>();
+
+        for (Metric<?> metric : mediaResources.metrics()) {
+            values.put(metric.getName(), metric.getValue());
+        }
+
+        assertTrue(values.get("native.bytes.physical").longValue() > 0);
+        assertTrue(values.containsKey("native.bytes.total"));
+        assertEquals(0L, values.get("media.grabbers.live"));
+    }
+
+}
@@ -0,0 +1,125 @@
+package detectatron;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for finding the regions of motion in a frame, and packing them into a mosaic.
+ */
+public class MotionRegionDetectorTest {
+
+    /**
+     * Generate a plain grey "driveway" with bright "people" standing in it.
+     */
+    private BufferedImage scene(Rectangle... subjects) {
+        BufferedImage image = new BufferedImage(640, 360, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+
+        graphics.setColor(Color.DARK_GRAY);
+        graphics.fillRect(0, 0, 640, 360);
+
+        graphics.setColor(Color.WHITE);
+        for (Rectangle subject : subjects) {
+            graphics.fillRect(subject.x, subject.y, subject.width, subject.height);
+        }
+
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    public void testNoRegionsWithoutBackground() {
+        MotionRegionDetector detector = new MotionRegionDetector(0.3, 0.25, 0);
+
+        assertTrue(detector.detect(scene(new Rectangle(500, 200, 40, 100))).isEmpty());
+    }
+
+    @Test
+    public void testNoRegionsInStaticScene() {
+        MotionRegionDetector detector = new MotionRegionDetector(0.3, 0.25, 0);
+
+        detector.detect(scene());
+        assertTrue(detector.detect(scene()).isEmpty());
+    }
+
+    @Test
+    public void testRegionsCoverSubjects() {
+        MotionRegionDetector detector = new MotionRegionDetector(0.3, 0.25, 64);
+
+        Rectangle near = new Rectangle(500, 200, 40, 100);
+        Rectangle far = new Rectangle(40, 40, 10, 20);
+
+        detector.detect(scene());
+        List<Rectangle> regions = detector.detect(scene(near, far));
+
+        assertEquals(2, regions.size());
+
+        for (Rectangle region : regions) {
+            assertTrue(region.contains(near) || region.contains(far));
+
+            // Padded, and grown to the minimum size.
+            assertTrue(region.width >= 64 && region.height >= 64);
+            assertTrue(new Rectangle(0, 0, 640, 360).contains(region));
+        }
+
+        // Much less than the whole frame needs to be categorised.
+        assertTrue(MotionRegionDetector.coverage(regions, 640, 360) < 0.2);
+    }
+
+    @Test
+    public void testBackgroundAdapts() {
+        MotionRegionDetector detector = new MotionRegionDetector(0.5, 0.25, 0);
+        Rectangle parkedCar = new Rectangle(100, 100, 80, 40);
+
+        detector.detect(scene());
+        assertFalse(detector.detect(scene(parkedCar)).isEmpty());
+
+        // Once the car has been there long enough, it becomes part of the background.
+        for (int i = 0; i < 5; i++) {
+            detector.detect(scene(parkedCar));
+        }
+        assertTrue(detector.detect(scene(parkedCar)).isEmpty());
+    }
+
+    @Test
+    public void testMosaicPlacesTilesWithoutOverlap() {
+        BufferedImage red = new BufferedImage(100, 50, BufferedImage.TYPE_3BYTE_BGR);
+        BufferedImage tall = new BufferedImage(40, 120, BufferedImage.TYPE_3BYTE_BGR);
+        BufferedImage small = new BufferedImage(30, 30, BufferedImage.TYPE_3BYTE_BGR);
+
+        Graphics2D graphics = red.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 100, 50);
+        graphics.dispose();
+
+        Mosaic mosaic = Mosaic.pack(Arrays.asList(red, tall, small));
+        List<Rectangle> placements = mosaic.getPlacements();
+
+        assertEquals(3, placements.size());
+        assertEquals(100, placements.get(0).width);
+        assertEquals(120, placements.get(1).height);
+
+        Rectangle bounds = new Rectangle(0, 0, mosaic.getImage().getWidth(), mosaic.getImage().getHeight());
+
+        for (int i = 0; i < placements.size(); i++) {
+            assertTrue(bounds.contains(placements.get(i)));
+
+            for (int j = i + 1; j < placements.size(); j++) {
+                assertFalse(placements.get(i).intersects(placements.get(j)));
+            }
+        }
+
+        // The tile was copied into place.
+        Rectangle redPlacement = placements.get(0);
+        assertEquals(Color.RED.getRGB(), mosaic.getImage().getRGB(redPlacement.x + 50, redPlacement.y + 25));
+    }
+
+}
@@ -0,0 +1,88 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import javax.validation.ValidationException;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for local label detection, using a tiny weightless model that classifies images by their dominant colour.
+ */
+public class OpenCvLabelDetectorTest {
+
+    private OpenCvLabelDetector labelDetector;
+
+    @Before
+    public void setUp() throws IOException {
+        labelDetector = new OpenCvLabelDetector(
+                new File("src/test/resources/models/colour.prototxt"),
+                null,
+                new File("src/test/resources/models/colour-labels.txt"),
+                "prob",
+                8,
+                8,
+                new double[] {0, 0, 0},
+                20.0 / 255,
+                50
+        );
+    }
+
+    @After
+    public void tearDown() {
+        labelDetector.close();
+    }
+
+    private byte[] image(Color colour) throws IOException {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR);
+
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(colour);
+        graphics.fillRect(0, 0, 64, 48);
+        graphics.dispose();
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+
+    @Test
+    public void testClassesMappedToLabels() throws Exception {
+        List<Label> labels = labelDetector.detectLabels(image(Color.RED));
+
+        assertEquals(1, labels.size());
+        assertEquals("Red", labels.get(0).getName());
+        assertTrue(labels.get(0).getConfidence() > 99);
+    }
+
+    @Test
+    public void testClassWithSeveralLabels() throws Exception {
+        List<Label> labels = labelDetector.detectLabels(image(Color.BLUE));
+
+        assertEquals(2, labels.size());
+        assertEquals("Blue", labels.get(0).getName());
+        assertEquals("Sky", labels.get(1).getName());
+    }
+
+    @Test
+    public void testIgnoredClassHasNoLabels() throws Exception {
+        assertTrue(labelDetector.detectLabels(image(Color.GREEN)).isEmpty());
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testInvalidImageRejected() {
+        labelDetector.detectLabels("Unit Testing".getBytes());
+    }
+
+}
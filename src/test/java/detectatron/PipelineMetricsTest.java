@@ -0,0 +1,106 @@
+package detectatron;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the stage timers and counters, and their rendering in the Prometheus format.
+ */
+public class PipelineMetricsTest {
+
+    @Test
+    public void testTimerBuckets() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics();
+        PipelineMetrics.Timer timer = metrics.timer("video.decode");
+
+        timer.record(TimeUnit.MICROSECONDS.toNanos(500));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(1) + 1);
+        timer.record(TimeUnit.MICROSECONDS.toNanos(1900));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(7));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(10));
+        timer.record(TimeUnit.MINUTES.toNanos(1));
+
+        assertSame(timer, metrics.timer("video.decode"));
+        assertEquals(6, timer.getCount());
+        assertEquals(TimeUnit.MINUTES.toNanos(1), timer.getMaxNanos());
+
+        long[] buckets = timer.getBucketCounts();
+        assertEquals(PipelineMetrics.BUCKETS_MILLIS.length + 1, buckets.length);
+        assertEquals(1, buckets[0]); // <= 1ms
+        assertEquals(2, buckets[1]); // <= 5ms, anything over 1ms even by a nanosecond
+        assertEquals(2, buckets[2]); // <= 10ms, inclusive of the upper bound
+        assertEquals(1, buckets[buckets.length - 1]); // over the largest bucket
+    }
+
+    @Test
+    public void testPublicMetrics() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics();
+
+        metrics.timer("label.detect").record(TimeUnit.MILLISECONDS.toNanos(250));
+        metrics.increment("video.frames.sampled");
+        metrics.increment("video.frames.sampled", 2);
+
+        assertEquals(Long.valueOf(3), metrics.getCounters().get("video.frames.sampled"));
+        assertEquals(250L, value(metrics, "timer.label.detect.total-ms"));
+        assertEquals(1L, value(metrics, "timer.label.detect.count"));
+        assertEquals(3L, value(metrics, "counter.video.frames.sampled"));
+    }
+
+    @Test
+    public void testPrometheusRendering() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics();
+
+        metrics.timer("upload.put").record(TimeUnit.MILLISECONDS.toNanos(30));
+        metrics.timer("upload.put").record(TimeUnit.MILLISECONDS.toNanos(3000));
+        metrics.increment("video.early.exits");
+
+        PublicMetrics other = () -> Arrays.<Metric<?>>asList(
+                new Metric<Long>("labelcache.hits", 12L),
+                new Metric<Integer>("async.pool.queued", 3));
+
+        String output = PrometheusEndpoint.render(metrics, Arrays.asList(metrics, other, other));
+
+        assertTrue(output.contains("# TYPE detectatron_stage_duration_seconds histogram\n"));
+        assertTrue(output.contains("detectatron_stage_duration_seconds_bucket{stage=\"upload.put\",le=\"0.025\"} 0\n"));
+        assertTrue(output.contains("detectatron_stage_duration_seconds_bucket{stage=\"upload.put\",le=\"0.05\"} 1\n"));
+        assertTrue(output.contains("detectatron_stage_duration_seconds_bucket{stage=\"upload.put\",le=\"5.0\"} 2\n"));
+        assertTrue(output.contains("detectatron_stage_duration_seconds_bucket{stage=\"upload.put\",le=\"+Inf\"} 2\n"));
+        assertTrue(output.contains("detectatron_stage_duration_seconds_sum{stage=\"upload.put\"} 3.03\n"));
+        assertTrue(output.contains("detectatron_stage_duration_seconds_count{stage=\"upload.put\"} 2\n"));
+        assertTrue(output.contains("# TYPE detectatron_video_early_exits_total counter\ndetectatron_video_early_exits_total 1\n"));
+        assertTrue(output.contains("# TYPE labelcache_hits gauge\nlabelcache_hits 12.0\n"));
+        assertTrue(output.contains("async_pool_queued 3.0\n"));
+
+        // Metrics reported more than once are only exported once, and the pipeline metrics aren't repeated as gauges.
+        assertEquals(output.indexOf("labelcache_hits 12.0"), output.lastIndexOf("labelcache_hits 12.0"));
+        assertFalse(output.contains("timer_upload_put"));
+    }
+
+    @Test
+    public void testSanitise() throws Exception {
+        assertEquals("upload_queue_pending", PrometheusEndpoint.sanitise("upload.queue.pending"));
+        assertEquals("timer_label_detect_max_ms", PrometheusEndpoint.sanitise("timer.label.detect.max-ms"));
+        assertEquals("_5xx", PrometheusEndpoint.sanitise("5xx"));
+        assertEquals("", PrometheusEndpoint.sanitise(""));
+        assertTrue(PrometheusEndpoint.render(new PipelineMetrics(), Collections.<PublicMetrics>emptyList()).startsWith("# HELP"));
+    }
+
+    private static long value(PipelineMetrics metrics, String name) {
+        for (Metric<?> metric : metrics.metrics()) {
+            if (metric.getName().equals(name)) {
+                return metric.getValue().longValue();
+            }
+        }
+
+        fail("No metric named " + name);
+        return 0;
+    }
+
+}
@@ -0,0 +1,49 @@
+package detectatron;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for spooling uploads to disk.
+ */
+public class SpoolServiceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private SpoolService spoolService;
+
+    @Before
+    public void setUp() {
+        spoolService = new SpoolService();
+        ReflectionTestUtils.setField(spoolService, "spoolDirectory", temporaryFolder.getRoot().getPath());
+        ReflectionTestUtils.setField(spoolService, "pipelineMetrics", new PipelineMetrics());
+    }
+
+    @Test
+    public void testUploadSpooledToDisk() throws Exception {
+        MockMultipartFile upload = new MockMultipartFile("file", "front_door.mp4", "video/mp4", "not really a video".getBytes());
+
+        File spooled;
+
+        try (SpooledFile spooledFile = spoolService.spool(upload)) {
+            spooled = spooledFile.getFile();
+
+            assertEquals("front_door.mp4", spooledFile.getOriginalFilename());
+            assertEquals(new File(temporaryFolder.getRoot(), "uploads"), spooled.getParentFile());
+            assertArrayEquals("not really a video".getBytes(), Files.readAllBytes(spooled.toPath()));
+        }
+
+        assertFalse("Spooled file should be removed once closed", spooled.exists());
+    }
+
+}
@@ -0,0 +1,76 @@
+package detectatron;
+
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for handing streamed results over to a sender, so slow clients don't hold up whoever produced them.
+ */
+public class SseEventQueueTest {
+
+    /**
+     * Emitter for a client that doesn't read anything until released.
+     */
+    private static class SlowEmitter extends SseEmitter {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        final List<SseEventBuilder> sent = Collections.synchronizedList(new ArrayList<SseEventBuilder>());
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            sent.add(builder);
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+    }
+
+    @Test
+    public void testSlowClientDoesNotBlockProducer() throws Exception {
+        SlowEmitter emitter = new SlowEmitter();
+        SseEventQueue events = new SseEventQueue(emitter, 3);
+
+        Thread sender = new Thread(events);
+        sender.start();
+
+        // The sender is stuck on the first event, the rest queue up and anything beyond that is dropped rather than
+        // waiting for the client.
+        long startTime = System.nanoTime();
+        int accepted = 0;
+
+        for (int i = 0; i < 10; i++) {
+            if (events.offer(SseEmitter.event().name("frame").data(i))) {
+                accepted++;
+            }
+        }
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) < 1000);
+        assertTrue("Expected results to be dropped, accepted " + accepted, accepted < 10);
+        assertEquals(10 - accepted, events.getDropped());
+
+        emitter.release.countDown();
+        events.finish(SseEmitter.event().name("summary").data(""));
+
+        assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(accepted + 1, emitter.sent.size());
+
+        sender.join(5000);
+        assertFalse(sender.isAlive());
+    }
+}
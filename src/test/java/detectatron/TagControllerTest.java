@@ -1,6 +1,8 @@
 package detectatron;
 
 import com.amazonaws.util.IOUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -16,19 +18,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
 
 import javax.validation.ValidationException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -36,11 +43,20 @@ import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppC
 
 
 /**
- * Unit tests for the tagTag Controller.
+ * Unit tests for the tagTag Controller. Images are categorised with a tiny local model rather than Rekognition, so
+ * these run offline.
  */
 @RunWith(SpringRunner.class)
 @AutoConfigureMockMvc
-@SpringBootTest
+@SpringBootTest(properties = {
+        "detectatron.detector.type=local",
+        "detectatron.detector.local.model-config=src/test/resources/models/colour.prototxt",
+        "detectatron.detector.local.labels=src/test/resources/models/colour-labels.txt",
+        "detectatron.detector.local.input-width=8",
+        "detectatron.detector.local.input-height=8",
+        "detectatron.detector.local.mean=0,0,0",
+        "detectatron.detector.local.scale=0.08"
+})
 public class TagControllerTest {
 
     @Autowired
@@ -116,4 +132,144 @@ public class TagControllerTest {
     }
 
 
-}
\ No newline at end of file
+    /**
+     * Test the image tags are returned in the compact schema by default, the original schema when asked for, and as
+     * CBOR when the client accepts it.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTagImageResponseSchemas() throws Exception {
+        MockMultipartFile multipartFile = new MockMultipartFile("file", "lena1.png", "image/png", getResourceFile("images/lena1.png"));
+
+        mockMvc.perform(fileUpload("/tag/image").file(multipartFile))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.schema").value(2))
+                .andExpect(jsonPath("$.confidence").exists())
+                .andExpect(jsonPath("$.keyFrame").doesNotExist())
+                .andExpect(jsonPath("$.video").doesNotExist());
+
+        mockMvc.perform(fileUpload("/tag/image").file(multipartFile).param("schema", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.schema").doesNotExist())
+                .andExpect(jsonPath("$.rawLabels").exists());
+
+        mockMvc.perform(fileUpload("/tag/image").file(multipartFile).param("schema", "3"))
+                .andExpect(status().isBadRequest());
+
+        byte[] cbor = mockMvc.perform(fileUpload("/tag/image").file(multipartFile).accept(CborHttpMessageConverter.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(CborHttpMessageConverter.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertEquals(2, new ObjectMapper(new CBORFactory()).readTree(cbor).get("schema").asInt());
+    }
+
+
+    /**
+     * Test tagging a batch of images, from both file parts and a zip archive. The invalid image fails on its own
+     * without failing the rest of the batch.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTagImagesBatch() throws Exception {
+        ByteArrayOutputStream zipData = new ByteArrayOutputStream();
+
+        try (ZipOutputStream zip = new ZipOutputStream(zipData)) {
+            zip.putNextEntry(new ZipEntry("archived/lena1.png"));
+            zip.write(getResourceFile("images/lena1.png"));
+            zip.closeEntry();
+        }
+
+        mockMvc.perform(fileUpload("/tag/images")
+                    .file(new MockMultipartFile("file", "lena1.png", "image/png", getResourceFile("images/lena1.png")))
+                    .file(new MockMultipartFile("file", "test.txt", "text/plain", "Unit Testing".getBytes()))
+                    .file(new MockMultipartFile("archive", "images.zip", "application/zip", zipData.toByteArray())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].name").value("lena1.png"))
+                .andExpect(jsonPath("$[0].status").value(200))
+                .andExpect(jsonPath("$[0].tags.schema").value(2))
+                .andExpect(jsonPath("$[1].name").value("test.txt"))
+                .andExpect(jsonPath("$[1].tags").doesNotExist())
+                .andExpect(jsonPath("$[1].error").exists())
+                .andExpect(jsonPath("$[2].name").value("archived/lena1.png"))
+                .andExpect(jsonPath("$[2].status").value(200));
+
+        mockMvc.perform(fileUpload("/tag/images"))
+                .andExpect(status().isBadRequest());
+    }
+
+
+    /**
+     * Test streaming the results of a batch of images, each image is sent as it completes followed by a done event.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTagImagesBatchStream() throws Exception {
+        MvcResult result = mockMvc.perform(fileUpload("/tag/images/stream")
+                    .file(new MockMultipartFile("file", "lena1.png", "image/png", getResourceFile("images/lena1.png")))
+                    .file(new MockMultipartFile("file", "test.txt", "text/plain", "Unit Testing".getBytes())))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        for (int i = 0; i < 100 && !result.getResponse().getContentAsString().contains("event:done"); i++) {
+            Thread.sleep(50);
+        }
+
+        String events = result.getResponse().getContentAsString();
+
+        assertTrue(events.contains("\"name\":\"lena1.png\""));
+        assertTrue(events.contains("\"name\":\"test.txt\""));
+        assertTrue(events.contains("event:done"));
+    }
+
+
+    /**
+     * Test streaming the tags of an invalid video. The failure is reported as an error event once the upload has
+     * been accepted and streaming has started.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTagVideoStreamInvalidVideo() throws Exception {
+        MockMultipartFile multipartFile = new MockMultipartFile("file", "test.mp4", "video/mp4", "Unit Testing".getBytes());
+
+        MvcResult result = mockMvc.perform(fileUpload("/tag/video/stream").file(multipartFile))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        for (int i = 0; i < 100 && !result.getResponse().getContentAsString().contains("event:error"); i++) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(200, result.getResponse().getStatus());
+        assertTrue(result.getResponse().getContentAsString().contains("event:error"));
+    }
+
+
+    /**
+     * Test the metrics are exposed for Prometheus to scrape after categorising an image.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPrometheusMetrics() throws Exception {
+        MockMultipartFile multipartFile = new MockMultipartFile("file", "lena1.png", "image/png", getResourceFile("images/lena1.png"));
+
+        mockMvc.perform(fileUpload("/tag/image").file(multipartFile))
+                .andExpect(status().is2xxSuccessful());
+
+        String metrics = mockMvc.perform(get("/prometheus"))
+                .andExpect(status().is2xxSuccessful())
+                .andExpect(content().contentTypeCompatibleWith("text/plain"))
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(metrics.contains("# TYPE detectatron_stage_duration_seconds histogram"));
+        assertTrue(metrics.contains("labelcache_hits "));
+    }
+
+}
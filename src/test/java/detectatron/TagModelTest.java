@@ -0,0 +1,85 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.BoundingBox;
+import com.amazonaws.services.rekognition.model.Label;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for merging labels into the tag model.
+ */
+public class TagModelTest {
+
+    private Label label(String name, float confidence) {
+        return new Label().withName(name).withConfidence(confidence);
+    }
+
+    @Test
+    public void testHighestConfidenceRetained() {
+        TagModel tags = new TagModel(Arrays.asList(label("Car", 60F), label("Person", 70F)));
+
+        tags.importLabels(Arrays.asList(label("Person", 90F), label("Car", 50F), label("Tree", 55F)));
+
+        assertEquals(Arrays.asList("Car", "Person", "Tree"), tags.getAllTags());
+        assertEquals(60F, tags.getConfidence("Car"), 0.001);
+        assertEquals(90F, tags.getConfidence("Person"), 0.001);
+        assertNull(tags.getConfidence("Cat"));
+
+        assertEquals(3, tags.getRawLabels().size());
+        assertEquals(90F, tags.getRawLabels().get(1).getConfidence(), 0.001);
+    }
+
+    @Test
+    public void testKeyLabelsTracked() {
+        TagModel tags = new TagModel(Collections.singletonList(label("person", 70F)));
+        tags.importLabels(Arrays.asList(label("Car", 80F), label("person", 95F)));
+
+        assertEquals(Collections.singletonList("person"), tags.getKeyTags());
+        assertEquals(1, tags.getKeyLabels().size());
+        assertEquals(95F, tags.getKeyLabels().get(0).getConfidence(), 0.001);
+    }
+
+    @Test
+    public void testConfigurableKeyLabels() {
+        TagModel tags = new TagModel(Arrays.asList(label("Person", 90F), label("Car", 80F)), new KeyLabelSet("Car", " "));
+
+        assertEquals(Collections.singletonList("Car"), tags.getKeyTags());
+    }
+
+    @Test
+    public void testLabelRegionsRecorded() {
+        TagModel tags = new TagModel();
+        BoundingBox region = new BoundingBox().withLeft(0.5F).withTop(0.25F).withWidth(0.1F).withHeight(0.2F);
+
+        tags.importLabelRegions(30, Arrays.asList(label("Person", 90F), label("Car", 80F)), Collections.singletonList(region));
+
+        assertEquals(2, tags.getLabelRegions().size());
+        assertEquals("Person", tags.getLabelRegions().get(0).name);
+        assertEquals(30, tags.getLabelRegions().get(0).frameNumber);
+        assertSame(region, tags.getLabelRegions().get(1).boundingBox);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testViewsReadOnly() {
+        new TagModel().getAllTags().add("Person");
+    }
+
+    @Test
+    public void testJsonOutput() throws Exception {
+        TagModel tags = new TagModel(Arrays.asList(label("Cat", 83F), label("Room", 57F)));
+
+        JsonNode json = new ObjectMapper().readTree(new ObjectMapper().writeValueAsString(tags));
+
+        assertEquals("Cat", json.get("rawLabels").get(0).get("name").asText());
+        assertEquals("Cat", json.get("keyLabels").get(0).get("name").asText());
+        assertEquals(2, json.get("allTags").size());
+        assertEquals("Cat", json.get("keyTags").get(0).asText());
+    }
+
+}
@@ -0,0 +1,72 @@
+package detectatron;
+
+import com.amazonaws.services.rekognition.model.Label;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the compact tag response schema.
+ */
+public class TagResponseTest {
+
+    private TagModel videoTags() {
+        TagModel tags = new TagModel(Arrays.asList(
+                new Label().withName("Person").withConfidence(97.5f),
+                new Label().withName("Tree").withConfidence(80f)));
+
+        tags.keyFrameData = new byte[] {(byte) 0xFF, (byte) 0xD8, 1, 2, 3};
+        tags.submissionMode = "FRAME";
+        tags.requestsSent = 3;
+
+        return tags;
+    }
+
+    @Test
+    public void testKeyFrameLeftOutByDefault() throws Exception {
+        JsonNode json = new ObjectMapper().valueToTree(TagResponse.of(videoTags(), TagResponse.KeyFrameMode.NONE, new KeyFrameStore(10)));
+
+        assertEquals(TagResponse.SCHEMA, json.get("schema").asInt());
+        assertEquals("Person", json.get("keyTags").get(0).asText());
+        assertEquals(97.5, json.get("confidence").get("Person").asDouble(), 0.001);
+        assertEquals(3, json.get("video").get("requestsSent").asInt());
+        assertFalse(json.has("keyFrame"));
+        assertFalse(json.has("keyFrameRef"));
+        assertFalse(json.has("labelRegions"));
+    }
+
+    @Test
+    public void testKeyFrameByReference() throws Exception {
+        KeyFrameStore keyFrameStore = new KeyFrameStore(1);
+        TagResponse response = TagResponse.of(videoTags(), TagResponse.KeyFrameMode.REF, keyFrameStore);
+
+        assertNull(response.keyFrame);
+        assertTrue(response.keyFrameRef.startsWith("/tag/keyframe/"));
+
+        String id = response.keyFrameRef.substring("/tag/keyframe/".length());
+        assertArrayEquals(videoTags().keyFrameData, keyFrameStore.get(id));
+
+        // Only the most recent keyframes are held.
+        TagResponse.of(videoTags(), TagResponse.KeyFrameMode.REF, keyFrameStore);
+        assertNull(keyFrameStore.get(id));
+    }
+
+    @Test
+    public void testInlineKeyFrameIsRawBytesInCbor() throws Exception {
+        TagResponse response = TagResponse.of(videoTags(), TagResponse.KeyFrameMode.INLINE, new KeyFrameStore(10));
+
+        ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+        byte[] encoded = cbor.writeValueAsBytes(response);
+        JsonNode decoded = cbor.readTree(encoded);
+
+        assertTrue(decoded.get("keyFrame").isBinary());
+        assertArrayEquals(videoTags().keyFrameData, decoded.get("keyFrame").binaryValue());
+        assertTrue("CBOR should be smaller than JSON", encoded.length < new ObjectMapper().writeValueAsBytes(response).length);
+    }
+
+}
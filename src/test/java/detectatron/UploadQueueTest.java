@@ -0,0 +1,127 @@
+package detectatron;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the background upload queue.
+ */
+public class UploadQueueTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private UploadQueue uploadQueue;
+
+    @After
+    public void tearDown() {
+        if (uploadQueue != null) {
+            uploadQueue.shutdown();
+        }
+    }
+
+    private void awaitEmpty(UploadQueue queue) throws InterruptedException {
+        for (int i = 0; i < 100 && queue.pending() > 0; i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void testUploadsToStore() throws Exception {
+        File storeDirectory = temporaryFolder.newFolder("store");
+        File source = temporaryFolder.newFile("front_door.mp4");
+        Files.write(source.toPath(), "not really a video".getBytes());
+
+        uploadQueue = new UploadQueue(new FileSystemObjectStore(storeDirectory), temporaryFolder.newFolder("queue"), 2, 10, 3, 10);
+        uploadQueue.start();
+
+        uploadQueue.enqueue("front_door.mp4", source, "[\"Person\"]");
+        uploadQueue.enqueue("front_door.mp4_keyframe.jpg", "not really a jpeg".getBytes(), "");
+
+        // The original is no longer needed once queued.
+        assertTrue(source.delete());
+
+        awaitEmpty(uploadQueue);
+        assertEquals(0, uploadQueue.pending());
+
+        assertArrayEquals("not really a video".getBytes(), Files.readAllBytes(new File(storeDirectory, "front_door.mp4").toPath()));
+        assertArrayEquals("[\"Person\"]".getBytes(), Files.readAllBytes(new File(storeDirectory, "front_door.mp4.metadata").toPath()));
+        assertArrayEquals("not really a jpeg".getBytes(), Files.readAllBytes(new File(storeDirectory, "front_door.mp4_keyframe.jpg").toPath()));
+        assertFalse(new File(storeDirectory, "front_door.mp4_keyframe.jpg.metadata").exists());
+    }
+
+    @Test
+    public void testFailedUploadsRetried() throws Exception {
+        File storeDirectory = temporaryFolder.newFolder("store");
+        FileSystemObjectStore store = new FileSystemObjectStore(storeDirectory);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Fails the first two attempts.
+        ObjectStore flakyStore = (key, file, customMetadata) -> {
+            if (attempts.incrementAndGet() <= 2) {
+                throw new IOException("Connection reset");
+            }
+            store.put(key, file, customMetadata);
+        };
+
+        uploadQueue = new UploadQueue(flakyStore, temporaryFolder.newFolder("queue"), 1, 10, 5, 10);
+        uploadQueue.start();
+
+        uploadQueue.enqueue("front_door.mp4", "not really a video".getBytes(), "");
+
+        awaitEmpty(uploadQueue);
+
+        assertEquals(3, attempts.get());
+        assertTrue(new File(storeDirectory, "front_door.mp4").exists());
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() throws Exception {
+        File queueDirectory = temporaryFolder.newFolder("queue");
+
+        uploadQueue = new UploadQueue((key, file, customMetadata) -> {
+            throw new IOException("Access denied");
+        }, queueDirectory, 1, 10, 2, 10);
+        uploadQueue.start();
+
+        uploadQueue.enqueue("front_door.mp4", "not really a video".getBytes(), "");
+
+        awaitEmpty(uploadQueue);
+
+        assertEquals(0, uploadQueue.pending());
+        assertEquals(2, new File(queueDirectory, "failed").list().length);
+    }
+
+    @Test
+    public void testQueuedUploadsResumedAfterRestart() throws Exception {
+        File storeDirectory = temporaryFolder.newFolder("store");
+        File queueDirectory = temporaryFolder.newFolder("queue");
+
+        // Queue an upload without ever starting the workers, as if we stopped before getting to it.
+        UploadQueue stopped = new UploadQueue((key, file, customMetadata) -> {
+            throw new IOException("Stopping");
+        }, queueDirectory, 1, 10, 100, 60000);
+        stopped.enqueue("front_door.mp4", "not really a video".getBytes(), "");
+        stopped.shutdown();
+
+        assertEquals(1, stopped.pending());
+
+        uploadQueue = new UploadQueue(new FileSystemObjectStore(storeDirectory), queueDirectory, 1, 10, 3, 10);
+        uploadQueue.start();
+
+        awaitEmpty(uploadQueue);
+
+        assertEquals(0, uploadQueue.pending());
+        assertTrue(new File(storeDirectory, "front_door.mp4").exists());
+    }
+
+}